@@ -0,0 +1,79 @@
+package com.example.android.bookstoreinventory;
+
+import android.database.MatrixCursor;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test checking that binding catalog rows does not allocate in steady state.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookAdapterAllocationTest {
+
+    private static final int ROWS = 10000;
+
+    /** Allocations tolerated from the framework while binding, independent of the row count */
+    private static final int ALLOCATION_SLACK = 50;
+
+    @Test
+    public void bindingRows_allocationCountStaysFlat() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                MatrixCursor cursor = new MatrixCursor(CatalogLoader.PROJECTION, ROWS);
+                for (int i = 0; i < ROWS; i++) {
+                    cursor.addRow(new Object[] { i + 1, "Book " + i, i % 10000, "USD", i % 1000, "Supplier",
+                            "555", 0 });
+                }
+                CatalogSnapshot snapshot = CatalogSnapshot.fromCursor(cursor, true);
+
+                BookAdapter adapter = new BookAdapter(InstrumentationRegistry.getTargetContext(), null);
+                adapter.swapResult(new CatalogLoader.Result(null, snapshot, null));
+                FrameLayout parent = new FrameLayout(InstrumentationRegistry.getTargetContext());
+                BookAdapter.BookViewHolder[] holders = new BookAdapter.BookViewHolder[8];
+                for (int i = 0; i < holders.length; i++) {
+                    holders[i] = adapter.onCreateViewHolder(parent, 0);
+                }
+
+                // Warm up so lazily created framework objects are not counted
+                bind(adapter, holders, 1000);
+
+                int smallBurst = countAllocations(adapter, holders, 1000);
+                int largeBurst = countAllocations(adapter, holders, ROWS);
+
+                assertTrue("1k binds allocated " + smallBurst + ", 10k binds allocated " + largeBurst,
+                        largeBurst <= smallBurst + ALLOCATION_SLACK);
+            }
+        });
+    }
+
+    @Test
+    public void formatNumber_matchesIntegerToString() {
+        char[] buffer = new char[12];
+        for (int value : new int[] { 0, 7, 42, -3, 1000000, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+            int length = BookAdapter.formatNumber(buffer, value);
+            assertEquals(" " + value, new String(buffer, 0, length));
+        }
+    }
+
+    private static int countAllocations(BookAdapter adapter, BookAdapter.BookViewHolder[] holders, int rows) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        bind(adapter, holders, rows);
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+
+    private static void bind(BookAdapter adapter, BookAdapter.BookViewHolder[] holders, int rows) {
+        for (int position = 0; position < rows; position++) {
+            adapter.onBindViewHolder(holders[position % holders.length], position);
+        }
+    }
+}
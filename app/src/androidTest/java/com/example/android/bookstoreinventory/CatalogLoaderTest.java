@@ -0,0 +1,185 @@
+package com.example.android.bookstoreinventory;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.content.Loader;
+
+import com.example.android.bookstoreinventory.data.Book;
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.ProductCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link CatalogLoader} against the app's provider: the rows it puts into
+ * the {@link ProductCache} are complete products, and changes to single products are patched in
+ * without reading the catalog again.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogLoaderTest {
+
+    private static final int PAGE_SIZE = 50;
+
+    /** Longest a load is waited for */
+    private static final long LOAD_TIMEOUT_MILLIS = 5000;
+
+    /** Longer than the provider collects change notifications before sending them */
+    private static final long NOTIFICATION_DELAY_MILLIS = 100;
+
+    private ContentResolver mResolver;
+    private CatalogLoader mLoader;
+    private final BlockingQueue<CatalogLoader.Result> mResults = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        mResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        ProductCache.getInstance().invalidateAll();
+        mLoader = new CatalogLoader(InstrumentationRegistry.getTargetContext(), null, PAGE_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.reset();
+            }
+        });
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void loadedRows_keepTheirIsbnInTheCache() throws InterruptedException {
+        Uri uri = insert("Networks", "9780306406157");
+        long id = ContentUris.parseId(uri);
+        start();
+        assertEquals(1, nextResult().snapshot.count);
+        assertNotNull(ProductCache.getInstance().get(id));
+
+        // Both lookups are answered from the row the catalog cached
+        Cursor cursor = mResolver.query(BookEntry.buildIsbnUri("978-0-306-40615-7"), Book.ALL_COLUMNS,
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(id, cursor.getLong(cursor.getColumnIndexOrThrow(BookEntry._ID)));
+            assertEquals(9780306406157L, cursor.getLong(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_ISBN)));
+        } finally {
+            cursor.close();
+        }
+        cursor = mResolver.query(uri, Book.ALL_COLUMNS, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(9780306406157L, cursor.getLong(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_ISBN)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void changeAfterLoadedPage_isLeftToThatPage() throws InterruptedException {
+        Uri[] products = new Uri[PAGE_SIZE + 10];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = insert("Book " + i, null);
+        }
+        start();
+        assertEquals(PAGE_SIZE, nextResult().snapshot.count);
+
+        // Not loaded yet: nothing to patch, and no full reload either
+        setQuantity(products[PAGE_SIZE + 5], 3);
+        CatalogLoader.Result result = nextResult();
+        assertNotNull(result.changedPositions);
+        assertEquals(0, result.changedPositions.length);
+        assertEquals(PAGE_SIZE, result.snapshot.count);
+
+        setQuantity(products[1], 4);
+        result = nextResult();
+        assertArrayEquals(new int[] { 1 }, result.changedPositions);
+        assertEquals(4, result.snapshot.quantities[1]);
+
+        // The next page has the change
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.loadNextPage(PAGE_SIZE);
+            }
+        });
+        result = nextResult();
+        assertEquals(products.length, result.snapshot.count);
+        assertEquals(3, result.snapshot.quantities[PAGE_SIZE + 5]);
+    }
+
+    @Test
+    public void insertIntoFullyLoadedCatalog_isShown() throws InterruptedException {
+        insert("Networks", null);
+        start();
+        assertEquals(1, nextResult().snapshot.count);
+
+        // The new product's id is after the last one loaded, but no page will read it
+        long id = ContentUris.parseId(insert("Dune", null));
+        CatalogLoader.Result result = nextResult();
+        assertEquals(2, result.snapshot.count);
+        assertEquals(1, result.snapshot.indexOf(id));
+    }
+
+    /**
+     * Start the loader on the main thread, where it delivers its results. The notifications of
+     * the products inserted before are sent first, so they don't cause another load.
+     */
+    private void start() throws InterruptedException {
+        Thread.sleep(NOTIFICATION_DELAY_MILLIS);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.registerListener(0, new Loader.OnLoadCompleteListener<CatalogLoader.Result>() {
+                    @Override
+                    public void onLoadComplete(Loader<CatalogLoader.Result> loader, CatalogLoader.Result result) {
+                        mResults.add(result);
+                    }
+                });
+                mLoader.startLoading();
+            }
+        });
+    }
+
+    private CatalogLoader.Result nextResult() throws InterruptedException {
+        CatalogLoader.Result result = mResults.poll(LOAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull("Catalog not loaded", result);
+        return result;
+    }
+
+    private void setQuantity(Uri uri, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        assertEquals(1, mResolver.update(uri, values, null, null));
+    }
+
+    private Uri insert(String name, String isbn) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        if (isbn != null) {
+            values.put(BookEntry.COLUMN_ISBN, isbn);
+        }
+        values.put(BookEntry.COLUMN_PRICE, 1000);
+        values.put(BookEntry.COLUMN_QUANTITY, 10);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return uri;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.android.bookstoreinventory;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.content.Loader;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract;
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.LatencyHistogram;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of refreshing a 50000-product catalog after a single sale. Logs the time
+ * from the sale to the patched snapshot being delivered by {@link CatalogLoader}, next to a full
+ * reload of the same catalog and the row lookup on its own. Both refreshes include the window
+ * in which the provider coalesces its change notifications.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogRefreshBenchmark {
+
+    private static final String LOG_TAG = CatalogRefreshBenchmark.class.getSimpleName();
+
+    private static final int PRODUCTS = 50000;
+    private static final int SALES = 50;
+    private static final int FULL_RELOADS = 5;
+    private static final int LOOKUPS = 10000;
+
+    /** Longest a refresh is waited for */
+    private static final long REFRESH_TIMEOUT_MILLIS = 30000;
+
+    private ContentResolver mResolver;
+    private CatalogLoader mLoader;
+    private final BlockingQueue<CatalogLoader.Result> mResults = new LinkedBlockingQueue<>();
+    private long mFirstId;
+
+    @Before
+    public void setUp() {
+        mResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+        ContentValues[] rows = new ContentValues[PRODUCTS];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+            rows[i].put(BookEntry.COLUMN_PRICE, 100 * (i % 50));
+            rows[i].put(BookEntry.COLUMN_QUANTITY, 1000);
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 100));
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        }
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[] { BookEntry._ID }, null, null,
+                BookEntry._ID + " ASC");
+        try {
+            assertTrue(cursor.moveToFirst());
+            mFirstId = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+
+        // Loaders are started and deliver their results on the main thread
+        mLoader = new CatalogLoader(InstrumentationRegistry.getTargetContext(), null, PRODUCTS);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.registerListener(0, new Loader.OnLoadCompleteListener<CatalogLoader.Result>() {
+                    @Override
+                    public void onLoadComplete(Loader<CatalogLoader.Result> loader, CatalogLoader.Result result) {
+                        mResults.add(result);
+                    }
+                });
+                mLoader.startLoading();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.reset();
+            }
+        });
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void refresh_singleSaleVersusFullReload() throws InterruptedException {
+        CatalogLoader.Result loaded = nextResult();
+        assertEquals(PRODUCTS, loaded.snapshot.count);
+
+        Random random = new Random(13);
+        LatencyHistogram sales = new LatencyHistogram();
+        for (int i = 0; i < SALES; i++) {
+            long id = mFirstId + random.nextInt(PRODUCTS);
+            Bundle extras = new Bundle();
+            extras.putInt(BookContract.EXTRA_AMOUNT, 1);
+            long start = System.nanoTime();
+            mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL, String.valueOf(id), extras);
+            CatalogLoader.Result result = nextResult();
+            sales.record(System.nanoTime() - start);
+
+            // The sale is patched in, not reloaded
+            assertNotNull(result.changedPositions);
+            int position = result.snapshot.indexOf(id);
+            assertTrue(position >= 0);
+            assertEquals(result.previous.quantities[position] - 1, result.snapshot.quantities[position]);
+        }
+
+        LatencyHistogram fullReloads = new LatencyHistogram();
+        for (int i = 0; i < FULL_RELOADS; i++) {
+            long start = System.nanoTime();
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mLoader.setQuery(null, PRODUCTS);
+                }
+            });
+            CatalogLoader.Result result = nextResult();
+            fullReloads.record(System.nanoTime() - start);
+            assertNull(result.changedPositions);
+        }
+
+        // The lookup that finds the sold row, by halves and by scanning every row as before
+        CatalogSnapshot snapshot = loaded.snapshot;
+        LatencyHistogram binarySearch = new LatencyHistogram();
+        LatencyHistogram scan = new LatencyHistogram();
+        for (int i = 0; i < LOOKUPS; i++) {
+            long id = mFirstId + random.nextInt(PRODUCTS);
+            long start = System.nanoTime();
+            int position = snapshot.indexOf(id);
+            binarySearch.record(System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int scanned = scan(snapshot, id);
+            scan.record(System.nanoTime() - start);
+            assertEquals(scanned, position);
+        }
+
+        Log.i(LOG_TAG, "Refresh after a sale: " + sales);
+        Log.i(LOG_TAG, "Full reload:          " + fullReloads);
+        Log.i(LOG_TAG, "Row lookup, binary search: " + binarySearch);
+        Log.i(LOG_TAG, "Row lookup, scan:          " + scan);
+    }
+
+    private CatalogLoader.Result nextResult() throws InterruptedException {
+        CatalogLoader.Result result = mResults.poll(REFRESH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull("Catalog not refreshed", result);
+        return result;
+    }
+
+    private static int scan(CatalogSnapshot snapshot, long id) {
+        for (int i = 0; i < snapshot.count; i++) {
+            if (snapshot.ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
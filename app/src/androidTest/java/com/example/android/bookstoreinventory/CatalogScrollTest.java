@@ -0,0 +1,226 @@
+package com.example.android.bookstoreinventory;
+
+import android.annotation.TargetApi;
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.LatencyHistogram;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Instrumented test flinging through a 5000-product catalog, paging included, and logging the
+ * frame times and the number of janky frames. Frames are timed with {@link FrameMetrics} from
+ * API 24 on; API 23 reads the jank counters of {@code dumpsys gfxinfo} instead.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogScrollTest {
+
+    private static final String LOG_TAG = CatalogScrollTest.class.getSimpleName();
+
+    private static final int PRODUCTS = 5000;
+    private static final int FLINGS = 30;
+    private static final int FLING_VELOCITY = 8000;
+
+    /** Longest a fling is waited for */
+    private static final long FLING_TIMEOUT_MILLIS = 5000;
+
+    /** Frame time above which a frame counts as janky, at 60 Hz */
+    private static final long JANK_NANOS = 16666667;
+
+    private static final Pattern GFXINFO_TOTAL = Pattern.compile("Total frames rendered: (\\d+)");
+    private static final Pattern GFXINFO_JANKY = Pattern.compile("Janky frames: (\\d+)");
+
+    @Rule
+    public ActivityTestRule<CatalogActivity> mActivityRule =
+            new ActivityTestRule<>(CatalogActivity.class, false, false);
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+        ContentValues[] rows = new ContentValues[PRODUCTS];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+            rows[i].put(BookEntry.COLUMN_PRICE, 100 * (i % 50));
+            rows[i].put(BookEntry.COLUMN_QUANTITY, i % 25);
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 100));
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        }
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void fling_logsJankyFrames() throws Exception {
+        // Older versions of gfxinfo don't count janky frames
+        assumeTrue("Frame statistics need API 23", Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
+        CatalogActivity activity = mActivityRule.launchActivity(null);
+        RecyclerView list = (RecyclerView) activity.findViewById(R.id.list);
+        waitForRows(list);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            FrameRecorder recorder = new FrameRecorder();
+            recorder.start(activity.getWindow());
+            try {
+                fling(list);
+            } finally {
+                recorder.stop(activity.getWindow());
+            }
+            Log.i(LOG_TAG, recorder.mJankyFrames + " janky frames of " + recorder.mFrames.getCount()
+                    + " (" + recorder.mDroppedReports + " not reported), frame times " + recorder.mFrames);
+            assertTrue(recorder.mFrames.getCount() > 0);
+        } else {
+            String packageName = activity.getPackageName();
+            runShellCommand("dumpsys gfxinfo " + packageName + " reset");
+            fling(list);
+            String gfxinfo = runShellCommand("dumpsys gfxinfo " + packageName);
+            long frames = find(GFXINFO_TOTAL, gfxinfo);
+            long jankyFrames = find(GFXINFO_JANKY, gfxinfo);
+            Log.i(LOG_TAG, jankyFrames + " janky frames of " + frames + " (dumpsys gfxinfo)");
+            assertTrue(frames > 0);
+        }
+        Log.i(LOG_TAG, "Scrolled through " + list.getAdapter().getItemCount() + " rows");
+    }
+
+    /**
+     * Wait until the first page of the catalog is shown.
+     */
+    private static void waitForRows(RecyclerView list) {
+        long deadline = SystemClock.uptimeMillis() + FLING_TIMEOUT_MILLIS;
+        while (list.getAdapter().getItemCount() == 0) {
+            assertTrue("Catalog not shown", SystemClock.uptimeMillis() < deadline);
+            SystemClock.sleep(10);
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+
+    /**
+     * Fling down the list repeatedly, waiting for each fling to come to rest. Pages are loaded
+     * as the list nears its end, as for a user.
+     */
+    private static void fling(final RecyclerView list) {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        for (int i = 0; i < FLINGS; i++) {
+            instrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    list.fling(0, FLING_VELOCITY);
+                }
+            });
+            long deadline = SystemClock.uptimeMillis() + FLING_TIMEOUT_MILLIS;
+            while (list.getScrollState() != RecyclerView.SCROLL_STATE_IDLE
+                    && SystemClock.uptimeMillis() < deadline) {
+                SystemClock.sleep(10);
+            }
+        }
+        instrumentation.waitForIdleSync();
+    }
+
+    private static String runShellCommand(String command) throws IOException {
+        ParcelFileDescriptor output = InstrumentationRegistry.getInstrumentation().getUiAutomation()
+                .executeShellCommand(command);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(output.getFileDescriptor()), "UTF-8"));
+        try {
+            StringBuilder text = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.append(line).append('\n');
+            }
+            return text.toString();
+        } finally {
+            reader.close();
+            output.close();
+        }
+    }
+
+    private static long find(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        assertTrue("No " + pattern + " in gfxinfo", matcher.find());
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * Records the total duration of every frame the window draws while started.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private static class FrameRecorder implements Window.OnFrameMetricsAvailableListener {
+
+        final LatencyHistogram mFrames = new LatencyHistogram();
+        volatile int mJankyFrames;
+
+        /** Frames whose metrics weren't delivered because the listener fell behind */
+        volatile int mDroppedReports;
+
+        private HandlerThread mThread;
+
+        void start(final Window window) {
+            mThread = new HandlerThread("FrameRecorder");
+            mThread.start();
+            final Handler handler = new Handler(mThread.getLooper());
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    window.addOnFrameMetricsAvailableListener(FrameRecorder.this, handler);
+                }
+            });
+        }
+
+        void stop(final Window window) {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    window.removeOnFrameMetricsAvailableListener(FrameRecorder.this);
+                }
+            });
+            mThread.quitSafely();
+        }
+
+        @Override
+        public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCount) {
+            long duration = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+            mFrames.record(duration);
+            if (duration > JANK_NANOS) {
+                mJankyFrames++;
+            }
+            mDroppedReports += dropCount;
+        }
+    }
+}
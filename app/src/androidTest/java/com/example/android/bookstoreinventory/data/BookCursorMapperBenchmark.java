@@ -0,0 +1,139 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of reading 100k products out of a cursor over the product view:
+ * looking every column up by name on every row, as the readers did before, against a
+ * {@link BookCursorMapper} into books and into arrays. Logs the time per row of each.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookCursorMapperBenchmark {
+
+    private static final String LOG_TAG = BookCursorMapperBenchmark.class.getSimpleName();
+    private static final String TEST_DATABASE = "mapper-benchmark.db";
+
+    private static final int PRODUCTS = 100000;
+
+    private Context mContext;
+    private BookDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE);
+
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues supplier = new ContentValues();
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+            long supplierId = db.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier);
+
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < PRODUCTS; i++) {
+                values.put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+                values.put(BookEntry.COLUMN_PRICE, 10 + i % 50);
+                values.put(BookEntry.COLUMN_QUANTITY, i % 25);
+                values.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+                db.insertOrThrow(BookEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void mapRows_byNameVersusResolvedOnce() {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        Cursor cursor = db.query(BookMigrations.VIEW_PRODUCTS, Book.ALL_COLUMNS, null, null, null, null,
+                BookEntry._ID);
+        try {
+            assertEquals(PRODUCTS, cursor.getCount());
+            // Warm up, so the first pass measured doesn't pay for compilation
+            readByName(cursor);
+
+            long start = System.nanoTime();
+            long byNameSum = readByName(cursor);
+            long byName = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long mapperSum = 0;
+            cursor.moveToPosition(-1);
+            BookCursorMapper mapper = new BookCursorMapper(cursor);
+            while (cursor.moveToNext()) {
+                mapperSum += mapper.read().quantity;
+            }
+            long mapped = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long[] ids = new long[PRODUCTS];
+            long[] prices = new long[PRODUCTS];
+            int[] quantities = new int[PRODUCTS];
+            cursor.moveToPosition(-1);
+            int filled = new BookCursorMapper(cursor).fill(ids, null, prices, null, quantities, 0);
+            long arraySum = 0;
+            for (int i = 0; i < filled; i++) {
+                arraySum += quantities[i];
+            }
+            long bulk = System.nanoTime() - start;
+
+            Log.i(LOG_TAG, "By name per row:    " + byName / PRODUCTS + " ns");
+            Log.i(LOG_TAG, "Mapper per row:     " + mapped / PRODUCTS + " ns");
+            Log.i(LOG_TAG, "Mapper into arrays: " + bulk / PRODUCTS + " ns");
+            assertEquals(PRODUCTS, filled);
+            assertEquals(byNameSum, mapperSum);
+            assertEquals(byNameSum, arraySum);
+            assertEquals(PRODUCTS, ids[PRODUCTS - 1]);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read every row looking the columns up by name, the way every reader did before the mapper.
+     * Return the sum of the quantities.
+     */
+    private static long readByName(Cursor cursor) {
+        long sum = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            Book book = new Book(
+                    cursor.getLong(cursor.getColumnIndexOrThrow(BookEntry._ID)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_PRODUCT_NAME)),
+                    cursor.getLong(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_ISBN)),
+                    cursor.getLong(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_PRICE)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_CURRENCY)),
+                    cursor.getInt(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_QUANTITY)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_SUPPLIER_NAME)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER)));
+            sum += book.quantity;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test upgrading a populated version 1 database through {@link BookMigrations}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookDbHelperMigrationTest {
+
+    private static final String TEST_DATABASE = "migration-test.db";
+
+    /** Products table exactly as shipped in database version 1 */
+    private static final String SQL_CREATE_V1 = "CREATE TABLE products ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "name TEXT NOT NULL, "
+            + "price INTEGER NOT NULL DEFAULT 0, "
+            + "quantity INTEGER NOT NULL DEFAULT 0, "
+            + "supplier TEXT NOT NULL, "
+            + "phone TEXT NOT NULL);";
+
+    private static final int V1_ROWS = 1000;
+
+    private Context mContext;
+    private BookDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        db.execSQL(SQL_CREATE_V1);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < V1_ROWS; i++) {
+                ContentValues values = new ContentValues();
+                values.put("name", "Book " + i);
+                values.put("price", i % 40);
+                values.put("quantity", i % 25);
+                values.put("supplier", "Supplier " + (i % 30));
+                values.put("phone", "41545478" + (i % 30));
+                db.insertOrThrow("products", null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.setVersion(1);
+        db.close();
+
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void upgrade_keepsRowsAndReachesCurrentVersion() {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        assertEquals(BookDbHelper.DATABASE_VERSION, db.getVersion());
+
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + BookEntry.TABLE_NAME, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(V1_ROWS, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void upgrade_nameSearchUsesIndex() {
+        assertQueryPlanUses(BookMigrations.INDEX_PRODUCT_NAME,
+                "SELECT * FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_PRODUCT_NAME + " = ?",
+                "Book 42");
+    }
+
+    @Test
+    public void upgrade_supplierGroupingUsesIndex() {
+        assertQueryPlanUses(BookMigrations.INDEX_PRODUCT_SUPPLIER,
+                "SELECT " + BookEntry.COLUMN_SUPPLIER_ID + ", COUNT(*) FROM " + BookEntry.TABLE_NAME
+                        + " GROUP BY " + BookEntry.COLUMN_SUPPLIER_ID);
+    }
+
+    @Test
+    public void upgrade_deduplicatesSuppliers() {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + SupplierEntry.TABLE_NAME, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(30, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+
+        // The view still shows every product with its own supplier name and phone number
+        cursor = db.query(BookMigrations.VIEW_PRODUCTS, new String[] { BookEntry.COLUMN_SUPPLIER_NAME,
+                        BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER }, BookEntry.COLUMN_PRODUCT_NAME + " = ?",
+                new String[] { "Book 42" }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Supplier 12", cursor.getString(0));
+            assertEquals("4154547812", cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void upgrade_keepsSupplierSearchable() {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.execSQL("UPDATE " + SupplierEntry.TABLE_NAME + " SET " + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " = 'Greystone' WHERE " + SupplierEntry.COLUMN_SUPPLIER_NAME + " = 'Supplier 12'");
+
+        assertEquals(count(db, "SELECT COUNT(*) FROM " + BookMigrations.VIEW_PRODUCTS + " WHERE "
+                        + BookEntry.COLUMN_SUPPLIER_NAME + " = 'Greystone'"),
+                count(db, "SELECT COUNT(*) FROM " + BookMigrations.TABLE_PRODUCTS_FTS + " WHERE "
+                        + BookMigrations.TABLE_PRODUCTS_FTS + " MATCH 'greystone'"));
+    }
+
+    private static int count(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertTrue(cursor.getInt(0) > 0);
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void upgrade_lowStockQueryUsesIndex() {
+        assertQueryPlanUses(BookMigrations.INDEX_PRODUCT_QUANTITY,
+                "SELECT * FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_QUANTITY + " < ?",
+                "5");
+    }
+
+    @Test
+    public void upgrade_pendingSalesUseIndex() {
+        assertQueryPlanUses(SaleJournal.INDEX_PENDING,
+                "SELECT SUM(" + SaleJournal.COLUMN_DELTA + ") FROM " + SaleJournal.TABLE_NAME + " WHERE "
+                        + SaleJournal.COLUMN_COMPACTED + " = 0 AND " + SaleJournal.COLUMN_PRODUCT_ID + " = ?",
+                "42");
+    }
+
+    @Test
+    public void upgrade_isbnLookupUsesIndex() {
+        assertQueryPlanUses(BookMigrations.INDEX_PRODUCT_ISBN,
+                "SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME + " WHERE "
+                        + BookEntry.COLUMN_ISBN + " = ?",
+                "9780306406157");
+    }
+
+    @Test
+    public void upgrade_convertsPricesToMinorUnits() {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        Cursor cursor = db.query(BookMigrations.VIEW_PRODUCTS, new String[] { BookEntry.COLUMN_PRICE,
+                BookEntry.COLUMN_CURRENCY }, BookEntry.COLUMN_PRODUCT_NAME + " = ?",
+                new String[] { "Book 39" }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(3900, cursor.getLong(0));
+            assertEquals(BookEntry.DEFAULT_CURRENCY, cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void downgrade_refusesToOpenAndKeepsRows() {
+        mHelper.close();
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        db.setVersion(BookDbHelper.DATABASE_VERSION + 1);
+        db.close();
+
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE);
+        try {
+            mHelper.getWritableDatabase();
+            fail("Downgrade opened the database");
+        } catch (SQLiteException expected) {
+            // expected
+        }
+
+        db = mContext.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        try {
+            assertEquals(BookDbHelper.DATABASE_VERSION + 1, db.getVersion());
+            assertEquals(V1_ROWS, count(db, "SELECT COUNT(*) FROM products"));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void freshDatabase_hasSameIndexes() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE);
+
+        upgrade_nameSearchUsesIndex();
+        upgrade_supplierGroupingUsesIndex();
+        upgrade_lowStockQueryUsesIndex();
+        upgrade_pendingSalesUseIndex();
+        upgrade_isbnLookupUsesIndex();
+    }
+
+    private void assertQueryPlanUses(String index, String sql, String... args) {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue("Expected " + index + " in plan:\n" + plan, plan.toString().contains(index));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of moving suppliers into their own table (database version 4). Builds
+ * a 100k-row catalog with the version 3 schema, then upgrades it, and logs the database file
+ * size and the time to change one supplier's phone number before and after.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookDbHelperSupplierBenchmark {
+
+    private static final String LOG_TAG = BookDbHelperSupplierBenchmark.class.getSimpleName();
+    private static final String TEST_DATABASE = "supplier-benchmark.db";
+
+    private static final int ROWS = 100000;
+
+    /** Ten suppliers with 10k titles each */
+    private static final int SUPPLIERS = 10;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void sizeAndSupplierUpdate_beforeAndAfter() {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE products (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, "
+                + "price INTEGER NOT NULL DEFAULT 0, quantity INTEGER NOT NULL DEFAULT 0, "
+                + "supplier TEXT NOT NULL, phone TEXT NOT NULL);");
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < ROWS; i++) {
+                values.put("name", "Book " + i);
+                values.put("price", i % 40);
+                values.put("quantity", i % 25);
+                values.put("supplier", "Supplier number " + (i % SUPPLIERS) + " Publishing Group");
+                values.put("phone", "+1 415 454 78" + (i % SUPPLIERS));
+                db.insertOrThrow("products", null, values);
+            }
+            BookMigrations.migrate(db, 1, 3);
+            db.setVersion(3);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.execSQL("VACUUM");
+        long sizeBefore = mContext.getDatabasePath(TEST_DATABASE).length();
+
+        long start = System.nanoTime();
+        ContentValues phone = new ContentValues();
+        phone.put("phone", "+1 415 000 0000");
+        int rowsBefore = db.update("products", phone, "supplier = ?",
+                new String[] { "Supplier number 3 Publishing Group" });
+        long updateBefore = System.nanoTime() - start;
+        db.close();
+
+        BookDbHelper helper = new BookDbHelper(mContext, TEST_DATABASE, false);
+        try {
+            db = helper.getWritableDatabase();
+            db.execSQL("VACUUM");
+            long sizeAfter = mContext.getDatabasePath(TEST_DATABASE).length();
+
+            long supplierId = supplierId(db, "Supplier number 3 Publishing Group");
+            start = System.nanoTime();
+            phone = new ContentValues();
+            phone.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "+1 415 111 1111");
+            int rowsAfter = db.update(SupplierEntry.TABLE_NAME, phone, SupplierEntry._ID + " = ?",
+                    new String[] { String.valueOf(supplierId) });
+            long updateAfter = System.nanoTime() - start;
+
+            Log.i(LOG_TAG, "Before: " + sizeBefore / 1024 + " KB, phone change " + updateBefore / 1000
+                    + " us (" + rowsBefore + " rows)");
+            Log.i(LOG_TAG, "After:  " + sizeAfter / 1024 + " KB, phone change " + updateAfter / 1000
+                    + " us (" + rowsAfter + " row)");
+            assertEquals(ROWS / SUPPLIERS, rowsBefore);
+            assertEquals(1, rowsAfter);
+            assertTrue(sizeAfter < sizeBefore);
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static long supplierId(SQLiteDatabase db, String name) {
+        Cursor cursor = db.query(SupplierEntry.TABLE_NAME, new String[] { SupplierEntry._ID },
+                SupplierEntry.COLUMN_SUPPLIER_NAME + " = ?", new String[] { name }, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
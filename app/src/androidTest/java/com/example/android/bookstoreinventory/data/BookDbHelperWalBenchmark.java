@@ -0,0 +1,144 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark running a write-heavy import while the catalog is queried repeatedly,
+ * with and without write-ahead logging. Logs catalog query latency percentiles for both modes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookDbHelperWalBenchmark {
+
+    private static final String LOG_TAG = BookDbHelperWalBenchmark.class.getSimpleName();
+    private static final String TEST_DATABASE = "wal-benchmark.db";
+
+    private static final int IMPORT_ROWS = 50000;
+    private static final int ROWS_PER_TRANSACTION = 500;
+    private static final int MAX_SAMPLES = 100000;
+
+    @Test
+    public void readLatencyDuringImport() throws Exception {
+        long[] rollbackJournal = run(false);
+        long[] writeAheadLog = run(true);
+
+        Log.i(LOG_TAG, "rollback journal: " + describe(rollbackJournal));
+        Log.i(LOG_TAG, "write-ahead log:  " + describe(writeAheadLog));
+    }
+
+    @Test
+    public void journalModeFollowsSwitch() {
+        assertEquals("wal", journalMode(true));
+        assertNotEquals("wal", journalMode(false));
+    }
+
+    private static String journalMode(boolean writeAheadLogging) {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        BookDbHelper helper = new BookDbHelper(context, TEST_DATABASE, writeAheadLogging);
+        try {
+            Cursor cursor = helper.getWritableDatabase().rawQuery("PRAGMA journal_mode", null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                return cursor.getString(0).toLowerCase();
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            helper.close();
+            context.deleteDatabase(TEST_DATABASE);
+        }
+    }
+
+    /**
+     * Import rows on a background thread while querying the first catalog page on this one.
+     * Return the sorted query latencies in nanoseconds.
+     */
+    private static long[] run(boolean writeAheadLogging) throws InterruptedException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(TEST_DATABASE);
+        final BookDbHelper helper = new BookDbHelper(context, TEST_DATABASE, writeAheadLogging);
+        try {
+            final SQLiteDatabase db = helper.getWritableDatabase();
+            ContentValues supplier = new ContentValues();
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+            final long supplierId = db.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier);
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ContentValues values = new ContentValues();
+                    for (int row = 0; row < IMPORT_ROWS; ) {
+                        db.beginTransaction();
+                        try {
+                            for (int i = 0; i < ROWS_PER_TRANSACTION; i++, row++) {
+                                values.put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + row);
+                                values.put(BookEntry.COLUMN_PRICE, row % 50);
+                                values.put(BookEntry.COLUMN_QUANTITY, row % 20);
+                                values.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+                                db.insert(BookEntry.TABLE_NAME, null, values);
+                            }
+                            db.setTransactionSuccessful();
+                        } finally {
+                            db.endTransaction();
+                        }
+                    }
+                }
+            });
+
+            long[] latencies = new long[MAX_SAMPLES];
+            int samples = 0;
+            SQLiteDatabase reader = helper.getReadableDatabase();
+            writer.start();
+            while (writer.isAlive() && samples < MAX_SAMPLES) {
+                long start = System.nanoTime();
+                Cursor cursor = reader.query(BookEntry.TABLE_NAME, null, null, null, null, null,
+                        BookEntry._ID + " ASC", "50");
+                try {
+                    cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+                latencies[samples++] = System.nanoTime() - start;
+            }
+            writer.join();
+
+            long[] result = Arrays.copyOf(latencies, samples);
+            Arrays.sort(result);
+            return result;
+        } finally {
+            helper.close();
+            context.deleteDatabase(TEST_DATABASE);
+        }
+    }
+
+    private static String describe(long[] sortedNanos) {
+        if (sortedNanos.length == 0) {
+            return "no samples";
+        }
+        return sortedNanos.length + " queries, p50 " + percentileMicros(sortedNanos, 50)
+                + " us, p90 " + percentileMicros(sortedNanos, 90)
+                + " us, p99 " + percentileMicros(sortedNanos, 99)
+                + " us, max " + sortedNanos[sortedNanos.length - 1] / 1000 + " us";
+    }
+
+    private static long percentileMicros(long[] sortedNanos, int percentile) {
+        int index = Math.min(sortedNanos.length - 1, sortedNanos.length * percentile / 100);
+        return sortedNanos[index] / 1000;
+    }
+}
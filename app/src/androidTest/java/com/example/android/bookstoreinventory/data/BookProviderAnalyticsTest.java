@@ -0,0 +1,237 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.AnalyticsEntry;
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the aggregate views of {@link BookProvider}, with a benchmark against
+ * aggregating the full product cursor in the app.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderAnalyticsTest {
+
+    private static final String LOG_TAG = BookProviderAnalyticsTest.class.getSimpleName();
+
+    private static final int BENCHMARK_ROWS = 100000;
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void stockValue_emptyTableHasNoCurrency() {
+        Cursor cursor = mResolver.query(AnalyticsEntry.STOCK_VALUE_URI, null, null, null, null);
+        try {
+            assertEquals(0, cursor.getCount());
+            assertEquals(StockValue.EMPTY, StockValue.fromCursor(cursor));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void values_areSummedPerCurrency() {
+        insert("A", 10, 1, "Penguin", "USD");
+        insert("B", 20, 5, "Penguin", "JPY");
+        insert("C", 7, 2, "Vintage", "USD");
+
+        Cursor cursor = mResolver.query(AnalyticsEntry.STOCK_VALUE_URI, null, null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("JPY", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_CURRENCY)));
+            assertEquals(100, getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_VALUE));
+            assertTrue(cursor.moveToNext());
+            assertEquals("USD", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_CURRENCY)));
+            assertEquals(2, getLong(cursor, AnalyticsEntry.COLUMN_PRODUCT_COUNT));
+            assertEquals(24, getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_VALUE));
+
+            StockValue stockValue = StockValue.fromCursor(cursor);
+            assertEquals(3, stockValue.productCount);
+            assertEquals(8, stockValue.totalQuantity);
+            assertEquals(100, stockValue.getTotalValue("JPY"));
+            assertEquals(24, stockValue.getTotalValue("USD"));
+        } finally {
+            cursor.close();
+        }
+
+        // Penguin has a row in each currency
+        cursor = mResolver.query(AnalyticsEntry.SUPPLIERS_URI, null, null, null, null);
+        try {
+            assertEquals(3, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("JPY", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_CURRENCY)));
+            assertEquals("Penguin", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_SUPPLIER_NAME)));
+            assertEquals(100, getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_VALUE));
+            assertTrue(cursor.moveToNext());
+            assertEquals("USD", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_CURRENCY)));
+            assertEquals("Vintage", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_SUPPLIER_NAME)));
+            assertEquals(14, getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_VALUE));
+        } finally {
+            cursor.close();
+        }
+
+        cursor = mResolver.query(AnalyticsEntry.buildTopStockUri(1), null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("JPY", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_CURRENCY)));
+            assertEquals(100, getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_VALUE));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void views_aggregateTheProducts() {
+        insert("A", 10, 1, "Penguin");
+        insert("B", 20, 5, "Penguin");
+        insert("C", 7, 0, "Vintage");
+        insert("D", 3, 40, "Vintage");
+
+        Cursor cursor = mResolver.query(AnalyticsEntry.STOCK_VALUE_URI, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(4, getLong(cursor, AnalyticsEntry.COLUMN_PRODUCT_COUNT));
+            assertEquals(46, getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_QUANTITY));
+            assertEquals(230, getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_VALUE));
+        } finally {
+            cursor.close();
+        }
+
+        cursor = mResolver.query(AnalyticsEntry.SUPPLIERS_URI, null, null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Vintage", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_SUPPLIER_NAME)));
+            assertEquals(2, getLong(cursor, AnalyticsEntry.COLUMN_PRODUCT_COUNT));
+            assertEquals(120, getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_VALUE));
+        } finally {
+            cursor.close();
+        }
+
+        cursor = mResolver.query(AnalyticsEntry.buildBelowThresholdUri(2), null, null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("C", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_PRODUCT_NAME)));
+        } finally {
+            cursor.close();
+        }
+
+        cursor = mResolver.query(AnalyticsEntry.buildTopStockUri(1), null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("D", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_PRODUCT_NAME)));
+            assertEquals(120, getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_VALUE));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void belowThreshold_requiresThreshold() {
+        mResolver.query(AnalyticsEntry.BELOW_THRESHOLD_URI, null, null, null, null);
+    }
+
+    @Test
+    public void benchmark_aggregationOn100kRows() {
+        ContentValues[] rows = new ContentValues[BENCHMARK_ROWS];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(BookEntry.COLUMN_PRODUCT_NAME, "Title " + i);
+            rows[i].put(BookEntry.COLUMN_PRICE, i % 100);
+            rows[i].put(BookEntry.COLUMN_QUANTITY, i % 50);
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 500));
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        }
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+
+        // In the database: one row for the total of the one currency, one per supplier
+        long start = SystemClock.elapsedRealtime();
+        long providerValue;
+        Cursor cursor = mResolver.query(AnalyticsEntry.STOCK_VALUE_URI, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            providerValue = getLong(cursor, AnalyticsEntry.COLUMN_TOTAL_VALUE);
+        } finally {
+            cursor.close();
+        }
+        int providerSuppliers;
+        cursor = mResolver.query(AnalyticsEntry.SUPPLIERS_URI, null, null, null, null);
+        try {
+            providerSuppliers = cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+        long providerMillis = SystemClock.elapsedRealtime() - start;
+
+        // In the app: every row crosses the provider boundary
+        start = SystemClock.elapsedRealtime();
+        long clientValue = 0;
+        Map<String, Long> clientSuppliers = new HashMap<>();
+        cursor = mResolver.query(BookEntry.CONTENT_URI, new String[] { BookEntry.COLUMN_PRICE,
+                BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_SUPPLIER_NAME }, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                long value = (long) cursor.getInt(0) * cursor.getInt(1);
+                clientValue += value;
+                Long supplierValue = clientSuppliers.get(cursor.getString(2));
+                clientSuppliers.put(cursor.getString(2), supplierValue == null ? value : supplierValue + value);
+            }
+        } finally {
+            cursor.close();
+        }
+        long clientMillis = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, "Stock value and per-supplier totals over " + BENCHMARK_ROWS + " rows: provider "
+                + providerMillis + " ms, client-side " + clientMillis + " ms");
+        assertEquals(clientValue, providerValue);
+        assertEquals(clientSuppliers.size(), providerSuppliers);
+    }
+
+    private void insert(String name, int price, int quantity, String supplier) {
+        insert(name, price, quantity, supplier, BookEntry.DEFAULT_CURRENCY);
+    }
+
+    private void insert(String name, int price, int quantity, String supplier, String currency) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, price);
+        values.put(BookEntry.COLUMN_CURRENCY, currency);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplier);
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        assertNotNull(mResolver.insert(BookEntry.CONTENT_URI, values));
+    }
+
+    private static long getLong(Cursor cursor, String column) {
+        return cursor.getLong(cursor.getColumnIndexOrThrow(column));
+    }
+}
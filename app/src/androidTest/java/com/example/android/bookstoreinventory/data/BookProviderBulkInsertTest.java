@@ -0,0 +1,132 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookProvider#bulkInsert} and {@link BookProvider#applyBatch}.
+ * The benchmark compares the transactional bulk path with one insert() per row and logs rows/second.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderBulkInsertTest {
+
+    private static final String LOG_TAG = BookProviderBulkInsertTest.class.getSimpleName();
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void bulkInsert_insertsEveryRow() {
+        assertEquals(100, mResolver.bulkInsert(BookEntry.CONTENT_URI, products(100)));
+        assertEquals(100, countProducts());
+    }
+
+    @Test
+    public void bulkInsert_rowsWithDefaultsFallBackToInsert() {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, "Greatest climbs");
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Frances Lincoln");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+
+        assertEquals(1, mResolver.bulkInsert(BookEntry.CONTENT_URI, new ContentValues[] { values }));
+        assertEquals(1, countProducts());
+    }
+
+    @Test
+    public void bulkInsert_invalidRowWritesNothing() {
+        ContentValues[] values = products(10);
+        values[5].put(BookEntry.COLUMN_QUANTITY, -1);
+        try {
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertEquals(0, countProducts());
+    }
+
+    @Test
+    public void applyBatch_appliesAllOperations() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (ContentValues values : products(50)) {
+            operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+        assertEquals(50, mResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations).length);
+        assertEquals(50, countProducts());
+    }
+
+    @Test
+    public void benchmark_bulkInsertVersusPerRowInsert() {
+        for (int rows : new int[] { 1000, 10000, 100000 }) {
+            ContentValues[] values = products(rows);
+
+            mResolver.delete(BookEntry.CONTENT_URI, null, null);
+            long start = SystemClock.elapsedRealtime();
+            for (ContentValues value : values) {
+                mResolver.insert(BookEntry.CONTENT_URI, value);
+            }
+            long perRowMillis = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+            mResolver.delete(BookEntry.CONTENT_URI, null, null);
+            start = SystemClock.elapsedRealtime();
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+            long bulkMillis = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+            assertEquals(rows, countProducts());
+            Log.i(LOG_TAG, rows + " rows: per-row " + (rows * 1000L / perRowMillis) + " rows/s, bulk "
+                    + (rows * 1000L / bulkMillis) + " rows/s");
+        }
+    }
+
+    private int countProducts() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[] { BookEntry._ID },
+                null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues[] products(int count) {
+        ContentValues[] products = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+            values.put(BookEntry.COLUMN_PRICE, i % 50);
+            values.put(BookEntry.COLUMN_QUANTITY, i % 20);
+            values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 100));
+            values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+            products[i] = values;
+        }
+        return products;
+    }
+}
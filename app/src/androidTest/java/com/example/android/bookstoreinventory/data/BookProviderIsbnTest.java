@@ -0,0 +1,163 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the ISBN column and the lookup by ISBN of {@link BookProvider}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderIsbnTest {
+
+    private static final String[] PROJECTION = { BookEntry._ID, BookEntry.COLUMN_ISBN };
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void insert_storesNormalizedIsbn() {
+        Uri uri = insert("Networks", "0-306-40615-2");
+
+        assertEquals(9780306406157L, lookup(uri));
+    }
+
+    @Test
+    public void lookup_findsProductByIsbn10OrIsbn13() {
+        Uri uri = insert("Networks", "978-0-306-40615-7");
+        long id = Long.parseLong(uri.getLastPathSegment());
+
+        assertEquals(id, lookupId("9780306406157"));
+        assertEquals(id, lookupId("0306406152"));
+        assertEquals(id, lookupId("978-0-306-40615-7"));
+    }
+
+    @Test
+    public void lookup_unknownOrInvalidIsbnFindsNothing() {
+        insert("Networks", "9780306406157");
+
+        assertEquals(-1, lookupId("9780804429573"));
+        assertEquals(-1, lookupId("9780306406158"));
+        assertEquals(-1, lookupId("not an isbn"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void insert_rejectsInvalidIsbn() {
+        insert("Networks", "9780306406158");
+    }
+
+    @Test
+    public void insert_rejectsDuplicateIsbn() {
+        insert("Networks", "9780306406157");
+
+        ContentValues values = product("Networks, second copy");
+        values.put(BookEntry.COLUMN_ISBN, "0306406152");
+        assertNull(mResolver.insert(BookEntry.CONTENT_URI, values));
+    }
+
+    @Test
+    public void insert_productsWithoutIsbnDontConflict() {
+        assertNotNull(mResolver.insert(BookEntry.CONTENT_URI, product("First")));
+        assertNotNull(mResolver.insert(BookEntry.CONTENT_URI, product("Second")));
+    }
+
+    @Test
+    public void lookup_followsUpdatesAndDeletes() {
+        Uri uri = insert("Networks", "9780306406157");
+        long id = Long.parseLong(uri.getLastPathSegment());
+        // Load the entry into the product cache
+        assertEquals(id, lookupId("9780306406157"));
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_ISBN, "080442957X");
+        assertEquals(1, mResolver.update(uri, values, null, null));
+        assertEquals(-1, lookupId("9780306406157"));
+        assertEquals(id, lookupId("9780804429573"));
+
+        // The updated rows aren't known to the provider
+        values.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        assertEquals(1, mResolver.update(BookEntry.CONTENT_URI, values,
+                BookEntry.COLUMN_PRODUCT_NAME + " = ?", new String[] { "Networks" }));
+        assertEquals(-1, lookupId("9780804429573"));
+        assertEquals(id, lookupId("9780306406157"));
+
+        mResolver.delete(uri, null, null);
+        assertEquals(-1, lookupId("9780306406157"));
+    }
+
+    @Test
+    public void bulkInsert_indexesIsbns() {
+        ContentValues[] rows = new ContentValues[2];
+        rows[0] = product("Networks");
+        rows[0].put(BookEntry.COLUMN_ISBN, "0306406152");
+        rows[1] = product("Unknown");
+        assertEquals(2, mResolver.bulkInsert(BookEntry.CONTENT_URI, rows));
+
+        assertTrue(lookupId("9780306406157") > 0);
+    }
+
+    private Uri insert(String name, String isbn) {
+        ContentValues values = product(name);
+        values.put(BookEntry.COLUMN_ISBN, isbn);
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return uri;
+    }
+
+    private static ContentValues product(String name) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 1000);
+        values.put(BookEntry.COLUMN_QUANTITY, 1);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        return values;
+    }
+
+    /**
+     * Return the ISBN of the product at the URI.
+     */
+    private long lookup(Uri uri) {
+        Cursor cursor = mResolver.query(uri, PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the id of the product found by the lookup URI for the ISBN, or -1 if none is.
+     */
+    private long lookupId(String isbn) {
+        Cursor cursor = mResolver.query(BookEntry.buildIsbnUri(isbn), PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.getCount() <= 1);
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.MovementEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the stock movement history behind {@link MovementEntry}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderMovementTest {
+
+    private static final String[] PROJECTION = {
+            MovementEntry._ID,
+            MovementEntry.COLUMN_PRODUCT_ID,
+            MovementEntry.COLUMN_DELTA,
+            MovementEntry.COLUMN_REASON,
+            MovementEntry.COLUMN_TIMESTAMP };
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void adjustmentsAndSales_areRecorded() {
+        long id = insertProduct(10);
+        setQuantity(id, 15);
+        sell(id, 4);
+        // The editor saves the quantity it shows, which includes the pending sale
+        setQuantity(id, 11);
+        setQuantity(id, 12);
+
+        List<long[]> movements = read(MovementEntry.buildProductMovementsUri(id));
+        assertEquals(3, movements.size());
+        assertMovement(movements.get(0), 5, MovementEntry.REASON_ADJUSTMENT);
+        assertMovement(movements.get(1), -4, MovementEntry.REASON_SALE);
+        assertMovement(movements.get(2), 1, MovementEntry.REASON_ADJUSTMENT);
+    }
+
+    @Test
+    public void productUri_onlyReturnsThatProduct() {
+        long first = insertProduct(10);
+        long second = insertProduct(10);
+        sell(first, 1);
+        sell(second, 2);
+
+        List<long[]> movements = read(MovementEntry.buildProductMovementsUri(second));
+        assertEquals(1, movements.size());
+        assertMovement(movements.get(0), -2, MovementEntry.REASON_SALE);
+        assertTrue(read(MovementEntry.CONTENT_URI).size() >= 2);
+    }
+
+    @Test
+    public void timeRange_excludesOtherTimes() {
+        long id = insertProduct(10);
+        sell(id, 1);
+        long timestamp = read(MovementEntry.buildProductMovementsUri(id)).get(0)[4];
+
+        Uri product = MovementEntry.buildProductMovementsUri(id);
+        assertEquals(1, read(MovementEntry.buildTimeRangeUri(product, timestamp, timestamp + 1)).size());
+        assertEquals(0, read(MovementEntry.buildTimeRangeUri(product, timestamp + 1, timestamp + 1000)).size());
+        assertEquals(0, read(MovementEntry.buildTimeRangeUri(product, 0, timestamp)).size());
+    }
+
+    @Test
+    public void paging_visitsEveryMovementOnce() {
+        long id = insertProduct(100);
+        for (int i = 0; i < 25; i++) {
+            sell(id, 1);
+        }
+
+        Uri page = MovementEntry.buildProductMovementsUri(id).buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, "10")
+                .build();
+        List<Long> ids = new ArrayList<>();
+        while (true) {
+            List<long[]> movements = read(page);
+            for (long[] movement : movements) {
+                assertFalse(ids.contains(movement[0]));
+                ids.add(movement[0]);
+            }
+            if (movements.size() < 10) {
+                break;
+            }
+            long[] last = movements.get(movements.size() - 1);
+            page = MovementEntry.buildNextPageUri(page, last[4], last[0]);
+        }
+        assertEquals(25, ids.size());
+    }
+
+    private static void assertMovement(long[] movement, int delta, int reason) {
+        assertEquals(delta, movement[2]);
+        assertEquals(reason, movement[3]);
+    }
+
+    private long insertProduct(int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, "Greatest climbs");
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Frances Lincoln");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        return ContentUris.parseId(mResolver.insert(BookEntry.CONTENT_URI, values));
+    }
+
+    private void setQuantity(long id, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        mResolver.update(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), values, null, null);
+    }
+
+    private void sell(long id, int amount) {
+        Bundle extras = new Bundle();
+        extras.putInt(BookContract.EXTRA_AMOUNT, amount);
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL, String.valueOf(id), extras);
+        assertTrue(result.getBoolean(BookContract.EXTRA_SOLD));
+    }
+
+    /**
+     * Return the id, product id, delta, reason and timestamp of every movement at the URI.
+     */
+    private List<long[]> read(Uri uri) {
+        Cursor cursor = mResolver.query(uri, PROJECTION, null, null, null);
+        List<long[]> movements = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                movements.add(new long[] { cursor.getLong(0), cursor.getLong(1), cursor.getLong(2),
+                        cursor.getLong(3), cursor.getLong(4) });
+            }
+        } finally {
+            cursor.close();
+        }
+        return movements;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the full-text search URI of {@link BookProvider}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderSearchTest {
+
+    private static final String LOG_TAG = BookProviderSearchTest.class.getSimpleName();
+
+    /** Rows in the first page of search results, as the catalog asks for */
+    private static final int FIRST_PAGE_SIZE = 50;
+
+    /**
+     * Generous bound on the first page for a term matching few rows. It only fails if the search
+     * stops going through the full-text index and scans the products instead.
+     */
+    private static final long NARROW_FIRST_PAGE_BUDGET_MILLIS = 200;
+
+    private static final String[] PROJECTION = { BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME };
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void search_prefixMatchesNameAndSupplier() {
+        insert("Greatest climbs", "Frances Lincoln");
+        insert("Mountain guide", "Greystone Books");
+        insert("River atlas", "Penguin");
+
+        assertEquals(2, count(BookEntry.buildSearchUri("gre")));
+        assertEquals(1, count(BookEntry.buildSearchUri("penguin")));
+        assertEquals(0, count(BookEntry.buildSearchUri("ocean")));
+        assertEquals(0, count(BookEntry.buildSearchUri("  ")));
+    }
+
+    @Test
+    public void search_ranksTitleMatchesBeforeSupplierMatches() {
+        insert("Mountain guide", "Greystone Books");
+        insert("Greatest climbs", "Frances Lincoln");
+
+        Cursor cursor = mResolver.query(BookEntry.buildSearchUri("gre"), PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Greatest climbs", cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void search_followsUpdatesAndDeletes() {
+        Uri uri = insert("Greatest climbs", "Frances Lincoln");
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, "Alpine routes");
+        mResolver.update(uri, values, null, null);
+        assertEquals(0, count(BookEntry.buildSearchUri("greatest")));
+        assertEquals(1, count(BookEntry.buildSearchUri("alp")));
+
+        mResolver.delete(uri, null, null);
+        assertEquals(0, count(BookEntry.buildSearchUri("alp")));
+    }
+
+    @Test
+    public void benchmark_firstPageOn100kRows() {
+        ContentValues[] rows = new ContentValues[100000];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(BookEntry.COLUMN_PRODUCT_NAME, "Title " + Integer.toString(i, 36) + " volume " + (i % 12));
+            rows[i].put(BookEntry.COLUMN_PRICE, 10);
+            rows[i].put(BookEntry.COLUMN_QUANTITY, 5);
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 500));
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        }
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+
+        // Every row matches the broad term, so the whole table is ranked for the first page and
+        // its time is only logged; the narrow one matches few rows
+        logFirstPage("title");
+        long elapsed = logFirstPage("title 2a");
+        assertTrue("Search took " + elapsed + " ms", elapsed < NARROW_FIRST_PAGE_BUDGET_MILLIS);
+    }
+
+    /**
+     * Time the first page of results for the given terms, log it and return the time in ms.
+     */
+    private long logFirstPage(String terms) {
+        Uri firstPage = BookEntry.buildSearchUri(terms).buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(FIRST_PAGE_SIZE))
+                .build();
+        // Warm up the connection and statement caches
+        count(firstPage);
+
+        long start = SystemClock.elapsedRealtime();
+        int results = count(firstPage);
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, "First page of " + results + " search results for \"" + terms + "\" in "
+                + elapsed + " ms");
+        assertTrue(results > 0);
+        return elapsed;
+    }
+
+    private Uri insert(String name, String supplier) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, 1);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplier);
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        assertTrue(ContentUris.parseId(uri) > 0);
+        return uri;
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mResolver.query(uri, PROJECTION, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
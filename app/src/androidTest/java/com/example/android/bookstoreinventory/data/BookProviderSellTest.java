@@ -0,0 +1,172 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the atomic {@link BookContract#METHOD_SELL} provider method.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderSellTest {
+
+    private static final int THREADS = 8;
+    private static final int SALES_PER_THREAD = 200;
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void sell_returnsNewQuantity() {
+        long id = insertProduct(3);
+
+        Bundle result = sell(id, 2);
+        assertTrue(result.getBoolean(BookContract.EXTRA_SOLD));
+        assertEquals(1, result.getInt(BookContract.EXTRA_QUANTITY));
+
+        result = sell(id, 2);
+        assertFalse(result.getBoolean(BookContract.EXTRA_SOLD));
+        assertEquals(1, result.getInt(BookContract.EXTRA_QUANTITY));
+    }
+
+    @Test
+    public void sell_unknownProduct() {
+        Bundle result = sell(12345, 1);
+        assertFalse(result.getBoolean(BookContract.EXTRA_SOLD));
+        assertEquals(-1, result.getInt(BookContract.EXTRA_QUANTITY));
+    }
+
+    @Test
+    public void sell_concurrentSalesLoseNoUpdates() throws Exception {
+        // Fewer copies than sale attempts, so some sales must be refused
+        final int stock = THREADS * SALES_PER_THREAD / 2 + 7;
+        final long id = insertProduct(stock);
+        final AtomicInteger sold = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < SALES_PER_THREAD; i++) {
+                        if (sell(id, 1).getBoolean(BookContract.EXTRA_SOLD)) {
+                            sold.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(stock, sold.get());
+        assertEquals(0, queryQuantity(id));
+    }
+
+    @Test
+    public void compaction_keepsQuantities() {
+        long id = insertProduct(10);
+        sell(id, 2);
+        sell(id, 3);
+
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_COMPACT_SALES, null, null);
+        assertEquals(2, result.getInt(BookContract.EXTRA_COMPACTED));
+        assertEquals(5, queryQuantity(id));
+
+        // The guard counts the stored quantity once the sales are folded in
+        assertFalse(sell(id, 6).getBoolean(BookContract.EXTRA_SOLD));
+        assertTrue(sell(id, 5).getBoolean(BookContract.EXTRA_SOLD));
+        assertEquals(0, queryQuantity(id));
+    }
+
+    @Test
+    public void quantityUpdate_replacesPendingSales() {
+        long id = insertProduct(10);
+        sell(id, 4);
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, 20);
+        mResolver.update(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), values, null, null);
+        assertEquals(20, queryQuantity(id));
+
+        mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_COMPACT_SALES, null, null);
+        assertEquals(20, queryQuantity(id));
+    }
+
+    @Test
+    public void pendingSales_countInSelections() {
+        long id = insertProduct(10);
+        sell(id, 8);
+
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[] { BookEntry._ID },
+                BookEntry.COLUMN_QUANTITY + " < ?", new String[] { "5" }, null);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Bundle sell(long id, int amount) {
+        Bundle extras = new Bundle();
+        extras.putInt(BookContract.EXTRA_AMOUNT, amount);
+        return mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL, String.valueOf(id), extras);
+    }
+
+    private long insertProduct(int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, "Greatest climbs");
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Frances Lincoln");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        return ContentUris.parseId(uri);
+    }
+
+    private int queryQuantity(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id),
+                new String[] { BookEntry.COLUMN_QUANTITY }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
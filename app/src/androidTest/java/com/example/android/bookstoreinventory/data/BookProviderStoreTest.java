@@ -0,0 +1,259 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.AnalyticsEntry;
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.StoreEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the store-scoped URIs of {@link BookProvider}, each store kept in a
+ * database of its own.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderStoreTest {
+
+    private static final long STORE = 2;
+    private static final long OTHER_STORE = 3;
+    private static final long UNKNOWN_STORE = 99;
+
+    private static final Uri STORE_PRODUCTS_URI = StoreEntry.buildStoreUri(STORE, BookEntry.CONTENT_URI);
+    private static final Uri OTHER_STORE_PRODUCTS_URI =
+            StoreEntry.buildStoreUri(OTHER_STORE, BookEntry.CONTENT_URI);
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        InstrumentationRegistry.getTargetContext().deleteDatabase(BookDbHelper.getDatabaseName(UNKNOWN_STORE));
+        createStore(STORE);
+        createStore(OTHER_STORE);
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mResolver.delete(STORE_PRODUCTS_URI, null, null);
+        mResolver.delete(OTHER_STORE_PRODUCTS_URI, null, null);
+    }
+
+    @Test
+    public void storeUri_roundTrips() {
+        Uri uri = StoreEntry.buildStoreUri(STORE, BookEntry.buildSearchUri("dune"));
+        assertEquals("stores/2/products/search", uri.getPath().substring(1));
+        assertEquals("dune", uri.getQueryParameter(BookContract.QUERY_PARAMETER_SEARCH));
+        assertEquals(STORE, StoreEntry.getStoreId(uri));
+        assertEquals(StoreEntry.DEFAULT_STORE_ID, StoreEntry.getStoreId(BookEntry.CONTENT_URI));
+        assertEquals(StoreEntry.DEFAULT_STORE_ID, StoreEntry.getStoreId(StoreEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void insert_isOnlySeenByItsStore() {
+        Uri uri = mResolver.insert(STORE_PRODUCTS_URI, product("Dune", 5));
+        assertNotNull(uri);
+        assertEquals(STORE, StoreEntry.getStoreId(uri));
+
+        assertEquals(1, count(STORE_PRODUCTS_URI));
+        assertEquals(0, count(BookEntry.CONTENT_URI));
+        assertEquals(0, count(OTHER_STORE_PRODUCTS_URI));
+
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Dune", cursor.getString(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_PRODUCT_NAME)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void updateAndDelete_onlyChangeTheirStore() {
+        Uri uri = mResolver.insert(STORE_PRODUCTS_URI, product("Dune", 5));
+        mResolver.insert(BookEntry.CONTENT_URI, product("Dune", 5));
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, 9);
+        assertEquals(1, mResolver.update(uri, values, null, null));
+        assertEquals(1, count(BookEntry.CONTENT_URI, BookEntry.COLUMN_QUANTITY + " = 5"));
+        assertEquals(1, count(STORE_PRODUCTS_URI, BookEntry.COLUMN_QUANTITY + " = 9"));
+
+        assertEquals(1, mResolver.delete(uri, null, null));
+        assertEquals(0, count(STORE_PRODUCTS_URI));
+        assertEquals(1, count(BookEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void isbn_isUniquePerStore() {
+        ContentValues values = product("Networks", 1);
+        values.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        assertNotNull(mResolver.insert(STORE_PRODUCTS_URI, values));
+        assertNotNull(mResolver.insert(OTHER_STORE_PRODUCTS_URI, values));
+
+        Uri lookup = StoreEntry.buildStoreUri(STORE, BookEntry.buildIsbnUri("0306406152"));
+        assertEquals(1, count(lookup));
+        assertEquals(0, count(BookEntry.buildIsbnUri("0306406152")));
+    }
+
+    @Test
+    public void sell_usesTheStoreInTheExtras() {
+        Uri uri = mResolver.insert(STORE_PRODUCTS_URI, product("Dune", 5));
+        Bundle extras = new Bundle();
+        extras.putLong(BookContract.EXTRA_STORE_ID, STORE);
+        extras.putInt(BookContract.EXTRA_AMOUNT, 2);
+
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                String.valueOf(ContentUris.parseId(uri)), extras);
+        assertTrue(result.getBoolean(BookContract.EXTRA_SOLD));
+        assertEquals(3, result.getInt(BookContract.EXTRA_QUANTITY));
+    }
+
+    @Test
+    public void stores_listsStoresWithADatabase() {
+        ArrayList<Long> storeIds = queryStoreIds();
+        assertEquals(StoreEntry.DEFAULT_STORE_ID, (long) storeIds.get(0));
+        assertTrue(storeIds.contains(STORE));
+        assertFalse(storeIds.contains(UNKNOWN_STORE));
+    }
+
+    @Test
+    public void insertStore_createsItsDatabaseOnce() {
+        Uri uri = createStore(UNKNOWN_STORE);
+        assertEquals(ContentUris.withAppendedId(StoreEntry.CONTENT_URI, UNKNOWN_STORE), uri);
+        assertNull(createStore(UNKNOWN_STORE));
+        assertNull(createStore(StoreEntry.DEFAULT_STORE_ID));
+
+        assertTrue(queryStoreIds().contains(UNKNOWN_STORE));
+        assertEquals(0, count(StoreEntry.buildStoreUri(UNKNOWN_STORE, BookEntry.CONTENT_URI)));
+    }
+
+    @Test
+    public void query_rejectsUnknownStoreWithoutCreatingIt() {
+        try {
+            mResolver.query(StoreEntry.buildStoreUri(UNKNOWN_STORE, BookEntry.CONTENT_URI),
+                    null, null, null, null);
+            fail("Read an unknown store");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertFalse(queryStoreIds().contains(UNKNOWN_STORE));
+    }
+
+    @Test
+    public void insert_createsUnknownStore() {
+        Uri storeProducts = StoreEntry.buildStoreUri(UNKNOWN_STORE, BookEntry.CONTENT_URI);
+        assertNotNull(mResolver.insert(storeProducts, product("Dune", 5)));
+        assertTrue(queryStoreIds().contains(UNKNOWN_STORE));
+        assertEquals(1, count(storeProducts));
+    }
+
+    @Test
+    public void storesAnalytics_aggregatesEachStore() {
+        mResolver.insert(BookEntry.CONTENT_URI, product("A", 1));
+        mResolver.insert(STORE_PRODUCTS_URI, product("B", 2));
+        mResolver.insert(STORE_PRODUCTS_URI, product("C", 3));
+        mResolver.insert(OTHER_STORE_PRODUCTS_URI, product("D", 4));
+
+        Cursor cursor = mResolver.query(AnalyticsEntry.STORES_URI, null, null, null, null);
+        try {
+            int found = 0;
+            while (cursor.moveToNext()) {
+                long storeId = cursor.getLong(cursor.getColumnIndexOrThrow(StoreEntry._ID));
+                long count = cursor.getLong(cursor.getColumnIndexOrThrow(AnalyticsEntry.COLUMN_PRODUCT_COUNT));
+                long quantity = cursor.getLong(cursor.getColumnIndexOrThrow(AnalyticsEntry.COLUMN_TOTAL_QUANTITY));
+                if (storeId == StoreEntry.DEFAULT_STORE_ID) {
+                    assertEquals(1, count);
+                    assertEquals(1, quantity);
+                    found++;
+                } else if (storeId == STORE) {
+                    assertEquals(2, count);
+                    assertEquals(5, quantity);
+                    found++;
+                } else if (storeId == OTHER_STORE) {
+                    assertEquals(1, count);
+                    assertEquals(4, quantity);
+                    found++;
+                }
+            }
+            assertEquals(3, found);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void applyBatch_rejectsSeveralStores() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(STORE_PRODUCTS_URI)
+                .withValues(product("A", 1)).build());
+        operations.add(ContentProviderOperation.newInsert(OTHER_STORE_PRODUCTS_URI)
+                .withValues(product("B", 1)).build());
+        mResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void query_rejectsInvalidStore() {
+        mResolver.query(Uri.withAppendedPath(StoreEntry.CONTENT_URI, "0/" + BookContract.PATH_PRODUCTS),
+                null, null, null, null);
+    }
+
+    private Uri createStore(long storeId) {
+        ContentValues values = new ContentValues();
+        values.put(StoreEntry._ID, storeId);
+        return mResolver.insert(StoreEntry.CONTENT_URI, values);
+    }
+
+    private ArrayList<Long> queryStoreIds() {
+        Cursor cursor = mResolver.query(StoreEntry.CONTENT_URI, null, null, null, null);
+        ArrayList<Long> storeIds = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                storeIds.add(cursor.getLong(cursor.getColumnIndexOrThrow(StoreEntry._ID)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return storeIds;
+    }
+
+    private static ContentValues product(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 1000);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        return values;
+    }
+
+    private int count(Uri uri) {
+        return count(uri, null);
+    }
+
+    private int count(Uri uri, String selection) {
+        Cursor cursor = mResolver.query(uri, new String[] { BookEntry._ID }, selection, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
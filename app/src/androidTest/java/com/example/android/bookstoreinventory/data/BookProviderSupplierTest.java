@@ -0,0 +1,176 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the suppliers table behind the supplier columns of {@link BookEntry}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderSupplierTest {
+
+    private static final String[] SUPPLIER_PROJECTION = {
+            BookEntry.COLUMN_SUPPLIER_ID,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER };
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mResolver.delete(SupplierEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void insert_sharesSupplierRows() {
+        Uri first = insert("A", "Penguin", "4154547890");
+        Uri second = insert("B", "Penguin", "4154547890");
+        insert("C", "Penguin", "4150000000");
+
+        assertEquals(2, count(SupplierEntry.CONTENT_URI));
+        assertEquals(readSupplier(first)[0], readSupplier(second)[0]);
+        assertEquals("Penguin", readSupplier(first)[1]);
+    }
+
+    @Test
+    public void bulkInsert_sharesSupplierRows() {
+        ContentValues[] rows = new ContentValues[100];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = product("Book " + i, "Supplier " + (i % 4), "4154547890");
+        }
+        assertEquals(rows.length, mResolver.bulkInsert(BookEntry.CONTENT_URI, rows));
+        assertEquals(4, count(SupplierEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void supplierUpdate_changesEveryProduct() {
+        Uri first = insert("A", "Penguin", "4154547890");
+        Uri second = insert("B", "Penguin", "4154547890");
+        long supplierId = Long.parseLong(readSupplier(first)[0]);
+
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4150000000");
+        assertEquals(1, mResolver.update(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId),
+                values, null, null));
+
+        assertEquals("4150000000", readSupplier(first)[2]);
+        assertEquals("4150000000", readSupplier(second)[2]);
+    }
+
+    @Test
+    public void productUpdate_keepsOtherSupplierColumn() {
+        Uri uri = insert("A", "Penguin", "4154547890");
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Vintage");
+        assertEquals(1, mResolver.update(uri, values, null, null));
+
+        String[] supplier = readSupplier(uri);
+        assertEquals("Vintage", supplier[1]);
+        assertEquals("4154547890", supplier[2]);
+        assertEquals(1, count(BookEntry.buildSearchUri("vintage")));
+    }
+
+    @Test
+    public void emptySupplier_isRefusedOnInsertAndUpdate() {
+        for (String[] supplier : new String[][] { { "", "4154547890" }, { "Penguin", "" } }) {
+            try {
+                mResolver.insert(BookEntry.CONTENT_URI, product("A", supplier[0], supplier[1]));
+                fail("Inserted a product of supplier " + supplier[0] + "/" + supplier[1]);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+
+        Uri uri = insert("A", "Penguin", "4154547890");
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "");
+        try {
+            mResolver.update(uri, values, null, null);
+            fail("Cleared the supplier name");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        assertEquals("Penguin", readSupplier(uri)[1]);
+    }
+
+    @Test
+    public void selectionOnSupplierColumns_stillWorks() {
+        insert("A", "Penguin", "4154547890");
+        insert("B", "Vintage", "4154547890");
+
+        assertEquals(1, mResolver.delete(BookEntry.CONTENT_URI,
+                BookEntry.COLUMN_SUPPLIER_NAME + " = ?", new String[] { "Vintage" }));
+        assertEquals(1, count(BookEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void supplierDelete_keepsSuppliersWithProducts() {
+        Uri uri = insert("A", "Penguin", "4154547890");
+        insert("B", "Vintage", "4154547890");
+        mResolver.delete(uri, null, null);
+
+        // Only the supplier left without products goes
+        assertEquals(1, mResolver.delete(SupplierEntry.CONTENT_URI, null, null));
+        assertEquals(1, count(SupplierEntry.CONTENT_URI));
+    }
+
+    private Uri insert(String name, String supplier, String phone) {
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, product(name, supplier, phone));
+        assertNotNull(uri);
+        return uri;
+    }
+
+    private static ContentValues product(String name, String supplier, String phone) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, 1);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplier);
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, phone);
+        return values;
+    }
+
+    /**
+     * Return the supplier id, name and phone number of the given product.
+     */
+    private String[] readSupplier(Uri uri) {
+        Cursor cursor = mResolver.query(uri, SUPPLIER_PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return new String[] { cursor.getString(0), cursor.getString(1), cursor.getString(2) };
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link CatalogImporter}: parsing of CSV and JSON catalogs, chunking and
+ * the rows reported as rejected.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogImporterTest {
+
+    private static final String HEADER = "name,isbn,price,currency,quantity,supplier,phone\n";
+
+    private static final String[] PROJECTION = {
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME };
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+    private RecordingListener mListener;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mListener = new RecordingListener();
+    }
+
+    @Test
+    public void importCsv_quotedFields() throws IOException {
+        String csv = HEADER
+                + "\"Eats, shoots and leaves\",,9.99,,3,Profile,4154547890\n"
+                + "\"The \"\"Hobbit\"\"\",,12.50,,1,\"Allen & Unwin, London\",4154547890\n"
+                + "\"Two\nlines\",,1,,1,Penguin,4154547890\n";
+
+        assertEquals(3, importCsv(csv, CatalogImporter.DEFAULT_CHUNK_SIZE));
+        assertEquals(0, mListener.mRejected.size());
+        assertEquals(Arrays.asList(
+                "Eats, shoots and leaves|999|3|Profile",
+                "The \"Hobbit\"|1250|1|Allen & Unwin, London",
+                "Two\nlines|100|1|Penguin"),
+                queryProducts());
+    }
+
+    @Test
+    public void importCsv_crlfLineEndings() throws IOException {
+        String csv = HEADER.replace("\n", "\r\n")
+                + "Dune,,9.99,,3,Penguin,4154547890\r\n"
+                + "\r\n"
+                + "\"Emma\r\nvol. 2\",,5,,1,Penguin,4154547890\r\n";
+
+        assertEquals(2, importCsv(csv, CatalogImporter.DEFAULT_CHUNK_SIZE));
+        assertEquals(Arrays.asList(
+                "Dune|999|3|Penguin",
+                "Emma\r\nvol. 2|500|1|Penguin"),
+                queryProducts());
+    }
+
+    @Test
+    public void importCsv_mappedColumns() throws IOException {
+        String csv = "Title,Cost,Stock,Vendor,Vendor phone,Notes\n"
+                + "Dune,9.99,3,Penguin,4154547890,ignored\n";
+        CatalogImporter importer = new CatalogImporter(mResolver, mListener);
+        importer.mapColumn("title", BookEntry.COLUMN_PRODUCT_NAME);
+        importer.mapColumn("COST", BookEntry.COLUMN_PRICE);
+        importer.mapColumn("stock", BookEntry.COLUMN_QUANTITY);
+        importer.mapColumn("vendor", BookEntry.COLUMN_SUPPLIER_NAME);
+        importer.mapColumn("vendor phone", BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+
+        assertEquals(1, importer.importCsv(stream(csv)));
+        assertEquals(Arrays.asList("Dune|999|3|Penguin"), queryProducts());
+    }
+
+    @Test
+    public void importJson_objects() throws IOException {
+        String json = "["
+                + "{\"name\": \"Dune\", \"price\": \"9.99\", \"quantity\": \"3\","
+                + " \"supplier\": \"Penguin\", \"phone\": \"4154547890\", \"notes\": {\"a\": 1}},"
+                + "{\"name\": \"Emma \\\"Woodhouse\\\"\\nvol. 2\", \"price\": \"500\", \"currency\": \"jpy\","
+                + " \"isbn\": null, \"supplier\": \"Penguin\", \"phone\": \"4154547890\"}"
+                + "]";
+
+        assertEquals(2, new CatalogImporter(mResolver, mListener).importJson(stream(json)));
+        assertEquals(0, mListener.mRejected.size());
+        assertEquals(Arrays.asList(
+                "Dune|999|3|Penguin",
+                "Emma \"Woodhouse\"\nvol. 2|500|0|Penguin"),
+                queryProducts());
+    }
+
+    @Test
+    public void importCsv_writesInChunks() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 7; i++) {
+            csv.append("Book ").append(i).append(",,1,,1,Penguin,4154547890\n");
+        }
+
+        assertEquals(7, importCsv(csv.toString(), 3));
+        // Two full chunks, then the rest
+        assertEquals(Arrays.asList("3/3", "6/6", "7/7"), mListener.mProgress);
+        assertEquals(7, queryProducts().size());
+    }
+
+    @Test
+    public void importCsv_chunkSizeDividingTheRows() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 6; i++) {
+            csv.append("Book ").append(i).append(",,1,,1,Penguin,4154547890\n");
+        }
+
+        assertEquals(6, importCsv(csv.toString(), 3));
+        assertEquals(Arrays.asList("3/3", "6/6"), mListener.mProgress);
+    }
+
+    @Test
+    public void importCsv_reportsInvalidRows() throws IOException {
+        String csv = HEADER
+                + "Dune,,9.99,,3,Penguin,4154547890\n"
+                + ",,9.99,,3,Penguin,4154547890\n"
+                + "Emma,,abc,,3,Penguin,4154547890\n"
+                + "Ulysses,,9.99,,many,Penguin,4154547890\n"
+                + "Walden,,9.99,XX,3,Penguin,4154547890\n"
+                + "Hamlet,123,9.99,,3,Penguin,4154547890\n"
+                + "Beloved,,9.99,,3,,\n"
+                + "Ivanhoe,,9.99,,3,Penguin\n"
+                + "Persuasion,,9.99,,3,Penguin,4154547890\n";
+
+        assertEquals(2, importCsv(csv, CatalogImporter.DEFAULT_CHUNK_SIZE));
+        assertEquals(Arrays.asList(2, 3, 4, 5, 6, 7, 8), mListener.getRejectedRows());
+        assertEquals(Arrays.asList("9/2"), mListener.mProgress);
+        assertEquals(Arrays.asList(
+                "Dune|999|3|Penguin",
+                "Persuasion|999|3|Penguin"),
+                queryProducts());
+    }
+
+    @Test
+    public void importCsv_reportsRowsTheProviderRefuses() throws IOException {
+        // The second and fourth rows repeat an ISBN; the database keeps ISBNs unique
+        String csv = HEADER
+                + "Networks,9780306406157,9.99,,3,Penguin,4154547890\n"
+                + "Networks again,978-0-306-40615-7,9.99,,3,Penguin,4154547890\n"
+                + "Dune,,9.99,,3,Penguin,4154547890\n"
+                + "Networks once more,0306406152,9.99,,3,Penguin,4154547890\n"
+                + "Emma,,9.99,,3,Penguin,4154547890\n";
+
+        assertEquals(3, importCsv(csv, 3));
+        assertEquals(Arrays.asList(2, 4), mListener.getRejectedRows());
+        assertEquals(Arrays.asList("3/2", "5/3"), mListener.mProgress);
+        assertEquals(Arrays.asList(
+                "Networks|999|3|Penguin",
+                "Dune|999|3|Penguin",
+                "Emma|999|3|Penguin"),
+                queryProducts());
+    }
+
+    private int importCsv(String csv, int chunkSize) throws IOException {
+        return new CatalogImporter(mResolver, chunkSize, mListener).importCsv(stream(csv));
+    }
+
+    private static InputStream stream(String text) throws IOException {
+        return new ByteArrayInputStream(text.getBytes("UTF-8"));
+    }
+
+    /**
+     * Return the products in insertion order as "name|price|quantity|supplier".
+     */
+    private List<String> queryProducts() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, PROJECTION, null, null, BookEntry._ID);
+        List<String> products = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                products.add(cursor.getString(0) + "|" + cursor.getLong(1) + "|" + cursor.getInt(2) + "|"
+                        + cursor.getString(3));
+            }
+        } finally {
+            cursor.close();
+        }
+        return products;
+    }
+
+    private static class RecordingListener implements CatalogImporter.Listener {
+
+        final List<String> mProgress = new ArrayList<>();
+        final List<String> mRejected = new ArrayList<>();
+
+        @Override
+        public void onProgress(int rowsRead, int rowsImported) {
+            mProgress.add(rowsRead + "/" + rowsImported);
+        }
+
+        @Override
+        public void onRowRejected(int rowNumber, String reason) {
+            assertNotNull(reason);
+            mRejected.add(rowNumber + ": " + reason);
+        }
+
+        List<Integer> getRejectedRows() {
+            List<Integer> rows = new ArrayList<>();
+            for (String rejected : mRejected) {
+                rows.add(Integer.valueOf(rejected.substring(0, rejected.indexOf(':'))));
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.StoreEntry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link ChangeNotifier}. Every notification that reaches the resolver
+ * would make each observing loader requery, so the test counts them during a burst of 500 updates.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChangeNotifierTest {
+
+    private static final int BURST = 500;
+
+    private CountingResolver mResolver = new CountingResolver();
+    private ChangeNotifier mNotifier;
+
+    @After
+    public void tearDown() {
+        mNotifier.shutdown();
+    }
+
+    @Test
+    public void withoutWindow_everyUpdateNotifies() {
+        mNotifier = new ChangeNotifier(mResolver, 0);
+        for (int i = 0; i < BURST; i++) {
+            mNotifier.notifyChange(BookEntry.CONTENT_URI);
+        }
+        assertEquals(BURST, mResolver.mCount);
+    }
+
+    @Test
+    public void withWindow_burstNotifiesOncePerUri() throws Exception {
+        mNotifier = new ChangeNotifier(mResolver, 200);
+        mResolver.expect(2);
+        Uri product = ContentUris.withAppendedId(BookEntry.CONTENT_URI, 1);
+        for (int i = 0; i < BURST; i++) {
+            mNotifier.notifyChange(BookEntry.CONTENT_URI);
+            mNotifier.notifyChange(product);
+        }
+        assertTrue(mResolver.await());
+        // Give a stray extra notification the chance to show up
+        Thread.sleep(300);
+        assertEquals(2, mResolver.mCount);
+    }
+
+    @Test
+    public void batch_notifiesOnlyAfterSuccess() {
+        mNotifier = new ChangeNotifier(mResolver, 0);
+
+        mNotifier.beginBatch();
+        for (int i = 0; i < BURST; i++) {
+            mNotifier.notifyChange(BookEntry.CONTENT_URI);
+        }
+        assertEquals(0, mResolver.mCount);
+        mNotifier.endBatch(false);
+        assertEquals(0, mResolver.mCount);
+
+        mNotifier.beginBatch();
+        for (int i = 0; i < BURST; i++) {
+            mNotifier.notifyChange(BookEntry.CONTENT_URI);
+        }
+        mNotifier.endBatch(true);
+        assertEquals(1, mResolver.mCount);
+    }
+
+    @Test
+    public void flush_collapsesRowsOfEachStore() {
+        mNotifier = new ChangeNotifier(mResolver, 10000);
+        Uri storeProducts = StoreEntry.buildStoreUri(2, BookEntry.CONTENT_URI);
+        Uri defaultProduct = ContentUris.withAppendedId(BookEntry.CONTENT_URI, 1);
+        for (int i = 0; i < BURST; i++) {
+            mNotifier.notifyChange(ContentUris.withAppendedId(storeProducts, i));
+        }
+        mNotifier.notifyChange(defaultProduct);
+        mNotifier.flush();
+
+        // Only the store with too many rows collapses, onto its own products URI
+        assertEquals(Arrays.asList(storeProducts, defaultProduct), mResolver.mUris);
+    }
+
+    /**
+     * Resolver counting the notifications it is asked to send.
+     */
+    private static class CountingResolver extends MockContentResolver {
+        volatile int mCount;
+        final List<Uri> mUris = new ArrayList<>();
+        private CountDownLatch mLatch = new CountDownLatch(0);
+
+        void expect(int count) {
+            mLatch = new CountDownLatch(count);
+        }
+
+        boolean await() throws InterruptedException {
+            return mLatch.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public synchronized void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
+            mCount++;
+            mUris.add(uri);
+            mLatch.countDown();
+        }
+    }
+}
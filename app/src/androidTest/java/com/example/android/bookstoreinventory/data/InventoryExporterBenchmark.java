@@ -0,0 +1,132 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of {@link InventoryExporter} on 200k products. Logs the time, throughput
+ * and file size of both formats, and the peak Java and native heap growth sampled while the
+ * export runs, which stays flat however large the table is as long as the exporter pages.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryExporterBenchmark {
+
+    private static final String LOG_TAG = InventoryExporterBenchmark.class.getSimpleName();
+
+    private static final int PRODUCTS = 200000;
+    private static final int INSERT_CHUNK = 10000;
+
+    /** Interval between two heap samples */
+    private static final long SAMPLE_INTERVAL_MILLIS = 5;
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "export-benchmark");
+
+        ContentValues[] rows = new ContentValues[INSERT_CHUNK];
+        for (int start = 0; start < PRODUCTS; start += INSERT_CHUNK) {
+            for (int i = 0; i < INSERT_CHUNK; i++) {
+                int product = start + i;
+                rows[i] = new ContentValues();
+                // Every tenth name needs quoting in CSV
+                rows[i].put(BookEntry.COLUMN_PRODUCT_NAME,
+                        "Book " + product + (product % 10 == 0 ? ", vol. 2" : ""));
+                rows[i].put(BookEntry.COLUMN_PRICE, 100 * (product % 50));
+                rows[i].put(BookEntry.COLUMN_QUANTITY, product % 25);
+                rows[i].put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (product % 500));
+                rows[i].put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+            }
+            assertEquals(INSERT_CHUNK, mResolver.bulkInsert(BookEntry.CONTENT_URI, rows));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void export_200kRows() throws Exception {
+        // Warm up the provider's connections and statements
+        new InventoryExporter(mResolver).export(mFile, InventoryExporter.Format.CSV);
+
+        for (InventoryExporter.Format format : InventoryExporter.Format.values()) {
+            Runtime runtime = Runtime.getRuntime();
+            runtime.gc();
+            long javaBaseline = runtime.totalMemory() - runtime.freeMemory();
+            long nativeBaseline = Debug.getNativeHeapAllocatedSize();
+
+            HeapSampler sampler = new HeapSampler();
+            sampler.start();
+            long start = System.nanoTime();
+            int rows;
+            try {
+                rows = new InventoryExporter(mResolver).export(mFile, format);
+            } finally {
+                sampler.interrupt();
+                sampler.join();
+            }
+            long millis = (System.nanoTime() - start) / 1000000;
+
+            assertEquals(PRODUCTS, rows);
+            Log.i(LOG_TAG, format + ": " + rows + " rows in " + millis + " ms ("
+                    + rows * 1000L / Math.max(millis, 1) + " rows/s), " + mFile.length() / 1024 + " KB");
+            Log.i(LOG_TAG, format + ": peak Java heap +" + (sampler.mJavaPeak - javaBaseline) / 1024
+                    + " KB, peak native heap +" + (sampler.mNativePeak - nativeBaseline) / 1024 + " KB");
+        }
+    }
+
+    /**
+     * Records the highest Java and native heap use until it is interrupted.
+     */
+    private static class HeapSampler extends Thread {
+
+        volatile long mJavaPeak;
+        volatile long mNativePeak;
+
+        HeapSampler() {
+            super("HeapSampler");
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (true) {
+                mJavaPeak = Math.max(mJavaPeak, runtime.totalMemory() - runtime.freeMemory());
+                mNativePeak = Math.max(mNativePeak, Debug.getNativeHeapAllocatedSize());
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the CSV and binary formats written by {@link InventoryExporter}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryExporterTest {
+
+    private static final String CSV_HEADER = BookEntry._ID + "," + BookEntry.COLUMN_PRODUCT_NAME + ","
+            + BookEntry.COLUMN_ISBN + "," + BookEntry.COLUMN_PRICE + "," + BookEntry.COLUMN_CURRENCY + ","
+            + BookEntry.COLUMN_QUANTITY + "," + BookEntry.COLUMN_SUPPLIER_NAME + ","
+            + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + "\n";
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "export-test");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void csv_startsWithTheHeader() throws IOException {
+        assertEquals(0, new InventoryExporter(mResolver).export(mFile, InventoryExporter.Format.CSV));
+        assertEquals(CSV_HEADER, readText());
+    }
+
+    @Test
+    public void csv_writesPlainFieldsAsIs() throws IOException {
+        long id = insert("Dune", null, 1250, 3, "Penguin");
+
+        assertEquals(1, new InventoryExporter(mResolver).export(mFile, InventoryExporter.Format.CSV));
+        assertEquals(CSV_HEADER + id + ",Dune,,12.50,USD,3,Penguin,4154547890\n", readText());
+    }
+
+    @Test
+    public void csv_quotesAndEscapesSpecialCharacters() throws IOException {
+        long comma = insert("Eats, shoots", null, 100, 1, "Penguin");
+        long quote = insert("The \"Hobbit\"", null, 100, 1, "Penguin");
+        long lineBreak = insert("Two\r\nlines", null, 100, 1, "Smith, Elder & Co.");
+
+        assertEquals(3, new InventoryExporter(mResolver).export(mFile, InventoryExporter.Format.CSV));
+        assertEquals(CSV_HEADER
+                + comma + ",\"Eats, shoots\",,1.00,USD,1,Penguin,4154547890\n"
+                + quote + ",\"The \"\"Hobbit\"\"\",,1.00,USD,1,Penguin,4154547890\n"
+                + lineBreak + ",\"Two\r\nlines\",,1.00,USD,1,\"Smith, Elder & Co.\",4154547890\n",
+                readText());
+    }
+
+    @Test
+    public void binary_startsWithTheVersionHeader() throws IOException {
+        assertEquals(0, new InventoryExporter(mResolver).export(mFile, InventoryExporter.Format.BINARY));
+
+        DataInputStream in = open();
+        try {
+            // "BSI" and format version 3
+            assertEquals('B', in.readUnsignedByte());
+            assertEquals('S', in.readUnsignedByte());
+            assertEquals('I', in.readUnsignedByte());
+            assertEquals(3, in.readUnsignedByte());
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void binary_roundTripsEveryColumn() throws IOException {
+        long first = insert("Café \"Crème\", vol. 1", "9780306406157", 1999, 7, "Éditions Gallimard");
+        long second = insert("Dune", null, 0, 0, "Penguin");
+
+        assertEquals(2, new InventoryExporter(mResolver).export(mFile, InventoryExporter.Format.BINARY));
+
+        DataInputStream in = open();
+        try {
+            assertEquals(InventoryExporter.BINARY_MAGIC, in.readInt());
+
+            assertEquals(first, in.readLong());
+            assertEquals("Café \"Crème\", vol. 1", readString(in));
+            assertEquals(9780306406157L, in.readLong());
+            assertEquals(1999, in.readLong());
+            assertEquals("USD", readString(in));
+            assertEquals(7, in.readInt());
+            assertEquals("Éditions Gallimard", readString(in));
+            assertEquals("4154547890", readString(in));
+
+            assertEquals(second, in.readLong());
+            assertEquals("Dune", readString(in));
+            // No ISBN
+            assertEquals(0, in.readLong());
+            assertEquals(0, in.readLong());
+            assertEquals("USD", readString(in));
+            assertEquals(0, in.readInt());
+            assertEquals("Penguin", readString(in));
+            assertEquals("4154547890", readString(in));
+
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void export_readsEveryPage() throws IOException {
+        long[] ids = new long[10];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = insert("Book " + i, null, 100, i, "Penguin");
+        }
+
+        // A page size that doesn't divide the row count, so the last page is partial
+        assertEquals(10, new InventoryExporter(mResolver, 3).export(mFile, InventoryExporter.Format.BINARY));
+
+        DataInputStream in = open();
+        try {
+            assertEquals(InventoryExporter.BINARY_MAGIC, in.readInt());
+            for (long id : ids) {
+                assertEquals(id, in.readLong());
+                readString(in);
+                in.readLong();
+                in.readLong();
+                readString(in);
+                in.readInt();
+                readString(in);
+                readString(in);
+            }
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    private long insert(String name, String isbn, long price, int quantity, String supplier) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        if (isbn != null) {
+            values.put(BookEntry.COLUMN_ISBN, isbn);
+        }
+        values.put(BookEntry.COLUMN_PRICE, price);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplier);
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return ContentUris.parseId(uri);
+    }
+
+    private DataInputStream open() throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+    }
+
+    /**
+     * Read a string of the binary format: an unsigned short byte length followed by UTF-8 bytes.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private String readText() throws IOException {
+        InputStream in = new FileInputStream(mFile);
+        try {
+            byte[] bytes = new byte[(int) mFile.length()];
+            new DataInputStream(in).readFully(bytes);
+            return new String(bytes, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
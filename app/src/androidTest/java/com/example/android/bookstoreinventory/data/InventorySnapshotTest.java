@@ -0,0 +1,214 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link InventorySnapshot}: aggregations, incremental updates, and a
+ * benchmark against the same aggregations in SQL.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventorySnapshotTest {
+
+    private static final String LOG_TAG = InventorySnapshotTest.class.getSimpleName();
+
+    private static final int BENCHMARK_ROWS = 100000;
+    private static final int BENCHMARK_RUNS = 20;
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void aggregations_matchTheTable() {
+        insert("A", 10, 1, "Penguin");
+        insert("B", 20, 5, "Penguin");
+        insert("C", 7, 0, "Vintage");
+
+        InventorySnapshot snapshot = InventorySnapshot.load(mResolver);
+        assertEquals(3, snapshot.getCount());
+        assertEquals(6, snapshot.totalQuantity());
+        int currency = snapshot.getCurrencyCode(BookEntry.DEFAULT_CURRENCY);
+        assertEquals(110, snapshot.totalValue(currency));
+        assertEquals(2, snapshot.countBelow(2));
+
+        int[] rows = new int[1];
+        assertEquals(2, snapshot.findBelow(2, rows));
+        assertEquals(0, rows[0]);
+
+        assertEquals(2, snapshot.getSupplierCount());
+        long[] values = new long[snapshot.getSupplierCount()];
+        int[] counts = new int[snapshot.getSupplierCount()];
+        snapshot.sumBySupplier(currency, values, counts);
+        int penguin = snapshot.getSupplierCode("Penguin");
+        assertEquals("Penguin", snapshot.getSupplierName(penguin));
+        assertEquals(110, values[penguin]);
+        assertEquals(2, counts[penguin]);
+        assertEquals(-1, snapshot.getSupplierCode("Unknown"));
+    }
+
+    @Test
+    public void values_areSummedPerCurrency() {
+        insert("A", 10, 1, "Penguin", "USD");
+        insert("B", 20, 5, "Penguin", "JPY");
+        Uri third = insert("C", 7, 2, "Vintage", "USD");
+
+        InventorySnapshot snapshot = InventorySnapshot.load(mResolver);
+        assertEquals(2, snapshot.getCurrencyCount());
+        int usd = snapshot.getCurrencyCode("USD");
+        int yen = snapshot.getCurrencyCode("JPY");
+        assertEquals("JPY", snapshot.getCurrency(yen));
+        assertEquals(24, snapshot.totalValue(usd));
+        assertEquals(100, snapshot.totalValue(yen));
+        assertEquals(-1, snapshot.getCurrencyCode("EUR"));
+
+        long[] values = new long[snapshot.getSupplierCount()];
+        int[] counts = new int[snapshot.getSupplierCount()];
+        snapshot.sumBySupplier(usd, values, counts);
+        int penguin = snapshot.getSupplierCode("Penguin");
+        assertEquals(10, values[penguin]);
+        assertEquals(1, counts[penguin]);
+
+        // A product moved to another currency leaves the old one
+        ContentValues currencyValues = new ContentValues();
+        currencyValues.put(BookEntry.COLUMN_CURRENCY, "JPY");
+        mResolver.update(third, currencyValues, null, null);
+        InventorySnapshot updated = snapshot.update(mResolver, new long[] { ContentUris.parseId(third) });
+        assertEquals(10, updated.totalValue(usd));
+        assertEquals(114, updated.totalValue(yen));
+    }
+
+    @Test
+    public void update_mergesChangedInsertedAndDeletedRows() {
+        Uri first = insert("A", 10, 1, "Penguin");
+        Uri second = insert("B", 20, 5, "Penguin");
+        InventorySnapshot snapshot = InventorySnapshot.load(mResolver);
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, 3);
+        mResolver.update(first, values, null, null);
+        mResolver.delete(second, null, null);
+        Uri third = insert("C", 7, 2, "Vintage");
+
+        InventorySnapshot updated = snapshot.update(mResolver, new long[] {
+                ContentUris.parseId(third), ContentUris.parseId(first), ContentUris.parseId(second) });
+        assertEquals(2, updated.getCount());
+        assertEquals(ContentUris.parseId(first), updated.getId(0));
+        assertEquals(3, updated.getQuantity(0));
+        assertEquals(ContentUris.parseId(third), updated.getId(1));
+        assertEquals("Vintage", updated.getSupplierName(updated.getSupplierCode(1)));
+        int currency = updated.getCurrencyCode(BookEntry.DEFAULT_CURRENCY);
+        assertEquals(44, updated.totalValue(currency));
+
+        // The old snapshot is untouched
+        assertEquals(2, snapshot.getCount());
+        assertEquals(110, snapshot.totalValue(currency));
+    }
+
+    @Test
+    public void benchmark_aggregationsOn100kRows() {
+        ContentValues[] rows = new ContentValues[BENCHMARK_ROWS];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(BookEntry.COLUMN_PRODUCT_NAME, "Title " + i);
+            rows[i].put(BookEntry.COLUMN_PRICE, i % 100);
+            rows[i].put(BookEntry.COLUMN_QUANTITY, i % 50);
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 500));
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        }
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+
+        long start = SystemClock.elapsedRealtime();
+        InventorySnapshot snapshot = InventorySnapshot.load(mResolver);
+        long loadMillis = SystemClock.elapsedRealtime() - start;
+
+        int currency = snapshot.getCurrencyCode(BookEntry.DEFAULT_CURRENCY);
+        long[] values = new long[snapshot.getSupplierCount()];
+        int[] counts = new int[snapshot.getSupplierCount()];
+        long totalValue = 0;
+        int belowThreshold = 0;
+
+        Debug.startAllocCounting();
+        start = System.nanoTime();
+        for (int run = 0; run < BENCHMARK_RUNS; run++) {
+            totalValue = snapshot.totalValue(currency);
+            belowThreshold = snapshot.countBelow(5);
+            snapshot.sumBySupplier(currency, values, counts);
+        }
+        long snapshotNanos = (System.nanoTime() - start) / BENCHMARK_RUNS;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+        Debug.resetAllocCount();
+
+        long sqlTotalValue = 0;
+        int sqlBelowThreshold = 0;
+        start = System.nanoTime();
+        for (int run = 0; run < BENCHMARK_RUNS; run++) {
+            sqlTotalValue = queryLong("SUM(" + BookEntry.COLUMN_PRICE + " * "
+                    + BookEntry.COLUMN_QUANTITY + ")", null, null);
+            sqlBelowThreshold = (int) queryLong("COUNT(*)", BookEntry.COLUMN_QUANTITY + " < ?",
+                    new String[] { "5" });
+        }
+        long sqlNanos = (System.nanoTime() - start) / BENCHMARK_RUNS;
+
+        Log.i(LOG_TAG, "Snapshot of " + snapshot.getCount() + " rows loaded in " + loadMillis
+                + " ms; aggregations " + snapshotNanos / 1000 + " us (" + allocations
+                + " allocations) vs SQL " + sqlNanos / 1000 + " us");
+        assertEquals(sqlTotalValue, totalValue);
+        assertEquals(sqlBelowThreshold, belowThreshold);
+        assertEquals(0, allocations);
+    }
+
+    private long queryLong(String expression, String selection, String[] selectionArgs) {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[] { expression },
+                selection, selectionArgs, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Uri insert(String name, int price, int quantity, String supplier) {
+        return insert(name, price, quantity, supplier, BookEntry.DEFAULT_CURRENCY);
+    }
+
+    private Uri insert(String name, int price, int quantity, String supplier, String currency) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, price);
+        values.put(BookEntry.COLUMN_CURRENCY, currency);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplier);
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return uri;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.StoreEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link InventoryTracker}: notified products are merged into the snapshot,
+ * other notifications read everything again, and a tracker only follows its own store.
+ *
+ * The test resolver doesn't send notifications, so the tests hand the URIs the provider notifies
+ * to the tracker themselves.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryTrackerTest {
+
+    private static final long STORE = 2;
+
+    private static final Uri STORE_PRODUCTS_URI = StoreEntry.buildStoreUri(STORE, BookEntry.CONTENT_URI);
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        ContentValues store = new ContentValues();
+        store.put(StoreEntry._ID, STORE);
+        mResolver.insert(StoreEntry.CONTENT_URI, store);
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mResolver.delete(STORE_PRODUCTS_URI, null, null);
+    }
+
+    @Test
+    public void productNotifications_mergeOnlyThoseRows() {
+        Uri first = insert(BookEntry.CONTENT_URI, "A", 1);
+        Uri second = insert(BookEntry.CONTENT_URI, "B", 5);
+        Uri unnotified = insert(BookEntry.CONTENT_URI, "C", 2);
+        InventoryTracker tracker = new InventoryTracker(mResolver);
+        assertEquals(3, tracker.getSnapshot().getCount());
+
+        setQuantity(first, 3);
+        mResolver.delete(second, null, null);
+        Uri third = insert(BookEntry.CONTENT_URI, "D", 4);
+        setQuantity(unnotified, 9);
+        tracker.recordChange(first);
+        tracker.recordChange(second);
+        tracker.recordChange(third);
+
+        InventorySnapshot snapshot = tracker.getSnapshot();
+        assertEquals(3, snapshot.getCount());
+        assertEquals(ContentUris.parseId(first), snapshot.getId(0));
+        assertEquals(3, snapshot.getQuantity(0));
+        assertEquals(ContentUris.parseId(unnotified), snapshot.getId(1));
+        // Not notified, so not read again
+        assertEquals(2, snapshot.getQuantity(1));
+        assertEquals(ContentUris.parseId(third), snapshot.getId(2));
+        assertEquals(4, snapshot.getQuantity(2));
+
+        // Nothing notified since, nothing read
+        assertSame(snapshot, tracker.getSnapshot());
+    }
+
+    @Test
+    public void bulkNotification_readsEverythingAgain() {
+        Uri first = insert(BookEntry.CONTENT_URI, "A", 1);
+        InventoryTracker tracker = new InventoryTracker(mResolver);
+        assertEquals(1, tracker.getSnapshot().totalQuantity());
+
+        ContentValues[] rows = new ContentValues[3];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = values("Book " + i, 2);
+        }
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+        setQuantity(first, 4);
+        tracker.recordChange(BookEntry.CONTENT_URI);
+
+        InventorySnapshot snapshot = tracker.getSnapshot();
+        assertEquals(4, snapshot.getCount());
+        assertEquals(10, snapshot.totalQuantity());
+
+        // A notification without a URI reads everything too
+        setQuantity(first, 1);
+        tracker.recordChange(null);
+        assertEquals(7, tracker.getSnapshot().totalQuantity());
+    }
+
+    @Test
+    public void storeTracker_followsItsStore() {
+        insert(BookEntry.CONTENT_URI, "Default", 7);
+        Uri product = insert(STORE_PRODUCTS_URI, "A", 1);
+        InventoryTracker tracker = new InventoryTracker(mResolver, STORE);
+
+        InventorySnapshot snapshot = tracker.getSnapshot();
+        assertEquals(1, snapshot.getCount());
+        assertEquals(1, snapshot.totalQuantity());
+
+        // The provider notifies the store's products as stores/#/products/#
+        Uri storeProduct = ContentUris.withAppendedId(STORE_PRODUCTS_URI, ContentUris.parseId(product));
+        setQuantity(storeProduct, 6);
+        Uri added = insert(STORE_PRODUCTS_URI, "B", 2);
+        tracker.recordChange(storeProduct);
+        tracker.recordChange(ContentUris.withAppendedId(STORE_PRODUCTS_URI, ContentUris.parseId(added)));
+
+        snapshot = tracker.getSnapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(8, snapshot.totalQuantity());
+
+        tracker.recordChange(STORE_PRODUCTS_URI);
+        assertEquals(8, tracker.getSnapshot().totalQuantity());
+    }
+
+    private static ContentValues values(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        return values;
+    }
+
+    private Uri insert(Uri productsUri, String name, int quantity) {
+        Uri uri = mResolver.insert(productsUri, values(name, quantity));
+        assertNotNull(uri);
+        return uri;
+    }
+
+    private void setQuantity(Uri uri, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        assertEquals(1, mResolver.update(uri, values, null, null));
+    }
+}
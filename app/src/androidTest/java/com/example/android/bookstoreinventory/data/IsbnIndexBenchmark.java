@@ -0,0 +1,151 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of resolving scanned ISBNs on a 200k-title table: the {@link IsbnIndex}
+ * against a query on the unique ISBN index. Logs the load time and the latency distribution of
+ * both, and checks the p99 of the in-memory lookup.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IsbnIndexBenchmark {
+
+    private static final String LOG_TAG = IsbnIndexBenchmark.class.getSimpleName();
+    private static final String TEST_DATABASE = "isbn-benchmark.db";
+
+    private static final int PRODUCTS = 200000;
+    private static final int LOOKUPS = 100000;
+
+    /** Budget for the 99th percentile of an in-memory lookup */
+    private static final long P99_BUDGET_MICROS = 16;
+
+    private static final String SQL_QUERY_ID = "SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME
+            + " WHERE " + BookEntry.COLUMN_ISBN + " = ?";
+
+    private Context mContext;
+    private BookDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE);
+
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues supplier = new ContentValues();
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+            long supplierId = db.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier);
+
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < PRODUCTS; i++) {
+                values.put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+                values.put(BookEntry.COLUMN_ISBN, isbn(i));
+                values.put(BookEntry.COLUMN_PRICE, 1000);
+                values.put(BookEntry.COLUMN_QUANTITY, i % 25);
+                values.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+                db.insertOrThrow(BookEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void lookup_p99On200kTitles() {
+        IsbnIndex index = new IsbnIndex(mHelper);
+        long start = System.nanoTime();
+        index.load();
+        long loadMillis = (System.nanoTime() - start) / 1000000;
+        assertEquals(PRODUCTS, index.size());
+
+        // Every fourth scan is of a book the store doesn't carry
+        Random random = new Random(42);
+        long[] scans = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            scans[i] = isbn(random.nextInt(PRODUCTS * 4 / 3));
+        }
+
+        LatencyHistogram memory = new LatencyHistogram();
+        int found = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass warms up
+            memory.reset();
+            found = 0;
+            for (long scan : scans) {
+                long lookupStart = System.nanoTime();
+                long id = index.find(scan);
+                memory.record(System.nanoTime() - lookupStart);
+                if (id != IsbnIndex.NO_ID) {
+                    found++;
+                }
+            }
+        }
+
+        LatencyHistogram database = new LatencyHistogram();
+        int foundInDatabase = 0;
+        SQLiteStatement statement = mHelper.getReadableDatabase().compileStatement(SQL_QUERY_ID);
+        try {
+            for (long scan : scans) {
+                long lookupStart = System.nanoTime();
+                statement.bindLong(1, scan);
+                try {
+                    statement.simpleQueryForLong();
+                    foundInDatabase++;
+                } catch (SQLiteDoneException e) {
+                    // Not carried
+                }
+                database.record(System.nanoTime() - lookupStart);
+            }
+        } finally {
+            statement.close();
+        }
+
+        Log.i(LOG_TAG, "Loaded " + index.size() + " ISBNs in " + loadMillis + " ms");
+        Log.i(LOG_TAG, "In memory: " + memory);
+        Log.i(LOG_TAG, "Database:  " + database);
+        assertEquals(foundInDatabase, found);
+        assertTrue("p99 " + memory.getPercentileMicros(99) + " us",
+                memory.getPercentileMicros(99) <= P99_BUDGET_MICROS);
+    }
+
+    /**
+     * Return the i-th of a run of valid ISBN-13s, spread out like a real catalog's.
+     */
+    private static long isbn(int i) {
+        long firstTwelve = 978000000000L + i * 37L;
+        for (int checkDigit = 0; ; checkDigit++) {
+            if (Isbn.isValid(firstTwelve * 10 + checkDigit)) {
+                return firstTwelve * 10 + checkDigit;
+            }
+        }
+    }
+}
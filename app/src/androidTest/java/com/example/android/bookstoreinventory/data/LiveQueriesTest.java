@@ -0,0 +1,241 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link LiveQueries}: observers of the same query share one SQL query per
+ * change, bursts of changes are answered by one query, unchanged results aren't delivered and a
+ * failed query keeps the last value.
+ *
+ * The test resolver doesn't send notifications, so changes are announced through the
+ * application's resolver. In case the provider's own notifications get through as well, the
+ * tests let its writes settle before observing.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LiveQueriesTest {
+
+    private static final int OBSERVERS = 10;
+    private static final long WINDOW_MILLIS = 100;
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+    private LiveQueries mQueries;
+    private final List<LiveQuery.Subscription> mSubscriptions = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mQueries = new LiveQueries(mResolver, WINDOW_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        for (LiveQuery.Subscription subscription : mSubscriptions) {
+            subscription.unsubscribe();
+        }
+    }
+
+    @Test
+    public void observers_shareOneQuery() throws Exception {
+        insertProduct("A", 1);
+        insertProduct("B", 2);
+        settle();
+
+        LiveQuery<List<Book>> catalog = mQueries.catalog();
+        CountingObserver<List<Book>> observers = subscribe(catalog, OBSERVERS);
+        assertTrue(observers.await());
+        assertEquals(1, catalog.getQueryCount());
+        assertEquals(OBSERVERS, observers.mCount.get());
+        assertEquals(2, observers.mLast.size());
+
+        // Equal queries observed at the same time are one instance
+        assertSame(catalog, mQueries.catalog());
+        assertNotSame(catalog, mQueries.product(1));
+
+        // A late observer gets the current value without another query
+        CountingObserver<List<Book>> late = subscribe(mQueries.catalog(), 1);
+        assertTrue(late.await());
+        assertEquals(1, catalog.getQueryCount());
+
+        // A change is one query for every observer
+        observers.expect(OBSERVERS);
+        insertProduct("C", 3);
+        settle();
+        announceChange();
+        assertTrue(observers.await());
+        assertEquals(3, observers.mLast.size());
+        assertEquals(2 * OBSERVERS, observers.mCount.get());
+        assertTrue(catalog.getQueryCount() <= 3);
+    }
+
+    @Test
+    public void changeBurst_runsQueryOnce() throws Exception {
+        settle();
+        LiveQuery<List<Book>> catalog = mQueries.catalog();
+        CountingObserver<List<Book>> observers = subscribe(catalog, OBSERVERS);
+        assertTrue(observers.await());
+
+        int queries = catalog.getQueryCount();
+        for (int i = 0; i < 50; i++) {
+            announceChange();
+        }
+        Thread.sleep(5 * WINDOW_MILLIS);
+        assertEquals(queries + 1, catalog.getQueryCount());
+    }
+
+    @Test
+    public void unchangedResult_isNotDelivered() throws Exception {
+        insertProduct("A", 1);
+        settle();
+        LiveQuery<StockValue> stock = mQueries.stockValue();
+        CountingObserver<StockValue> observers = subscribe(stock, OBSERVERS);
+        assertTrue(observers.await());
+        assertEquals(new StockValue(1, 1, Collections.singletonMap(BookEntry.DEFAULT_CURRENCY, 10L)),
+                observers.mLast);
+
+        announceChange();
+        Thread.sleep(5 * WINDOW_MILLIS);
+        assertEquals(2, stock.getQueryCount());
+        assertEquals(OBSERVERS, observers.mCount.get());
+    }
+
+    @Test
+    public void failedQuery_keepsLastValue() throws Exception {
+        insertProduct("A", 1);
+        settle();
+        final AtomicBoolean fail = new AtomicBoolean();
+        LiveQuery<Integer> count = mQueries.query(BookEntry.CONTENT_URI, new String[] { BookEntry._ID },
+                null, null, null, BookEntry.CONTENT_URI, new LiveQuery.Mapper<Integer>() {
+                    @Override
+                    public Integer map(Cursor cursor) {
+                        if (fail.get()) {
+                            throw new IllegalStateException("Query failed");
+                        }
+                        return cursor.getCount();
+                    }
+                });
+        CountingObserver<Integer> observer = subscribe(count, 1);
+        assertTrue(observer.await());
+        assertEquals(Integer.valueOf(1), observer.mLast);
+
+        fail.set(true);
+        int queries = count.getQueryCount();
+        announceChange();
+        Thread.sleep(5 * WINDOW_MILLIS);
+        assertEquals(queries + 1, count.getQueryCount());
+        assertEquals(1, observer.mCount.get());
+
+        // The next change is queried again
+        fail.set(false);
+        observer.expect(1);
+        insertProduct("B", 2);
+        settle();
+        announceChange();
+        assertTrue(observer.await());
+        assertEquals(Integer.valueOf(2), observer.mLast);
+    }
+
+    @Test
+    public void lastUnsubscribe_releasesQuery() throws Exception {
+        LiveQuery<List<Book>> search = mQueries.search("dune");
+        LiveQuery.Subscription subscription = search.subscribe(new CountingObserver<List<Book>>(0));
+        assertSame(search, mQueries.search("dune"));
+
+        subscription.unsubscribe();
+        assertNotSame(search, mQueries.search("dune"));
+    }
+
+    private <T> CountingObserver<T> subscribe(LiveQuery<T> query, int observers) {
+        final CountingObserver<T> observer = new CountingObserver<>(observers);
+        for (int i = 0; i < observers; i++) {
+            // Distinct observers, all counting into the same place
+            mSubscriptions.add(query.subscribe(new LiveQuery.Observer<T>() {
+                @Override
+                public void onChanged(T value) {
+                    observer.onChanged(value);
+                }
+            }));
+        }
+        return observer;
+    }
+
+    /**
+     * Wait until the provider has sent the notifications of its own writes, so that only the
+     * changes announced by the test reach the queries.
+     */
+    private static void settle() throws InterruptedException {
+        Thread.sleep(2 * ChangeNotifier.DEFAULT_WINDOW_MILLIS);
+    }
+
+    private static void announceChange() {
+        InstrumentationRegistry.getTargetContext().getContentResolver()
+                .notifyChange(BookEntry.CONTENT_URI, null);
+    }
+
+    private void insertProduct(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        assertNotNull(mResolver.insert(BookEntry.CONTENT_URI, values));
+    }
+
+    /**
+     * Observer counting the values delivered to it, all on the main thread.
+     */
+    private static class CountingObserver<T> implements LiveQuery.Observer<T> {
+        final AtomicInteger mCount = new AtomicInteger();
+        volatile T mLast;
+        private volatile CountDownLatch mLatch;
+
+        CountingObserver(int expected) {
+            expect(expected);
+        }
+
+        void expect(int count) {
+            mLatch = new CountDownLatch(count);
+        }
+
+        boolean await() throws InterruptedException {
+            return mLatch.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onChanged(T value) {
+            assertEquals(Looper.getMainLooper(), Looper.myLooper());
+            mLast = value;
+            mCount.incrementAndGet();
+            mLatch.countDown();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.MovementEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of the stock movement queries over a year of history for one store:
+ * two million movements of 10k products. Logs the time of a product's movements over a month, of
+ * the first page of a day's movements, and of paging deep into that day.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovementHistoryBenchmark {
+
+    private static final String LOG_TAG = MovementHistoryBenchmark.class.getSimpleName();
+    private static final String TEST_DATABASE = "movement-benchmark.db";
+
+    private static final int PRODUCTS = 10000;
+    private static final int MOVEMENTS = 2000000;
+    private static final int PAGE_SIZE = 50;
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long START_MILLIS = 1500000000000L;
+
+    /** The queries the provider runs, as in BookProvider.queryMovements */
+    private static final String SQL_PRODUCT_RANGE = "SELECT * FROM " + MovementEntry.TABLE_NAME + " WHERE "
+            + MovementEntry.COLUMN_PRODUCT_ID + " = ? AND " + MovementEntry.COLUMN_TIMESTAMP + " >= ? AND "
+            + MovementEntry.COLUMN_TIMESTAMP + " < ? ORDER BY " + MovementEntry.COLUMN_TIMESTAMP + ", "
+            + MovementEntry._ID;
+    private static final String SQL_RANGE_PAGE = "SELECT * FROM " + MovementEntry.TABLE_NAME + " WHERE "
+            + MovementEntry.COLUMN_TIMESTAMP + " >= ? AND " + MovementEntry.COLUMN_TIMESTAMP + " < ? AND "
+            + MovementEntry.COLUMN_TIMESTAMP + " >= ? AND (" + MovementEntry.COLUMN_TIMESTAMP + " > ? OR "
+            + MovementEntry._ID + " > ?) ORDER BY " + MovementEntry.COLUMN_TIMESTAMP + ", "
+            + MovementEntry._ID + " LIMIT " + PAGE_SIZE;
+
+    private Context mContext;
+    private BookDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE);
+
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        Random random = new Random(42);
+        long step = 365 * DAY_MILLIS / MOVEMENTS;
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + MovementEntry.TABLE_NAME + " ("
+                + MovementEntry.COLUMN_PRODUCT_ID + ", " + MovementEntry.COLUMN_DELTA + ", "
+                + MovementEntry.COLUMN_REASON + ", " + MovementEntry.COLUMN_TIMESTAMP + ") VALUES (?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < MOVEMENTS; i++) {
+                boolean sale = random.nextInt(10) != 0;
+                insert.bindLong(1, 1 + random.nextInt(PRODUCTS));
+                insert.bindLong(2, sale ? -1 : 20);
+                insert.bindLong(3, sale ? MovementEntry.REASON_SALE : MovementEntry.REASON_ADJUSTMENT);
+                insert.bindLong(4, START_MILLIS + i * step);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+        db.execSQL("ANALYZE");
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void rangeQueries_stayFast() {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        long monthStart = START_MILLIS + 200 * DAY_MILLIS;
+        long dayStart = START_MILLIS + 300 * DAY_MILLIS;
+
+        assertPlanUses(db, BookMigrations.INDEX_MOVEMENT_PRODUCT_TIME, SQL_PRODUCT_RANGE,
+                "42", String.valueOf(monthStart), String.valueOf(monthStart + 30 * DAY_MILLIS));
+        assertPlanUses(db, BookMigrations.INDEX_MOVEMENT_TIME, SQL_RANGE_PAGE,
+                String.valueOf(dayStart), String.valueOf(dayStart + DAY_MILLIS), "0", "0", "0");
+
+        long start = System.nanoTime();
+        int rows = count(db, SQL_PRODUCT_RANGE,
+                "42", String.valueOf(monthStart), String.valueOf(monthStart + 30 * DAY_MILLIS));
+        long productMonth = System.nanoTime() - start;
+
+        // Page through the whole day, starting each page after the last row of the previous one
+        String lastTimestamp = String.valueOf(dayStart);
+        String lastId = "0";
+        int pages = 0;
+        int dayRows = 0;
+        long firstPage = 0;
+        start = System.nanoTime();
+        while (true) {
+            Cursor cursor = db.rawQuery(SQL_RANGE_PAGE, new String[] { String.valueOf(dayStart),
+                    String.valueOf(dayStart + DAY_MILLIS), lastTimestamp, lastTimestamp, lastId });
+            try {
+                if (pages == 0) {
+                    firstPage = System.nanoTime() - start;
+                }
+                if (!cursor.moveToLast()) {
+                    break;
+                }
+                pages++;
+                dayRows += cursor.getCount();
+                lastTimestamp = cursor.getString(cursor.getColumnIndexOrThrow(MovementEntry.COLUMN_TIMESTAMP));
+                lastId = cursor.getString(cursor.getColumnIndexOrThrow(MovementEntry._ID));
+            } finally {
+                cursor.close();
+            }
+        }
+        long allPages = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "Product over a month: " + rows + " rows in " + productMonth / 1000 + " us");
+        Log.i(LOG_TAG, "First page of a day:  " + firstPage / 1000 + " us");
+        Log.i(LOG_TAG, "Whole day, " + pages + " pages of " + PAGE_SIZE + ": " + dayRows + " rows in "
+                + allPages / 1000 + " us, " + allPages / 1000 / Math.max(1, pages) + " us per page");
+        assertEquals(MOVEMENTS / 365, dayRows, MOVEMENTS / 365 / 100 + 1);
+    }
+
+    private static int count(SQLiteDatabase db, String sql, String... args) {
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertPlanUses(SQLiteDatabase db, String index, String sql, String... args) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue("Expected " + index + " in plan:\n" + plan, plan.toString().contains(index));
+    }
+}
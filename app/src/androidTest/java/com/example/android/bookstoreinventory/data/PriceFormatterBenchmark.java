@@ -0,0 +1,107 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented microbenchmark of formatting a price the way a list row is bound: with
+ * {@link String#format}, with {@link NumberFormat} created per call and shared, and with a
+ * {@link PriceFormatter} writing into a reused buffer. Logs the time and allocations per price.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PriceFormatterBenchmark {
+
+    private static final String LOG_TAG = PriceFormatterBenchmark.class.getSimpleName();
+
+    private static final int PRICES = 20000;
+
+    /** One formatting of the i-th price */
+    private interface Operation {
+        void run(int i);
+    }
+
+    private final Locale mLocale = Locale.US;
+    private final String mSymbol = Currency.getInstance("USD").getSymbol(mLocale);
+    private final char[] mBuffer = new char[PriceFormatter.MAX_LENGTH];
+
+    @Test
+    public void format_stringFormatVersusNumberFormatVersusFormatter() {
+        long[] stringFormat = measure(new Operation() {
+            @Override
+            public void run(int i) {
+                String.format(mLocale, "%s%,.2f", mSymbol, price(i) / 100.0);
+            }
+        });
+
+        long[] numberFormatPerCall = measure(new Operation() {
+            @Override
+            public void run(int i) {
+                NumberFormat.getCurrencyInstance(mLocale).format(price(i) / 100.0);
+            }
+        });
+
+        final NumberFormat shared = NumberFormat.getCurrencyInstance(mLocale);
+        long[] numberFormatShared = measure(new Operation() {
+            @Override
+            public void run(int i) {
+                shared.format(price(i) / 100.0);
+            }
+        });
+
+        final PriceFormatter formatter = new PriceFormatter(mLocale);
+        long[] priceFormatter = measure(new Operation() {
+            @Override
+            public void run(int i) {
+                formatter.format(price(i), "USD", mBuffer);
+            }
+        });
+
+        log("String.format", stringFormat);
+        log("NumberFormat per call", numberFormatPerCall);
+        log("NumberFormat shared", numberFormatShared);
+        log("PriceFormatter", priceFormatter);
+
+        // The formatters agree, and writing into a buffer allocates nothing once the currency is cached
+        assertEquals(shared.format(1234.5), formatter.format(123450, "USD"));
+        assertEquals(0, priceFormatter[1]);
+        assertTrue(priceFormatter[1] < numberFormatShared[1]);
+    }
+
+    /** Prices from 0 to $999,999.99, so the benchmark covers grouping */
+    private static long price(int i) {
+        return (i * 7919L) % 100000000L;
+    }
+
+    /**
+     * Return the mean time in nanoseconds and the mean number of allocations of the operation.
+     */
+    private static long[] measure(Operation operation) {
+        for (int i = 0; i < PRICES; i++) {
+            operation.run(i);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < PRICES; i++) {
+            operation.run(i);
+        }
+        long nanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        return new long[] { nanos / PRICES, Debug.getThreadAllocCount() / PRICES };
+    }
+
+    private static void log(String name, long[] result) {
+        Log.i(LOG_TAG, name + ": " + result[0] + " ns, " + result[1] + " allocations per price");
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of opening products through {@link BookProvider} with and without the
+ * {@link ProductCache}. Most opens are of a few popular products, as in a store where a small
+ * part of the catalog sells most. Logs the hit rate and the open latency of both.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductCacheBenchmark {
+
+    private static final String LOG_TAG = ProductCacheBenchmark.class.getSimpleName();
+
+    private static final int PRODUCTS = 20000;
+    private static final int POPULAR_PRODUCTS = 200;
+    private static final int OPENS = 5000;
+
+    /** Share of the opens that are of a popular product, in percent */
+    private static final int POPULAR_SHARE = 80;
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+    private long mFirstId;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+        ContentValues[] rows = new ContentValues[PRODUCTS];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+            rows[i].put(BookEntry.COLUMN_PRICE, 100 * (i % 50));
+            rows[i].put(BookEntry.COLUMN_QUANTITY, i % 25);
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 100));
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        }
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[] { BookEntry._ID }, null, null,
+                BookEntry._ID + " ASC");
+        try {
+            assertTrue(cursor.moveToFirst());
+            mFirstId = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void open_cachedVersusUncached() {
+        ProductCache cache = ProductCache.getInstance();
+        long[] ids = new long[OPENS];
+        Random random = new Random(13);
+        for (int i = 0; i < OPENS; i++) {
+            int product = random.nextInt(100) < POPULAR_SHARE
+                    ? random.nextInt(POPULAR_PRODUCTS) : random.nextInt(PRODUCTS);
+            ids[i] = mFirstId + product;
+        }
+
+        // Warm up the connection and statement caches
+        open(ids, false);
+
+        cache.invalidateAll();
+        int hits = cache.hitCount();
+        int misses = cache.missCount();
+        LatencyHistogram cached = open(ids, false);
+        int cachedHits = cache.hitCount() - hits;
+        int cachedMisses = cache.missCount() - misses;
+
+        LatencyHistogram uncached = open(ids, true);
+
+        float hitRate = (float) cachedHits / (cachedHits + cachedMisses);
+        Log.i(LOG_TAG, "Hit rate " + hitRate + " (" + cachedHits + " hits, " + cachedMisses + " misses), "
+                + cache);
+        Log.i(LOG_TAG, "Open with the cache:    " + cached);
+        Log.i(LOG_TAG, "Open without the cache: " + uncached);
+        assertTrue("Hit rate " + hitRate, hitRate > 0.5f);
+    }
+
+    /**
+     * Open the products with the given ids in turn, as the editor does. Return the latencies.
+     */
+    private LatencyHistogram open(long[] ids, boolean dropCache) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long id : ids) {
+            if (dropCache) {
+                ProductCache.getInstance().invalidateAll();
+            }
+            Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
+            long start = System.nanoTime();
+            Cursor cursor = mResolver.query(uri, Book.ALL_COLUMNS, null, null, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                Book.fromCursor(cursor);
+            } finally {
+                cursor.close();
+            }
+            histogram.record(System.nanoTime() - start);
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link ProductCache}, on its own and behind {@link BookProvider}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductCacheTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        ProductCache.getInstance().invalidateAll();
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        ProductCache cache = new ProductCache(3);
+        cache.put(book(1), cache.generation());
+        cache.put(book(2), cache.generation());
+        cache.put(book(3), cache.generation());
+        // Using the first product makes the second the least recently used
+        assertNotNull(cache.get(1));
+
+        cache.put(book(4), cache.generation());
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+        assertNotNull(cache.get(4));
+    }
+
+    @Test
+    public void invalidate_dropsOneProduct() {
+        ProductCache cache = new ProductCache(3);
+        cache.put(book(1), cache.generation());
+        cache.put(book(2), cache.generation());
+
+        cache.invalidate(1);
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+
+        cache.invalidateAll();
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void put_ignoresRowsReadBeforeAnInvalidation() {
+        ProductCache cache = new ProductCache(3);
+        // A reader takes the generation, then a write invalidates the row it is reading
+        long generation = cache.generation();
+        cache.invalidate(1);
+        cache.put(book(1), generation);
+        assertNull(cache.get(1));
+
+        // Any invalidation counts, as a reader can't tell which rows a bulk write touched
+        generation = cache.generation();
+        cache.invalidateAll();
+        cache.put(book(1), generation);
+        assertNull(cache.get(1));
+
+        cache.put(book(1), cache.generation());
+        assertNotNull(cache.get(1));
+    }
+
+    @Test
+    public void hitRate_countsLookups() {
+        ProductCache cache = new ProductCache(3);
+        assertEquals(0f, cache.hitRate(), 0f);
+
+        cache.put(book(1), cache.generation());
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(2f / 3, cache.hitRate(), 0.001f);
+    }
+
+    @Test
+    public void provider_servesRepeatedReadsFromTheCache() {
+        Uri uri = insert("Dune", 5);
+        long id = ContentUris.parseId(uri);
+        ProductCache cache = ProductCache.getInstance();
+
+        assertEquals(5, queryQuantity(uri));
+        assertNotNull(cache.get(id));
+        int hits = cache.hitCount();
+        assertEquals(5, queryQuantity(uri));
+        assertEquals(hits + 1, cache.hitCount());
+    }
+
+    @Test
+    public void provider_writesInvalidateTheProduct() {
+        Uri uri = insert("Dune", 5);
+        long id = ContentUris.parseId(uri);
+        ProductCache cache = ProductCache.getInstance();
+        queryQuantity(uri);
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, 9);
+        assertEquals(1, mResolver.update(uri, values, null, null));
+        assertNull(cache.get(id));
+        assertEquals(9, queryQuantity(uri));
+
+        assertEquals(1, mResolver.delete(uri, null, null));
+        assertNull(cache.get(id));
+        assertEquals(-1, queryQuantity(uri));
+    }
+
+    private static Book book(long id) {
+        return new Book(id, "Book " + id, Book.NO_ISBN, 1000, BookEntry.DEFAULT_CURRENCY, 1,
+                "Penguin", "4154547890");
+    }
+
+    private Uri insert(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 1000);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return uri;
+    }
+
+    /**
+     * Return the quantity of the product, or -1 if there is no such product.
+     */
+    private int queryQuantity(Uri uri) {
+        Cursor cursor = mResolver.query(uri, Book.ALL_COLUMNS, null, null, null);
+        try {
+            return cursor.moveToFirst()
+                    ? cursor.getInt(cursor.getColumnIndexOrThrow(BookEntry.COLUMN_QUANTITY)) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
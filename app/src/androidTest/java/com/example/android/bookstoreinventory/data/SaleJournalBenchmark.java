@@ -0,0 +1,128 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of sustained sales, one transaction per sale as the provider does:
+ * updating the product row in place (the path before database version 5) against appending to
+ * the {@link SaleJournal}. Logs sales per second for both and the time to compact the journal.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SaleJournalBenchmark {
+
+    private static final String LOG_TAG = SaleJournalBenchmark.class.getSimpleName();
+    private static final String TEST_DATABASE = "sale-benchmark.db";
+
+    private static final int PRODUCTS = 10000;
+    private static final int SALES = 20000;
+
+    /** Sale as an in-place update, as before the journal */
+    private static final String SQL_UPDATE_SALE = "UPDATE " + BookEntry.TABLE_NAME + " SET "
+            + BookEntry.COLUMN_QUANTITY + " = " + BookEntry.COLUMN_QUANTITY + " - ? WHERE "
+            + BookEntry._ID + " = ? AND " + BookEntry.COLUMN_QUANTITY + " >= ?";
+
+    private Context mContext;
+    private BookDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE);
+
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues supplier = new ContentValues();
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+            long supplierId = db.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier);
+
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < PRODUCTS; i++) {
+                values.put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+                values.put(BookEntry.COLUMN_PRICE, 10);
+                values.put(BookEntry.COLUMN_QUANTITY, SALES);
+                values.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+                db.insertOrThrow(BookEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void salesPerSecond_updateVersusJournal() {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < SALES; i++) {
+            db.beginTransaction();
+            try {
+                SQLiteStatement statement = db.compileStatement(SQL_UPDATE_SALE);
+                try {
+                    long id = 1 + random.nextInt(PRODUCTS);
+                    statement.bindLong(1, 1);
+                    statement.bindLong(2, id);
+                    statement.bindLong(3, 1);
+                    assertEquals(1, statement.executeUpdateDelete());
+                } finally {
+                    statement.close();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        long updateNanos = System.nanoTime() - start;
+
+        SaleJournal journal = new SaleJournal(mHelper, new StatementCache(StatementCache.DEFAULT_MAX_SIZE));
+        random = new Random(42);
+        start = System.nanoTime();
+        for (int i = 0; i < SALES; i++) {
+            db.beginTransaction();
+            try {
+                assertTrue(journal.recordSale(db, 1 + random.nextInt(PRODUCTS), 1));
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        long journalNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int compacted = journal.compact();
+        long compactNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "Update per sale:  " + SALES * 1000000000L / updateNanos + " sales/s");
+        Log.i(LOG_TAG, "Journal per sale: " + SALES * 1000000000L / journalNanos + " sales/s");
+        Log.i(LOG_TAG, "Compaction of " + compacted + " sales: " + compactNanos / 1000000 + " ms");
+        assertEquals(SALES, compacted);
+    }
+}
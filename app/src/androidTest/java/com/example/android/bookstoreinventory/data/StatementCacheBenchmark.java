@@ -0,0 +1,216 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented microbenchmark of the provider's single-product operations, built through
+ * {@link SQLiteDatabase#query}, update, insert and delete against statements kept in a
+ * {@link StatementCache}. Logs the time and allocations per operation for both.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StatementCacheBenchmark {
+
+    private static final String LOG_TAG = StatementCacheBenchmark.class.getSimpleName();
+    private static final String TEST_DATABASE = "statement-benchmark.db";
+
+    private static final int PRODUCTS = 1000;
+    private static final int OPERATIONS = 5000;
+
+    private static final String SQL_QUERY = "SELECT " + BookEntry._ID + ", " + BookEntry.COLUMN_PRODUCT_NAME
+            + ", " + BookEntry.COLUMN_QUANTITY + " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " = ?";
+    private static final String SQL_UPDATE = "UPDATE " + BookEntry.TABLE_NAME + " SET "
+            + BookEntry.COLUMN_QUANTITY + " = ? WHERE " + BookEntry._ID + " = ?";
+    private static final String SQL_INSERT = "INSERT INTO " + BookEntry.TABLE_NAME + " ("
+            + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRICE + ", "
+            + BookEntry.COLUMN_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_ID + ") VALUES (?, ?, ?, ?)";
+    private static final String SQL_DELETE = "DELETE FROM " + BookEntry.TABLE_NAME + " WHERE "
+            + BookEntry._ID + " = ?";
+
+    private static final String[] QUERY_COLUMNS = {
+            BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME, BookEntry.COLUMN_QUANTITY };
+
+    /** One run of the operation being measured */
+    private interface Operation {
+        void run(int i);
+    }
+
+    private Context mContext;
+    private BookDbHelper mHelper;
+    private SQLiteDatabase mDb;
+    private StatementCache mCache;
+    private long mSupplierId;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE);
+        mDb = mHelper.getWritableDatabase();
+        mCache = new StatementCache(StatementCache.DEFAULT_MAX_SIZE);
+
+        ContentValues supplier = new ContentValues();
+        supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        supplier.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        mSupplierId = mDb.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier);
+
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < PRODUCTS; i++) {
+                mDb.insertOrThrow(BookEntry.TABLE_NAME, null, product(i));
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clear();
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void singleProductOperations_builtVersusCached() {
+        compare("read",
+                new Operation() {
+                    @Override
+                    public void run(int i) {
+                        Cursor cursor = mDb.query(BookEntry.TABLE_NAME, QUERY_COLUMNS, BookEntry._ID + "=?",
+                                new String[] { String.valueOf(1 + i % PRODUCTS) }, null, null, null);
+                        cursor.moveToFirst();
+                        cursor.close();
+                    }
+                },
+                new Operation() {
+                    @Override
+                    public void run(int i) {
+                        // Cursors can't come from a compiled statement; a constant SQL string at least
+                        // skips the query builder and hits the connection's prepared statement cache
+                        Cursor cursor = mDb.rawQuery(SQL_QUERY, new String[] { String.valueOf(1 + i % PRODUCTS) });
+                        cursor.moveToFirst();
+                        cursor.close();
+                    }
+                });
+
+        compare("quantity update",
+                new Operation() {
+                    @Override
+                    public void run(int i) {
+                        ContentValues values = new ContentValues();
+                        values.put(BookEntry.COLUMN_QUANTITY, i);
+                        mDb.update(BookEntry.TABLE_NAME, values, BookEntry._ID + "=?",
+                                new String[] { String.valueOf(1 + i % PRODUCTS) });
+                    }
+                },
+                new Operation() {
+                    @Override
+                    public void run(int i) {
+                        SQLiteStatement statement = mCache.acquire(mDb, SQL_UPDATE);
+                        try {
+                            statement.bindLong(1, i);
+                            statement.bindLong(2, 1 + i % PRODUCTS);
+                            statement.executeUpdateDelete();
+                        } finally {
+                            mCache.release(mDb, SQL_UPDATE, statement);
+                        }
+                    }
+                });
+
+        // Each insert is followed by a delete of the new row, so the table keeps its size
+        compare("insert and delete",
+                new Operation() {
+                    @Override
+                    public void run(int i) {
+                        long id = mDb.insert(BookEntry.TABLE_NAME, null, product(i));
+                        mDb.delete(BookEntry.TABLE_NAME, BookEntry._ID + "=?", new String[] { String.valueOf(id) });
+                    }
+                },
+                new Operation() {
+                    @Override
+                    public void run(int i) {
+                        SQLiteStatement insert = mCache.acquire(mDb, SQL_INSERT);
+                        long id;
+                        try {
+                            insert.bindString(1, "Book");
+                            insert.bindLong(2, 10);
+                            insert.bindLong(3, i);
+                            insert.bindLong(4, mSupplierId);
+                            id = insert.executeInsert();
+                        } finally {
+                            mCache.release(mDb, SQL_INSERT, insert);
+                        }
+                        SQLiteStatement delete = mCache.acquire(mDb, SQL_DELETE);
+                        try {
+                            delete.bindLong(1, id);
+                            delete.executeUpdateDelete();
+                        } finally {
+                            mCache.release(mDb, SQL_DELETE, delete);
+                        }
+                    }
+                });
+
+        Log.i(LOG_TAG, mCache.toString());
+        // Each statement was compiled once, in the warm-up
+        assertEquals(3, mCache.getMissCount());
+        assertEquals(3 * 2 * OPERATIONS - 3, mCache.getHitCount());
+    }
+
+    /**
+     * Run both operations, warm first, and log their time and allocations per operation.
+     */
+    private void compare(String name, Operation built, Operation cached) {
+        long[] before = measure(built);
+        long[] after = measure(cached);
+        Log.i(LOG_TAG, name + ": built " + before[0] + " ns, " + before[1] + " allocations; cached "
+                + after[0] + " ns, " + after[1] + " allocations per operation");
+        assertTrue(name + " allocated more with the cache", after[1] <= before[1]);
+    }
+
+    /**
+     * Return the mean time in nanoseconds and the mean number of allocations of the operation.
+     */
+    private static long[] measure(Operation operation) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            operation.run(i);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            operation.run(i);
+        }
+        long nanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        return new long[] { nanos / OPERATIONS, Debug.getThreadAllocCount() / OPERATIONS };
+    }
+
+    private ContentValues product(int i) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, i % 25);
+        values.put(BookEntry.COLUMN_SUPPLIER_ID, mSupplierId);
+        return values;
+    }
+}
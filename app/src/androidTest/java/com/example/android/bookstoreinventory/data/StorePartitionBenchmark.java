@@ -0,0 +1,207 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of catalog queries on the products of several stores kept in one shared
+ * table, with a store column and an index on (store, name), against the same products split
+ * into one database per store as {@link StorePool} keeps them. Logs the latency of a catalog page
+ * and of a full catalog scan of one store for both layouts, and the database sizes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StorePartitionBenchmark {
+
+    private static final String LOG_TAG = StorePartitionBenchmark.class.getSimpleName();
+    private static final String SHARED_DATABASE = "partition-shared.db";
+    private static final String STORE_DATABASE_PREFIX = "partition-store-";
+
+    private static final int STORES = 4;
+    private static final int PRODUCTS_PER_STORE = 25000;
+    private static final int PAGE_SIZE = 50;
+    private static final int QUERIES = 2000;
+    private static final int SCANS = 50;
+
+    private static final String COLUMN_STORE_ID = "store_id";
+    private static final String INDEX_SHARED_STORE_NAME = "index_products_store_name";
+
+    private static final String CATALOG_COLUMNS = BookEntry._ID + ", " + BookEntry.COLUMN_PRODUCT_NAME + ", "
+            + BookEntry.COLUMN_PRICE + ", " + BookEntry.COLUMN_QUANTITY;
+
+    private static final String SQL_SHARED_PAGE = "SELECT " + CATALOG_COLUMNS + " FROM " + BookEntry.TABLE_NAME
+            + " WHERE " + COLUMN_STORE_ID + " = ? ORDER BY " + BookEntry.COLUMN_PRODUCT_NAME + " LIMIT "
+            + PAGE_SIZE + " OFFSET ?";
+    private static final String SQL_STORE_PAGE = "SELECT " + CATALOG_COLUMNS + " FROM " + BookEntry.TABLE_NAME
+            + " ORDER BY " + BookEntry.COLUMN_PRODUCT_NAME + " LIMIT " + PAGE_SIZE + " OFFSET ?";
+
+    private static final String SQL_SHARED_SCAN = "SELECT COUNT(*), SUM(" + BookEntry.COLUMN_QUANTITY + ") FROM "
+            + BookEntry.TABLE_NAME + " WHERE " + COLUMN_STORE_ID + " = ?";
+    private static final String SQL_STORE_SCAN = "SELECT COUNT(*), SUM(" + BookEntry.COLUMN_QUANTITY + ") FROM "
+            + BookEntry.TABLE_NAME;
+
+    private Context mContext;
+    private BookDbHelper mShared;
+    private final BookDbHelper[] mStores = new BookDbHelper[STORES];
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        deleteDatabases();
+
+        mShared = new BookDbHelper(mContext, SHARED_DATABASE);
+        SQLiteDatabase shared = mShared.getWritableDatabase();
+        shared.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + COLUMN_STORE_ID + " INTEGER");
+        shared.execSQL("CREATE INDEX " + INDEX_SHARED_STORE_NAME + " ON " + BookEntry.TABLE_NAME + " ("
+                + COLUMN_STORE_ID + ", " + BookEntry.COLUMN_PRODUCT_NAME + ")");
+        for (int store = 0; store < STORES; store++) {
+            mStores[store] = new BookDbHelper(mContext, STORE_DATABASE_PREFIX + store + ".db");
+            insertProducts(shared, store, true);
+            insertProducts(mStores[store].getWritableDatabase(), store, false);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mShared.close();
+        for (BookDbHelper store : mStores) {
+            if (store != null) {
+                store.close();
+            }
+        }
+        deleteDatabases();
+    }
+
+    @Test
+    public void catalogQueries_sharedTableVsStoreFiles() {
+        // Warm up both layouts, then measure
+        runPages(true);
+        runPages(false);
+        LatencyHistogram sharedPages = runPages(true);
+        LatencyHistogram storePages = runPages(false);
+        LatencyHistogram sharedScans = runScans(true);
+        LatencyHistogram storeScans = runScans(false);
+
+        Log.i(LOG_TAG, "Catalog page, shared table: " + sharedPages);
+        Log.i(LOG_TAG, "Catalog page, store files:  " + storePages);
+        Log.i(LOG_TAG, "Catalog scan, shared table: " + sharedScans);
+        Log.i(LOG_TAG, "Catalog scan, store files:  " + storeScans);
+
+        long storeFilesSize = 0;
+        for (int store = 0; store < STORES; store++) {
+            storeFilesSize += mContext.getDatabasePath(STORE_DATABASE_PREFIX + store + ".db").length();
+        }
+        Log.i(LOG_TAG, "Shared database " + mContext.getDatabasePath(SHARED_DATABASE).length() / 1024
+                + " KB, store databases " + storeFilesSize / 1024 + " KB in total");
+    }
+
+    @Test
+    public void layouts_holdTheSameCatalog() {
+        for (int store = 0; store < STORES; store++) {
+            long[] shared = scan(true, store);
+            long[] partitioned = scan(false, store);
+            assertEquals(PRODUCTS_PER_STORE, shared[0]);
+            assertEquals(shared[0], partitioned[0]);
+            assertEquals(shared[1], partitioned[1]);
+        }
+    }
+
+    /**
+     * Read random catalog pages of random stores. Return the latencies.
+     */
+    private LatencyHistogram runPages(boolean shared) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        for (int i = 0; i < QUERIES; i++) {
+            int store = random.nextInt(STORES);
+            String offset = String.valueOf(random.nextInt(PRODUCTS_PER_STORE / PAGE_SIZE) * PAGE_SIZE);
+            long start = System.nanoTime();
+            Cursor cursor = shared
+                    ? mShared.getReadableDatabase().rawQuery(SQL_SHARED_PAGE,
+                            new String[] { String.valueOf(store), offset })
+                    : mStores[store].getReadableDatabase().rawQuery(SQL_STORE_PAGE, new String[] { offset });
+            try {
+                while (cursor.moveToNext()) {
+                    cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            histogram.record(System.nanoTime() - start);
+        }
+        return histogram;
+    }
+
+    /**
+     * Add up the whole catalog of each store in turn. Return the latencies.
+     */
+    private LatencyHistogram runScans(boolean shared) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < SCANS; i++) {
+            long start = System.nanoTime();
+            scan(shared, i % STORES);
+            histogram.record(System.nanoTime() - start);
+        }
+        return histogram;
+    }
+
+    private long[] scan(boolean shared, int store) {
+        Cursor cursor = shared
+                ? mShared.getReadableDatabase().rawQuery(SQL_SHARED_SCAN, new String[] { String.valueOf(store) })
+                : mStores[store].getReadableDatabase().rawQuery(SQL_STORE_SCAN, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return new long[] { cursor.getLong(0), cursor.getLong(1) };
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void insertProducts(SQLiteDatabase db, int store, boolean withStoreId) {
+        db.beginTransaction();
+        try {
+            ContentValues supplier = new ContentValues();
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Supplier " + store);
+            supplier.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+            long supplierId = db.insertOrThrow(SupplierEntry.TABLE_NAME, null, supplier);
+
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < PRODUCTS_PER_STORE; i++) {
+                values.put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + store + "-" + i);
+                values.put(BookEntry.COLUMN_PRICE, 100 * (i % 50));
+                values.put(BookEntry.COLUMN_QUANTITY, (i + store) % 20);
+                values.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+                if (withStoreId) {
+                    values.put(COLUMN_STORE_ID, store);
+                }
+                db.insertOrThrow(BookEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void deleteDatabases() {
+        mContext.deleteDatabase(SHARED_DATABASE);
+        for (int store = 0; store < STORES; store++) {
+            mContext.deleteDatabase(STORE_DATABASE_PREFIX + store + ".db");
+        }
+    }
+}
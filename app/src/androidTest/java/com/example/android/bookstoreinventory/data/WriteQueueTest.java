@@ -0,0 +1,240 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link WriteQueue}, with a benchmark comparing the time the calling
+ * thread spends on queued and on direct writes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WriteQueueTest {
+
+    private static final String LOG_TAG = WriteQueueTest.class.getSimpleName();
+
+    private static final int BENCHMARK_WRITES = 1000;
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(BookProvider.class, BookContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+    private WriteQueue mQueue;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mQueue = new WriteQueue(mResolver);
+    }
+
+    @Test
+    public void writes_applyInOrderAndReportOnMainThread() throws Exception {
+        final List<WriteQueue.Result> results = Collections.synchronizedList(new ArrayList<WriteQueue.Result>());
+        final CountDownLatch done = new CountDownLatch(3);
+        WriteQueue.Callback callback = new WriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(WriteQueue.Result result) {
+                assertEquals(Looper.getMainLooper(), Looper.myLooper());
+                results.add(result);
+                done.countDown();
+            }
+        };
+
+        mQueue.insert(BookEntry.CONTENT_URI, product("A", 5), callback);
+        mQueue.insert(BookEntry.CONTENT_URI, product("B", 5), callback);
+        mQueue.delete(BookEntry.CONTENT_URI, BookEntry.COLUMN_PRODUCT_NAME + " = ?", new String[] { "A" },
+                callback);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertNotNull(results.get(0).uri);
+        assertNotNull(results.get(1).uri);
+        assertEquals(1, results.get(2).count);
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void invalidWrite_failsAlone() throws Exception {
+        final List<WriteQueue.Result> results = Collections.synchronizedList(new ArrayList<WriteQueue.Result>());
+        final CountDownLatch done = new CountDownLatch(3);
+        WriteQueue.Callback callback = new WriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(WriteQueue.Result result) {
+                results.add(result);
+                done.countDown();
+            }
+        };
+
+        mQueue.insert(BookEntry.CONTENT_URI, product("A", 5), callback);
+        mQueue.insert(BookEntry.CONTENT_URI, product("", 5), callback);
+        mQueue.insert(BookEntry.CONTENT_URI, product("C", 5), callback);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertTrue(results.get(0).isSuccessful());
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(2).isSuccessful());
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void batch_updateOfNoRowKeepsTheOtherWrites() throws Exception {
+        Uri deleted = mResolver.insert(BookEntry.CONTENT_URI, product("A", 1));
+        Uri kept = mResolver.insert(BookEntry.CONTENT_URI, product("B", 1));
+        mResolver.delete(deleted, null, null);
+
+        // Changing only the supplier name looks up the product's current supplier, which finds
+        // no row for the deleted product
+        ContentValues supplier = new ContentValues();
+        supplier.put(BookEntry.COLUMN_SUPPLIER_NAME, "Vintage");
+        ContentValues restock = new ContentValues();
+        restock.put(BookEntry.COLUMN_QUANTITY, 10);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI).withValues(product("C", 5)).build());
+        operations.add(ContentProviderOperation.newUpdate(deleted).withValues(supplier).build());
+        operations.add(ContentProviderOperation.newUpdate(kept).withValues(restock).build());
+
+        ContentProviderResult[] results = mResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+        assertNotNull(results[0].uri);
+        assertEquals(0, results[1].count.intValue());
+        assertEquals(1, results[2].count.intValue());
+
+        // The writes around the one that matched nothing committed
+        assertEquals(2, count());
+        Cursor cursor = mResolver.query(kept, new String[] { BookEntry.COLUMN_QUANTITY }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(10, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void sale_runsInOrderWithOtherWrites() throws Exception {
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, product("A", 1));
+        final CountDownLatch done = new CountDownLatch(1);
+        final WriteQueue.Result[] sale = new WriteQueue.Result[1];
+
+        ContentValues restock = new ContentValues();
+        restock.put(BookEntry.COLUMN_QUANTITY, 10);
+        mQueue.update(uri, restock, null, null, null);
+        mQueue.sell(ContentUris.parseId(uri), 3, new WriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(WriteQueue.Result result) {
+                sale[0] = result;
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertTrue(sale[0].extras.getBoolean(BookContract.EXTRA_SOLD));
+        assertEquals(7, sale[0].extras.getInt(BookContract.EXTRA_QUANTITY));
+    }
+
+    @Test
+    public void queueing_doesNoDiskIoOnMainThread() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                StrictMode.ThreadPolicy policy = StrictMode.getThreadPolicy();
+                StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                        .detectDiskReads()
+                        .detectDiskWrites()
+                        .penaltyDeath()
+                        .build());
+                try {
+                    mQueue.insert(BookEntry.CONTENT_URI, product("A", 5), new WriteQueue.Callback() {
+                        @Override
+                        public void onWriteFinished(WriteQueue.Result result) {
+                            done.countDown();
+                        }
+                    });
+                } finally {
+                    StrictMode.setThreadPolicy(policy);
+                }
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void benchmark_queuedVersusDirectWrites() throws Exception {
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, product("A", 0));
+        ContentValues values = new ContentValues();
+
+        LatencyHistogram direct = new LatencyHistogram();
+        for (int i = 0; i < BENCHMARK_WRITES; i++) {
+            values.put(BookEntry.COLUMN_QUANTITY, i);
+            long start = System.nanoTime();
+            mResolver.update(uri, values, null, null);
+            direct.record(System.nanoTime() - start);
+        }
+
+        LatencyHistogram caller = new LatencyHistogram();
+        final CountDownLatch done = new CountDownLatch(BENCHMARK_WRITES);
+        WriteQueue.Callback callback = new WriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(WriteQueue.Result result) {
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < BENCHMARK_WRITES; i++) {
+            values.put(BookEntry.COLUMN_QUANTITY, i);
+            long start = System.nanoTime();
+            mQueue.update(uri, values, null, null, callback);
+            caller.record(System.nanoTime() - start);
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        Log.i(LOG_TAG, "Direct writes, caller blocked: " + direct);
+        Log.i(LOG_TAG, "Queued writes, caller blocked: " + caller);
+        Log.i(LOG_TAG, "Queued writes, until applied:  " + mQueue.getLatencyHistogram());
+        assertEquals(BENCHMARK_WRITES, mQueue.getLatencyHistogram().getCount());
+    }
+
+    private static ContentValues product(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
+        return values;
+    }
+
+    private int count() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.android.bookstoreinventory;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.android.bookstoreinventory.data.BookContract;
+import com.example.android.bookstoreinventory.data.PriceFormatter;
+import com.example.android.bookstoreinventory.data.WriteQueue;
+
+/**
+ * {@link BookAdapter} is a {@link RecyclerView} adapter that shows the rows of a
+ * {@link CatalogSnapshot}. New snapshots come with the differences from the previous one,
+ * so only the rows that changed are rebound.
+ *
+ * Binding does not allocate: views are looked up once per view holder, numbers and prices are
+ * formatted into character buffers owned by the holder, and all sale buttons share one click listener that finds
+ * the row through the holder.
+ */
+public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder> {
+
+    /**
+     * Receives clicks on a list item.
+     */
+    public interface OnBookClickListener {
+        void onBookClick(long id);
+    }
+
+    /** Longest formatted number: a leading space, a sign and ten digits */
+    private static final int MAX_NUMBER_LENGTH = 12;
+
+    private final Context mContext;
+    private final OnBookClickListener mListener;
+    private final PriceFormatter mPriceFormatter = PriceFormatter.getInstance();
+
+    /** Shared by every sale button; the view holder is stored as the button's tag */
+    private final View.OnClickListener mSaleListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            BookViewHolder holder = (BookViewHolder) view.getTag();
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                sell(position);
+            }
+        }
+    };
+
+    /** Shared by every list item; the view holder is stored as the item's tag */
+    private final View.OnClickListener mItemListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            BookViewHolder holder = (BookViewHolder) view.getTag();
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && mListener != null) {
+                mListener.onBookClick(mSnapshot.ids[position]);
+            }
+        }
+    };
+
+    /** Rows currently shown */
+    private CatalogSnapshot mSnapshot = CatalogSnapshot.EMPTY;
+
+    /**
+     * Constructs a new {@link BookAdapter}.
+     *
+     * @param context  The context
+     * @param listener Receives clicks on list items
+     */
+    public BookAdapter(Context context, OnBookClickListener listener) {
+        mContext = context;
+        mListener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show the snapshot of the given result. If the result was patched, appended to or diffed
+     * against the rows shown now, only the changed rows are updated; otherwise the whole list is
+     * refreshed.
+     */
+    public void swapResult(CatalogLoader.Result result) {
+        CatalogSnapshot shown = mSnapshot;
+        mSnapshot = result == null ? CatalogSnapshot.EMPTY : result.snapshot;
+
+        if (result != null && result.previous == shown && result.changedPositions != null) {
+            for (int position : result.changedPositions) {
+                notifyItemChanged(position);
+            }
+            if (result.appendedCount > 0) {
+                notifyItemRangeInserted(shown.count, result.appendedCount);
+            }
+        } else if (result != null && result.previous == shown && result.diff != null) {
+            result.diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mSnapshot.count;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mSnapshot.ids[position];
+    }
+
+    /**
+     * Makes a new blank list item view. No data is set (or bound) to the views yet.
+     */
+    @Override
+    public BookViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item, parent, false);
+        return new BookViewHolder(view);
+    }
+
+    /**
+     * This method binds the book data at the given position to the list item views held by the
+     * view holder. For example, the name for the current book is set on the name TextView.
+     */
+    @Override
+    public void onBindViewHolder(BookViewHolder holder, int position) {
+        holder.productNameTextView.setText(mSnapshot.names[position]);
+        int priceLength = mPriceFormatter.format(mSnapshot.prices[position], mSnapshot.currencies[position],
+                holder.priceChars);
+        holder.priceTextView.setText(holder.priceChars, 0, priceLength);
+        setNumber(holder.quantityTextView, holder.quantityChars, mSnapshot.quantities[position]);
+    }
+
+    /**
+     * Show the number, preceded by a space, without creating a String. The buffer must belong to
+     * the text view, which keeps a reference to it until the next call.
+     */
+    static void setNumber(TextView textView, char[] buffer, int value) {
+        int length = formatNumber(buffer, value);
+        textView.setText(buffer, 0, length);
+    }
+
+    /**
+     * Write a space followed by the decimal digits of the value into the start of the buffer.
+     * Return the number of characters written.
+     */
+    static int formatNumber(char[] buffer, int value) {
+        // Work with the negative value so Integer.MIN_VALUE doesn't overflow
+        boolean negative = value < 0;
+        int remaining = negative ? value : -value;
+
+        int digits = 1;
+        for (int i = remaining / 10; i != 0; i /= 10) {
+            digits++;
+        }
+        int length = 1 + (negative ? 1 : 0) + digits;
+
+        int position = length;
+        do {
+            buffer[--position] = (char) ('0' - remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative) {
+            buffer[--position] = '-';
+        }
+        buffer[0] = ' ';
+        return length;
+    }
+
+    /**
+     * Sell one copy of the book shown at the given position. The sale is queued on the
+     * {@link WriteQueue}; the row is rebound when the catalog reloads with the new quantity.
+     */
+    private void sell(int position) {
+        if (mSnapshot.quantities[position] > 0) {
+            final Context context = mContext.getApplicationContext();
+            WriteQueue.getInstance(context).sell(mSnapshot.ids[position], 1, new WriteQueue.Callback() {
+                @Override
+                public void onWriteFinished(WriteQueue.Result result) {
+                    // Another sale may have taken the last copy since the row was shown
+                    if (result.extras == null || !result.extras.getBoolean(BookContract.EXTRA_SOLD)) {
+                        Toast.makeText(context, R.string.decrement_is_not_possible, Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
+        } else {
+            Toast.makeText(mContext, R.string.decrement_is_not_possible, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Holds the views of one list item, looked up once when the item is created, and the
+     * buffers used to format its numbers.
+     */
+    class BookViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView productNameTextView;
+        final TextView priceTextView;
+        final TextView quantityTextView;
+        final Button saleButton;
+
+        final char[] priceChars = new char[PriceFormatter.MAX_LENGTH];
+        final char[] quantityChars = new char[MAX_NUMBER_LENGTH];
+
+        BookViewHolder(View view) {
+            super(view);
+            productNameTextView = (TextView) view.findViewById(R.id.product_name);
+            priceTextView = (TextView) view.findViewById(R.id.price);
+            quantityTextView = (TextView) view.findViewById(R.id.quantity);
+            saleButton = (Button) view.findViewById(R.id.sale_button);
+
+            view.setTag(this);
+            view.setOnClickListener(mItemListener);
+            saleButton.setTag(this);
+            saleButton.setOnClickListener(mSaleListener);
+        }
+    }
+}
@@ -3,35 +3,77 @@ package com.example.android.bookstoreinventory;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.StrictMode;
+import android.os.SystemClock;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
-import android.os.Bundle;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.Button;
-import android.widget.ListView;
 import android.widget.Toast;
 
-import com.example.android.bookstoreinventory.data.BookContract;
 import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.InventoryExporter;
+import com.example.android.bookstoreinventory.data.WriteQueue;
+
+import java.io.File;
+import java.io.IOException;
 
-public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class CatalogActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<CatalogLoader.Result>, BookAdapter.OnBookClickListener {
+
+    private static final String LOG_TAG = CatalogActivity.class.getSimpleName();
 
     private static final int BOOK_LOADER = 0;
 
-    BookCursorAdapter mCursorAdapter;
+    /** Number of rows added to the catalog each time more are loaded */
+    private static final int PAGE_SIZE = 50;
+
+    /** Start loading the next page when the user scrolls within this many rows of the end */
+    private static final int PREFETCH_DISTANCE = 20;
+
+    BookAdapter mAdapter;
+
+    /** Empty view shown when there are no books */
+    private View mEmptyView;
+
+    /** Current search terms, or null to show the whole catalog */
+    private String mSearchQuery;
+
+    /** True while a load for more pages is running */
+    private boolean mLoadingPage;
+
+    /** True once every row matching the query has been loaded */
+    private boolean mAllRowsLoaded;
+
+    /** Time the activity was created, used to measure time to first row */
+    private long mCreatedAtMillis;
+
+    /** True once the time to first row has been recorded */
+    private boolean mFirstRowReported;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreatedAtMillis = SystemClock.elapsedRealtime();
+        if (BuildConfig.DEBUG) {
+            // Every database write goes through the WriteQueue; report any that still runs here
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+        }
         setContentView(R.layout.activity_catalog);
 
         // Setup FAB to open EditorActivity
@@ -44,22 +86,28 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        ListView bookListView = (ListView) findViewById(R.id.list);
-        View emptyView = findViewById(R.id.empty_view);
-        bookListView.setEmptyView(emptyView);
+        RecyclerView bookListView = (RecyclerView) findViewById(R.id.list);
+        mEmptyView = findViewById(R.id.empty_view);
 
         // Set up adapter
-        mCursorAdapter = new BookCursorAdapter(this, null);
-        bookListView.setAdapter(mCursorAdapter);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        bookListView.setLayoutManager(layoutManager);
+        mAdapter = new BookAdapter(this, this);
+        bookListView.setAdapter(mAdapter);
 
-        // Set onItemClickListener on bookListView
-        bookListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Load the next page before the user reaches the end of the rows loaded so far
+        bookListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
-                Uri currentProductUri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
-                intent.setData(currentProductUri);
-                startActivity(intent);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = mAdapter.getItemCount();
+                if (!mLoadingPage && !mAllRowsLoaded && totalItemCount > 0
+                        && layoutManager.findLastVisibleItemPosition() >= totalItemCount - PREFETCH_DISTANCE) {
+                    CatalogLoader loader = getCatalogLoader();
+                    if (loader != null) {
+                        mLoadingPage = true;
+                        loader.loadNextPage(PAGE_SIZE);
+                    }
+                }
             }
         });
 
@@ -67,15 +115,31 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         getSupportLoaderManager().initLoader(BOOK_LOADER, null, this);
     }
 
+    /**
+     * Open the editor for the book that was clicked.
+     */
+    @Override
+    public void onBookClick(long id) {
+        Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
+        Uri currentProductUri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
+        intent.setData(currentProductUri);
+        startActivity(intent);
+    }
+
+    private CatalogLoader getCatalogLoader() {
+        Loader<CatalogLoader.Result> loader = getSupportLoaderManager().getLoader(BOOK_LOADER);
+        return (CatalogLoader) loader;
+    }
+
     private void insertBook(){
         ContentValues values = new ContentValues();
         values.put(BookEntry.COLUMN_PRODUCT_NAME, "Greatest climbs");
-        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_PRICE, 1000);
         values.put(BookEntry.COLUMN_QUANTITY, 100);
         values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Frances Lincoln");
         values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "4154547890");
 
-        getContentResolver().insert(BookEntry.CONTENT_URI, values);
+        WriteQueue.getInstance(this).insert(BookEntry.CONTENT_URI, values, null);
     }
 
     @Override
@@ -83,6 +147,28 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+
+        // Restart the loader with the new terms whenever the search text changes
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                String query = TextUtils.isEmpty(newText) ? null : newText;
+                if (!TextUtils.equals(query, mSearchQuery)) {
+                    mSearchQuery = query;
+                    CatalogLoader loader = getCatalogLoader();
+                    if (loader != null) {
+                        loader.setQuery(mSearchQuery, PAGE_SIZE);
+                    }
+                }
+                return true;
+            }
+        });
         return true;
     }
 
@@ -94,6 +180,10 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             case R.id.action_insert_dummy_data:
                 insertBook();
                 return true;
+            // Respond to a click on the "Export inventory" menu option
+            case R.id.action_export_inventory:
+                exportInventory();
+                return true;
             // Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
                 deleteAllBooks();
@@ -102,46 +192,75 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Helper method to export all items in the database to a CSV file in the background.
+     */
+    private void exportInventory() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        File file = new File(directory, "inventory.csv");
+
+        new InventoryExporter(getContentResolver()).exportInBackground(file, InventoryExporter.Format.CSV,
+                new InventoryExporter.Callback() {
+                    @Override
+                    public void onExportFinished(File file, int rowsExported) {
+                        Toast.makeText(getApplicationContext(),
+                                getString(R.string.export_finished, rowsExported, file.getPath()),
+                                Toast.LENGTH_LONG).show();
+                    }
+
+                    @Override
+                    public void onExportFailed(File file, IOException e) {
+                        Log.e(LOG_TAG, "Export to " + file + " failed", e);
+                        Toast.makeText(getApplicationContext(), R.string.export_failed,
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
     /**
      * Helper method to delete all items in the database.
      */
     private void deleteAllBooks() {
-        int rowsDeleted = getContentResolver().delete(BookEntry.CONTENT_URI, null, null);
-        Log.v("CatalogActivity", rowsDeleted + " rows deleted from products database");
+        WriteQueue.getInstance(this).delete(BookEntry.CONTENT_URI, null, null, new WriteQueue.Callback() {
+            @Override
+            public void onWriteFinished(WriteQueue.Result result) {
+                Log.v(LOG_TAG, result.count + " rows deleted from products database");
+            }
+        });
     }
 
     // Called when a new Loader needs to be created
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        // Now create and return a CursorLoader that will take care of
-        // creating a Cursor for the data being displayed.
-
-        String[] projection = {
-                BookEntry._ID,
-                BookEntry.COLUMN_PRODUCT_NAME,
-                BookEntry.COLUMN_PRICE,
-                BookEntry.COLUMN_QUANTITY
-        };
-
-        return new CursorLoader(this,
-                BookEntry.CONTENT_URI,
-                projection,
-                null,
-                null,
-                null);
+    public Loader<CatalogLoader.Result> onCreateLoader(int id, Bundle args) {
+        // The loader reads the first page of the catalog (or of the search results) and
+        // works out what changed since the previous result on a background thread.
+        return new CatalogLoader(this, mSearchQuery, PAGE_SIZE);
     }
 
     // Called when a previously created loader has finished loading
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Swap the new cursor in. The framework will take care of closing the
-        // old cursor once we return.)
-        mCursorAdapter.swapCursor(data);
+    public void onLoadFinished(Loader<CatalogLoader.Result> loader, CatalogLoader.Result data) {
+        // Only the rows that changed since the previous result are rebound
+        mAdapter.swapResult(data);
+        mEmptyView.setVisibility(data.snapshot.count == 0 ? View.VISIBLE : View.GONE);
+
+        // Fewer rows than requested means there is nothing left to page in
+        mLoadingPage = false;
+        mAllRowsLoaded = data.snapshot.count < ((CatalogLoader) loader).getRowLimit();
+
+        if (!mFirstRowReported) {
+            mFirstRowReported = true;
+            Log.i(LOG_TAG, "Time to first row: " + (SystemClock.elapsedRealtime() - mCreatedAtMillis)
+                    + " ms for " + data.snapshot.count + " rows");
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                reportFullyDrawn();
+            }
+        }
     }
 
     // Called when a previously created loader is reset, making the data unavailable
-    public void onLoaderReset(Loader<Cursor> loader) {
-        // This is called when the last Cursor provided to onLoadFinished()
-        // above is about to be closed. We need to make sure we are no
-        // longer using it.
-        mCursorAdapter.swapCursor(null);
+    public void onLoaderReset(Loader<CatalogLoader.Result> loader) {
+        mAdapter.swapResult(null);
     }
 }
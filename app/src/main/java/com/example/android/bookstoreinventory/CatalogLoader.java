@@ -0,0 +1,395 @@
+package com.example.android.bookstoreinventory;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory.data.BookContract;
+import com.example.android.bookstoreinventory.data.BookCursorMapper;
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.ProductCache;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Loads the catalog (or search results) into a {@link CatalogSnapshot} and, on a background
+ * thread, computes the difference from the snapshot delivered before it. Like a CursorLoader it
+ * reloads whenever the products change.
+ *
+ * When the provider reports changes to individual products (products/#), only those rows are
+ * read again and patched into a copy of the current snapshot; changes after the last row of the
+ * catalog loaded are left to the page that will read them. Inserts, deletes and bulk changes
+ * fall back to a full reload. {@link #loadNextPage} reads only the rows after the last one
+ * loaded and appends them.
+ */
+public class CatalogLoader extends AsyncTaskLoader<CatalogLoader.Result> {
+
+    private static final String LOG_TAG = CatalogLoader.class.getSimpleName();
+
+    static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_CURRENCY,
+            BookEntry.COLUMN_QUANTITY,
+            // Only read to fill the ProductCache, so that opening a product from the list
+            // doesn't have to go back to the database. The provider serves products/# and ISBN
+            // lookups from the cache, so every column of a Book has to be read.
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+            BookEntry.COLUMN_ISBN
+    };
+
+    /** Above this many changed rows a full reload is cheaper than reading them one by one */
+    private static final int MAX_PATCHED_ROWS = 16;
+
+    /**
+     * A loaded snapshot together with the changes from {@link #previous}, the snapshot delivered
+     * before it. The changes are either a {@link #diff}, or the {@link #changedPositions} of rows
+     * patched in place followed by {@link #appendedCount} rows added at the end; when the diff
+     * and the positions are both null the whole list must be refreshed.
+     */
+    public static class Result {
+        final CatalogSnapshot previous;
+        final CatalogSnapshot snapshot;
+        final DiffUtil.DiffResult diff;
+        final int[] changedPositions;
+        final int appendedCount;
+
+        Result(CatalogSnapshot previous, CatalogSnapshot snapshot, DiffUtil.DiffResult diff) {
+            this(previous, snapshot, diff, null, 0);
+        }
+
+        Result(CatalogSnapshot previous, CatalogSnapshot snapshot, DiffUtil.DiffResult diff,
+               int[] changedPositions, int appendedCount) {
+            this.previous = previous;
+            this.snapshot = snapshot;
+            this.diff = diff;
+            this.changedPositions = changedPositions;
+            this.appendedCount = appendedCount;
+        }
+    }
+
+    /** Records which products changed before asking for a reload */
+    private final ContentObserver mObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            long id = BookEntry.getProductId(uri);
+            synchronized (mChangedIds) {
+                if (id == -1) {
+                    mFullReload = true;
+                } else {
+                    mChangedIds.add(id);
+                }
+            }
+            onContentChanged();
+        }
+    };
+    private boolean mObserverRegistered;
+
+    /** Products changed since the last load started; guarded by itself */
+    private final Set<Long> mChangedIds = new HashSet<>();
+
+    /** True if the next load has to read everything again; guarded by mChangedIds */
+    private boolean mFullReload = true;
+
+    /** Number of rows the next load appends after the last one loaded; guarded by mChangedIds */
+    private int mPageToAppend;
+
+    /** Last snapshot handed to the callbacks; new loads are diffed against it */
+    private volatile CatalogSnapshot mDelivered;
+
+    private Result mResult;
+
+    /** Current search terms, or null to load the whole catalog */
+    private volatile String mSearchQuery;
+
+    /** Maximum number of rows to load, including every page appended since the last query */
+    private volatile int mRowLimit;
+
+    public CatalogLoader(Context context, String searchQuery, int rowLimit) {
+        super(context);
+        mSearchQuery = searchQuery;
+        mRowLimit = rowLimit;
+    }
+
+    /**
+     * Reload with the given search terms (null for the whole catalog) and room for the given
+     * number of rows.
+     */
+    public void setQuery(String searchQuery, int rowLimit) {
+        mSearchQuery = searchQuery;
+        mRowLimit = rowLimit;
+        synchronized (mChangedIds) {
+            mFullReload = true;
+            mPageToAppend = 0;
+        }
+        onContentChanged();
+    }
+
+    /**
+     * Load the given number of rows after the last one loaded and append them. Only that page
+     * is read: the catalog is ordered by id, so it starts after the last id loaded.
+     */
+    public void loadNextPage(int pageSize) {
+        mRowLimit += pageSize;
+        synchronized (mChangedIds) {
+            mPageToAppend += pageSize;
+        }
+        onContentChanged();
+    }
+
+    public String getSearchQuery() {
+        return mSearchQuery;
+    }
+
+    public int getRowLimit() {
+        return mRowLimit;
+    }
+
+    @Override
+    public Result loadInBackground() {
+        long start = SystemClock.elapsedRealtime();
+        CatalogSnapshot previous = mDelivered;
+
+        Long[] changedIds;
+        boolean fullReload;
+        int pageToAppend;
+        synchronized (mChangedIds) {
+            fullReload = mFullReload || previous == null || mChangedIds.size() > MAX_PATCHED_ROWS;
+            changedIds = mChangedIds.toArray(new Long[mChangedIds.size()]);
+            pageToAppend = mPageToAppend;
+            mChangedIds.clear();
+            mFullReload = false;
+            mPageToAppend = 0;
+        }
+
+        Result result = null;
+        if (!fullReload) {
+            // Rows after the last one loaded are read with a later page, if there is one
+            boolean morePages = pageToAppend > 0 || previous.count >= mRowLimit;
+            result = patchRows(previous, changedIds, morePages);
+            if (result != null && pageToAppend > 0) {
+                result = appendPage(result, pageToAppend);
+            }
+        }
+        if (result == null) {
+            CatalogSnapshot snapshot = loadAll();
+            DiffUtil.DiffResult diff = previous == null ? null
+                    : DiffUtil.calculateDiff(new CatalogSnapshot.DiffCallback(previous, snapshot), false);
+            result = new Result(previous, snapshot, diff);
+        }
+
+        Log.d(LOG_TAG, "Catalog refresh (" + (result.changedPositions == null ? "full"
+                : result.appendedCount > 0 ? "page" : "rows")
+                + ") took " + (SystemClock.elapsedRealtime() - start) + " ms");
+        return result;
+    }
+
+    /**
+     * Read the catalog (or the search results) from the provider.
+     */
+    private CatalogSnapshot loadAll() {
+        String searchQuery = mSearchQuery;
+
+        // Search results keep their ranking, the catalog is ordered by id so that each next
+        // page starts after the last id loaded.
+        Uri uri = searchQuery == null ? BookEntry.CONTENT_URI : BookEntry.buildSearchUri(searchQuery);
+        String sortOrder = searchQuery == null ? BookEntry._ID + " ASC" : null;
+        uri = uri.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(mRowLimit))
+                .build();
+
+        long generation = ProductCache.getInstance().generation();
+        Cursor cursor = getContext().getContentResolver().query(uri, PROJECTION, null, null, sortOrder);
+        if (cursor == null) {
+            return CatalogSnapshot.EMPTY;
+        }
+        try {
+            CatalogSnapshot snapshot = CatalogSnapshot.fromCursor(cursor, searchQuery == null);
+            cacheRows(cursor, generation);
+            return snapshot;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read the given number of rows after the last one of the result's snapshot and append them
+     * to a copy of it. The catalog is read from the row after the last id loaded, which its index
+     * on the id finds directly; search results, ordered by rank, are skipped by count instead.
+     */
+    private Result appendPage(Result result, int pageSize) {
+        CatalogSnapshot snapshot = result.snapshot;
+        String searchQuery = mSearchQuery;
+        Uri uri = searchQuery == null ? BookEntry.CONTENT_URI : BookEntry.buildSearchUri(searchQuery);
+        Uri.Builder builder = uri.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(pageSize));
+        String selection = null;
+        String[] selectionArgs = null;
+        String sortOrder = null;
+        if (searchQuery == null) {
+            if (snapshot.count > 0) {
+                selection = BookEntry._ID + " > ?";
+                selectionArgs = new String[] { String.valueOf(snapshot.ids[snapshot.count - 1]) };
+            }
+            sortOrder = BookEntry._ID + " ASC";
+        } else {
+            builder.appendQueryParameter(BookContract.QUERY_PARAMETER_OFFSET, String.valueOf(snapshot.count));
+        }
+
+        long generation = ProductCache.getInstance().generation();
+        Cursor cursor = getContext().getContentResolver().query(builder.build(), PROJECTION, selection,
+                selectionArgs, sortOrder);
+        if (cursor == null) {
+            return result;
+        }
+        try {
+            CatalogSnapshot appended = snapshot.append(cursor);
+            cacheRows(cursor, generation);
+            return new Result(result.previous, appended, null, result.changedPositions, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Put the last rows of the cursor into the {@link ProductCache}, as many as it holds. The last
+     * rows loaded are the ones the user is scrolling into.
+     */
+    private static void cacheRows(Cursor cursor, long generation) {
+        ProductCache cache = ProductCache.getInstance();
+        int first = Math.max(0, cursor.getCount() - ProductCache.MAX_ENTRIES);
+        if (cursor.moveToPosition(first)) {
+            BookCursorMapper mapper = new BookCursorMapper(cursor);
+            do {
+                cache.put(mapper.read(), generation);
+            } while (cursor.moveToNext());
+        }
+    }
+
+    /**
+     * Read only the given products and patch them into a copy of the previous snapshot.
+     * Return null if that isn't possible (a product was added or removed, or a search result
+     * was renamed and may have moved) and everything has to be reloaded. When morePages is true
+     * the catalog's products after the last one loaded are skipped: they are read with their page.
+     */
+    private Result patchRows(CatalogSnapshot previous, Long[] changedIds, boolean morePages) {
+        CatalogSnapshot snapshot = previous.copy();
+        int[] positions = new int[changedIds.length];
+        int changedCount = 0;
+        String[] rowProjection = Arrays.copyOfRange(PROJECTION, 1, PROJECTION.length);
+
+        for (int i = 0; i < changedIds.length; i++) {
+            if (morePages && snapshot.sortedById
+                    && (snapshot.count == 0 || changedIds[i] > snapshot.ids[snapshot.count - 1])) {
+                continue;
+            }
+            int position = snapshot.indexOf(changedIds[i]);
+            if (position == -1) {
+                return null;
+            }
+            Cursor cursor = getContext().getContentResolver().query(
+                    ContentUris.withAppendedId(BookEntry.CONTENT_URI, changedIds[i]),
+                    rowProjection, null, null, null);
+            if (cursor == null) {
+                return null;
+            }
+            try {
+                if (!cursor.moveToFirst()) {
+                    return null;
+                }
+                String name = cursor.getString(0);
+                if (mSearchQuery != null && !TextUtils.equals(name, snapshot.names[position])) {
+                    return null;
+                }
+                snapshot.names[position] = name;
+                snapshot.prices[position] = cursor.getLong(1);
+                snapshot.currencies[position] = cursor.getString(2);
+                snapshot.quantities[position] = cursor.getInt(3);
+            } finally {
+                cursor.close();
+            }
+            positions[changedCount++] = position;
+        }
+        return new Result(previous, snapshot, null, Arrays.copyOf(positions, changedCount), 0);
+    }
+
+    @Override
+    public void deliverResult(Result result) {
+        if (isReset()) {
+            return;
+        }
+        mResult = result;
+        if (isStarted()) {
+            mDelivered = result.snapshot;
+            super.deliverResult(result);
+        }
+    }
+
+    @Override
+    public void onCanceled(Result result) {
+        // The changes and the page this load picked up were never delivered; the full reload
+        // reads the page too, as the row limit already includes it
+        synchronized (mChangedIds) {
+            mFullReload = true;
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(BookEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+        if (takeContentChanged() || mResult == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mResult = null;
+        mDelivered = null;
+        synchronized (mChangedIds) {
+            mChangedIds.clear();
+            mFullReload = true;
+            mPageToAppend = 0;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.android.bookstoreinventory;
+
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
+
+import com.example.android.bookstoreinventory.data.BookCursorMapper;
+
+import java.util.Arrays;
+
+/**
+ * Copy of the catalog rows shown in the list, stored column by column. A snapshot is never
+ * changed once it has been delivered; patches are applied to a {@link #copy()}. Snapshots are
+ * built off the main thread by {@link CatalogLoader} so the old and new results can be compared
+ * there too, and the list only rebinds the rows that actually changed.
+ */
+final class CatalogSnapshot {
+
+    static final CatalogSnapshot EMPTY = new CatalogSnapshot(0, true);
+
+    final int count;
+    /** True if the rows are in ascending id order, as the catalog is; search results aren't */
+    final boolean sortedById;
+    final long[] ids;
+    final String[] names;
+    final long[] prices;
+    final String[] currencies;
+    final int[] quantities;
+
+    private CatalogSnapshot(int count, boolean sortedById) {
+        this.count = count;
+        this.sortedById = sortedById;
+        ids = new long[count];
+        names = new String[count];
+        prices = new long[count];
+        currencies = new String[count];
+        quantities = new int[count];
+    }
+
+    /**
+     * Copy every row of the cursor. The column indices are resolved once for the whole cursor.
+     * Pass true for sortedById if the cursor is ordered by ascending id.
+     */
+    static CatalogSnapshot fromCursor(Cursor cursor, boolean sortedById) {
+        CatalogSnapshot snapshot = new CatalogSnapshot(cursor.getCount(), sortedById);
+        cursor.moveToPosition(-1);
+        new BookCursorMapper(cursor).fill(snapshot.ids, snapshot.names, snapshot.prices,
+                snapshot.currencies, snapshot.quantities, 0);
+        return snapshot;
+    }
+
+    /**
+     * Return a copy whose rows can be patched before it is published.
+     */
+    CatalogSnapshot copy() {
+        CatalogSnapshot copy = new CatalogSnapshot(count, sortedById);
+        System.arraycopy(ids, 0, copy.ids, 0, count);
+        System.arraycopy(names, 0, copy.names, 0, count);
+        System.arraycopy(prices, 0, copy.prices, 0, count);
+        System.arraycopy(currencies, 0, copy.currencies, 0, count);
+        System.arraycopy(quantities, 0, copy.quantities, 0, count);
+        return copy;
+    }
+
+    /**
+     * Return a snapshot of these rows followed by every row of the cursor, e.g. the next page.
+     * A snapshot sorted by id stays sorted only if the cursor starts after its last id.
+     */
+    CatalogSnapshot append(Cursor cursor) {
+        CatalogSnapshot appended = new CatalogSnapshot(count + cursor.getCount(), sortedById);
+        System.arraycopy(ids, 0, appended.ids, 0, count);
+        System.arraycopy(names, 0, appended.names, 0, count);
+        System.arraycopy(prices, 0, appended.prices, 0, count);
+        System.arraycopy(currencies, 0, appended.currencies, 0, count);
+        System.arraycopy(quantities, 0, appended.quantities, 0, count);
+        cursor.moveToPosition(-1);
+        new BookCursorMapper(cursor).fill(appended.ids, appended.names, appended.prices,
+                appended.currencies, appended.quantities, count);
+        return appended;
+    }
+
+    /**
+     * Return the position of the row with the given id, or -1 if it isn't in the snapshot.
+     * The catalog is searched by halves; search results, limited to the pages loaded, are scanned.
+     */
+    int indexOf(long id) {
+        if (sortedById) {
+            int position = Arrays.binarySearch(ids, 0, count, id);
+            return position < 0 ? -1 : position;
+        }
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares two snapshots row by row for {@link DiffUtil}. Rows are the same item when their
+     * ids match, and unchanged when every displayed column is equal.
+     */
+    static class DiffCallback extends DiffUtil.Callback {
+
+        private final CatalogSnapshot mOld;
+        private final CatalogSnapshot mNew;
+
+        DiffCallback(CatalogSnapshot oldSnapshot, CatalogSnapshot newSnapshot) {
+            mOld = oldSnapshot;
+            mNew = newSnapshot;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.count;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.count;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return mOld.ids[oldPosition] == mNew.ids[newPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return mOld.prices[oldPosition] == mNew.prices[newPosition]
+                    && TextUtils.equals(mOld.currencies[oldPosition], mNew.currencies[newPosition])
+                    && mOld.quantities[oldPosition] == mNew.quantities[newPosition]
+                    && TextUtils.equals(mOld.names[oldPosition], mNew.names[newPosition]);
+        }
+    }
+}
@@ -3,19 +3,18 @@ package com.example.android.bookstoreinventory;
 import android.app.ActionBar;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.database.Cursor;
 import android.graphics.drawable.ColorDrawable;
 import android.net.Uri;
 import android.os.Bundle;
-import android.support.v4.app.LoaderManager;
+import android.os.SystemClock;
 import android.support.v4.app.NavUtils;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
@@ -24,19 +23,30 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import com.example.android.bookstoreinventory.data.Book;
 import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.LiveQueries;
+import com.example.android.bookstoreinventory.data.LiveQuery;
+import com.example.android.bookstoreinventory.data.PriceFormatter;
+import com.example.android.bookstoreinventory.data.ProductCache;
+import com.example.android.bookstoreinventory.data.WriteQueue;
 
 /**
  * Allows user to create a new product or edit existing one
  */
-public class EditorActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class EditorActivity extends AppCompatActivity implements LiveQuery.Observer<Book> {
 
-    /** Identifier for book data loader */
-    private static final int BOOK_LOADER = 0;
+    private static final String LOG_TAG = EditorActivity.class.getSimpleName();
 
     /** Content URI for the existing product */
     private Uri mCurrentProductUri;
 
+    /** Observation of the existing product, shared with any other screen showing it */
+    private LiveQuery.Subscription mProductSubscription;
+
+    /** Product last shown in the form */
+    private Book mShownBook;
+
     /** boolean which will be true if the user updates part of the product form */
     private boolean mBookHasChanged = false;
 
@@ -46,6 +56,9 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     /** EditText field to enter the price */
     private EditText mPriceEditText;
 
+    /** Currency of the price: the product's, or the default one for a new product */
+    private String mCurrency = BookEntry.DEFAULT_CURRENCY;
+
     /** EditText field to enter the quantity */
     private EditText mQuantityEditText;
 
@@ -55,6 +68,9 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     /** EditText field to enter the supplier phone number */
     private EditText mSupplierPhoneNumberEditText;
 
+    /** Time the activity was created, to log how long the product took to show up */
+    private long mCreatedAt;
+
     /** Phone number minimum */
     final static private int PHONE_NUM_MINIMUM = 10;
 
@@ -72,6 +88,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreatedAt = SystemClock.elapsedRealtime();
         setContentView(R.layout.activity_editor);
 
         Button incrementQuantityButton = findViewById(R.id.increment_button);
@@ -93,8 +110,6 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             deleteItemButton.setVisibility(View.GONE);
         } else {
             setTitle(getString(R.string.editor_activity_edit_book));
-            // Kick off the loader
-            getSupportLoaderManager().initLoader(BOOK_LOADER, null, this);
         }
 
         // Find fields for user input
@@ -104,6 +119,19 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mSupplierNameEditText = (EditText) findViewById(R.id.edit_supplier_name);
         mSupplierPhoneNumberEditText = (EditText) findViewById(R.id.edit_supplier_phone_number);
 
+        if (mCurrentProductUri != null) {
+            long id = ContentUris.parseId(mCurrentProductUri);
+            // A product opened from the catalog is usually cached already, so the form is filled
+            // at once; a restored activity keeps its (possibly edited) fields instead
+            Book book = ProductCache.getInstance().get(id);
+            if (book != null && savedInstanceState == null) {
+                bindBook(book);
+            }
+            // Observe the product; it is shown again whenever it changes, also after the first
+            // bind came from the cache
+            mProductSubscription = LiveQueries.getInstance(this).product(id).subscribe(this);
+        }
+
         mProductNameEditText.setOnTouchListener(mTouchListener);
         mPriceEditText.setOnTouchListener(mTouchListener);
         mQuantityEditText.setOnTouchListener(mTouchListener);
@@ -228,11 +256,23 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             return;
         }
 
+        // The provider refuses products without a supplier to call
+        if (TextUtils.isEmpty(supplierNameString) || TextUtils.isEmpty(supplierPhoneNumberString)) {
+            Toast.makeText(this, getString(R.string.editor_enter_supplier), Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         // If the price and quantity is not provided by the user, don't try to parse the string into an
-        // integer value. Use 0 by default.
-        int price = 0;
+        // integer value. Use 0 by default. The price is typed as a decimal amount with the
+        // locale's separators, e.g. 9.99 in the US.
+        long price = 0;
         if (!TextUtils.isEmpty(priceString)) {
-            price = Integer.parseInt(priceString);
+            try {
+                price = PriceFormatter.getInstance().parseLocalized(priceString, mCurrency);
+            } catch (NumberFormatException e) {
+                Toast.makeText(this, getString(R.string.editor_enter_valid_price), Toast.LENGTH_SHORT).show();
+                return;
+            }
         }
 
         int quantity = 0;
@@ -243,28 +283,40 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         ContentValues values = new ContentValues();
         values.put(BookEntry.COLUMN_PRODUCT_NAME, productNameString);
         values.put(BookEntry.COLUMN_PRICE, price);
+        values.put(BookEntry.COLUMN_CURRENCY, mCurrency);
         values.put(BookEntry.COLUMN_QUANTITY, quantity);
         values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplierNameString);
         values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, supplierPhoneNumberString);
 
+        // The write finishes in the background, possibly after this activity has been closed,
+        // so the result is shown with the application context
+        final Context context = getApplicationContext();
         if (mCurrentProductUri == null) {
             // Insert a new book into the provider, returning the content URI for the new product.
-            Uri newUri = getContentResolver().insert(BookEntry.CONTENT_URI, values);
-            // Check if product was saved successfully or not and present a toast message according to the result
-            if (newUri == null) {
-                Toast.makeText(this, getString(R.string.editor_activity_error_saving_new_product), Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, getString(R.string.editor_activity_success_saving_new_product), Toast.LENGTH_SHORT).show();
-            }
+            WriteQueue.getInstance(this).insert(BookEntry.CONTENT_URI, values, new WriteQueue.Callback() {
+                @Override
+                public void onWriteFinished(WriteQueue.Result result) {
+                    // Check if product was saved successfully or not and present a toast message according to the result
+                    if (result.uri == null) {
+                        Toast.makeText(context, context.getString(R.string.editor_activity_error_saving_new_product), Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(context, context.getString(R.string.editor_activity_success_saving_new_product), Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
         } else {
             // Otherwise update product with new content values.
-            int rowsAffected = getContentResolver().update(mCurrentProductUri, values, null, null);
-            // Check if update was successful
-            if (rowsAffected == 0) {
-                Toast.makeText(this, getString(R.string.editor_activity_error_updating_product), Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, getString(R.string.editor_activity_success_updating_product), Toast.LENGTH_SHORT).show();
-            }
+            WriteQueue.getInstance(this).update(mCurrentProductUri, values, null, null, new WriteQueue.Callback() {
+                @Override
+                public void onWriteFinished(WriteQueue.Result result) {
+                    // Check if update was successful
+                    if (result.count == 0) {
+                        Toast.makeText(context, context.getString(R.string.editor_activity_error_updating_product), Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(context, context.getString(R.string.editor_activity_success_updating_product), Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
         }
     }
 
@@ -274,20 +326,24 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private void deleteBook() {
         // Only perform the delete if this is an existing book.
         if (mCurrentProductUri != null) {
-            // Call the ContentResolver to delete the book at the given content URI.
-            int rowsDeleted = getContentResolver().delete(mCurrentProductUri, null, null);
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_product_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // Queue the deletion of the book at the given content URI.
+            final Context context = getApplicationContext();
+            WriteQueue.getInstance(this).delete(mCurrentProductUri, null, null, new WriteQueue.Callback() {
+                @Override
+                public void onWriteFinished(WriteQueue.Result result) {
+                    if (result.count == 0) {
+                        // If no rows were deleted, then there was an error with the delete.
+                        Toast.makeText(context, context.getString(R.string.editor_delete_product_failed),
+                                Toast.LENGTH_SHORT).show();
+                    } else {
+                        // Otherwise, the delete was successful and we can display a toast.
+                        Toast.makeText(context, context.getString(R.string.editor_delete_product_successful),
+                                Toast.LENGTH_SHORT).show();
+                    }
+                }
+            });
         }
 
-        getContentResolver().notifyChange(mCurrentProductUri, null);
         // Close the activity
         finish();
     }
@@ -378,61 +434,37 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         return super.onOptionsItemSelected(item);
     }
 
-    // Called when a new Loader needs to be created
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        // Now create and return a CursorLoader that will take care of
-        // creating a Cursor for the data being displayed.
-
-        String[] projection = {
-                BookEntry._ID,
-                BookEntry.COLUMN_PRODUCT_NAME,
-                BookEntry.COLUMN_QUANTITY,
-                BookEntry.COLUMN_PRICE,
-                BookEntry.COLUMN_SUPPLIER_NAME,
-                BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER };
-
-        return new CursorLoader(this,
-                mCurrentProductUri,
-                projection,
-                null,
-                null,
-                null);
-    }
-
-    // Called when a previously created loader has finished loading
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        if (cursor == null || cursor.getCount() < 1) {
-            return;
+    @Override
+    protected void onDestroy() {
+        if (mProductSubscription != null) {
+            mProductSubscription.unsubscribe();
         }
+        super.onDestroy();
+    }
 
-        else if (cursor.moveToFirst()) {
-            // Find the columns of product attributes that we're interested in
-            int productNameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAME);
-            int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_QUANTITY);
-            int priceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRICE);
-            int supplierNameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_NAME);
-            int supplierPhoneNumberColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
-
-            // Extract out the value from the Cursor for the given column index
-            String productName = cursor.getString(productNameColumnIndex);
-            int quantity = cursor.getInt(quantityColumnIndex);
-            int price = cursor.getInt(priceColumnIndex);
-            String supplierName = cursor.getString(supplierNameColumnIndex);
-            String supplierPhoneNumber = cursor.getString(supplierPhoneNumberColumnIndex);
-
-            mProductNameEditText.setText(productName);
-            mQuantityEditText.setText(Integer.toString(quantity));
-            mPriceEditText.setText(Integer.toString(price));
-            mSupplierNameEditText.setText(supplierName);
-            mSupplierPhoneNumberEditText.setText(supplierPhoneNumber);
+    // Called on the main thread with the product, each time it changes
+    @Override
+    public void onChanged(Book book) {
+        // Null once the product was deleted. The first value is usually the cached product
+        // already shown, which mustn't reset what the user typed since.
+        if (book != null && !book.equals(mShownBook)) {
+            bindBook(book);
         }
     }
 
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mProductNameEditText.setText("");
-        mQuantityEditText.setText("");
-        mPriceEditText.setText("");
-        mSupplierNameEditText.setText("");
-        mSupplierPhoneNumberEditText.setText("");
-        }
+    /**
+     * Show the given product in the form.
+     */
+    private void bindBook(Book book) {
+        mShownBook = book;
+        mProductNameEditText.setText(book.name);
+        mQuantityEditText.setText(Integer.toString(book.quantity));
+        mCurrency = book.currency;
+        mPriceEditText.setText(PriceFormatter.getInstance().toLocalizedString(book.price, book.currency));
+        mSupplierNameEditText.setText(book.supplierName);
+        mSupplierPhoneNumberEditText.setText(book.supplierPhoneNumber);
+
+        Log.d(LOG_TAG, "Product shown after " + (SystemClock.elapsedRealtime() - mCreatedAt)
+                + " ms, " + ProductCache.getInstance());
+    }
 }
@@ -0,0 +1,122 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+/**
+ * Immutable copy of one row of the products table.
+ */
+public final class Book {
+
+    /** Every column of a product, in the order {@link #getColumnValue(String)} supports them */
+    public static final String[] ALL_COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_ISBN,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_CURRENCY,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER };
+
+    /** Value of {@link #isbn} for a product without an ISBN */
+    public static final long NO_ISBN = 0;
+
+    public final long id;
+    public final String name;
+    /** Normalized ISBN, see {@link BookEntry#COLUMN_ISBN}, or {@link #NO_ISBN} */
+    public final long isbn;
+    /** Price in minor units of the currency, see {@link BookEntry#COLUMN_PRICE} */
+    public final long price;
+    public final String currency;
+    public final int quantity;
+    public final String supplierName;
+    public final String supplierPhoneNumber;
+
+    public Book(long id, String name, long isbn, long price, String currency, int quantity,
+                String supplierName, String supplierPhoneNumber) {
+        this.id = id;
+        this.name = name;
+        this.isbn = isbn;
+        this.price = price;
+        this.currency = currency;
+        this.quantity = quantity;
+        this.supplierName = supplierName;
+        this.supplierPhoneNumber = supplierPhoneNumber;
+    }
+
+    /**
+     * Read the book at the cursor's current position, as {@link BookCursorMapper#read()} does.
+     * This looks the columns up by name; to read more than one row, create a BookCursorMapper
+     * for the cursor instead.
+     */
+    public static Book fromCursor(Cursor cursor) {
+        return new BookCursorMapper(cursor).read();
+    }
+
+    /**
+     * Return the value of the given column, as stored in the database.
+     *
+     * @throws IllegalArgumentException if the column isn't one of {@link #ALL_COLUMNS}
+     */
+    public Object getColumnValue(String column) {
+        if (BookEntry._ID.equals(column)) {
+            return id;
+        } else if (BookEntry.COLUMN_PRODUCT_NAME.equals(column)) {
+            return name;
+        } else if (BookEntry.COLUMN_ISBN.equals(column)) {
+            return isbn != NO_ISBN ? isbn : null;
+        } else if (BookEntry.COLUMN_PRICE.equals(column)) {
+            return price;
+        } else if (BookEntry.COLUMN_CURRENCY.equals(column)) {
+            return currency;
+        } else if (BookEntry.COLUMN_QUANTITY.equals(column)) {
+            return quantity;
+        } else if (BookEntry.COLUMN_SUPPLIER_NAME.equals(column)) {
+            return supplierName;
+        } else if (BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER.equals(column)) {
+            return supplierPhoneNumber;
+        }
+        throw new IllegalArgumentException("Unknown column " + column);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Book)) {
+            return false;
+        }
+        Book other = (Book) o;
+        return id == other.id
+                && isbn == other.isbn
+                && price == other.price
+                && quantity == other.quantity
+                && TextUtils.equals(name, other.name)
+                && TextUtils.equals(currency, other.currency)
+                && TextUtils.equals(supplierName, other.supplierName)
+                && TextUtils.equals(supplierPhoneNumber, other.supplierPhoneNumber);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (id ^ (id >>> 32));
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + (int) (isbn ^ (isbn >>> 32));
+        result = 31 * result + (int) (price ^ (price >>> 32));
+        result = 31 * result + (currency != null ? currency.hashCode() : 0);
+        result = 31 * result + quantity;
+        result = 31 * result + (supplierName != null ? supplierName.hashCode() : 0);
+        result = 31 * result + (supplierPhoneNumber != null ? supplierPhoneNumber.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Book{id=" + id + ", name=" + name + ", price=" + price + " " + currency + ", quantity=" + quantity
+                + ", supplier=" + supplierName + "}";
+    }
+}
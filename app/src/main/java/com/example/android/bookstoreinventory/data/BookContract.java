@@ -3,6 +3,9 @@ package com.example.android.bookstoreinventory.data;
 import android.content.ContentResolver;
 import android.net.Uri;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import java.util.List;
 
 public final class BookContract {
 
@@ -11,10 +14,119 @@ public final class BookContract {
     public static final String CONTENT_AUTHORITY = "com.example.android.bookstoreinventory";
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     public static final String PATH_PRODUCTS = "products";
+    public static final String PATH_SUPPLIERS = "suppliers";
+    public static final String PATH_MOVEMENTS = "movements";
+    public static final String PATH_STORES = "stores";
+
+    /**
+     * Query parameter limiting the number of rows returned for {@link BookEntry#CONTENT_URI} and
+     * {@link BookEntry#CONTENT_SEARCH_URI}. Combine with a selection on {@link BookEntry#_ID} > last id
+     * and a sort order on it for keyset paging, or with {@link #QUERY_PARAMETER_OFFSET}.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /** Query parameter skipping the first rows of a limited query; requires {@link #QUERY_PARAMETER_LIMIT} */
+    public static final String QUERY_PARAMETER_OFFSET = "offset";
+
+    /** Path appended to the products URI for a lookup by ISBN */
+    public static final String PATH_ISBN = "isbn";
+
+    /** Path appended to the products URI for full-text search */
+    public static final String PATH_SEARCH = "search";
+
+    /** Query parameter carrying the search terms for {@link BookEntry#CONTENT_SEARCH_URI} */
+    public static final String QUERY_PARAMETER_SEARCH = "q";
+
+    /** Path of the aggregate views, see {@link AnalyticsEntry} */
+    public static final String PATH_ANALYTICS = "analytics";
+    public static final String PATH_STOCK_VALUE = "stock_value";
+    public static final String PATH_BELOW_THRESHOLD = "below_threshold";
+    public static final String PATH_TOP_STOCK = "top_stock";
+
+    /**
+     * Provider method selling copies of a product, called with
+     * {@link ContentResolver#call(Uri, String, String, android.os.Bundle)} on {@link BookEntry#CONTENT_URI}.
+     * The argument is the product id and {@link #EXTRA_AMOUNT} the number of copies (1 if absent).
+     * The stock is decremented atomically and only if enough copies are left. The result holds
+     * {@link #EXTRA_SOLD} and the resulting {@link #EXTRA_QUANTITY}, which is -1 if there is no such product.
+     */
+    public static final String METHOD_SELL = "sell";
+
+    /** Number of copies to sell */
+    public static final String EXTRA_AMOUNT = "amount";
+
+    /** Whether the sale went through */
+    public static final String EXTRA_SOLD = "sold";
+
+    /** Quantity in stock after the call */
+    public static final String EXTRA_QUANTITY = "quantity";
+
+    /**
+     * Provider method folding the pending sales into the stored product quantities right away,
+     * instead of waiting for the background compaction. Quantities as read don't change. The
+     * result holds the number of sales folded in {@link #EXTRA_COMPACTED}.
+     */
+    public static final String METHOD_COMPACT_SALES = "compact_sales";
+
+    /** Number of sales folded by {@link #METHOD_COMPACT_SALES} */
+    public static final String EXTRA_COMPACTED = "compacted";
+
+    /**
+     * Id of the store that {@link #METHOD_SELL} and {@link #METHOD_COMPACT_SALES} apply to, a
+     * long; {@link StoreEntry#DEFAULT_STORE_ID} if absent
+     */
+    public static final String EXTRA_STORE_ID = "store_id";
 
     public static final class BookEntry implements BaseColumns {
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PRODUCTS);
 
+        /**
+         * Searches product names and suppliers. Pass the terms in {@link #QUERY_PARAMETER_SEARCH};
+         * every term is prefix matched and titles matching the terms are ranked first.
+         */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * Return the search URI for the given terms.
+         */
+        public static Uri buildSearchUri(String query) {
+            return CONTENT_SEARCH_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SEARCH, query)
+                    .build();
+        }
+
+        /**
+         * Looks a product up by ISBN: append an ISBN-10 or ISBN-13, as typed or scanned, with
+         * {@link #buildIsbnUri(String)}. The result has the one matching product, or no rows if
+         * there is none or the text isn't a valid ISBN. Answered from memory once the provider
+         * has loaded its ISBN index.
+         */
+        public static final Uri CONTENT_ISBN_URI = Uri.withAppendedPath(CONTENT_URI, PATH_ISBN);
+
+        /**
+         * Return the lookup URI for the given ISBN.
+         */
+        public static Uri buildIsbnUri(String isbn) {
+            return CONTENT_ISBN_URI.buildUpon()
+                    .appendPath(isbn)
+                    .build();
+        }
+
+        /**
+         * Return the product id of a single-product URI (products/#), or -1 for any other URI.
+         */
+        public static long getProductId(Uri uri) {
+            if (uri == null) {
+                return -1;
+            }
+            List<String> segments = uri.getPathSegments();
+            if (segments.size() != 2 || !PATH_PRODUCTS.equals(segments.get(0))
+                    || !TextUtils.isDigitsOnly(segments.get(1))) {
+                return -1;
+            }
+            return Long.parseLong(segments.get(1));
+        }
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of products.
          */
@@ -30,10 +142,316 @@ public final class BookContract {
         public final static String TABLE_NAME = "products";
         public final static String _ID = BaseColumns._ID;
         public final static String COLUMN_PRODUCT_NAME = "name";
+
+        /**
+         * Price as a whole number of the minor units of {@link #COLUMN_CURRENCY}, e.g. cents, so
+         * 999 is 9.99 US dollars. Before database version 7 prices were whole units.
+         */
         public final static String COLUMN_PRICE = "price";
+
+        /** ISO 4217 code of the price's currency; {@link #DEFAULT_CURRENCY} if not given */
+        public final static String COLUMN_CURRENCY = "currency";
+
         public final static String COLUMN_QUANTITY="quantity";
         public final static String COLUMN_SUPPLIER_NAME="supplier";
         public final static String COLUMN_SUPPLIER_PHONE_NUMBER="phone";
 
+        /**
+         * Id of the product's row in {@link SupplierEntry}. The supplier name and phone number
+         * columns above are read from that row; writing them finds or adds the matching supplier.
+         */
+        public final static String COLUMN_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * ISBN-13 of the book as a number, e.g. 9780306406157, or null. Unique among products.
+         * Inserts and updates may also pass the ISBN-10 or ISBN-13 as text, with or without
+         * hyphens; it is stored normalized, see {@link Isbn}.
+         */
+        public final static String COLUMN_ISBN = "isbn";
+
+        /** Currency of products inserted without one, and of every product from before version 7 */
+        public final static String DEFAULT_CURRENCY = "USD";
+
+    }
+
+    /**
+     * Suppliers, shared by all of their products. Changing a supplier's phone number here changes
+     * it for every product of that supplier.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        private SupplierEntry() {}
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        public final static String TABLE_NAME = "suppliers";
+        public final static String _ID = BaseColumns._ID;
+        public final static String COLUMN_SUPPLIER_NAME = "name";
+        public final static String COLUMN_SUPPLIER_PHONE_NUMBER = "phone";
+    }
+
+    /**
+     * Stores, each with its own products, suppliers and stock movements in a database file of its
+     * own. Every other URI of this contract addresses the {@link #DEFAULT_STORE_ID default store};
+     * {@link #buildStoreUri(long, Uri)} turns it into the same URI for another store, e.g.
+     * stores/2/products. A store's database is created by inserting its {@link #_ID} into
+     * {@link #CONTENT_URI}, or by the first insert into one of its URIs; the other operations
+     * throw an {@link IllegalArgumentException} for a store without a database.
+     *
+     * {@link #CONTENT_URI} lists the ids ({@link #_ID}) of the stores that have a database.
+     */
+    public static final class StoreEntry implements BaseColumns {
+
+        private StoreEntry() {}
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STORES);
+
+        /** Store addressed by the URIs without a store, kept in the original database */
+        public static final long DEFAULT_STORE_ID = 1;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of stores.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STORES;
+
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Return the given URI of this contract for the store with the given id, e.g.
+         * stores/2/products/5 for products/5 and store 2. Query parameters are kept.
+         */
+        public static Uri buildStoreUri(long storeId, Uri uri) {
+            if (storeId <= 0) {
+                throw new IllegalArgumentException("Invalid store id " + storeId);
+            }
+            Uri.Builder builder = CONTENT_URI.buildUpon().appendPath(String.valueOf(storeId));
+            for (String segment : uri.getPathSegments()) {
+                builder.appendPath(segment);
+            }
+            return builder.encodedQuery(uri.getEncodedQuery()).build();
+        }
+
+        /**
+         * Return the URI of the default store that a URI built by {@link #buildStoreUri(long, Uri)}
+         * was built from, e.g. products/5 for stores/2/products/5. Any other URI is returned as is.
+         */
+        public static Uri getDefaultStoreUri(Uri uri) {
+            List<String> segments = uri.getPathSegments();
+            if (segments.size() < 3 || !PATH_STORES.equals(segments.get(0))) {
+                return uri;
+            }
+            Uri.Builder builder = uri.buildUpon().path("");
+            for (String segment : segments.subList(2, segments.size())) {
+                builder.appendPath(segment);
+            }
+            return builder.build();
+        }
+
+        /**
+         * Return the id of the store a URI addresses: the one of a URI built by
+         * {@link #buildStoreUri(long, Uri)}, {@link #DEFAULT_STORE_ID} for any other URI.
+         */
+        public static long getStoreId(Uri uri) {
+            List<String> segments = uri.getPathSegments();
+            if (segments.size() < 3 || !PATH_STORES.equals(segments.get(0))
+                    || !TextUtils.isDigitsOnly(segments.get(1))) {
+                return DEFAULT_STORE_ID;
+            }
+            try {
+                return Long.parseLong(segments.get(1));
+            } catch (NumberFormatException e) {
+                return DEFAULT_STORE_ID;
+            }
+        }
+    }
+
+    /**
+     * Aggregate views of the products, computed by the database. Each URI returns a fixed set of
+     * columns and ignores the projection, selection and sort order passed to the query. The
+     * cursors are notified whenever the products change.
+     */
+    public static final class AnalyticsEntry {
+
+        private AnalyticsEntry() {}
+
+        /**
+         * One row per currency, none without products: {@link BookEntry#COLUMN_CURRENCY},
+         * {@link #COLUMN_PRODUCT_COUNT}, {@link #COLUMN_TOTAL_QUANTITY} and
+         * {@link #COLUMN_TOTAL_VALUE} of the products priced in that currency.
+         */
+        public static final Uri STOCK_VALUE_URI =
+                Uri.withAppendedPath(BASE_CONTENT_URI, PATH_ANALYTICS + "/" + PATH_STOCK_VALUE);
+
+        /**
+         * One row per supplier and currency: {@link BookEntry#COLUMN_SUPPLIER_ID},
+         * {@link BookEntry#COLUMN_SUPPLIER_NAME}, {@link BookEntry#COLUMN_CURRENCY},
+         * {@link #COLUMN_PRODUCT_COUNT}, {@link #COLUMN_TOTAL_QUANTITY} and
+         * {@link #COLUMN_TOTAL_VALUE}, by currency and highest value first.
+         */
+        public static final Uri SUPPLIERS_URI =
+                Uri.withAppendedPath(BASE_CONTENT_URI, PATH_ANALYTICS + "/" + PATH_SUPPLIERS);
+
+        /**
+         * Products with less than {@link #QUERY_PARAMETER_THRESHOLD} copies in stock:
+         * {@link BookEntry#_ID}, {@link BookEntry#COLUMN_PRODUCT_NAME} and
+         * {@link BookEntry#COLUMN_QUANTITY}, lowest stock first.
+         */
+        public static final Uri BELOW_THRESHOLD_URI =
+                Uri.withAppendedPath(BASE_CONTENT_URI, PATH_ANALYTICS + "/" + PATH_BELOW_THRESHOLD);
+
+        /**
+         * The products with the most copies in stock, {@link #QUERY_PARAMETER_LIMIT} of them
+         * ({@link #DEFAULT_TOP_LIMIT} if absent): {@link BookEntry#_ID},
+         * {@link BookEntry#COLUMN_PRODUCT_NAME}, {@link BookEntry#COLUMN_QUANTITY},
+         * {@link BookEntry#COLUMN_CURRENCY} and {@link #COLUMN_TOTAL_VALUE}.
+         */
+        public static final Uri TOP_STOCK_URI =
+                Uri.withAppendedPath(BASE_CONTENT_URI, PATH_ANALYTICS + "/" + PATH_TOP_STOCK);
+
+        /**
+         * One row per store and currency, lowest store id first: {@link StoreEntry#_ID},
+         * {@link BookEntry#COLUMN_CURRENCY}, {@link #COLUMN_PRODUCT_COUNT},
+         * {@link #COLUMN_TOTAL_QUANTITY} and {@link #COLUMN_TOTAL_VALUE}. Stores without products
+         * have no row. The stores are queried in parallel. Notified whenever the products of any
+         * store change.
+         */
+        public static final Uri STORES_URI =
+                Uri.withAppendedPath(BASE_CONTENT_URI, PATH_ANALYTICS + "/" + PATH_STORES);
+
+        /** Query parameter with the reorder threshold for {@link #BELOW_THRESHOLD_URI} */
+        public static final String QUERY_PARAMETER_THRESHOLD = "threshold";
+
+        /** Number of products returned by {@link #TOP_STOCK_URI} without a limit */
+        public static final int DEFAULT_TOP_LIMIT = 10;
+
+        /**
+         * The MIME type of the analytics URIs.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ANALYTICS;
+
+        public final static String COLUMN_PRODUCT_COUNT = "product_count";
+        public final static String COLUMN_TOTAL_QUANTITY = "total_quantity";
+        public final static String COLUMN_TOTAL_VALUE = "total_value";
+
+        /**
+         * Return the below-threshold URI for the given reorder threshold.
+         */
+        public static Uri buildBelowThresholdUri(int threshold) {
+            return BELOW_THRESHOLD_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_THRESHOLD, String.valueOf(threshold))
+                    .build();
+        }
+
+        /**
+         * Return the top-stock URI for the given number of products.
+         */
+        public static Uri buildTopStockUri(int limit) {
+            return TOP_STOCK_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+    }
+
+    /**
+     * Stock movements: one row for every change in a product's quantity, from a sale or from an
+     * update setting the quantity. Rows are read only, ordered by {@link #COLUMN_TIMESTAMP} and
+     * then {@link #_ID}, and kept when their product is deleted. Narrow a query down with
+     * {@link #buildTimeRangeUri} and page through it with {@link #QUERY_PARAMETER_LIMIT} and
+     * {@link #buildNextPageUri}. The cursors are notified whenever the products change.
+     */
+    public static final class MovementEntry implements BaseColumns {
+
+        private MovementEntry() {}
+
+        /** Movements of every product */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_MOVEMENTS);
+
+        /** Query parameter with the first time included, in milliseconds since the epoch */
+        public static final String QUERY_PARAMETER_FROM = "from";
+
+        /** Query parameter with the first time no longer included, in milliseconds since the epoch */
+        public static final String QUERY_PARAMETER_TO = "to";
+
+        /** Query parameters with the timestamp and id of the last row of the previous page */
+        public static final String QUERY_PARAMETER_AFTER_TIMESTAMP = "after_timestamp";
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        /**
+         * The MIME type of the movement URIs.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_MOVEMENTS;
+
+        public final static String TABLE_NAME = "stock_movements";
+        public final static String _ID = BaseColumns._ID;
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+
+        /** Change in quantity, negative when copies left the store */
+        public final static String COLUMN_DELTA = "delta";
+
+        /** One of the REASON constants */
+        public final static String COLUMN_REASON = "reason";
+
+        /** Time of the change, in milliseconds since the epoch */
+        public final static String COLUMN_TIMESTAMP = "timestamp";
+
+        /** The quantity was set, e.g. in the editor or by a restock */
+        public static final int REASON_ADJUSTMENT = 0;
+
+        /** Copies were sold with {@link BookContract#METHOD_SELL} */
+        public static final int REASON_SALE = 1;
+
+        /**
+         * Return the URI of the movements of one product.
+         */
+        public static Uri buildProductMovementsUri(long productId) {
+            return BookEntry.CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(productId))
+                    .appendPath(PATH_MOVEMENTS)
+                    .build();
+        }
+
+        /**
+         * Return the given movements URI restricted to the times from fromMillis (included) to
+         * toMillis (excluded).
+         */
+        public static Uri buildTimeRangeUri(Uri uri, long fromMillis, long toMillis) {
+            return uri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_FROM, String.valueOf(fromMillis))
+                    .appendQueryParameter(QUERY_PARAMETER_TO, String.valueOf(toMillis))
+                    .build();
+        }
+
+        /**
+         * Return the given movements URI for the page after the row with the given timestamp and
+         * id, the last row of the current page. Unlike an offset, this stays fast deep into the
+         * history.
+         */
+        public static Uri buildNextPageUri(Uri uri, long lastTimestamp, long lastId) {
+            Uri.Builder builder = uri.buildUpon().clearQuery();
+            for (String name : uri.getQueryParameterNames()) {
+                if (!QUERY_PARAMETER_AFTER_TIMESTAMP.equals(name) && !QUERY_PARAMETER_AFTER_ID.equals(name)) {
+                    builder.appendQueryParameter(name, uri.getQueryParameter(name));
+                }
+            }
+            return builder
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_TIMESTAMP, String.valueOf(lastTimestamp))
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(lastId))
+                    .build();
+        }
     }
 }
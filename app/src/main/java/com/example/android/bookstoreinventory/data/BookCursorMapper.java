@@ -0,0 +1,100 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.database.Cursor;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+/**
+ * Reads products out of one cursor. The column indices are resolved once, when the mapper is
+ * created, instead of by name for every row. The id, name, price and quantity columns are
+ * required. The supplier columns may be left out of the projection and are then read as null;
+ * a missing currency is read as {@link BookEntry#DEFAULT_CURRENCY} and a missing ISBN as
+ * {@link Book#NO_ISBN}.
+ *
+ * {@link #read()} copies the current row into a {@link Book}; {@link #fill} copies the following
+ * rows straight into arrays, one per column, without creating any objects besides the
+ * names and currency codes.
+ */
+public final class BookCursorMapper {
+
+    private final Cursor mCursor;
+    private final int mIdIndex;
+    private final int mNameIndex;
+    private final int mIsbnIndex;
+    private final int mPriceIndex;
+    private final int mCurrencyIndex;
+    private final int mQuantityIndex;
+    private final int mSupplierNameIndex;
+    private final int mSupplierPhoneNumberIndex;
+
+    /**
+     * @throws IllegalArgumentException if a required column is missing from the cursor
+     */
+    public BookCursorMapper(Cursor cursor) {
+        mCursor = cursor;
+        mIdIndex = cursor.getColumnIndexOrThrow(BookEntry._ID);
+        mNameIndex = cursor.getColumnIndexOrThrow(BookEntry.COLUMN_PRODUCT_NAME);
+        mIsbnIndex = cursor.getColumnIndex(BookEntry.COLUMN_ISBN);
+        mPriceIndex = cursor.getColumnIndexOrThrow(BookEntry.COLUMN_PRICE);
+        mCurrencyIndex = cursor.getColumnIndex(BookEntry.COLUMN_CURRENCY);
+        mQuantityIndex = cursor.getColumnIndexOrThrow(BookEntry.COLUMN_QUANTITY);
+        mSupplierNameIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_NAME);
+        mSupplierPhoneNumberIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+    }
+
+    /**
+     * Read the book at the cursor's current position.
+     */
+    public Book read() {
+        return new Book(
+                mCursor.getLong(mIdIndex),
+                mCursor.getString(mNameIndex),
+                // A null ISBN reads as 0, which is NO_ISBN
+                mIsbnIndex != -1 ? mCursor.getLong(mIsbnIndex) : Book.NO_ISBN,
+                mCursor.getLong(mPriceIndex),
+                readCurrency(),
+                mCursor.getInt(mQuantityIndex),
+                mSupplierNameIndex != -1 ? mCursor.getString(mSupplierNameIndex) : null,
+                mSupplierPhoneNumberIndex != -1 ? mCursor.getString(mSupplierPhoneNumberIndex) : null);
+    }
+
+    /**
+     * Copy the rows after the cursor's current position into the arrays, starting at the given
+     * offset, until the arrays are full or the cursor is exhausted. A null array skips its column.
+     * The cursor is left on the last row copied. Return the number of rows copied.
+     */
+    public int fill(long[] ids, String[] names, long[] prices, String[] currencies, int[] quantities,
+                    int offset) {
+        int capacity = Integer.MAX_VALUE;
+        capacity = Math.min(capacity, ids != null ? ids.length : capacity);
+        capacity = Math.min(capacity, names != null ? names.length : capacity);
+        capacity = Math.min(capacity, prices != null ? prices.length : capacity);
+        capacity = Math.min(capacity, currencies != null ? currencies.length : capacity);
+        capacity = Math.min(capacity, quantities != null ? quantities.length : capacity);
+
+        int row = offset;
+        while (row < capacity && mCursor.moveToNext()) {
+            if (ids != null) {
+                ids[row] = mCursor.getLong(mIdIndex);
+            }
+            if (names != null) {
+                names[row] = mCursor.getString(mNameIndex);
+            }
+            if (prices != null) {
+                prices[row] = mCursor.getLong(mPriceIndex);
+            }
+            if (currencies != null) {
+                currencies[row] = readCurrency();
+            }
+            if (quantities != null) {
+                quantities[row] = mCursor.getInt(mQuantityIndex);
+            }
+            row++;
+        }
+        return row - offset;
+    }
+
+    private String readCurrency() {
+        return mCurrencyIndex != -1 ? mCursor.getString(mCurrencyIndex) : BookEntry.DEFAULT_CURRENCY;
+    }
+}
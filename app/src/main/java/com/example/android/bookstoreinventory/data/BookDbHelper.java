@@ -1,25 +1,134 @@
 package com.example.android.bookstoreinventory.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
 
 public class BookDbHelper extends SQLiteOpenHelper {
 
-    /** Name of the database file */
+    /** Name of the database file of the default store */
     private static final String DATABASE_NAME="inventory.db";
 
-    /** Database version. If you change the database schema, you have to change the database version */
-    private static final int DATABASE_VERSION=1;
+    /** Database files of the other stores are named store-<id>.db */
+    private static final String STORE_DATABASE_PREFIX = "store-";
+    private static final String STORE_DATABASE_SUFFIX = ".db";
+
+    /**
+     * Database version. If you change the database schema, you have to change the database version
+     * and add a migration to {@link BookMigrations}
+     */
+    static final int DATABASE_VERSION=8;
+
+    /**
+     * Pages kept in the page cache of the writing connection. Imports and bulk deletes touch
+     * many pages, so this is larger than SQLite's default of 2000.
+     */
+    private static final int CACHE_SIZE_PAGES = 4000;
+
+    /** Whether the database uses write-ahead logging instead of a rollback journal */
+    private final boolean mWriteAheadLogging;
 
     public BookDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Return the name of the database file of the store with the given id, see
+     * {@link BookContract.StoreEntry}.
+     */
+    static String getDatabaseName(long storeId) {
+        if (storeId == BookContract.StoreEntry.DEFAULT_STORE_ID) {
+            return DATABASE_NAME;
+        }
+        return STORE_DATABASE_PREFIX + storeId + STORE_DATABASE_SUFFIX;
+    }
+
+    /**
+     * Return the id of the store whose database file has the given name, or -1 if it isn't the
+     * database of a store.
+     */
+    static long getStoreId(String databaseName) {
+        if (DATABASE_NAME.equals(databaseName)) {
+            return BookContract.StoreEntry.DEFAULT_STORE_ID;
+        }
+        if (!databaseName.startsWith(STORE_DATABASE_PREFIX) || !databaseName.endsWith(STORE_DATABASE_SUFFIX)) {
+            return -1;
+        }
+        String id = databaseName.substring(STORE_DATABASE_PREFIX.length(),
+                databaseName.length() - STORE_DATABASE_SUFFIX.length());
+        try {
+            long storeId = Long.parseLong(id);
+            return storeId > BookContract.StoreEntry.DEFAULT_STORE_ID && id.equals(String.valueOf(storeId)) ? storeId : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Open the database with the given file name instead of the default one.
+     */
+    public BookDbHelper(Context context, String name) {
+        this(context, name, true);
+    }
+
+    /**
+     * Open the database with the given file name. With write-ahead logging, readers such as the
+     * catalog loader keep their own connections and are not blocked while an import or a bulk
+     * delete is writing. Pass false to fall back to the rollback journal, e.g. to compare the two
+     * modes in tests.
+     */
+    public BookDbHelper(Context context, String name, boolean writeAheadLogging) {
+        super(context, name, null, DATABASE_VERSION);
+        mWriteAheadLogging = writeAheadLogging;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(writeAheadLogging);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        configure(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // onConfigure() isn't called before Jelly Bean, so set the database up here instead
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            if (mWriteAheadLogging && !db.isReadOnly()) {
+                db.enableWriteAheadLogging();
+            }
+            configure(db);
+        }
+    }
+
+    /**
+     * Tune the connection. In WAL mode a commit only needs the log to be synced at checkpoints,
+     * so NORMAL is still safe against corruption; the rollback journal keeps the default FULL.
+     * Foreign keys are enforced so that a supplier can't be deleted while products refer to it.
+     */
+    private void configure(SQLiteDatabase db) {
+        if (mWriteAheadLogging) {
+            db.execSQL("PRAGMA synchronous = NORMAL");
+        }
+        db.execSQL("PRAGMA cache_size = " + CACHE_SIZE_PAGES);
+        db.execSQL("PRAGMA foreign_keys = ON");
+    }
+
+    /**
+     * Return true if the database uses write-ahead logging.
+     */
+    public boolean isWriteAheadLoggingEnabled() {
+        return mWriteAheadLogging;
     }
 
     public void onCreate(SQLiteDatabase db) {
-        /** Create table books */
+        /** Create table books with the version 1 schema */
         String SQL_CREATE_BOOK_TABLE =  "CREATE TABLE " + BookEntry.TABLE_NAME + " ("
                 + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + BookEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
@@ -29,12 +138,20 @@ public class BookDbHelper extends SQLiteOpenHelper {
                 + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " TEXT NOT NULL);";
 
         db.execSQL(SQL_CREATE_BOOK_TABLE);
+
+        /** Bring the new database up to the current version */
+        BookMigrations.migrate(db, 1, DATABASE_VERSION);
     }
 
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        BookMigrations.migrate(db, oldVersion, newVersion);
     }
 
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        onUpgrade(db, oldVersion, newVersion);
+        // The database was written by a newer version of the app, whose schema this one doesn't
+        // know. Migrations only go forward, and dropping the tables would throw the inventory
+        // away, so refuse to open it; reinstalling the newer version gets the data back.
+        throw new SQLiteException("Can't downgrade database from version " + oldVersion + " to "
+                + newVersion);
     }
 }
@@ -0,0 +1,331 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.MovementEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+/**
+ * Ordered list of schema migrations. A fresh database is created with the version 1 schema and
+ * then brought up to date by the same steps as an existing one, so there is a single schema history.
+ *
+ * To change the schema, append a new {@link Migration} starting at the current last version and
+ * bump {@link BookDbHelper}'s DATABASE_VERSION. Never edit a migration that has been released.
+ */
+final class BookMigrations {
+
+    private BookMigrations() {}
+
+    /** Index used by catalog search on the product name */
+    static final String INDEX_PRODUCT_NAME = "index_products_name";
+
+    /** Index used when grouping products by supplier (supplier_id from version 4) */
+    static final String INDEX_PRODUCT_SUPPLIER = "index_products_supplier";
+
+    /** Index used by low-stock queries */
+    static final String INDEX_PRODUCT_QUANTITY = "index_products_quantity";
+
+    /** Version 1 -> 2: index the columns used by search, supplier grouping and low-stock queries */
+    private static final Migration MIGRATION_1_2 = new Migration(1) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCT_NAME + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_PRODUCT_NAME + ")");
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCT_SUPPLIER + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_SUPPLIER_NAME + ")");
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCT_QUANTITY + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_QUANTITY + ")");
+        }
+    };
+
+    /** Full-text index over product names and suppliers, keyed by docid = products._id */
+    static final String TABLE_PRODUCTS_FTS = "products_fts";
+
+    /** Version 2 -> 3: full-text search table over name and supplier, kept in sync by triggers */
+    private static final Migration MIGRATION_2_3 = new Migration(2) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_PRODUCTS_FTS + " USING fts4("
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME + ")");
+            db.execSQL("INSERT INTO " + TABLE_PRODUCTS_FTS + " (docid, "
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME + ") SELECT "
+                    + BookEntry._ID + ", " + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                    + BookEntry.COLUMN_SUPPLIER_NAME + " FROM " + BookEntry.TABLE_NAME);
+
+            db.execSQL("CREATE TRIGGER products_fts_insert AFTER INSERT ON " + BookEntry.TABLE_NAME
+                    + " BEGIN INSERT INTO " + TABLE_PRODUCTS_FTS + " (docid, "
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME + ") VALUES (new."
+                    + BookEntry._ID + ", new." + BookEntry.COLUMN_PRODUCT_NAME + ", new."
+                    + BookEntry.COLUMN_SUPPLIER_NAME + "); END");
+            db.execSQL("CREATE TRIGGER products_fts_update AFTER UPDATE OF "
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME
+                    + " ON " + BookEntry.TABLE_NAME
+                    + " BEGIN UPDATE " + TABLE_PRODUCTS_FTS + " SET "
+                    + BookEntry.COLUMN_PRODUCT_NAME + " = new." + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                    + BookEntry.COLUMN_SUPPLIER_NAME + " = new." + BookEntry.COLUMN_SUPPLIER_NAME
+                    + " WHERE docid = old." + BookEntry._ID + "; END");
+            db.execSQL("CREATE TRIGGER products_fts_delete AFTER DELETE ON " + BookEntry.TABLE_NAME
+                    + " BEGIN DELETE FROM " + TABLE_PRODUCTS_FTS
+                    + " WHERE docid = old." + BookEntry._ID + "; END");
+        }
+    };
+
+    /**
+     * Products joined with their supplier, exposing the columns of {@link BookEntry} under their
+     * original names. Reads go through this view; writes go to the products table.
+     */
+    static final String VIEW_PRODUCTS = "products_with_supplier";
+
+    /** Supplier name of a product in the products table, for the full-text triggers */
+    private static final String SUPPLIER_NAME_OF_NEW_PRODUCT = "(SELECT "
+            + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + SupplierEntry.TABLE_NAME + " WHERE "
+            + SupplierEntry._ID + " = new." + BookEntry.COLUMN_SUPPLIER_ID + ")";
+
+    /**
+     * Version 3 -> 4: move supplier names and phone numbers into a suppliers table with one row
+     * per distinct (name, phone) pair, referenced by products.supplier_id. SQLite can't drop
+     * columns, so the products table is rebuilt with the same ids.
+     */
+    private static final Migration MIGRATION_3_4 = new Migration(3) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                    + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+                    + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " TEXT NOT NULL, "
+                    + "UNIQUE (" + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+                    + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + "))");
+            db.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " ("
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                    + ") SELECT DISTINCT " + BookEntry.COLUMN_SUPPLIER_NAME + ", "
+                    + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " FROM " + BookEntry.TABLE_NAME);
+
+            db.execSQL("CREATE TABLE products_new ("
+                    + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + BookEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                    + BookEntry.COLUMN_PRICE + " INTEGER NOT NULL DEFAULT 0, "
+                    + BookEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                    + BookEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                    + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "))");
+            // The lookup is answered from the suppliers' unique (name, phone) index
+            db.execSQL("INSERT INTO products_new (" + BookEntry._ID + ", " + BookEntry.COLUMN_PRODUCT_NAME
+                    + ", " + BookEntry.COLUMN_PRICE + ", " + BookEntry.COLUMN_QUANTITY + ", "
+                    + BookEntry.COLUMN_SUPPLIER_ID + ") SELECT p." + BookEntry._ID + ", p."
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", p." + BookEntry.COLUMN_PRICE + ", p."
+                    + BookEntry.COLUMN_QUANTITY + ", s." + SupplierEntry._ID + " FROM "
+                    + BookEntry.TABLE_NAME + " p JOIN " + SupplierEntry.TABLE_NAME + " s ON s."
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " = p." + BookEntry.COLUMN_SUPPLIER_NAME
+                    + " AND s." + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " = p."
+                    + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+            // Keep the AUTOINCREMENT counter, so ids of deleted products are never reused
+            db.execSQL("DELETE FROM sqlite_sequence WHERE name = 'products_new'");
+            db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT 'products_new', seq"
+                    + " FROM sqlite_sequence WHERE name = '" + BookEntry.TABLE_NAME + "'");
+
+            // Also drops the old indexes and full-text triggers
+            db.execSQL("DROP TABLE " + BookEntry.TABLE_NAME);
+            db.execSQL("ALTER TABLE products_new RENAME TO " + BookEntry.TABLE_NAME);
+
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCT_NAME + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_PRODUCT_NAME + ")");
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCT_SUPPLIER + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_SUPPLIER_ID + ")");
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCT_QUANTITY + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_QUANTITY + ")");
+
+            // The full-text table keeps the supplier name; its docids are unchanged
+            db.execSQL("CREATE TRIGGER products_fts_insert AFTER INSERT ON " + BookEntry.TABLE_NAME
+                    + " BEGIN INSERT INTO " + TABLE_PRODUCTS_FTS + " (docid, "
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_NAME + ") VALUES (new."
+                    + BookEntry._ID + ", new." + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                    + SUPPLIER_NAME_OF_NEW_PRODUCT + "); END");
+            db.execSQL("CREATE TRIGGER products_fts_update AFTER UPDATE OF "
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_ID
+                    + " ON " + BookEntry.TABLE_NAME
+                    + " BEGIN UPDATE " + TABLE_PRODUCTS_FTS + " SET "
+                    + BookEntry.COLUMN_PRODUCT_NAME + " = new." + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                    + BookEntry.COLUMN_SUPPLIER_NAME + " = " + SUPPLIER_NAME_OF_NEW_PRODUCT
+                    + " WHERE docid = old." + BookEntry._ID + "; END");
+            db.execSQL("CREATE TRIGGER products_fts_delete AFTER DELETE ON " + BookEntry.TABLE_NAME
+                    + " BEGIN DELETE FROM " + TABLE_PRODUCTS_FTS
+                    + " WHERE docid = old." + BookEntry._ID + "; END");
+            db.execSQL("CREATE TRIGGER suppliers_fts_update AFTER UPDATE OF "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME
+                    + " BEGIN UPDATE " + TABLE_PRODUCTS_FTS + " SET " + BookEntry.COLUMN_SUPPLIER_NAME
+                    + " = new." + SupplierEntry.COLUMN_SUPPLIER_NAME + " WHERE docid IN (SELECT "
+                    + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME + " WHERE "
+                    + BookEntry.COLUMN_SUPPLIER_ID + " = new." + SupplierEntry._ID + "); END");
+
+            db.execSQL("CREATE VIEW " + VIEW_PRODUCTS + " AS SELECT p." + BookEntry._ID + " AS "
+                    + BookEntry._ID + ", p." + BookEntry.COLUMN_PRODUCT_NAME + " AS "
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", p." + BookEntry.COLUMN_PRICE + " AS "
+                    + BookEntry.COLUMN_PRICE + ", p." + BookEntry.COLUMN_QUANTITY + " AS "
+                    + BookEntry.COLUMN_QUANTITY + ", p." + BookEntry.COLUMN_SUPPLIER_ID + " AS "
+                    + BookEntry.COLUMN_SUPPLIER_ID + ", s." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS "
+                    + BookEntry.COLUMN_SUPPLIER_NAME + ", s." + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                    + " AS " + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " FROM " + BookEntry.TABLE_NAME
+                    + " p JOIN " + SupplierEntry.TABLE_NAME + " s ON s." + SupplierEntry._ID + " = p."
+                    + BookEntry.COLUMN_SUPPLIER_ID);
+        }
+    };
+
+    /**
+     * Version 4 -> 5: sales journal (see {@link SaleJournal}). The product view now adds the
+     * pending sales to the stored quantity.
+     */
+    private static final Migration MIGRATION_4_5 = new Migration(4) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + SaleJournal.TABLE_NAME + " ("
+                    + SaleJournal._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + SaleJournal.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                    + SaleJournal.COLUMN_DELTA + " INTEGER NOT NULL, "
+                    + SaleJournal.COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                    + SaleJournal.COLUMN_COMPACTED + " INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("CREATE INDEX " + SaleJournal.INDEX_PENDING + " ON " + SaleJournal.TABLE_NAME
+                    + " (" + SaleJournal.COLUMN_COMPACTED + ", " + SaleJournal.COLUMN_PRODUCT_ID + ")");
+
+            // The cast gives the quantity integer affinity, so it still compares numerically with
+            // selection arguments, which are bound as text
+            db.execSQL("DROP VIEW " + VIEW_PRODUCTS);
+            db.execSQL("CREATE VIEW " + VIEW_PRODUCTS + " AS SELECT p." + BookEntry._ID + " AS "
+                    + BookEntry._ID + ", p." + BookEntry.COLUMN_PRODUCT_NAME + " AS "
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", p." + BookEntry.COLUMN_PRICE + " AS "
+                    + BookEntry.COLUMN_PRICE + ", CAST(p." + BookEntry.COLUMN_QUANTITY + " + "
+                    + SaleJournal.PENDING_DELTA + " AS INTEGER) AS " + BookEntry.COLUMN_QUANTITY + ", p."
+                    + BookEntry.COLUMN_SUPPLIER_ID + " AS " + BookEntry.COLUMN_SUPPLIER_ID + ", s."
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_SUPPLIER_NAME + ", s."
+                    + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " AS "
+                    + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " FROM " + BookEntry.TABLE_NAME
+                    + " p JOIN " + SupplierEntry.TABLE_NAME + " s ON s." + SupplierEntry._ID + " = p."
+                    + BookEntry.COLUMN_SUPPLIER_ID);
+        }
+    };
+
+    /** Index used to read the movements of one product over a time range */
+    static final String INDEX_MOVEMENT_PRODUCT_TIME = "index_movements_product_time";
+
+    /** Index used to read the movements of every product over a time range */
+    static final String INDEX_MOVEMENT_TIME = "index_movements_time";
+
+    /**
+     * Version 5 -> 6: stock movement history. Adjustments are written by {@link BookProvider};
+     * sales are copied from the sales journal by a trigger, starting with those already recorded.
+     */
+    private static final Migration MIGRATION_5_6 = new Migration(5) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + MovementEntry.TABLE_NAME + " ("
+                    + MovementEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + MovementEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_REASON + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_TIMESTAMP + " INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX " + INDEX_MOVEMENT_PRODUCT_TIME + " ON " + MovementEntry.TABLE_NAME
+                    + " (" + MovementEntry.COLUMN_PRODUCT_ID + ", " + MovementEntry.COLUMN_TIMESTAMP + ")");
+            db.execSQL("CREATE INDEX " + INDEX_MOVEMENT_TIME + " ON " + MovementEntry.TABLE_NAME
+                    + " (" + MovementEntry.COLUMN_TIMESTAMP + ")");
+
+            db.execSQL("INSERT INTO " + MovementEntry.TABLE_NAME + " (" + MovementEntry.COLUMN_PRODUCT_ID
+                    + ", " + MovementEntry.COLUMN_DELTA + ", " + MovementEntry.COLUMN_REASON + ", "
+                    + MovementEntry.COLUMN_TIMESTAMP + ") SELECT " + SaleJournal.COLUMN_PRODUCT_ID + ", "
+                    + SaleJournal.COLUMN_DELTA + ", " + MovementEntry.REASON_SALE + ", "
+                    + SaleJournal.COLUMN_TIMESTAMP + " FROM " + SaleJournal.TABLE_NAME
+                    + " ORDER BY " + SaleJournal._ID);
+            db.execSQL("CREATE TRIGGER sales_movement_insert AFTER INSERT ON " + SaleJournal.TABLE_NAME
+                    + " BEGIN INSERT INTO " + MovementEntry.TABLE_NAME + " (" + MovementEntry.COLUMN_PRODUCT_ID
+                    + ", " + MovementEntry.COLUMN_DELTA + ", " + MovementEntry.COLUMN_REASON + ", "
+                    + MovementEntry.COLUMN_TIMESTAMP + ") VALUES (new." + SaleJournal.COLUMN_PRODUCT_ID
+                    + ", new." + SaleJournal.COLUMN_DELTA + ", " + MovementEntry.REASON_SALE + ", new."
+                    + SaleJournal.COLUMN_TIMESTAMP + "); END");
+        }
+    };
+
+    /**
+     * Version 6 -> 7: prices in minor units with a currency. Existing prices were whole units of
+     * {@link BookEntry#DEFAULT_CURRENCY}, which has two fraction digits. The product view exposes
+     * the currency.
+     */
+    private static final Migration MIGRATION_6_7 = new Migration(6) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + BookEntry.COLUMN_CURRENCY
+                    + " TEXT NOT NULL DEFAULT '" + BookEntry.DEFAULT_CURRENCY + "'");
+            db.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET " + BookEntry.COLUMN_PRICE + " = "
+                    + BookEntry.COLUMN_PRICE + " * 100");
+
+            db.execSQL("DROP VIEW " + VIEW_PRODUCTS);
+            db.execSQL("CREATE VIEW " + VIEW_PRODUCTS + " AS SELECT p." + BookEntry._ID + " AS "
+                    + BookEntry._ID + ", p." + BookEntry.COLUMN_PRODUCT_NAME + " AS "
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", p." + BookEntry.COLUMN_PRICE + " AS "
+                    + BookEntry.COLUMN_PRICE + ", p." + BookEntry.COLUMN_CURRENCY + " AS "
+                    + BookEntry.COLUMN_CURRENCY + ", CAST(p." + BookEntry.COLUMN_QUANTITY + " + "
+                    + SaleJournal.PENDING_DELTA + " AS INTEGER) AS " + BookEntry.COLUMN_QUANTITY + ", p."
+                    + BookEntry.COLUMN_SUPPLIER_ID + " AS " + BookEntry.COLUMN_SUPPLIER_ID + ", s."
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_SUPPLIER_NAME + ", s."
+                    + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " AS "
+                    + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " FROM " + BookEntry.TABLE_NAME
+                    + " p JOIN " + SupplierEntry.TABLE_NAME + " s ON s." + SupplierEntry._ID + " = p."
+                    + BookEntry.COLUMN_SUPPLIER_ID);
+        }
+    };
+
+    /** Unique index on the ISBNs; products without one don't conflict, as nulls are distinct */
+    static final String INDEX_PRODUCT_ISBN = "index_products_isbn";
+
+    /**
+     * Version 7 -> 8: ISBNs. Existing products have none. The product view exposes the ISBN.
+     */
+    private static final Migration MIGRATION_7_8 = new Migration(7) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + BookEntry.COLUMN_ISBN
+                    + " INTEGER");
+            db.execSQL("CREATE UNIQUE INDEX " + INDEX_PRODUCT_ISBN + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_ISBN + ")");
+
+            db.execSQL("DROP VIEW " + VIEW_PRODUCTS);
+            db.execSQL("CREATE VIEW " + VIEW_PRODUCTS + " AS SELECT p." + BookEntry._ID + " AS "
+                    + BookEntry._ID + ", p." + BookEntry.COLUMN_PRODUCT_NAME + " AS "
+                    + BookEntry.COLUMN_PRODUCT_NAME + ", p." + BookEntry.COLUMN_ISBN + " AS "
+                    + BookEntry.COLUMN_ISBN + ", p." + BookEntry.COLUMN_PRICE + " AS "
+                    + BookEntry.COLUMN_PRICE + ", p." + BookEntry.COLUMN_CURRENCY + " AS "
+                    + BookEntry.COLUMN_CURRENCY + ", CAST(p." + BookEntry.COLUMN_QUANTITY + " + "
+                    + SaleJournal.PENDING_DELTA + " AS INTEGER) AS " + BookEntry.COLUMN_QUANTITY + ", p."
+                    + BookEntry.COLUMN_SUPPLIER_ID + " AS " + BookEntry.COLUMN_SUPPLIER_ID + ", s."
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_SUPPLIER_NAME + ", s."
+                    + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " AS "
+                    + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " FROM " + BookEntry.TABLE_NAME
+                    + " p JOIN " + SupplierEntry.TABLE_NAME + " s ON s." + SupplierEntry._ID + " = p."
+                    + BookEntry.COLUMN_SUPPLIER_ID);
+        }
+    };
+
+    /** All migrations; the migration at index i starts at version i + 1 */
+    static final Migration[] MIGRATIONS = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+    };
+
+    /**
+     * Run every migration needed to go from oldVersion to newVersion, in order.
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion > newVersion) {
+            throw new IllegalArgumentException("No migration from database version " + oldVersion
+                    + " down to " + newVersion);
+        }
+        for (int version = oldVersion; version < newVersion; version++) {
+            if (version - 1 >= MIGRATIONS.length || MIGRATIONS[version - 1].startVersion != version) {
+                throw new IllegalStateException("No migration from database version " + version);
+            }
+            MIGRATIONS[version - 1].migrate(db);
+        }
+    }
+}
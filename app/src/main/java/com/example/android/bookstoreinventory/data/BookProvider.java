@@ -1,15 +1,44 @@
 package com.example.android.bookstoreinventory.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.example.android.bookstoreinventory.data.BookContract.AnalyticsEntry;
 import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.MovementEntry;
+import com.example.android.bookstoreinventory.data.BookContract.StoreEntry;
+import com.example.android.bookstoreinventory.data.BookContract.SupplierEntry;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * {@link ContentProvider} for Book Store app.
@@ -17,8 +46,8 @@ import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
 
 public class BookProvider extends ContentProvider {
 
-    /** Database helper object */
-    private BookDbHelper mDbHelper;
+    /** Open store databases; the URIs without a store address the default one */
+    private StorePool mStores;
 
     /** Tag for the log messages */
     public static final String LOG_TAG = BookProvider.class.getSimpleName();
@@ -29,6 +58,173 @@ public class BookProvider extends ContentProvider {
     /** URI matcher code for the content URI for a single product in the products table */
     private static final int PRODUCT_ID = 101;
 
+    /** URI matcher code for the full-text search URI over the products table */
+    private static final int PRODUCT_SEARCH = 102;
+
+    /** URI matcher code for the lookup of a single product by ISBN */
+    private static final int PRODUCT_ISBN = 103;
+
+    /** URI matcher code for the content URI for the suppliers table */
+    private static final int SUPPLIERS = 300;
+
+    /** URI matcher code for the content URI for a single supplier */
+    private static final int SUPPLIER_ID = 301;
+
+    /** URI matcher code for the stock movements of every product */
+    private static final int MOVEMENTS = 400;
+
+    /** URI matcher code for the stock movements of a single product */
+    private static final int PRODUCT_MOVEMENTS = 401;
+
+    /** URI matcher codes for the aggregate views, see {@link BookContract.AnalyticsEntry} */
+    private static final int ANALYTICS_STOCK_VALUE = 200;
+    private static final int ANALYTICS_SUPPLIERS = 201;
+    private static final int ANALYTICS_BELOW_THRESHOLD = 202;
+    private static final int ANALYTICS_TOP_STOCK = 203;
+
+    /** URI matcher code for the stock value of every store, see {@link AnalyticsEntry#STORES_URI} */
+    private static final int ANALYTICS_STORES = 204;
+
+    /** URI matcher code for the list of stores */
+    private static final int STORES = 500;
+
+    /** Most stores queried at the same time by a query across stores */
+    private static final int MAX_PARALLEL_STORES = 4;
+
+    /**
+     * Stock value of a product, price times quantity, in minor units of its currency. Values are
+     * only added up per currency.
+     */
+    private static final String VALUE = BookEntry.COLUMN_PRICE + " * " + BookEntry.COLUMN_QUANTITY;
+
+    private static final String[] STORES_STOCK_VALUE_COLUMNS = {
+            StoreEntry._ID,
+            BookEntry.COLUMN_CURRENCY,
+            AnalyticsEntry.COLUMN_PRODUCT_COUNT,
+            AnalyticsEntry.COLUMN_TOTAL_QUANTITY,
+            AnalyticsEntry.COLUMN_TOTAL_VALUE };
+
+    private static final String[] STOCK_VALUE_COLUMNS = {
+            BookEntry.COLUMN_CURRENCY,
+            "COUNT(*) AS " + AnalyticsEntry.COLUMN_PRODUCT_COUNT,
+            "SUM(" + BookEntry.COLUMN_QUANTITY + ") AS " + AnalyticsEntry.COLUMN_TOTAL_QUANTITY,
+            "SUM(" + VALUE + ") AS " + AnalyticsEntry.COLUMN_TOTAL_VALUE };
+
+    private static final String[] SUPPLIERS_COLUMNS = {
+            BookEntry.COLUMN_SUPPLIER_ID,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_CURRENCY,
+            "COUNT(*) AS " + AnalyticsEntry.COLUMN_PRODUCT_COUNT,
+            "SUM(" + BookEntry.COLUMN_QUANTITY + ") AS " + AnalyticsEntry.COLUMN_TOTAL_QUANTITY,
+            "SUM(" + VALUE + ") AS " + AnalyticsEntry.COLUMN_TOTAL_VALUE };
+
+    private static final String[] BELOW_THRESHOLD_COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_QUANTITY };
+
+    private static final String[] TOP_STOCK_COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_CURRENCY,
+            VALUE + " AS " + AnalyticsEntry.COLUMN_TOTAL_VALUE };
+
+    /** Tables joined by a search: products rows matched through the full-text index */
+    private static final String SEARCH_TABLES = BookMigrations.VIEW_PRODUCTS + " JOIN "
+            + BookMigrations.TABLE_PRODUCTS_FTS + " ON " + BookMigrations.VIEW_PRODUCTS + "." + BookEntry._ID
+            + " = " + BookMigrations.TABLE_PRODUCTS_FTS + ".docid";
+
+    /**
+     * Search ranking: titles starting with the query first, then titles containing every term,
+     * then the remaining (supplier) matches, each group ordered by title.
+     */
+    private static final String SEARCH_ORDER = "(" + BookMigrations.VIEW_PRODUCTS + "."
+            + BookEntry.COLUMN_PRODUCT_NAME + " LIKE ?) DESC, (" + BookMigrations.VIEW_PRODUCTS + "."
+            + BookEntry._ID + " IN (SELECT docid FROM " + BookMigrations.TABLE_PRODUCTS_FTS + " WHERE "
+            + BookMigrations.TABLE_PRODUCTS_FTS + " MATCH ?)) DESC, " + BookMigrations.VIEW_PRODUCTS + "."
+            + BookEntry.COLUMN_PRODUCT_NAME;
+
+    /** Maps product columns onto the product view side of the search join */
+    private static final Map<String, String> sSearchProjectionMap = new HashMap<>();
+
+    /**
+     * Columns read by the compiled bulk insert statement, in bind order. The first
+     * {@link #BULK_INSERT_PRODUCT_COLUMNS} are bound directly, the supplier is bound by id. The
+     * {@link #OPTIONAL_BULK_INSERT_COLUMNS} may be left out: the currency is then the default one
+     * and the ISBN null.
+     */
+    private static final String[] BULK_INSERT_COLUMNS = {
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_CURRENCY,
+            BookEntry.COLUMN_ISBN,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER };
+
+    private static final int BULK_INSERT_PRODUCT_COLUMNS = 5;
+
+    private static final String[] OPTIONAL_BULK_INSERT_COLUMNS = {
+            BookEntry.COLUMN_CURRENCY,
+            BookEntry.COLUMN_ISBN };
+
+    /**
+     * Insert statement kept in the statement cache, used for every row of a {@link #bulkInsert} and
+     * for single inserts setting the same columns. Binds the first five {@link #BULK_INSERT_COLUMNS},
+     * then the id of the supplier given by the others.
+     */
+    private static final String SQL_BULK_INSERT_PRODUCT = "INSERT INTO " + BookEntry.TABLE_NAME + " ("
+            + BookEntry.COLUMN_PRODUCT_NAME + ", "
+            + BookEntry.COLUMN_PRICE + ", "
+            + BookEntry.COLUMN_QUANTITY + ", "
+            + BookEntry.COLUMN_CURRENCY + ", "
+            + BookEntry.COLUMN_ISBN + ", "
+            + BookEntry.COLUMN_SUPPLIER_ID + ") VALUES (?, ?, ?, IFNULL(?, '" + BookEntry.DEFAULT_CURRENCY
+            + "'), ?, ?)";
+
+    /*
+     * Fixed-shape statements of the single-product paths, compiled once and kept in the
+     * statement cache. Each binds the product id last.
+     */
+    private static final String SQL_QUERY_PRODUCT = "SELECT " + TextUtils.join(", ", Book.ALL_COLUMNS)
+            + " FROM " + BookMigrations.VIEW_PRODUCTS + " WHERE " + BookEntry._ID + " = ?";
+    private static final String SQL_QUERY_QUANTITY = "SELECT " + BookEntry.COLUMN_QUANTITY + " FROM "
+            + BookMigrations.VIEW_PRODUCTS + " WHERE " + BookEntry._ID + " = ?";
+    private static final String SQL_UPDATE_QUANTITY = "UPDATE " + BookEntry.TABLE_NAME + " SET "
+            + BookEntry.COLUMN_QUANTITY + " = ? WHERE " + BookEntry._ID + " = ?";
+    private static final String SQL_DELETE_PRODUCT = "DELETE FROM " + BookEntry.TABLE_NAME + " WHERE "
+            + BookEntry._ID + " = ?";
+
+    /** Id of the product with the ISBN bound, answered from the unique ISBN index */
+    private static final String SQL_QUERY_ISBN_ID = "SELECT " + BookEntry._ID + " FROM "
+            + BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_ISBN + " = ?";
+
+    /** Movements are read oldest first, in the order of the movement indexes */
+    private static final String MOVEMENT_ORDER = MovementEntry.COLUMN_TIMESTAMP + ", " + MovementEntry._ID;
+
+    /**
+     * Records an adjustment of the products in a selection on the products table to the quantity
+     * bound first, at the time bound second. The delta is taken from the quantity as read, i.e.
+     * counting the pending sales. Products whose quantity doesn't change get no movement.
+     */
+    private static final String SQL_RECORD_ADJUSTMENT = "INSERT INTO " + MovementEntry.TABLE_NAME + " ("
+            + MovementEntry.COLUMN_PRODUCT_ID + ", " + MovementEntry.COLUMN_DELTA + ", "
+            + MovementEntry.COLUMN_REASON + ", " + MovementEntry.COLUMN_TIMESTAMP + ") SELECT * FROM (SELECT p."
+            + BookEntry._ID + ", ? - (p." + BookEntry.COLUMN_QUANTITY + " + " + SaleJournal.PENDING_DELTA
+            + ") AS " + MovementEntry.COLUMN_DELTA + ", " + MovementEntry.REASON_ADJUSTMENT + ", ? FROM "
+            + BookEntry.TABLE_NAME + " p";
+
+    /** {@link #SQL_RECORD_ADJUSTMENT} for the product bound third */
+    private static final String SQL_RECORD_PRODUCT_ADJUSTMENT = SQL_RECORD_ADJUSTMENT + " WHERE p."
+            + BookEntry._ID + " = ?) WHERE " + MovementEntry.COLUMN_DELTA + " <> 0";
+
+    /** Sends the change notifications, coalesced per URI */
+    private ChangeNotifier mChangeNotifier;
+
+    /** Runs the per-store parts of the queries across stores */
+    private ExecutorService mStoreExecutor;
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -43,26 +239,88 @@ public class BookProvider extends ContentProvider {
         // when a match is found.
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_PRODUCTS, PRODUCTS);
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_PRODUCTS + "/#", PRODUCT_ID);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_PRODUCTS + "/" + BookContract.PATH_SEARCH, PRODUCT_SEARCH);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_PRODUCTS + "/" + BookContract.PATH_ISBN + "/*", PRODUCT_ISBN);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_PRODUCTS + "/#/" + BookContract.PATH_MOVEMENTS, PRODUCT_MOVEMENTS);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_MOVEMENTS, MOVEMENTS);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_ANALYTICS + "/" + BookContract.PATH_STOCK_VALUE, ANALYTICS_STOCK_VALUE);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_ANALYTICS + "/" + BookContract.PATH_SUPPLIERS, ANALYTICS_SUPPLIERS);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_ANALYTICS + "/" + BookContract.PATH_BELOW_THRESHOLD, ANALYTICS_BELOW_THRESHOLD);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_ANALYTICS + "/" + BookContract.PATH_TOP_STOCK, ANALYTICS_TOP_STOCK);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_ANALYTICS + "/" + BookContract.PATH_STORES, ANALYTICS_STORES);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_STORES, STORES);
+
+        for (String column : new String[] {
+                BookEntry._ID,
+                BookEntry.COLUMN_PRODUCT_NAME,
+                BookEntry.COLUMN_ISBN,
+                BookEntry.COLUMN_PRICE,
+                BookEntry.COLUMN_CURRENCY,
+                BookEntry.COLUMN_QUANTITY,
+                BookEntry.COLUMN_SUPPLIER_NAME,
+                BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+                BookEntry.COLUMN_SUPPLIER_ID }) {
+            sSearchProjectionMap.put(column, BookMigrations.VIEW_PRODUCTS + "." + column + " AS " + column);
+        }
     }
 
     /**
-    * Initialize the provider and the database helper object.
+    * Initialize the provider and the store pool, which opens the default store's database
+    * helper and loads its ISBN index in the background.
     */
     @Override
     public boolean onCreate() {
-        mDbHelper = new BookDbHelper(getContext());
+        mStores = new StorePool(getContext());
+        mStoreExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_STORES);
+        mChangeNotifier = new ChangeNotifier(getContext().getContentResolver());
         return true;
     }
 
     /**
      * Perform the query for the given URI. Use the given projection, selection, selection arguments,
-     * and sort order.
+     * and sort order. A store's URIs are answered from its own database, which stays open until
+     * the cursor is closed.
      */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        switch (sUriMatcher.match(uri)) {
+            case STORES:
+                return queryStores(projection);
+            case ANALYTICS_STORES:
+                return queryStoresStockValue();
+        }
+
+        StoreDatabase store = mStores.acquire(StoreEntry.getStoreId(uri));
+        Cursor cursor = null;
+        try {
+            cursor = query(store, StoreEntry.getDefaultStoreUri(uri), projection, selection, selectionArgs,
+                    sortOrder);
+        } finally {
+            if (cursor == null) {
+                mStores.release(store);
+            }
+        }
+        return mStores.releaseOnClose(store, cursor);
+    }
+
+    /**
+     * Perform the query for the given URI of the default store on the given store.
+     */
+    private Cursor query(StoreDatabase store, Uri uri, String[] projection, String selection,
+                         String[] selectionArgs, String sortOrder) {
         // Get readable database
-        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        SQLiteDatabase database = store.dbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query
         Cursor cursor;
@@ -71,15 +329,55 @@ public class BookProvider extends ContentProvider {
         int match = sUriMatcher.match(uri);
         switch (match) {
             case PRODUCTS:
-                cursor = database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                cursor = database.query(BookMigrations.VIEW_PRODUCTS, projection, selection, selectionArgs,
+                        null, null, sortOrder, getLimit(uri));
                 break;
             case PRODUCT_ID:
+                if (isBookProjection(projection)) {
+                    cursor = queryCachedProduct(store, database, ContentUris.parseId(uri), projection);
+                    break;
+                }
                 selection = BookEntry._ID + "=?";
                 selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                cursor = database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs,
+                cursor = database.query(BookMigrations.VIEW_PRODUCTS, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                break;
+            case PRODUCT_SEARCH:
+                cursor = searchProducts(database, uri, projection, sortOrder);
+                break;
+            case PRODUCT_ISBN:
+                cursor = queryProductByIsbn(store, database, uri, projection);
+                // The product's ISBN can change with any product
+                cursor.setNotificationUri(getContext().getContentResolver(), store.scope(BookEntry.CONTENT_URI));
+                return cursor;
+            case SUPPLIERS:
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder, getLimit(uri));
+                break;
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
                         null, null, sortOrder);
                 break;
+            case MOVEMENTS:
+                cursor = queryMovements(database, uri, projection, -1);
+                // Movements change with any product
+                cursor.setNotificationUri(getContext().getContentResolver(), store.scope(BookEntry.CONTENT_URI));
+                return cursor;
+            case PRODUCT_MOVEMENTS:
+                // Notified along with the product, which is an ancestor
+                cursor = queryMovements(database, uri, projection,
+                        Long.parseLong(uri.getPathSegments().get(1)));
+                break;
+            case ANALYTICS_STOCK_VALUE:
+            case ANALYTICS_SUPPLIERS:
+            case ANALYTICS_BELOW_THRESHOLD:
+            case ANALYTICS_TOP_STOCK:
+                cursor = queryAnalytics(database, uri, match);
+                // Aggregates change with any product
+                cursor.setNotificationUri(getContext().getContentResolver(), store.scope(BookEntry.CONTENT_URI));
+                return cursor;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
@@ -87,59 +385,860 @@ public class BookProvider extends ContentProvider {
         // Set notification URI on the Cursor,
         // so we know what content URI the Cursor was created for.
         // If the data at this URI changes, then we know we need to update the Cursor.
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), store.scope(uri));
+        return cursor;
+    }
+
+    /**
+     * Return the ids of the stores that have a database.
+     */
+    private Cursor queryStores(String[] projection) {
+        if (projection == null) {
+            projection = new String[] { StoreEntry._ID };
+        }
+        MatrixCursor cursor = new MatrixCursor(projection);
+        for (long storeId : mStores.getStoreIds()) {
+            Object[] row = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                if (!StoreEntry._ID.equals(projection[i])) {
+                    throw new IllegalArgumentException("Unknown column " + projection[i] + " for stores");
+                }
+                row[i] = storeId;
+            }
+            cursor.addRow(row);
+        }
+        cursor.setNotificationUri(getContext().getContentResolver(), StoreEntry.CONTENT_URI);
         return cursor;
     }
 
+    /**
+     * Compute the stock value of every store, querying up to {@link #MAX_PARALLEL_STORES} store
+     * databases at the same time. Each store is a separate file with its own connections, so the
+     * queries don't wait for each other.
+     */
+    private Cursor queryStoresStockValue() {
+        long[] storeIds = mStores.getStoreIds();
+        List<Future<List<Object[]>>> results = new ArrayList<>(storeIds.length);
+        for (final long storeId : storeIds) {
+            results.add(mStoreExecutor.submit(new Callable<List<Object[]>>() {
+                @Override
+                public List<Object[]> call() {
+                    return queryStockValue(storeId);
+                }
+            }));
+        }
+
+        MatrixCursor cursor = new MatrixCursor(STORES_STOCK_VALUE_COLUMNS, storeIds.length);
+        try {
+            for (Future<List<Object[]>> result : results) {
+                for (Object[] row : result.get()) {
+                    cursor.addRow(row);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying the stores", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to query the stores", e.getCause());
+        } finally {
+            for (Future<List<Object[]>> result : results) {
+                result.cancel(false);
+            }
+        }
+        // The totals change with the products of any store
+        cursor.setNotificationUri(getContext().getContentResolver(), BookContract.BASE_CONTENT_URI);
+        return cursor;
+    }
+
+    /**
+     * Return the rows of one store for {@link #STORES_STOCK_VALUE_COLUMNS}: the product count,
+     * total quantity and total value of each currency.
+     */
+    private List<Object[]> queryStockValue(long storeId) {
+        StoreDatabase store = mStores.acquire(storeId);
+        try {
+            Cursor cursor = store.dbHelper.getReadableDatabase().query(BookMigrations.VIEW_PRODUCTS,
+                    STOCK_VALUE_COLUMNS, null, null, BookEntry.COLUMN_CURRENCY, null,
+                    BookEntry.COLUMN_CURRENCY);
+            try {
+                List<Object[]> rows = new ArrayList<>(cursor.getCount());
+                while (cursor.moveToNext()) {
+                    rows.add(new Object[] { storeId, cursor.getString(0), cursor.getLong(1),
+                            cursor.getLong(2), cursor.getLong(3) });
+                }
+                return rows;
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            mStores.release(store);
+        }
+    }
+
+    /**
+     * Compute one of the aggregate views with the given URI matcher code. Quantities are read
+     * through the product view so that pending sales are counted.
+     */
+    private Cursor queryAnalytics(SQLiteDatabase database, Uri uri, int match) {
+        switch (match) {
+            case ANALYTICS_STOCK_VALUE:
+                return database.query(BookMigrations.VIEW_PRODUCTS, STOCK_VALUE_COLUMNS, null, null,
+                        BookEntry.COLUMN_CURRENCY, null, BookEntry.COLUMN_CURRENCY);
+            case ANALYTICS_SUPPLIERS:
+                // Values are only comparable within a currency
+                return database.query(BookMigrations.VIEW_PRODUCTS, SUPPLIERS_COLUMNS, null, null,
+                        BookEntry.COLUMN_SUPPLIER_ID + ", " + BookEntry.COLUMN_CURRENCY, null,
+                        BookEntry.COLUMN_CURRENCY + ", " + AnalyticsEntry.COLUMN_TOTAL_VALUE + " DESC");
+            case ANALYTICS_BELOW_THRESHOLD:
+                String threshold = uri.getQueryParameter(AnalyticsEntry.QUERY_PARAMETER_THRESHOLD);
+                if (threshold == null) {
+                    throw new IllegalArgumentException("Threshold required for " + uri);
+                }
+                checkNonNegative(threshold, uri);
+                return database.query(BookMigrations.VIEW_PRODUCTS, BELOW_THRESHOLD_COLUMNS,
+                        BookEntry.COLUMN_QUANTITY + " < ?", new String[] { threshold },
+                        null, null, BookEntry.COLUMN_QUANTITY + ", " + BookEntry.COLUMN_PRODUCT_NAME);
+            case ANALYTICS_TOP_STOCK:
+                String limit = getLimit(uri);
+                return database.query(BookMigrations.VIEW_PRODUCTS, TOP_STOCK_COLUMNS, null, null, null, null,
+                        BookEntry.COLUMN_QUANTITY + " DESC",
+                        limit != null ? limit : String.valueOf(AnalyticsEntry.DEFAULT_TOP_LIMIT));
+            default:
+                throw new IllegalArgumentException("Cannot query unknown URI " + uri);
+        }
+    }
+
+    /**
+     * Read the stock movements of the given product (or of every product if -1) in the time range
+     * and after the row given by the URI's {@link MovementEntry} query parameters, oldest first.
+     * Both are answered from a movement index; the page start narrows the index range down too.
+     */
+    private static Cursor queryMovements(SQLiteDatabase database, Uri uri, String[] projection,
+                                         long productId) {
+        StringBuilder selection = new StringBuilder();
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        if (productId != -1) {
+            appendCondition(selection, selectionArgs, MovementEntry.COLUMN_PRODUCT_ID + " = ?", productId);
+        }
+
+        String from = uri.getQueryParameter(MovementEntry.QUERY_PARAMETER_FROM);
+        String to = uri.getQueryParameter(MovementEntry.QUERY_PARAMETER_TO);
+        if (from != null) {
+            appendCondition(selection, selectionArgs, MovementEntry.COLUMN_TIMESTAMP + " >= ?",
+                    parseLong(from, uri));
+        }
+        if (to != null) {
+            appendCondition(selection, selectionArgs, MovementEntry.COLUMN_TIMESTAMP + " < ?",
+                    parseLong(to, uri));
+        }
+
+        String afterTimestamp = uri.getQueryParameter(MovementEntry.QUERY_PARAMETER_AFTER_TIMESTAMP);
+        String afterId = uri.getQueryParameter(MovementEntry.QUERY_PARAMETER_AFTER_ID);
+        if (afterTimestamp != null || afterId != null) {
+            if (afterTimestamp == null || afterId == null) {
+                throw new IllegalArgumentException("Page start requires a timestamp and an id for " + uri);
+            }
+            long timestamp = parseLong(afterTimestamp, uri);
+            appendCondition(selection, selectionArgs, MovementEntry.COLUMN_TIMESTAMP + " >= ?", timestamp);
+            appendCondition(selection, selectionArgs, "(" + MovementEntry.COLUMN_TIMESTAMP + " > ? OR "
+                    + MovementEntry._ID + " > " + parseLong(afterId, uri) + ")", timestamp);
+        }
+
+        return database.query(MovementEntry.TABLE_NAME, projection,
+                selection.length() == 0 ? null : selection.toString(),
+                selectionArgs.toArray(new String[selectionArgs.size()]), null, null, MOVEMENT_ORDER,
+                getLimit(uri));
+    }
+
+    private static void appendCondition(StringBuilder selection, ArrayList<String> selectionArgs,
+                                        String condition, long arg) {
+        if (selection.length() > 0) {
+            selection.append(" AND ");
+        }
+        selection.append(condition);
+        selectionArgs.add(String.valueOf(arg));
+    }
+
+    private static long parseLong(String number, Uri uri) {
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid parameter " + number + " for " + uri);
+        }
+    }
+
+    /**
+     * Return a cursor over the single product with the given id, served from the
+     * {@link ProductCache} when possible. On a miss the full row is read and cached.
+     */
+    private Cursor queryCachedProduct(StoreDatabase store, SQLiteDatabase database, long id,
+                                      String[] projection) {
+        return toCursor(readProduct(store, database, id), projection);
+    }
+
+    /**
+     * Return the product with the given id from the {@link ProductCache}, reading and caching the
+     * full row on a miss, or null if there is no such product.
+     */
+    private Book readProduct(StoreDatabase store, SQLiteDatabase database, long id) {
+        Book book = store.productCache.get(id);
+        if (book == null) {
+            long generation = store.productCache.generation();
+            Cursor cursor = database.rawQuery(SQL_QUERY_PRODUCT, new String[] { String.valueOf(id) });
+            try {
+                if (cursor.moveToFirst()) {
+                    book = Book.fromCursor(cursor);
+                    store.productCache.put(book, generation);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Return a cursor over the product with the ISBN in the URI's last segment, or an empty one if
+     * there is none or the segment isn't a valid ISBN. The {@link IsbnIndex} resolves the ISBN
+     * and the product is read as for products/#, so a scan of a cached product doesn't touch the
+     * database. Until the index is loaded, or when its entry turns out to be stale, the ISBN is
+     * looked up in the database instead.
+     */
+    private Cursor queryProductByIsbn(StoreDatabase store, SQLiteDatabase database, Uri uri,
+                                      String[] projection) {
+        long isbn = Isbn.normalize(uri.getLastPathSegment());
+        if (!isBookProjection(projection)) {
+            return database.query(BookMigrations.VIEW_PRODUCTS, projection, BookEntry.COLUMN_ISBN + " = ?",
+                    new String[] { String.valueOf(isbn) }, null, null, null);
+        }
+        if (isbn == Isbn.INVALID) {
+            return toCursor(null, projection);
+        }
+
+        Book book = null;
+        long id = store.isbnIndex.find(isbn);
+        if (id >= 0) {
+            book = readProduct(store, database, id);
+            if (book == null || book.isbn != isbn) {
+                // Deleted, or given another ISBN, since the entry was added
+                store.isbnIndex.remove(isbn, id);
+                book = null;
+                id = IsbnIndex.NOT_LOADED;
+            }
+        }
+        if (id == IsbnIndex.NOT_LOADED) {
+            SQLiteStatement statement = store.statements.acquire(database, SQL_QUERY_ISBN_ID);
+            try {
+                statement.bindLong(1, isbn);
+                book = readProduct(store, database, statement.simpleQueryForLong());
+            } catch (SQLiteDoneException e) {
+                // No such product
+            } finally {
+                store.statements.release(database, SQL_QUERY_ISBN_ID, statement);
+            }
+        }
+        return toCursor(book, projection);
+    }
+
+    /**
+     * Return a cursor over the given columns of the book, or an empty one if it is null.
+     */
+    private static Cursor toCursor(Book book, String[] projection) {
+        if (projection == null) {
+            projection = Book.ALL_COLUMNS;
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        if (book != null) {
+            Object[] row = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                row[i] = book.getColumnValue(projection[i]);
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    /**
+     * Return true if every column of the projection can be answered from a {@link Book}.
+     */
+    private static boolean isBookProjection(String[] projection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            boolean found = false;
+            for (String bookColumn : Book.ALL_COLUMNS) {
+                if (bookColumn.equals(column)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drop the products written through the given URI from the cache: a single product for
+     * products/#, everything for a write by selection. Call once the write has committed.
+     */
+    private static void invalidateCache(StoreDatabase store, Uri uri) {
+        if (sUriMatcher.match(uri) == PRODUCT_ID) {
+            store.productCache.invalidate(ContentUris.parseId(uri));
+        } else {
+            store.productCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Run a full-text search for the terms in the URI's {@link BookContract#QUERY_PARAMETER_SEARCH}
+     * parameter. Every term is prefix matched against the name and supplier. Unless a sort order is
+     * given, results are ranked as described by {@link #SEARCH_ORDER}.
+     */
+    private Cursor searchProducts(SQLiteDatabase database, Uri uri, String[] projection, String sortOrder) {
+        String query = uri.getQueryParameter(BookContract.QUERY_PARAMETER_SEARCH);
+        String match = buildMatchExpression(query, null);
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(SEARCH_TABLES);
+        builder.setProjectionMap(sSearchProjectionMap);
+
+        if (match == null) {
+            // Nothing to search for: return an empty result with the requested columns
+            return builder.query(database, projection, "0", null, null, null, null, "0");
+        }
+
+        builder.appendWhere(BookMigrations.TABLE_PRODUCTS_FTS + " MATCH ");
+        builder.appendWhereEscapeString(match);
+        if (sortOrder != null) {
+            return builder.query(database, projection, null, null, null, null, sortOrder, getLimit(uri));
+        }
+
+        // The ranking expression has placeholders of its own, so build the SQL and bind them here
+        String sql = builder.buildQuery(projection, null, null, null, SEARCH_ORDER, getLimit(uri));
+        String titlePrefix = query.trim().replace("%", "").replace("_", "") + "%";
+        return database.rawQuery(sql, new String[] {
+                titlePrefix, buildMatchExpression(query, BookEntry.COLUMN_PRODUCT_NAME) });
+    }
+
+    /**
+     * Turn free text into an FTS prefix query matching every term, optionally restricted to one
+     * column. Return null if the text contains no searchable terms.
+     */
+    private static String buildMatchExpression(String query, String column) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String term : query.split("[^\\p{L}\\p{N}]+")) {
+            if (term.length() == 0) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            if (column != null) {
+                match.append(column).append(':');
+            }
+            match.append(term).append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    /**
+     * Return the LIMIT clause requested by the URI's {@link BookContract#QUERY_PARAMETER_LIMIT} and
+     * {@link BookContract#QUERY_PARAMETER_OFFSET} parameters, or null if there is no limit.
+     */
+    private static String getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(BookContract.QUERY_PARAMETER_LIMIT);
+        String offset = uri.getQueryParameter(BookContract.QUERY_PARAMETER_OFFSET);
+        if (limit == null) {
+            if (offset != null) {
+                throw new IllegalArgumentException("Offset requires a limit for " + uri);
+            }
+            return null;
+        }
+        checkNonNegative(limit, uri);
+        if (offset == null) {
+            return limit;
+        }
+        checkNonNegative(offset, uri);
+        return offset + "," + limit;
+    }
+
+    private static void checkNonNegative(String number, Uri uri) {
+        try {
+            if (Integer.parseInt(number) >= 0) {
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid parameter " + number + " for " + uri);
+    }
+
     /**
      * Insert new data into the provider with the given ContentValues.
      */
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case PRODUCTS:
-                return insertProduct(uri, contentValues);
-            default:
-                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        if (sUriMatcher.match(uri) == STORES) {
+            return insertStore(contentValues);
+        }
+
+        StoreDatabase store = mStores.acquire(StoreEntry.getStoreId(uri), true);
+        try {
+            Uri storeUri = uri;
+            uri = StoreEntry.getDefaultStoreUri(uri);
+            final int match = sUriMatcher.match(uri);
+            switch (match) {
+                case PRODUCTS:
+                    return insertProduct(store, uri, contentValues);
+                case SUPPLIERS:
+                    return insertSupplier(store, uri, contentValues);
+                default:
+                    throw new IllegalArgumentException("Insertion is not supported for " + storeUri);
+            }
+        } finally {
+            mStores.release(store);
         }
     }
 
+    /**
+     * Create the database of the store with the {@link StoreEntry#_ID} in the given values. Return
+     * the URI of the store, or null if it already has a database.
+     */
+    private Uri insertStore(ContentValues values) {
+        Long storeId = values == null ? null : values.getAsLong(StoreEntry._ID);
+        if (storeId == null) {
+            throw new IllegalArgumentException("Store requires an id");
+        }
+        if (!mStores.create(storeId)) {
+            return null;
+        }
+        notifyChange(StoreEntry.CONTENT_URI);
+        return ContentUris.withAppendedId(StoreEntry.CONTENT_URI, storeId);
+    }
+
     /**
      * Insert a product into the database with the given content values. Return the new content URI
      * for that specific row in the database.
      */
-    private Uri insertProduct(Uri uri, ContentValues values) {
+    private Uri insertProduct(StoreDatabase store, Uri uri, ContentValues values) {
+        validateProduct(values);
+        Long isbn = getIsbn(values);
+
+        SQLiteDatabase database = store.dbHelper.getWritableDatabase();
+
+        // Insert the new row, returning the primary key value of the new row. A supplier added
+        // for it is rolled back if the product can't be inserted.
+        long id;
+        database.beginTransaction();
+        try {
+            if (hasBulkInsertColumns(values)) {
+                SQLiteStatement statement = store.statements.acquire(database, SQL_BULK_INSERT_PRODUCT);
+                try {
+                    id = insertWithStatement(database, statement, values, null);
+                } finally {
+                    store.statements.release(database, SQL_BULK_INSERT_PRODUCT, statement);
+                }
+            } else {
+                id = database.insert(BookEntry.TABLE_NAME, null, toProductValues(database, values, null));
+            }
+            if (id != -1) {
+                database.setTransactionSuccessful();
+            }
+        } finally {
+            database.endTransaction();
+        }
+
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+        if (isbn != null) {
+            store.isbnIndex.put(isbn, id);
+        }
+
+        // Notify all listeners that the data has changed for the new product's URI. Observers of
+        // the product content URI are notified too, as it is an ancestor.
+        Uri productUri = store.scope(ContentUris.withAppendedId(uri, id));
+        notifyChange(productUri);
+
+        return productUri;
+    }
+
+    /**
+     * Return the given product values as stored in the products table: the ISBN is normalized,
+     * and the supplier name and phone number are replaced by the id of the matching supplier,
+     * which is added if it doesn't exist yet. Inserts and updates have both of them by the time
+     * they get here, see {@link #validateProduct}; without both no supplier id is set. Suppliers
+     * looked up are remembered in supplierIds, if given.
+     */
+    private static ContentValues toProductValues(SQLiteDatabase database, ContentValues values,
+                                                 Map<String, Long> supplierIds) {
+        boolean hasSupplier = values.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)
+                || values.containsKey(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        Long isbn = getIsbn(values);
+        if (!hasSupplier && isbn == null) {
+            return values;
+        }
+        ContentValues productValues = new ContentValues(values);
+        if (isbn != null) {
+            productValues.put(BookEntry.COLUMN_ISBN, isbn);
+        }
+        if (!hasSupplier) {
+            return productValues;
+        }
+        productValues.remove(BookEntry.COLUMN_SUPPLIER_NAME);
+        productValues.remove(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+
+        String supplierName = values.getAsString(BookEntry.COLUMN_SUPPLIER_NAME);
+        String supplierPhoneNumber = values.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        if (supplierName != null && supplierPhoneNumber != null) {
+            productValues.put(BookEntry.COLUMN_SUPPLIER_ID,
+                    getOrInsertSupplier(database, supplierName, supplierPhoneNumber, supplierIds));
+        }
+        return productValues;
+    }
+
+    /**
+     * Return the id of the supplier with the given name and phone number, adding it if needed.
+     * Call inside a transaction, so that the supplier is rolled back with the product.
+     */
+    private static long getOrInsertSupplier(SQLiteDatabase database, String name, String phoneNumber,
+                                            Map<String, Long> supplierIds) {
+        String key = name + '\u0000' + phoneNumber;
+        Long id = supplierIds != null ? supplierIds.get(key) : null;
+        if (id != null) {
+            return id;
+        }
+
+        // Answered from the unique (name, phone) index
+        Cursor cursor = database.query(SupplierEntry.TABLE_NAME, new String[] { SupplierEntry._ID },
+                SupplierEntry.COLUMN_SUPPLIER_NAME + "=? AND " + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + "=?",
+                new String[] { name, phoneNumber }, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                id = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (id == null) {
+            ContentValues values = new ContentValues();
+            values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+            values.put(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, phoneNumber);
+            id = database.insertOrThrow(SupplierEntry.TABLE_NAME, null, values);
+        }
+
+        if (supplierIds != null) {
+            supplierIds.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Return a selection on the products table for the rows the given selection matches in the
+     * product view, so that selections on the supplier columns of {@link BookEntry} keep working.
+     */
+    private static String toProductTableSelection(String selection) {
+        if (TextUtils.isEmpty(selection)) {
+            return selection;
+        }
+        return BookEntry._ID + " IN (SELECT " + BookEntry._ID + " FROM " + BookMigrations.VIEW_PRODUCTS
+                + " WHERE " + selection + ")";
+    }
+
+    /**
+     * Insert a supplier with the given content values. Return the new content URI for it.
+     */
+    private Uri insertSupplier(StoreDatabase store, Uri uri, ContentValues values) {
+        validateSupplier(values, true);
+
+        SQLiteDatabase database = store.dbHelper.getWritableDatabase();
+        long id = database.insert(SupplierEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        Uri supplierUri = store.scope(ContentUris.withAppendedId(uri, id));
+        notifyChange(supplierUri);
+        return supplierUri;
+    }
+
+    /**
+     * Check that the name and phone number in the given supplier values aren't empty, throwing
+     * an {@link IllegalArgumentException} otherwise. With required false, absent values are fine.
+     */
+    private static void validateSupplier(ContentValues values, boolean required) {
+        if (required || values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)) {
+            if (TextUtils.isEmpty(values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME))) {
+                throw new IllegalArgumentException("Supplier requires a name");
+            }
+        }
+        if (required || values.containsKey(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER)) {
+            if (TextUtils.isEmpty(values.getAsString(SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER))) {
+                throw new IllegalArgumentException("Supplier requires a phone number");
+            }
+        }
+    }
+
+    /**
+     * Check that the given content values describe a valid new product, throwing an
+     * {@link IllegalArgumentException} otherwise.
+     */
+    static void validateProduct(ContentValues values) {
         // Check that the product name is not null
         String productName = values.getAsString(BookEntry.COLUMN_PRODUCT_NAME);
         if (productName == null || productName.length() == 0) {
             throw new IllegalArgumentException("Product requires a name");
         }
         // If the price is provided, check that it's greater than or equal to 0
-        Integer price = values.getAsInteger(BookEntry.COLUMN_PRICE);
-        if (price == null && price < 0) {
+        Long price = values.getAsLong(BookEntry.COLUMN_PRICE);
+        if (price != null && price < 0) {
             throw new IllegalArgumentException("Product requires valid price");
         }
+        if (values.containsKey(BookEntry.COLUMN_CURRENCY)) {
+            validateCurrency(values.getAsString(BookEntry.COLUMN_CURRENCY));
+        }
+        // If the ISBN is provided, check that it's a valid ISBN-10 or ISBN-13
+        getIsbn(values);
         // If the quantity is provided, check that it's greater than or equal to 0
         Integer quantity = values.getAsInteger(BookEntry.COLUMN_QUANTITY);
-        if (quantity == null && quantity < 0) {
+        if (quantity != null && quantity < 0) {
             throw new IllegalArgumentException("Product requires valid quantity");
         }
+        // Same rule as for updates, see withCurrentSupplier()
+        if (TextUtils.isEmpty(values.getAsString(BookEntry.COLUMN_SUPPLIER_NAME))
+                || TextUtils.isEmpty(values.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER))) {
+            throw new IllegalArgumentException("Product requires a supplier name and phone number");
+        }
+    }
+
+    /**
+     * Return the ISBN set in the values, normalized, or null if they don't set one.
+     *
+     * @throws IllegalArgumentException if the ISBN isn't a valid ISBN-10 or ISBN-13
+     */
+    private static Long getIsbn(ContentValues values) {
+        Object value = values.get(BookEntry.COLUMN_ISBN);
+        if (value == null) {
+            return null;
+        }
+        long isbn;
+        if (value instanceof Number) {
+            isbn = ((Number) value).longValue();
+            if (!Isbn.isValid(isbn)) {
+                isbn = Isbn.INVALID;
+            }
+        } else {
+            isbn = Isbn.normalize(value.toString());
+        }
+        if (isbn == Isbn.INVALID) {
+            throw new IllegalArgumentException("Product requires valid ISBN");
+        }
+        return isbn;
+    }
+
+    /**
+     * Check that the code is an ISO 4217 currency code, throwing an
+     * {@link IllegalArgumentException} otherwise.
+     */
+    private static void validateCurrency(String currencyCode) {
+        if (currencyCode == null || currencyCode.length() != 3) {
+            throw new IllegalArgumentException("Product requires valid currency");
+        }
+        try {
+            Currency.getInstance(currencyCode);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Product requires valid currency");
+        }
+    }
+
+    /**
+     * Insert all the given rows in a single transaction and notify listeners once at the end.
+     * Return the number of rows inserted.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        StoreDatabase store = mStores.acquire(StoreEntry.getStoreId(uri), true);
+        try {
+            final int match = sUriMatcher.match(StoreEntry.getDefaultStoreUri(uri));
+            switch (match) {
+                case PRODUCTS:
+                    return bulkInsertProducts(store, uri, values);
+                default:
+                    throw new IllegalArgumentException("Insertion is not supported for " + uri);
+            }
+        } finally {
+            mStores.release(store);
+        }
+    }
 
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+    /**
+     * Insert the given products with one compiled statement inside one transaction. Every row goes
+     * through the same validation as {@link #insertProduct}; if any row is invalid nothing is written.
+     * A row the database refuses, e.g. for a duplicate ISBN, throws a
+     * {@link SQLiteConstraintException} and rolls back the others too, so that callers know
+     * exactly which rows were written.
+     */
+    private int bulkInsertProducts(StoreDatabase store, Uri uri, ContentValues[] values) {
+        for (ContentValues value : values) {
+            validateProduct(value);
+        }
 
-        // Insert the new row, returning the primary key value of the new row
-        long id = database.insert(BookEntry.TABLE_NAME, null, values);
+        SQLiteDatabase database = store.dbHelper.getWritableDatabase();
+        SQLiteStatement statement = store.statements.acquire(database, SQL_BULK_INSERT_PRODUCT);
+        // Imports repeat the same few suppliers over and over
+        Map<String, Long> supplierIds = new HashMap<>();
 
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
+        int rowsInserted = 0;
+        // ISBN and id pairs of the new rows, added to the index once they have committed
+        long[] isbns = null;
+        int isbnCount = 0;
+        database.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                long id;
+                if (hasBulkInsertColumns(value)) {
+                    id = insertWithStatement(database, statement, value, supplierIds);
+                } else {
+                    // Rows relying on column defaults or setting extra columns can't use the statement
+                    id = database.insert(BookEntry.TABLE_NAME, null,
+                            toProductValues(database, value, supplierIds));
+                }
+
+                if (id == -1) {
+                    throw new SQLiteConstraintException("Failed to insert " + value + " for " + uri);
+                }
+                rowsInserted++;
+                Long isbn = getIsbn(value);
+                if (isbn != null) {
+                    if (isbns == null) {
+                        isbns = new long[2 * values.length];
+                    }
+                    isbns[isbnCount++] = isbn;
+                    isbns[isbnCount++] = id;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            store.statements.release(database, SQL_BULK_INSERT_PRODUCT, statement);
+        }
+
+        for (int i = 0; i < isbnCount; i += 2) {
+            store.isbnIndex.put(isbns[i], isbns[i + 1]);
         }
 
-        // Notify all listeners that the data has changed for the product content URI
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (rowsInserted != 0) {
+            notifyChange(uri);
+        }
+        return rowsInserted;
+    }
+
+    /**
+     * Insert a product with a statement compiled from {@link #SQL_BULK_INSERT_PRODUCT}. The values
+     * must pass {@link #hasBulkInsertColumns}. Return the new row id, or -1 if the insert failed.
+     */
+    private static long insertWithStatement(SQLiteDatabase database, SQLiteStatement statement,
+                                            ContentValues values, Map<String, Long> supplierIds) {
+        statement.clearBindings();
+        for (int i = 0; i < BULK_INSERT_PRODUCT_COLUMNS; i++) {
+            String column = BULK_INSERT_COLUMNS[i];
+            DatabaseUtils.bindObjectToProgram(statement, i + 1,
+                    BookEntry.COLUMN_ISBN.equals(column) ? getIsbn(values) : values.get(column));
+        }
+        try {
+            statement.bindLong(BULK_INSERT_PRODUCT_COLUMNS + 1, getOrInsertSupplier(database,
+                    values.getAsString(BookEntry.COLUMN_SUPPLIER_NAME),
+                    values.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER), supplierIds));
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            // Same outcome as SQLiteDatabase.insert(): log and skip the row
+            Log.e(LOG_TAG, "Error inserting " + values, e);
+            return -1;
+        }
+    }
 
-        return ContentUris.withAppendedId(uri, id);
+    /**
+     * Return true if the values set exactly the columns bound by {@link #SQL_BULK_INSERT_PRODUCT},
+     * with or without the optional ones, with a supplier to look up.
+     */
+    private static boolean hasBulkInsertColumns(ContentValues values) {
+        int expected = BULK_INSERT_COLUMNS.length;
+        for (String column : OPTIONAL_BULK_INSERT_COLUMNS) {
+            if (!values.containsKey(column)) {
+                expected--;
+            }
+        }
+        if (values.size() != expected) {
+            return false;
+        }
+        // With the right count, every column set is one of them if every required one is set
+        for (String column : BULK_INSERT_COLUMNS) {
+            if (!values.containsKey(column) && !BookEntry.COLUMN_CURRENCY.equals(column)
+                    && !BookEntry.COLUMN_ISBN.equals(column)) {
+                return false;
+            }
+        }
+        return values.getAsString(BookEntry.COLUMN_SUPPLIER_NAME) != null
+                && values.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER) != null;
+    }
+
+    /**
+     * Apply the operations inside a single transaction. Change notifications raised by the
+     * individual operations are held back and sent once, after the transaction has committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        // A transaction can't span the files of several stores
+        long storeId = operations.isEmpty()
+                ? StoreEntry.DEFAULT_STORE_ID : StoreEntry.getStoreId(operations.get(0).getUri());
+        for (ContentProviderOperation operation : operations) {
+            if (StoreEntry.getStoreId(operation.getUri()) != storeId) {
+                throw new IllegalArgumentException("Batch operations must all be in the same store");
+            }
+        }
+
+        StoreDatabase store = mStores.acquire(storeId, true);
+        SQLiteDatabase database = store.dbHelper.getWritableDatabase();
+        boolean successful = false;
+        mChangeNotifier.beginBatch();
+        database.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            database.endTransaction();
+            // The operations invalidated their rows before the batch committed, so concurrent
+            // readers may have cached old values since
+            if (successful) {
+                store.productCache.invalidateAll();
+            }
+            mChangeNotifier.endBatch(successful);
+            mStores.release(store);
+        }
+    }
+
+    /**
+     * Notify listeners that the data at the given URI has changed. Changes to a single product
+     * are reported on its own URI (products/#) so observers can refresh just that row; observers
+     * of the products URI receive them as descendant changes. Notifications are coalesced by the
+     * {@link ChangeNotifier}.
+     */
+    private void notifyChange(Uri uri) {
+        mChangeNotifier.notifyChange(uri);
     }
 
         /**
@@ -148,16 +1247,40 @@ public class BookProvider extends ContentProvider {
         @Override
         public int update(Uri uri, ContentValues contentValues, String selection,
                 String[] selectionArgs) {
+            StoreDatabase store = mStores.acquire(StoreEntry.getStoreId(uri));
+            try {
+                return update(store, StoreEntry.getDefaultStoreUri(uri), contentValues, selection, selectionArgs);
+            } finally {
+                mStores.release(store);
+            }
+        }
+
+        /**
+         * Perform the update for the given URI of the default store on the given store.
+         */
+        private int update(StoreDatabase store, Uri uri, ContentValues contentValues, String selection,
+                String[] selectionArgs) {
             final int match = sUriMatcher.match(uri);
             switch (match) {
                 case PRODUCTS:
-                    return updateProduct(uri, contentValues, selection, selectionArgs);
+                    return updateProduct(store, uri, contentValues, toProductTableSelection(selection),
+                            selectionArgs);
                 case PRODUCT_ID:
+                    if (contentValues.size() == 1 && contentValues.getAsInteger(BookEntry.COLUMN_QUANTITY) != null) {
+                        return updateProductQuantity(store, uri, ContentUris.parseId(uri),
+                                contentValues.getAsInteger(BookEntry.COLUMN_QUANTITY));
+                    }
                     selection = BookEntry._ID + "=?";
                     selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                    return updateProduct(uri, contentValues, selection, selectionArgs);
+                    return updateProduct(store, uri, contentValues, selection, selectionArgs);
+                case SUPPLIERS:
+                    return updateSupplier(store, uri, contentValues, selection, selectionArgs);
+                case SUPPLIER_ID:
+                    selection = SupplierEntry._ID + "=?";
+                    selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+                    return updateSupplier(store, uri, contentValues, selection, selectionArgs);
                 default:
-                    throw new IllegalArgumentException("Update is not supported for " + uri);
+                    throw new IllegalArgumentException("Update is not supported for " + store.scope(uri));
             }
         }
 
@@ -166,10 +1289,11 @@ public class BookProvider extends ContentProvider {
          * specified in the selection and selection arguments (which could be 0 or 1 or more products).
          * Return the number of rows that were successfully updated.
          */
-        private int updateProduct(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        private int updateProduct(StoreDatabase store, Uri uri, ContentValues values, String selection,
+                                  String[] selectionArgs) {
 
             String name = values.getAsString(BookEntry.COLUMN_PRODUCT_NAME);
-            Integer price = values.getAsInteger(BookEntry.COLUMN_PRICE);
+            Long price = values.getAsLong(BookEntry.COLUMN_PRICE);
             Integer quantity = values.getAsInteger(BookEntry.COLUMN_QUANTITY);
 
             /** Sanity check */
@@ -183,6 +1307,10 @@ public class BookProvider extends ContentProvider {
                     throw new IllegalArgumentException("Product requires valid price");
                 }
             }
+            if (values.containsKey(BookEntry.COLUMN_CURRENCY)) {
+                validateCurrency(values.getAsString(BookEntry.COLUMN_CURRENCY));
+            }
+            Long isbn = getIsbn(values);
             if (values.containsKey(BookEntry.COLUMN_QUANTITY)) {
                 if (quantity != null && quantity < 0) {
                     throw new IllegalArgumentException("Product requires valid quantity");
@@ -193,28 +1321,244 @@ public class BookProvider extends ContentProvider {
                 return 0;
             }
 
-            SQLiteDatabase database = mDbHelper.getWritableDatabase();
+            SQLiteDatabase database = store.dbHelper.getWritableDatabase();
 
             // Perform the update on the database and get the number of rows affected
-            int rowsUpdated = database.update(BookEntry.TABLE_NAME, values, selection, selectionArgs);
+            int rowsUpdated;
+            database.beginTransaction();
+            try {
+                if (values.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)
+                        || values.containsKey(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER)) {
+                    values = withCurrentSupplier(database, uri, values, selection, selectionArgs);
+                }
+                if (values == null) {
+                    // No product selected. Still end the transaction as successful: inside
+                    // applyBatch a nested transaction that isn't would roll back the whole batch.
+                    rowsUpdated = 0;
+                } else {
+                    // The new quantity replaces the stored one and the sales pending against it
+                    if (quantity != null) {
+                        recordAdjustment(store, database, quantity, selection, selectionArgs);
+                        store.saleJournal.discardPending(database, selection, selectionArgs);
+                    }
+                    rowsUpdated = updateRows(store, database, toProductValues(database, values, null),
+                            selection, selectionArgs);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
 
             // If 1 or more rows were updated, then notify all listeners that the data at the
             // given URI has changed
             if (rowsUpdated != 0) {
-                getContext().getContentResolver().notifyChange(uri, null);
+                invalidateCache(store, uri);
+                if (isbn != null) {
+                    updateIsbnIndex(store, uri, isbn);
+                }
+                notifyChange(store.scope(uri));
             }
 
             // Return the number of rows updated
             return rowsUpdated;
         }
 
+        /**
+         * Add an ISBN set by an update to the index. After an update by selection the product
+         * isn't known, so the index is loaded again; lookups use the database meanwhile.
+         */
+        private static void updateIsbnIndex(StoreDatabase store, Uri uri, long isbn) {
+            if (sUriMatcher.match(uri) == PRODUCT_ID) {
+                store.isbnIndex.put(isbn, ContentUris.parseId(uri));
+            } else {
+                store.isbnIndex.invalidate();
+                store.isbnIndex.scheduleLoad();
+            }
+        }
+
+        /**
+         * Record a stock movement for every product in the given selection on the products table
+         * whose quantity changes to the given one. Must run in the update's transaction.
+         */
+        private static void recordAdjustment(StoreDatabase store, SQLiteDatabase database, int quantity,
+                                             String selection, String[] selectionArgs) {
+            String sql = SQL_RECORD_ADJUSTMENT;
+            if (!TextUtils.isEmpty(selection)) {
+                sql += " WHERE " + selection;
+            }
+            sql += ") WHERE " + MovementEntry.COLUMN_DELTA + " <> 0";
+
+            int argCount = selectionArgs == null ? 0 : selectionArgs.length;
+            Object[] bindArgs = new Object[2 + argCount];
+            bindArgs[0] = quantity;
+            bindArgs[1] = System.currentTimeMillis();
+            if (argCount > 0) {
+                System.arraycopy(selectionArgs, 0, bindArgs, 2, argCount);
+            }
+            store.statements.executeUpdateDelete(database, sql, bindArgs);
+        }
+
+        /**
+         * Set the quantity of one product: the fast path for the editor's quantity buttons and
+         * for restocks. Same effect as {@link #updateProduct}, with compiled statements only.
+         */
+        private int updateProductQuantity(StoreDatabase store, Uri uri, long id, int quantity) {
+            if (quantity < 0) {
+                throw new IllegalArgumentException("Product requires valid quantity");
+            }
+
+            SQLiteDatabase database = store.dbHelper.getWritableDatabase();
+            int rowsUpdated;
+            database.beginTransaction();
+            try {
+                SQLiteStatement statement = store.statements.acquire(database, SQL_RECORD_PRODUCT_ADJUSTMENT);
+                try {
+                    statement.bindLong(1, quantity);
+                    statement.bindLong(2, System.currentTimeMillis());
+                    statement.bindLong(3, id);
+                    statement.executeUpdateDelete();
+                } finally {
+                    store.statements.release(database, SQL_RECORD_PRODUCT_ADJUSTMENT, statement);
+                }
+
+                executeForId(store, database, SaleJournal.SQL_DISCARD_PRODUCT_PENDING, id);
+
+                statement = store.statements.acquire(database, SQL_UPDATE_QUANTITY);
+                try {
+                    statement.bindLong(1, quantity);
+                    statement.bindLong(2, id);
+                    rowsUpdated = statement.executeUpdateDelete();
+                } finally {
+                    store.statements.release(database, SQL_UPDATE_QUANTITY, statement);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+
+            if (rowsUpdated != 0) {
+                invalidateCache(store, uri);
+                notifyChange(store.scope(uri));
+            }
+            return rowsUpdated;
+        }
+
+        /**
+         * Same as {@link SQLiteDatabase#update} on the products table, through the statement cache,
+         * so that repeated updates of the same columns by the same selection are compiled once.
+         */
+        private static int updateRows(StoreDatabase store, SQLiteDatabase database, ContentValues values,
+                                      String selection, String[] selectionArgs) {
+            StringBuilder sql = new StringBuilder(120);
+            sql.append("UPDATE ").append(BookEntry.TABLE_NAME).append(" SET ");
+            int argCount = selectionArgs == null ? 0 : selectionArgs.length;
+            Object[] bindArgs = new Object[values.size() + argCount];
+            int i = 0;
+            for (Map.Entry<String, Object> value : values.valueSet()) {
+                sql.append(i > 0 ? ", " : "").append(value.getKey()).append(" = ?");
+                bindArgs[i++] = value.getValue();
+            }
+            if (argCount > 0) {
+                System.arraycopy(selectionArgs, 0, bindArgs, i, argCount);
+            }
+            if (!TextUtils.isEmpty(selection)) {
+                sql.append(" WHERE ").append(selection);
+            }
+            return store.statements.executeUpdateDelete(database, sql.toString(), bindArgs);
+        }
+
+        /**
+         * Run a cached statement binding only a product id. Return the number of rows changed.
+         */
+        private static int executeForId(StoreDatabase store, SQLiteDatabase database, String sql, long id) {
+            SQLiteStatement statement = store.statements.acquire(database, sql);
+            try {
+                statement.bindLong(1, id);
+                return statement.executeUpdateDelete();
+            } finally {
+                store.statements.release(database, sql, statement);
+            }
+        }
+
+        /**
+         * Return the given values with both the supplier name and phone number set. If only one
+         * of them is changed, the other one is taken from the current supplier of the selected
+         * products, which must all have the same supplier. Return null if no product is selected.
+         */
+        private static ContentValues withCurrentSupplier(SQLiteDatabase database, Uri uri,
+                ContentValues values, String selection, String[] selectionArgs) {
+            if (!values.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)
+                    || !values.containsKey(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER)) {
+                Cursor cursor = database.query(true, BookMigrations.VIEW_PRODUCTS,
+                        new String[] { BookEntry.COLUMN_SUPPLIER_NAME, BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER },
+                        selection, selectionArgs, null, null, null, "2");
+                try {
+                    if (!cursor.moveToFirst()) {
+                        return null;
+                    }
+                    if (cursor.getCount() > 1) {
+                        throw new IllegalArgumentException(
+                                "Products of different suppliers need both supplier columns for " + uri);
+                    }
+                    values = new ContentValues(values);
+                    if (!values.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)) {
+                        values.put(BookEntry.COLUMN_SUPPLIER_NAME, cursor.getString(0));
+                    } else {
+                        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, cursor.getString(1));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            if (TextUtils.isEmpty(values.getAsString(BookEntry.COLUMN_SUPPLIER_NAME))
+                    || TextUtils.isEmpty(values.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER))) {
+                throw new IllegalArgumentException("Product requires a supplier name and phone number");
+            }
+            return values;
+        }
+
+        /**
+         * Update suppliers with the given content values. Every product of a changed supplier
+         * changes too, so listeners of the products are notified as well.
+         */
+        private int updateSupplier(StoreDatabase store, Uri uri, ContentValues values, String selection,
+                                   String[] selectionArgs) {
+            validateSupplier(values, false);
+            if (values.size() == 0) {
+                return 0;
+            }
+
+            SQLiteDatabase database = store.dbHelper.getWritableDatabase();
+            int rowsUpdated = database.update(SupplierEntry.TABLE_NAME, values, selection, selectionArgs);
+
+            if (rowsUpdated != 0) {
+                store.productCache.invalidateAll();
+                notifyChange(store.scope(uri));
+                notifyChange(store.scope(BookEntry.CONTENT_URI));
+            }
+            return rowsUpdated;
+        }
+
         /**
         * Delete the data at the given selection and selection arguments.
         */
         @Override
         public int delete(Uri uri, String selection, String[] selectionArgs) {
+            StoreDatabase store = mStores.acquire(StoreEntry.getStoreId(uri));
+            try {
+                return delete(store, StoreEntry.getDefaultStoreUri(uri), selection, selectionArgs);
+            } finally {
+                mStores.release(store);
+            }
+        }
+
+        /**
+         * Perform the deletion for the given URI of the default store on the given store.
+         */
+        private int delete(StoreDatabase store, Uri uri, String selection, String[] selectionArgs) {
             // Get readable database
-            SQLiteDatabase database = mDbHelper.getWritableDatabase();
+            SQLiteDatabase database = store.dbHelper.getWritableDatabase();
 
             // Track the number of rows that were deleted
             int rowsDeleted;
@@ -223,39 +1567,158 @@ public class BookProvider extends ContentProvider {
             switch (match) {
                 case PRODUCTS:
                     // Delete all rows that match the selection and selection args
-                    rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                    String sql = "DELETE FROM " + BookEntry.TABLE_NAME;
+                    if (!TextUtils.isEmpty(selection)) {
+                        sql += " WHERE " + toProductTableSelection(selection);
+                    }
+                    rowsDeleted = store.statements.executeUpdateDelete(database, sql, selectionArgs);
                     break;
                 case PRODUCT_ID:
                     // Delete a single row given by the ID in the URI
-                    selection = BookEntry._ID + "=?";
-                    selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                    rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                    rowsDeleted = executeForId(store, database, SQL_DELETE_PRODUCT, ContentUris.parseId(uri));
                     break;
+                case SUPPLIERS:
+                case SUPPLIER_ID:
+                    if (match == SUPPLIER_ID) {
+                        selection = SupplierEntry._ID + "=?";
+                        selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                    }
+                    // Suppliers that still have products are kept
+                    selection = (TextUtils.isEmpty(selection) ? "" : "(" + selection + ") AND ")
+                            + SupplierEntry._ID + " NOT IN (SELECT " + BookEntry.COLUMN_SUPPLIER_ID
+                            + " FROM " + BookEntry.TABLE_NAME + ")";
+                    rowsDeleted = database.delete(SupplierEntry.TABLE_NAME, selection, selectionArgs);
+                    if (rowsDeleted != 0) {
+                        notifyChange(store.scope(uri));
+                    }
+                    return rowsDeleted;
                 default:
-                    throw new IllegalArgumentException("Deletion is not supported for " + uri);
+                    throw new IllegalArgumentException("Deletion is not supported for " + store.scope(uri));
             }
 
             // If 1 or more rows were deleted, then notify all listeners that the data at the
             // given URI has changed
             if (rowsDeleted != 0) {
-                getContext().getContentResolver().notifyChange(uri, null);
+                invalidateCache(store, uri);
+                notifyChange(store.scope(uri));
             }
 
             // Return the number of rows deleted
             return rowsDeleted;
         }
 
+    /**
+     * Handle provider-specific methods: {@link BookContract#METHOD_SELL} and
+     * {@link BookContract#METHOD_COMPACT_SALES}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!BookContract.METHOD_SELL.equals(method) && !BookContract.METHOD_COMPACT_SALES.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        long storeId = extras == null ? StoreEntry.DEFAULT_STORE_ID
+                : extras.getLong(BookContract.EXTRA_STORE_ID, StoreEntry.DEFAULT_STORE_ID);
+        StoreDatabase store = mStores.acquire(storeId);
+        try {
+            if (BookContract.METHOD_SELL.equals(method)) {
+                long id;
+                try {
+                    id = Long.parseLong(arg);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Sale requires a product id, got " + arg);
+                }
+                int amount = extras == null ? 1 : extras.getInt(BookContract.EXTRA_AMOUNT, 1);
+                return sellProduct(store, id, amount);
+            }
+            Bundle result = new Bundle();
+            result.putInt(BookContract.EXTRA_COMPACTED, store.saleJournal.compact());
+            return result;
+        } finally {
+            mStores.release(store);
+        }
+    }
+
+    /**
+     * Sell the given number of copies of a product. The sale is appended to the {@link SaleJournal}
+     * in SQL, guarded by the stock left, so concurrent sales can neither be lost nor take the
+     * quantity below zero.
+     */
+    private Bundle sellProduct(StoreDatabase store, long id, int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Sale requires a positive amount");
+        }
+
+        SQLiteDatabase database = store.dbHelper.getWritableDatabase();
+        boolean sold;
+        int quantity = -1;
+        database.beginTransaction();
+        try {
+            sold = store.saleJournal.recordSale(database, id, amount);
+
+            // Read the new quantity in the same transaction so it reflects this sale
+            SQLiteStatement statement = store.statements.acquire(database, SQL_QUERY_QUANTITY);
+            try {
+                statement.bindLong(1, id);
+                quantity = (int) statement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                // No such product
+            } finally {
+                store.statements.release(database, SQL_QUERY_QUANTITY, statement);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (sold) {
+            store.saleJournal.scheduleCompaction();
+            store.productCache.invalidate(id);
+            notifyChange(store.scope(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id)));
+        }
+
+        Bundle result = new Bundle();
+        result.putBoolean(BookContract.EXTRA_SOLD, sold);
+        result.putInt(BookContract.EXTRA_QUANTITY, quantity);
+        return result;
+    }
+
+    /**
+     * Print the open stores and their statement cache counters, for
+     * {@code adb shell dumpsys activity provider}.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mStores.dump(writer);
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
      */
     @Override
     public String getType(Uri uri) {
-        final int match = sUriMatcher.match(uri);
+        final int match = sUriMatcher.match(StoreEntry.getDefaultStoreUri(uri));
         switch (match) {
             case PRODUCTS:
+            case PRODUCT_SEARCH:
                 return BookEntry.CONTENT_LIST_TYPE;
             case PRODUCT_ID:
+            case PRODUCT_ISBN:
                 return BookEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case MOVEMENTS:
+            case PRODUCT_MOVEMENTS:
+                return MovementEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case ANALYTICS_STOCK_VALUE:
+            case ANALYTICS_SUPPLIERS:
+            case ANALYTICS_BELOW_THRESHOLD:
+            case ANALYTICS_TOP_STOCK:
+            case ANALYTICS_STORES:
+                return AnalyticsEntry.CONTENT_LIST_TYPE;
+            case STORES:
+                return StoreEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -0,0 +1,313 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.net.Uri;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports supplier catalogs (CSV with a header row, or a JSON array of objects) into the products
+ * table. The input is streamed record by record and written through
+ * {@link ContentResolver#bulkInsert} in chunks, so memory use depends on the chunk size and not on
+ * the size of the file. Each chunk is committed in its own transaction.
+ *
+ * Imports do disk I/O and must not be run on the main thread.
+ */
+public class CatalogImporter {
+
+    /** Number of rows written per transaction unless another size is given */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * Receives progress and rejected rows while an import runs. Callbacks are made on the
+     * importing thread.
+     */
+    public interface Listener {
+        /** Called after each chunk has been committed */
+        void onProgress(int rowsRead, int rowsImported);
+
+        /**
+         * Called for every row that fails parsing or validation, or that the provider refuses;
+         * row numbers start at 1
+         */
+        void onRowRejected(int rowNumber, String reason);
+    }
+
+    private final ContentResolver mResolver;
+    private final int mChunkSize;
+    private final Listener mListener;
+
+    /** Source field names (lower case) mapped onto BookEntry columns */
+    private final Map<String, String> mColumnMapping = new HashMap<>();
+
+    /** Rows waiting to be written in the next chunk, and their row numbers */
+    private final ContentValues[] mChunk;
+    private final int[] mChunkRows;
+    private int mChunkCount;
+
+    private int mRowsRead;
+    private int mRowsImported;
+
+    public CatalogImporter(ContentResolver resolver, Listener listener) {
+        this(resolver, DEFAULT_CHUNK_SIZE, listener);
+    }
+
+    public CatalogImporter(ContentResolver resolver, int chunkSize, Listener listener) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        mResolver = resolver;
+        mChunkSize = chunkSize;
+        mListener = listener;
+        mChunk = new ContentValues[chunkSize];
+        mChunkRows = new int[chunkSize];
+
+        // Source files using the database column names map onto them directly
+        mapColumn(BookEntry.COLUMN_PRODUCT_NAME, BookEntry.COLUMN_PRODUCT_NAME);
+        mapColumn(BookEntry.COLUMN_ISBN, BookEntry.COLUMN_ISBN);
+        mapColumn(BookEntry.COLUMN_PRICE, BookEntry.COLUMN_PRICE);
+        mapColumn(BookEntry.COLUMN_CURRENCY, BookEntry.COLUMN_CURRENCY);
+        mapColumn(BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_QUANTITY);
+        mapColumn(BookEntry.COLUMN_SUPPLIER_NAME, BookEntry.COLUMN_SUPPLIER_NAME);
+        mapColumn(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+    }
+
+    /**
+     * Map a field name used by the supplier's file (case insensitive) onto one of the
+     * BookEntry.COLUMN_* columns. Fields without a mapping are ignored.
+     */
+    public void mapColumn(String sourceField, String column) {
+        mColumnMapping.put(sourceField.toLowerCase(Locale.US), column);
+    }
+
+    /**
+     * Import a CSV file whose first record names the fields. Return the number of rows imported.
+     */
+    public int importCsv(InputStream in) throws IOException {
+        reset();
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+
+        List<String> record = new ArrayList<>();
+        if (!reader.readRecord(record)) {
+            return 0;
+        }
+        // Resolve the header once so every row is mapped by position
+        String[] columns = new String[record.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = mColumnMapping.get(record.get(i).trim().toLowerCase(Locale.US));
+        }
+
+        while (reader.readRecord(record)) {
+            // Skip blank lines
+            if (record.size() == 1 && record.get(0).length() == 0) {
+                continue;
+            }
+            mRowsRead++;
+            ContentValues values = new ContentValues();
+            String error = null;
+            for (int i = 0; i < columns.length && i < record.size() && error == null; i++) {
+                if (columns[i] != null) {
+                    error = putValue(values, columns[i], record.get(i));
+                }
+            }
+            addRow(values, error);
+        }
+        return finish();
+    }
+
+    /**
+     * Import a JSON array of objects keyed by field name. Return the number of rows imported.
+     */
+    public int importJson(InputStream in) throws IOException {
+        reset();
+        JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                mRowsRead++;
+                ContentValues values = new ContentValues();
+                String error = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String column = mColumnMapping.get(reader.nextName().toLowerCase(Locale.US));
+                    if (column == null || reader.peek() == JsonToken.NULL || error != null) {
+                        reader.skipValue();
+                    } else {
+                        error = putValue(values, column, reader.nextString());
+                    }
+                }
+                reader.endObject();
+                addRow(values, error);
+            }
+            reader.endArray();
+        } finally {
+            reader.close();
+        }
+        return finish();
+    }
+
+    private void reset() {
+        mChunkCount = 0;
+        mRowsRead = 0;
+        mRowsImported = 0;
+    }
+
+    /**
+     * Convert a raw field into the column's type and store it. Return an error message if the
+     * value can't be converted. Prices are kept as text until the row's currency is known.
+     */
+    private static String putValue(ContentValues values, String column, String raw) {
+        String value = raw.trim();
+        if (BookEntry.COLUMN_CURRENCY.equals(column)) {
+            if (value.length() > 0) {
+                values.put(column, value.toUpperCase(Locale.US));
+            }
+        } else if (BookEntry.COLUMN_QUANTITY.equals(column)) {
+            if (value.length() == 0) {
+                return null;
+            }
+            try {
+                values.put(column, Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                return "Invalid number for " + column + ": " + value;
+            }
+        } else if (BookEntry.COLUMN_ISBN.equals(column)) {
+            // Left out when empty; the provider normalizes and checks the others
+            if (value.length() > 0) {
+                values.put(column, value);
+            }
+        } else {
+            values.put(column, value);
+        }
+        return null;
+    }
+
+    /**
+     * Validate a parsed row and queue it for the current chunk, or report it as rejected.
+     */
+    private void addRow(ContentValues values, String error) {
+        if (error == null) {
+            error = convertPrice(values);
+        }
+        if (error == null) {
+            // Fill in the same defaults as the editor form so every row uses the bulk insert statement
+            putDefault(values, BookEntry.COLUMN_PRICE, 0);
+            putDefault(values, BookEntry.COLUMN_QUANTITY, 0);
+            try {
+                BookProvider.validateProduct(values);
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+        }
+
+        if (error != null) {
+            reject(mRowsRead, error);
+            return;
+        }
+
+        mChunkRows[mChunkCount] = mRowsRead;
+        mChunk[mChunkCount++] = values;
+        if (mChunkCount == mChunkSize) {
+            flushChunk();
+        }
+    }
+
+    /**
+     * Replace the decimal price of a row, e.g. "9.99", with minor units of the row's currency.
+     * Files are read with a '.' separator whatever the locale, as {@link InventoryExporter}
+     * writes them. Return an error message if the price or currency isn't valid.
+     */
+    private static String convertPrice(ContentValues values) {
+        String price = values.getAsString(BookEntry.COLUMN_PRICE);
+        String currency = values.getAsString(BookEntry.COLUMN_CURRENCY);
+        if (currency == null) {
+            currency = BookEntry.DEFAULT_CURRENCY;
+        }
+        if (price == null || price.length() == 0) {
+            values.remove(BookEntry.COLUMN_PRICE);
+            return null;
+        }
+        try {
+            values.put(BookEntry.COLUMN_PRICE, PriceFormatter.parse(price, currency));
+        } catch (NumberFormatException e) {
+            return "Invalid price: " + price;
+        } catch (IllegalArgumentException e) {
+            return "Invalid currency: " + currency;
+        }
+        return null;
+    }
+
+    private static void putDefault(ContentValues values, String column, int defaultValue) {
+        if (!values.containsKey(column)) {
+            values.put(column, defaultValue);
+        }
+    }
+
+    /**
+     * Write the queued rows in one transaction and report progress. If the provider refuses a
+     * row, e.g. for a duplicate ISBN, it writes none of them; the rows are then inserted one by
+     * one so that only the refused ones are rejected.
+     */
+    private void flushChunk() {
+        if (mChunkCount == 0) {
+            return;
+        }
+        ContentValues[] rows = mChunkCount == mChunkSize ? mChunk : Arrays.copyOf(mChunk, mChunkCount);
+        try {
+            mRowsImported += mResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+        } catch (IllegalArgumentException | SQLException e) {
+            for (int i = 0; i < mChunkCount; i++) {
+                insertRow(mChunkRows[i], mChunk[i]);
+            }
+        }
+
+        // Drop references so the committed rows can be collected
+        Arrays.fill(mChunk, 0, mChunkCount, null);
+        mChunkCount = 0;
+
+        if (mListener != null) {
+            mListener.onProgress(mRowsRead, mRowsImported);
+        }
+    }
+
+    private void insertRow(int rowNumber, ContentValues values) {
+        Uri uri;
+        try {
+            uri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        } catch (IllegalArgumentException | SQLException e) {
+            reject(rowNumber, e.getMessage());
+            return;
+        }
+        if (uri == null) {
+            reject(rowNumber, "Refused by the database");
+        } else {
+            mRowsImported++;
+        }
+    }
+
+    private void reject(int rowNumber, String reason) {
+        if (mListener != null) {
+            mListener.onRowRejected(rowNumber, reason);
+        }
+    }
+
+    private int finish() {
+        flushChunk();
+        return mRowsImported;
+    }
+}
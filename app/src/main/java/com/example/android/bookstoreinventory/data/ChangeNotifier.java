@@ -0,0 +1,174 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.StoreEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces the change notifications sent by {@link BookProvider}. Notifications raised within
+ * one window are collected and sent once per URI when the window closes, so a burst of sales or
+ * edits causes one reload of each observer instead of one per write. Inside a batch (see
+ * {@link #beginBatch()}) notifications are held back entirely until the batch has committed.
+ */
+class ChangeNotifier {
+
+    /** Default time notifications are collected before they are sent */
+    static final long DEFAULT_WINDOW_MILLIS = 50;
+
+    /**
+     * Most row URIs of one store sent for one window. Beyond that a single notification for the
+     * store's products URI is sent instead, since observers would reload everything anyway.
+     */
+    static final int MAX_ROW_NOTIFICATIONS = 16;
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler;
+
+    /** URIs waiting for the current window to close; guarded by itself */
+    private final Set<Uri> mPending = new LinkedHashSet<>();
+    private boolean mFlushScheduled;
+    private volatile long mWindowMillis;
+
+    /** URIs changed by the batch running on the current thread, or null outside of a batch */
+    private final ThreadLocal<Set<Uri>> mBatch = new ThreadLocal<>();
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    ChangeNotifier(ContentResolver resolver) {
+        this(resolver, DEFAULT_WINDOW_MILLIS);
+    }
+
+    ChangeNotifier(ContentResolver resolver, long windowMillis) {
+        mResolver = resolver;
+        mWindowMillis = windowMillis;
+
+        HandlerThread thread = new HandlerThread("ChangeNotifier", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Set how long notifications are collected before they are sent. Zero sends every
+     * notification as soon as it is raised (outside of batches).
+     */
+    void setWindowMillis(long windowMillis) {
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Record that the data at the given URI has changed.
+     */
+    void notifyChange(Uri uri) {
+        Set<Uri> batch = mBatch.get();
+        if (batch != null) {
+            batch.add(uri);
+            return;
+        }
+
+        long windowMillis = mWindowMillis;
+        if (windowMillis <= 0) {
+            mResolver.notifyChange(uri, null);
+            return;
+        }
+        synchronized (mPending) {
+            mPending.add(uri);
+            if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mHandler.postDelayed(mFlush, windowMillis);
+            }
+        }
+    }
+
+    /**
+     * Hold back notifications raised on this thread until {@link #endBatch(boolean)}.
+     */
+    void beginBatch() {
+        mBatch.set(new LinkedHashSet<Uri>());
+    }
+
+    /**
+     * End the batch started on this thread. If it committed, its notifications are sent with the
+     * next window; otherwise nothing changed and they are dropped.
+     */
+    void endBatch(boolean successful) {
+        Set<Uri> batch = mBatch.get();
+        mBatch.remove();
+        if (successful && batch != null) {
+            for (Uri uri : batch) {
+                notifyChange(uri);
+            }
+        }
+    }
+
+    /**
+     * Send every pending notification now. Too many distinct product URIs of one store collapse
+     * into one notification for their common ancestor, the store's products URI; other URIs are
+     * always sent.
+     */
+    void flush() {
+        List<Uri> uris;
+        synchronized (mPending) {
+            mHandler.removeCallbacks(mFlush);
+            mFlushScheduled = false;
+            uris = new ArrayList<>(mPending);
+            mPending.clear();
+        }
+
+        // Product row URIs per store
+        Map<Long, Integer> rows = new HashMap<>();
+        for (Uri uri : uris) {
+            if (BookEntry.getProductId(StoreEntry.getDefaultStoreUri(uri)) != -1) {
+                long storeId = StoreEntry.getStoreId(uri);
+                Integer count = rows.get(storeId);
+                rows.put(storeId, count == null ? 1 : count + 1);
+            }
+        }
+        Set<Long> collapsed = new HashSet<>();
+        for (Map.Entry<Long, Integer> storeRows : rows.entrySet()) {
+            if (storeRows.getValue() > MAX_ROW_NOTIFICATIONS) {
+                collapsed.add(storeRows.getKey());
+                mResolver.notifyChange(getProductsUri(storeRows.getKey()), null);
+            }
+        }
+        for (Uri uri : uris) {
+            if (collapsed.contains(StoreEntry.getStoreId(uri))) {
+                Uri defaultStoreUri = StoreEntry.getDefaultStoreUri(uri);
+                if (BookEntry.getProductId(defaultStoreUri) != -1 || BookEntry.CONTENT_URI.equals(defaultStoreUri)) {
+                    continue;
+                }
+            }
+            mResolver.notifyChange(uri, null);
+        }
+    }
+
+    private static Uri getProductsUri(long storeId) {
+        return storeId == StoreEntry.DEFAULT_STORE_ID
+                ? BookEntry.CONTENT_URI : StoreEntry.buildStoreUri(storeId, BookEntry.CONTENT_URI);
+    }
+
+    /**
+     * Send what is pending and stop the notifier thread.
+     */
+    void shutdown() {
+        flush();
+        mHandler.getLooper().quit();
+    }
+}
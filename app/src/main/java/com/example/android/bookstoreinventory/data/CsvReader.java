@@ -0,0 +1,90 @@
+package com.example.android.bookstoreinventory.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Minimal streaming CSV reader. Reads one record at a time from the underlying {@link Reader},
+ * so only the current record is ever held in memory. Supports quoted fields with embedded
+ * separators, line breaks and doubled quotes.
+ */
+class CsvReader {
+
+    private static final int END_OF_STREAM = -1;
+
+    private final Reader mReader;
+
+    /** Buffer reused for every field */
+    private final StringBuilder mField = new StringBuilder();
+
+    /**
+     * Character read ahead while looking for a line ending, or {@link #END_OF_STREAM} if none;
+     * a stream that has ended keeps returning that anyway
+     */
+    private int mPushedBack = END_OF_STREAM;
+
+    CsvReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Read the next record into the given list, replacing its contents.
+     * Return false once the end of the stream has been reached.
+     */
+    boolean readRecord(List<String> fields) throws IOException {
+        fields.clear();
+        mField.setLength(0);
+
+        int c = read();
+        if (c == END_OF_STREAM) {
+            return false;
+        }
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == END_OF_STREAM) {
+                    throw new IOException("Unterminated quoted field");
+                } else if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        mField.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    mField.append((char) c);
+                }
+            } else if (c == '"' && mField.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(mField.toString());
+                mField.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == END_OF_STREAM) {
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        mPushedBack = next;
+                    }
+                }
+                fields.add(mField.toString());
+                return true;
+            } else {
+                mField.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (mPushedBack != END_OF_STREAM) {
+            int c = mPushedBack;
+            mPushedBack = END_OF_STREAM;
+            return c;
+        }
+        return mReader.read();
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.Charset;
+
+/**
+ * Exports every product to a file. The table is read in pages using keyset pagination on
+ * {@link BookEntry#_ID}, so only one page is held in a cursor at a time no matter how large the
+ * table is, and rows are written through a buffered {@link FileChannel}.
+ *
+ * Two formats are supported: CSV with a header row, and a compact binary format made of the
+ * {@link #BINARY_MAGIC} header followed by one record per product:
+ * long id, string name, long isbn (0 if none), long price, string currency, int quantity,
+ * string supplier, string phone, where strings are an unsigned short byte length followed by
+ * UTF-8 bytes. Binary prices are in
+ * minor units; CSV prices are decimal amounts of the currency, as the importer reads them.
+ */
+public class InventoryExporter {
+
+    public enum Format { CSV, BINARY }
+
+    /** Number of rows read per query unless another size is given */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /** First four bytes of a binary export ("BSI" followed by the format version) */
+    public static final int BINARY_MAGIC = 0x42534903;
+
+    /** Size of the buffer between the rows and the file channel */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_ISBN,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_CURRENCY,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER };
+
+    /**
+     * Receives the outcome of {@link #exportInBackground}. Callbacks are made on the main thread.
+     */
+    public interface Callback {
+        void onExportFinished(File file, int rowsExported);
+
+        void onExportFailed(File file, IOException e);
+    }
+
+    private final ContentResolver mResolver;
+    private final int mPageSize;
+
+    private final CharsetEncoder mEncoder = Charset.forName("UTF-8").newEncoder();
+    private final StringBuilder mLine = new StringBuilder();
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private ByteBuffer mScratch = ByteBuffer.allocate(256);
+    private FileChannel mChannel;
+
+    public InventoryExporter(ContentResolver resolver) {
+        this(resolver, DEFAULT_PAGE_SIZE);
+    }
+
+    public InventoryExporter(ContentResolver resolver, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        mResolver = resolver;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Start exporting on a background thread and report the result to the callback.
+     */
+    public void exportInBackground(File file, Format format, Callback callback) {
+        new ExportTask(this, file, format, callback).execute();
+    }
+
+    /**
+     * Write every product to the given file, replacing it. Return the number of rows exported.
+     * This does disk I/O and must not be run on the main thread.
+     */
+    public synchronized int export(File file, Format format) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        mChannel = out.getChannel();
+        mBuffer.clear();
+        try {
+            if (format == Format.CSV) {
+                mLine.setLength(0);
+                for (int i = 0; i < PROJECTION.length; i++) {
+                    mLine.append(i == 0 ? "" : ",").append(PROJECTION[i]);
+                }
+                writeChars(mLine.append('\n'));
+            } else {
+                ensureRemaining(4);
+                mBuffer.putInt(BINARY_MAGIC);
+            }
+
+            int rowsExported = 0;
+            long lastId = -1;
+            Uri pageUri = BookEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(mPageSize))
+                    .build();
+            String[] selectionArgs = new String[1];
+            while (true) {
+                selectionArgs[0] = String.valueOf(lastId);
+                Cursor cursor = mResolver.query(pageUri, PROJECTION, BookEntry._ID + " > ?",
+                        selectionArgs, BookEntry._ID + " ASC");
+                if (cursor == null) {
+                    throw new IOException("Query for " + pageUri + " failed");
+                }
+                int rows;
+                try {
+                    rows = cursor.getCount();
+                    while (cursor.moveToNext()) {
+                        lastId = cursor.getLong(0);
+                        if (format == Format.CSV) {
+                            writeCsvRow(cursor);
+                        } else {
+                            writeBinaryRow(cursor);
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+                rowsExported += rows;
+                if (rows < mPageSize) {
+                    break;
+                }
+            }
+
+            flushBuffer();
+            mChannel.force(false);
+            return rowsExported;
+        } finally {
+            mChannel = null;
+            out.close();
+        }
+    }
+
+    /**
+     * Append the current row as one CSV line. Columns are read in {@link #PROJECTION} order.
+     */
+    private void writeCsvRow(Cursor cursor) throws IOException {
+        mLine.setLength(0);
+        mLine.append(cursor.getLong(0)).append(',');
+        appendCsvField(cursor.getString(1)).append(',');
+        if (!cursor.isNull(2)) {
+            mLine.append(cursor.getLong(2));
+        }
+        mLine.append(',');
+        String currency = cursor.getString(4);
+        mLine.append(PriceFormatter.toPlainString(cursor.getLong(3), currency)).append(',');
+        mLine.append(currency).append(',');
+        mLine.append(cursor.getInt(5)).append(',');
+        appendCsvField(cursor.getString(6)).append(',');
+        appendCsvField(cursor.getString(7)).append('\n');
+        writeChars(mLine);
+    }
+
+    /**
+     * Append a text field, quoting it if it contains a separator, quote or line break.
+     */
+    private StringBuilder appendCsvField(String value) {
+        if (value == null) {
+            return mLine;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            return mLine.append(value);
+        }
+        mLine.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                mLine.append('"');
+            }
+            mLine.append(c);
+        }
+        return mLine.append('"');
+    }
+
+    /**
+     * Append the current row as one binary record. Columns are read in {@link #PROJECTION} order.
+     */
+    private void writeBinaryRow(Cursor cursor) throws IOException {
+        ensureRemaining(8);
+        mBuffer.putLong(cursor.getLong(0));
+        writeBinaryString(cursor.getString(1));
+        ensureRemaining(16);
+        // A null ISBN reads as 0
+        mBuffer.putLong(cursor.getLong(2));
+        mBuffer.putLong(cursor.getLong(3));
+        writeBinaryString(cursor.getString(4));
+        ensureRemaining(4);
+        mBuffer.putInt(cursor.getInt(5));
+        writeBinaryString(cursor.getString(6));
+        writeBinaryString(cursor.getString(7));
+    }
+
+    private void writeBinaryString(String value) throws IOException {
+        mScratch.clear();
+        if (value != null) {
+            mEncoder.reset();
+            CharBuffer chars = CharBuffer.wrap(value);
+            while (mEncoder.encode(chars, mScratch, true) == CoderResult.OVERFLOW) {
+                ByteBuffer larger = ByteBuffer.allocate(mScratch.capacity() * 2);
+                mScratch.flip();
+                larger.put(mScratch);
+                mScratch = larger;
+            }
+        }
+        mScratch.flip();
+        if (mScratch.remaining() > 0xFFFF) {
+            throw new IOException("Field too long for binary export: " + mScratch.remaining() + " bytes");
+        }
+        ensureRemaining(2);
+        mBuffer.putShort((short) mScratch.remaining());
+        while (mScratch.hasRemaining()) {
+            ensureRemaining(1);
+            int count = Math.min(mScratch.remaining(), mBuffer.remaining());
+            int limit = mScratch.limit();
+            mScratch.limit(mScratch.position() + count);
+            mBuffer.put(mScratch);
+            mScratch.limit(limit);
+        }
+    }
+
+    /**
+     * Encode the characters as UTF-8 into the buffer, flushing it to the channel whenever it fills up.
+     */
+    private void writeChars(CharSequence chars) throws IOException {
+        mEncoder.reset();
+        CharBuffer in = CharBuffer.wrap(chars);
+        while (mEncoder.encode(in, mBuffer, true) == CoderResult.OVERFLOW) {
+            flushBuffer();
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (mBuffer.remaining() < bytes) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    /**
+     * Runs an export off the main thread and delivers the result to the callback.
+     */
+    private static class ExportTask extends AsyncTask<Void, Void, Integer> {
+
+        private final InventoryExporter mExporter;
+        private final File mFile;
+        private final Format mFormat;
+        private final Callback mCallback;
+        private IOException mError;
+
+        ExportTask(InventoryExporter exporter, File file, Format format, Callback callback) {
+            mExporter = exporter;
+            mFile = file;
+            mFormat = format;
+            mCallback = callback;
+        }
+
+        @Override
+        protected Integer doInBackground(Void... params) {
+            try {
+                return mExporter.export(mFile, mFormat);
+            } catch (IOException e) {
+                mError = e;
+                return 0;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Integer rowsExported) {
+            if (mCallback == null) {
+                return;
+            }
+            if (mError != null) {
+                mCallback.onExportFailed(mFile, mError);
+            } else {
+                mCallback.onExportFinished(mFile, rowsExported);
+            }
+        }
+    }
+}
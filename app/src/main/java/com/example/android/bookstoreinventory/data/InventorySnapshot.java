@@ -0,0 +1,380 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copy of the columns of the products table needed for analytics, stored as primitive arrays
+ * ordered by id. Supplier names are dictionary encoded: each row stores the code of its supplier
+ * and {@link #getSupplierName(int)} turns a code back into the name. Currencies are encoded the
+ * same way, and values are only summed within one currency.
+ *
+ * A snapshot never changes. {@link #update(ContentResolver, long[])} reads only the changed rows
+ * and merges them into a new snapshot. The aggregations don't allocate; those that produce more
+ * than one value write into arrays supplied by the caller.
+ */
+public final class InventorySnapshot {
+
+    static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_CURRENCY };
+
+    public static final InventorySnapshot EMPTY = new InventorySnapshot(0, new String[0],
+            new HashMap<String, Integer>(), new String[0], new HashMap<String, Integer>());
+
+    /** Above this many changed rows reading everything again is cheaper than merging */
+    static final int MAX_UPDATED_ROWS = 256;
+
+    private int mCount;
+    private final long[] mIds;
+    private final long[] mPrices;
+    private final int[] mQuantities;
+    private final int[] mSupplierCodes;
+    private final int[] mCurrencyCodes;
+
+    /** Supplier name of each code; may contain suppliers no row refers to anymore */
+    private String[] mSuppliers;
+    private int mSupplierCount;
+    private final Map<String, Integer> mSupplierCodesByName;
+
+    /** Currency of each code; may contain currencies no row is priced in anymore */
+    private String[] mCurrencies;
+    private int mCurrencyCount;
+    private final Map<String, Integer> mCurrencyCodesByName;
+
+    private InventorySnapshot(int capacity, String[] suppliers, Map<String, Integer> supplierCodes,
+                              String[] currencies, Map<String, Integer> currencyCodes) {
+        mIds = new long[capacity];
+        mPrices = new long[capacity];
+        mQuantities = new int[capacity];
+        mSupplierCodes = new int[capacity];
+        mCurrencyCodes = new int[capacity];
+        mSuppliers = suppliers;
+        mSupplierCount = supplierCodes.size();
+        mSupplierCodesByName = supplierCodes;
+        mCurrencies = currencies;
+        mCurrencyCount = currencyCodes.size();
+        mCurrencyCodesByName = currencyCodes;
+    }
+
+    /**
+     * Read the whole products table in one pass.
+     */
+    public static InventorySnapshot load(ContentResolver resolver) {
+        return load(resolver, BookEntry.CONTENT_URI);
+    }
+
+    /**
+     * Read every product under the given URI in one pass, e.g. the products of another store.
+     */
+    public static InventorySnapshot load(ContentResolver resolver, Uri productsUri) {
+        Cursor cursor = resolver.query(productsUri, PROJECTION, null, null,
+                BookEntry._ID + " ASC");
+        if (cursor == null) {
+            return EMPTY;
+        }
+        try {
+            return fromCursor(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Copy every row of a cursor over {@link #PROJECTION} ordered by id.
+     */
+    static InventorySnapshot fromCursor(Cursor cursor) {
+        InventorySnapshot snapshot = new InventorySnapshot(cursor.getCount(), new String[16],
+                new HashMap<String, Integer>(), new String[4], new HashMap<String, Integer>());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            snapshot.append(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2),
+                    snapshot.encodeSupplier(cursor.getString(3)),
+                    snapshot.encodeCurrency(cursor.getString(4)));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Return a snapshot in which the given products are read again: changed rows are replaced,
+     * new rows are added and rows that no longer exist are removed. Reads everything again when
+     * too many products changed.
+     */
+    public InventorySnapshot update(ContentResolver resolver, long[] changedIds) {
+        return update(resolver, BookEntry.CONTENT_URI, changedIds);
+    }
+
+    /**
+     * Like {@link #update(ContentResolver, long[])}, for a snapshot of the products under the
+     * given URI.
+     */
+    public InventorySnapshot update(ContentResolver resolver, Uri productsUri, long[] changedIds) {
+        if (changedIds.length == 0) {
+            return this;
+        }
+        if (changedIds.length > MAX_UPDATED_ROWS) {
+            return load(resolver, productsUri);
+        }
+
+        long[] changed = changedIds.clone();
+        Arrays.sort(changed);
+        StringBuilder selection = new StringBuilder(BookEntry._ID).append(" IN (");
+        String[] selectionArgs = new String[changed.length];
+        for (int i = 0; i < changed.length; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i] = String.valueOf(changed[i]);
+        }
+        selection.append(')');
+
+        Cursor cursor = resolver.query(productsUri, PROJECTION, selection.toString(),
+                selectionArgs, BookEntry._ID + " ASC");
+        if (cursor == null) {
+            return this;
+        }
+        try {
+            return merge(cursor, changed);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Merge the rows of the cursor, ordered by id, into a copy of this snapshot. Rows of this
+     * snapshot whose id is in {@code changed} but not in the cursor were deleted.
+     */
+    private InventorySnapshot merge(Cursor cursor, long[] changed) {
+        InventorySnapshot merged = new InventorySnapshot(mCount + cursor.getCount(),
+                Arrays.copyOf(mSuppliers, mSuppliers.length),
+                new HashMap<>(mSupplierCodesByName),
+                Arrays.copyOf(mCurrencies, mCurrencies.length),
+                new HashMap<>(mCurrencyCodesByName));
+
+        int row = 0;
+        boolean hasNext = cursor.moveToFirst();
+        while (row < mCount || hasNext) {
+            long oldId = row < mCount ? mIds[row] : Long.MAX_VALUE;
+            long newId = hasNext ? cursor.getLong(0) : Long.MAX_VALUE;
+            if (newId <= oldId) {
+                merged.append(newId, cursor.getLong(1), cursor.getInt(2),
+                        merged.encodeSupplier(cursor.getString(3)),
+                        merged.encodeCurrency(cursor.getString(4)));
+                hasNext = cursor.moveToNext();
+                if (newId == oldId) {
+                    row++;
+                }
+            } else {
+                if (Arrays.binarySearch(changed, oldId) < 0) {
+                    merged.append(oldId, mPrices[row], mQuantities[row], mSupplierCodes[row],
+                            mCurrencyCodes[row]);
+                }
+                row++;
+            }
+        }
+        return merged;
+    }
+
+    private void append(long id, long price, int quantity, int supplierCode, int currencyCode) {
+        mIds[mCount] = id;
+        mPrices[mCount] = price;
+        mQuantities[mCount] = quantity;
+        mSupplierCodes[mCount] = supplierCode;
+        mCurrencyCodes[mCount] = currencyCode;
+        mCount++;
+    }
+
+    /**
+     * Return the code of the given supplier, adding it to the dictionary if it is new.
+     */
+    private int encodeSupplier(String supplier) {
+        if (supplier == null) {
+            supplier = "";
+        }
+        Integer code = mSupplierCodesByName.get(supplier);
+        if (code != null) {
+            return code;
+        }
+        if (mSupplierCount == mSuppliers.length) {
+            mSuppliers = Arrays.copyOf(mSuppliers, Math.max(16, mSupplierCount * 2));
+        }
+        mSuppliers[mSupplierCount] = supplier;
+        mSupplierCodesByName.put(supplier, mSupplierCount);
+        return mSupplierCount++;
+    }
+
+    /**
+     * Return the code of the given currency, adding it to the dictionary if it is new.
+     */
+    private int encodeCurrency(String currency) {
+        Integer code = mCurrencyCodesByName.get(currency);
+        if (code != null) {
+            return code;
+        }
+        if (mCurrencyCount == mCurrencies.length) {
+            mCurrencies = Arrays.copyOf(mCurrencies, Math.max(4, mCurrencyCount * 2));
+        }
+        mCurrencies[mCurrencyCount] = currency;
+        mCurrencyCodesByName.put(currency, mCurrencyCount);
+        return mCurrencyCount++;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getId(int row) {
+        return mIds[row];
+    }
+
+    /**
+     * Return the price of the row in minor units of its currency, see {@link #getCurrencyCode(int)}.
+     */
+    public long getPrice(int row) {
+        return mPrices[row];
+    }
+
+    public int getQuantity(int row) {
+        return mQuantities[row];
+    }
+
+    public int getSupplierCode(int row) {
+        return mSupplierCodes[row];
+    }
+
+    public int getCurrencyCode(int row) {
+        return mCurrencyCodes[row];
+    }
+
+    /**
+     * Return the number of supplier codes, the size of the arrays passed to
+     * {@link #sumBySupplier(int, long[], int[])}.
+     */
+    public int getSupplierCount() {
+        return mSupplierCount;
+    }
+
+    public String getSupplierName(int supplierCode) {
+        return mSuppliers[supplierCode];
+    }
+
+    /**
+     * Return the code of the given supplier, or -1 if no product ever had that supplier.
+     */
+    public int getSupplierCode(String supplier) {
+        Integer code = mSupplierCodesByName.get(TextUtils.isEmpty(supplier) ? "" : supplier);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Return the number of currency codes.
+     */
+    public int getCurrencyCount() {
+        return mCurrencyCount;
+    }
+
+    /**
+     * Return the ISO 4217 code of the given currency code.
+     */
+    public String getCurrency(int currencyCode) {
+        return mCurrencies[currencyCode];
+    }
+
+    /**
+     * Return the code of the given currency, or -1 if no product was ever priced in it.
+     */
+    public int getCurrencyCode(String currency) {
+        Integer code = mCurrencyCodesByName.get(currency);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Return the number of items in stock over all products.
+     */
+    public long totalQuantity() {
+        long total = 0;
+        for (int i = 0; i < mCount; i++) {
+            total += mQuantities[i];
+        }
+        return total;
+    }
+
+    /**
+     * Return the value of the stock priced in the given currency, price times quantity summed
+     * over those products, in minor units of the currency.
+     */
+    public long totalValue(int currencyCode) {
+        long total = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (mCurrencyCodes[i] == currencyCode) {
+                total += mPrices[i] * mQuantities[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Return the number of products with less than {@code threshold} items in stock.
+     */
+    public int countBelow(int threshold) {
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (mQuantities[i] < threshold) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write the rows of the products with less than {@code threshold} items in stock into
+     * {@code rows}, as far as it has room. Return the number of such products.
+     */
+    public int findBelow(int threshold, int[] rows) {
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (mQuantities[i] < threshold) {
+                if (count < rows.length) {
+                    rows[count] = i;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sum the stock value and count the products of each supplier priced in the given currency,
+     * indexed by supplier code. Both arrays must hold at least {@link #getSupplierCount()}
+     * elements; either may be null.
+     */
+    public void sumBySupplier(int currencyCode, long[] values, int[] counts) {
+        if (values != null) {
+            Arrays.fill(values, 0, mSupplierCount, 0);
+        }
+        if (counts != null) {
+            Arrays.fill(counts, 0, mSupplierCount, 0);
+        }
+        for (int i = 0; i < mCount; i++) {
+            if (mCurrencyCodes[i] != currencyCode) {
+                continue;
+            }
+            int supplier = mSupplierCodes[i];
+            if (values != null) {
+                values[supplier] += mPrices[i] * mQuantities[i];
+            }
+            if (counts != null) {
+                counts[supplier]++;
+            }
+        }
+    }
+}
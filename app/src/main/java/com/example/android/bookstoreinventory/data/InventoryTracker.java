@@ -0,0 +1,129 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+import com.example.android.bookstoreinventory.data.BookContract.StoreEntry;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps an {@link InventorySnapshot} up to date. Change notifications for single products are
+ * collected, and the next call to {@link #getSnapshot()} merges just those rows into the
+ * snapshot; any other notification makes it read the whole table again. A tracker follows the
+ * products of one store, the default store unless another is given.
+ */
+public class InventoryTracker {
+
+    private final ContentResolver mResolver;
+
+    /** Products of the tracked store; notifications are observed below it */
+    private final Uri mProductsUri;
+
+    /** Observer without a handler, called on a binder thread */
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            recordChange(uri);
+        }
+    };
+    private boolean mStarted;
+
+    /** Products changed since the snapshot was last updated; guarded by itself */
+    private final Set<Long> mChangedIds = new HashSet<>();
+
+    /** True if the snapshot has to be read again completely; guarded by mChangedIds */
+    private boolean mFullReload = true;
+
+    /** Guarded by this */
+    private InventorySnapshot mSnapshot = InventorySnapshot.EMPTY;
+
+    public InventoryTracker(ContentResolver resolver) {
+        this(resolver, StoreEntry.DEFAULT_STORE_ID);
+    }
+
+    public InventoryTracker(ContentResolver resolver, long storeId) {
+        mResolver = resolver;
+        mProductsUri = storeId == StoreEntry.DEFAULT_STORE_ID
+                ? BookEntry.CONTENT_URI : StoreEntry.buildStoreUri(storeId, BookEntry.CONTENT_URI);
+    }
+
+    /**
+     * Start listening for changes to the products.
+     */
+    public synchronized void start() {
+        if (!mStarted) {
+            mResolver.registerContentObserver(mProductsUri, true, mObserver);
+            mStarted = true;
+        }
+    }
+
+    /**
+     * Stop listening for changes. The next {@link #start()} reads everything again.
+     */
+    public synchronized void stop() {
+        if (mStarted) {
+            mResolver.unregisterContentObserver(mObserver);
+            mStarted = false;
+        }
+        synchronized (mChangedIds) {
+            mChangedIds.clear();
+            mFullReload = true;
+        }
+    }
+
+    /**
+     * Record a change notified for the given URI: the product it names is merged into the next
+     * snapshot, any other URI (or none) makes it read everything again.
+     */
+    void recordChange(Uri uri) {
+        // Products of another store are notified as stores/#/products/#
+        long id = uri == null ? -1 : BookEntry.getProductId(StoreEntry.getDefaultStoreUri(uri));
+        synchronized (mChangedIds) {
+            if (id == -1) {
+                mFullReload = true;
+            } else {
+                mChangedIds.add(id);
+            }
+        }
+    }
+
+    /**
+     * Return a snapshot reflecting every change notified so far. Reads from the provider, so
+     * don't call this on the main thread.
+     */
+    public synchronized InventorySnapshot getSnapshot() {
+        long[] changedIds;
+        boolean fullReload;
+        synchronized (mChangedIds) {
+            fullReload = mFullReload;
+            changedIds = new long[mChangedIds.size()];
+            int i = 0;
+            for (Long id : mChangedIds) {
+                changedIds[i++] = id;
+            }
+            mChangedIds.clear();
+            mFullReload = false;
+        }
+
+        if (fullReload) {
+            mSnapshot = InventorySnapshot.load(mResolver, mProductsUri);
+        } else {
+            mSnapshot = mSnapshot.update(mResolver, mProductsUri, changedIds);
+        }
+        return mSnapshot;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.android.bookstoreinventory.data;
+
+/**
+ * Normalizes ISBNs to the form stored in {@link BookContract.BookEntry#COLUMN_ISBN}: the 13
+ * digits of the ISBN-13 as a number, e.g. 9780306406157. ISBN-10s are converted to the ISBN-13
+ * with the 978 prefix, which is also what the EAN-13 barcode on the book encodes, so a scanned
+ * barcode, a typed ISBN-10 and a typed ISBN-13 of the same book all normalize to the same value.
+ *
+ * Only uses the JDK, so it can be tested on the host.
+ */
+public final class Isbn {
+
+    /** Returned by {@link #normalize(CharSequence)} for text that isn't a valid ISBN */
+    public static final long INVALID = -1;
+
+    private static final long MIN_ISBN_13 = 9780000000000L;
+    private static final long MAX_ISBN_13 = 9799999999999L;
+
+    private Isbn() {}
+
+    /**
+     * Return the ISBN-13 of an ISBN-10 or ISBN-13, or {@link #INVALID} if the text isn't one or
+     * its check digit is wrong. Hyphens and spaces are ignored; an ISBN-10 may end in X.
+     */
+    public static long normalize(CharSequence text) {
+        if (text == null) {
+            return INVALID;
+        }
+        long digits = 0;
+        int count = 0;
+        boolean tenCheckDigit = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (tenCheckDigit || count == 13) {
+                return INVALID;
+            }
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+            } else if ((c == 'X' || c == 'x') && count == 9) {
+                // Stands for 10; only valid as the check digit of an ISBN-10, so it ends the digits
+                tenCheckDigit = true;
+            } else {
+                return INVALID;
+            }
+            count++;
+        }
+
+        if (count == 10) {
+            long firstNine = tenCheckDigit ? digits : digits / 10;
+            long checkDigit = tenCheckDigit ? 10 : digits % 10;
+            return isValidIsbn10(firstNine, checkDigit) ? fromIsbn10(firstNine) : INVALID;
+        }
+        if (count == 13 && !tenCheckDigit) {
+            return isValid(digits) ? digits : INVALID;
+        }
+        return INVALID;
+    }
+
+    /**
+     * Return true if the number is a valid normalized ISBN: 13 digits starting with 978 or 979,
+     * with a correct check digit.
+     */
+    public static boolean isValid(long isbn) {
+        if (isbn < MIN_ISBN_13 || isbn > MAX_ISBN_13) {
+            return false;
+        }
+        return isbn % 10 == checkDigit13(isbn / 10);
+    }
+
+    /**
+     * Return the normalized ISBN as its 13 digits.
+     */
+    public static String toString(long isbn) {
+        return Long.toString(isbn);
+    }
+
+    /**
+     * Return true if the check digit (10 for X) is correct for the first nine digits of an
+     * ISBN-10. The weights are 10 down to 1; the weighted digits of a valid one sum to a multiple
+     * of 11.
+     */
+    private static boolean isValidIsbn10(long firstNine, long checkDigit) {
+        long sum = checkDigit;
+        for (int weight = 2; weight <= 10; weight++) {
+            sum += weight * (firstNine % 10);
+            firstNine /= 10;
+        }
+        return sum % 11 == 0;
+    }
+
+    /**
+     * Return the ISBN-13 for the first nine digits of an ISBN-10.
+     */
+    private static long fromIsbn10(long firstNine) {
+        long withoutCheck = 978000000000L + firstNine;
+        return withoutCheck * 10 + checkDigit13(withoutCheck);
+    }
+
+    /**
+     * Return the EAN-13 check digit for the first twelve digits: weights alternate 1 and 3
+     * from the left, and the check digit brings the sum to a multiple of 10.
+     */
+    private static long checkDigit13(long firstTwelve) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            // Read from the right, where the twelfth digit has weight 3
+            sum += (i % 2 == 0 ? 3 : 1) * (firstTwelve % 10);
+            firstTwelve /= 10;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import java.util.Arrays;
+
+/**
+ * In-memory index from {@link BookEntry#COLUMN_ISBN} to product id, so a scanned ISBN resolves
+ * without reading the database. Keys and ids are kept in two primitive arrays, an open
+ * addressing hash table with linear probing, so a lookup allocates nothing and a 200k title
+ * catalog takes a few megabytes.
+ *
+ * The index is loaded from the database on a background thread by {@link #scheduleLoad()}; until
+ * then {@link #find(long)} returns {@link #NOT_LOADED} and readers fall back to the unique index
+ * in the database. {@link BookProvider} adds the ISBNs it writes. Entries of deleted products or
+ * changed ISBNs aren't removed right away: readers check the product they find and
+ * {@link #remove(long, long)} entries that turn out to be stale.
+ */
+final class IsbnIndex {
+
+    /** Returned by {@link #find(long)} when no product has the ISBN */
+    static final long NO_ID = -1;
+
+    /** Returned by {@link #find(long)} before the index has been loaded */
+    static final long NOT_LOADED = -2;
+
+    /** Marks a free slot; no ISBN is 0 */
+    private static final long EMPTY = 0;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private static final String SQL_QUERY_ISBNS = "SELECT " + BookEntry.COLUMN_ISBN + ", " + BookEntry._ID
+            + " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_ISBN + " IS NOT NULL";
+
+    private final SQLiteOpenHelper mDbHelper;
+    private final Handler mHandler;
+
+    /** Hash table, null until loaded; guarded by this */
+    private long[] mKeys;
+    private long[] mIds;
+    private int mSize;
+
+    /** Incremented by {@link #invalidate()}, so a load started before it is discarded */
+    private long mGeneration;
+
+    /** ISBNs added while a load runs, as key and id pairs, replayed into the loaded table */
+    private boolean mLoading;
+    private long[] mPending = new long[2 * MIN_CAPACITY];
+    private int mPendingCount;
+
+    private final Runnable mLoad = new Runnable() {
+        @Override
+        public void run() {
+            load();
+        }
+    };
+
+    IsbnIndex(SQLiteOpenHelper dbHelper) {
+        this(dbHelper, newBackgroundHandler());
+    }
+
+    /**
+     * Create an index loaded on the given handler's thread instead of a thread of its own.
+     */
+    IsbnIndex(SQLiteOpenHelper dbHelper, Handler handler) {
+        mDbHelper = dbHelper;
+        mHandler = handler;
+    }
+
+    private static Handler newBackgroundHandler() {
+        HandlerThread thread = new HandlerThread("IsbnIndex", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        return new Handler(thread.getLooper());
+    }
+
+    /**
+     * Load the index on the background thread.
+     */
+    void scheduleLoad() {
+        mHandler.post(mLoad);
+    }
+
+    /**
+     * Drop a load that is scheduled and hasn't started yet, e.g. before the database is closed.
+     */
+    void cancelLoad() {
+        mHandler.removeCallbacks(mLoad);
+    }
+
+    /**
+     * Read every ISBN in the products table into a new table and start answering lookups from
+     * it. This does disk I/O and must not be run on the main thread.
+     */
+    void load() {
+        long generation;
+        synchronized (this) {
+            generation = mGeneration;
+            mLoading = true;
+            mPendingCount = 0;
+        }
+
+        long[] keys;
+        long[] ids;
+        int size = 0;
+        // Answered from the unique ISBN index, which holds the row ids too
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery(SQL_QUERY_ISBNS, null);
+        try {
+            int capacity = capacityFor(cursor.getCount());
+            keys = new long[capacity];
+            ids = new long[capacity];
+            while (cursor.moveToNext()) {
+                if (insert(keys, ids, cursor.getLong(0), cursor.getLong(1))) {
+                    size++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (this) {
+            mLoading = false;
+            if (generation != mGeneration) {
+                return;
+            }
+            mKeys = keys;
+            mIds = ids;
+            mSize = size;
+            for (int i = 0; i < mPendingCount; i += 2) {
+                put(mPending[i], mPending[i + 1]);
+            }
+            mPendingCount = 0;
+        }
+    }
+
+    /**
+     * Return the id of the product with the given normalized ISBN, {@link #NO_ID} if there is
+     * none, or {@link #NOT_LOADED} if the index can't tell yet.
+     */
+    synchronized long find(long isbn) {
+        if (mKeys == null) {
+            return NOT_LOADED;
+        }
+        int mask = mKeys.length - 1;
+        for (int slot = hash(isbn, mask); ; slot = (slot + 1) & mask) {
+            long key = mKeys[slot];
+            if (key == isbn) {
+                return mIds[slot];
+            }
+            if (key == EMPTY) {
+                return NO_ID;
+            }
+        }
+    }
+
+    /**
+     * Record that the product with the given id has the given normalized ISBN. Call once the
+     * write has committed.
+     */
+    synchronized void put(long isbn, long id) {
+        if (mLoading) {
+            if (mPendingCount == mPending.length) {
+                mPending = Arrays.copyOf(mPending, mPending.length * 2);
+            }
+            mPending[mPendingCount++] = isbn;
+            mPending[mPendingCount++] = id;
+        }
+        if (mKeys == null) {
+            return;
+        }
+        if (capacityFor(mSize + 1) > mKeys.length) {
+            rehash(mKeys.length * 2);
+        }
+        if (insert(mKeys, mIds, isbn, id)) {
+            mSize++;
+        }
+    }
+
+    /**
+     * Remove the entry for the ISBN if it still points to the given product id.
+     */
+    synchronized void remove(long isbn, long id) {
+        if (mKeys == null) {
+            return;
+        }
+        int mask = mKeys.length - 1;
+        int slot = hash(isbn, mask);
+        while (mKeys[slot] != isbn) {
+            if (mKeys[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (mIds[slot] != id) {
+            return;
+        }
+
+        // Shift later entries of the probe sequence back, so lookups never stop at the hole early
+        int hole = slot;
+        for (int next = (hole + 1) & mask; mKeys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(mKeys[next], mask);
+            // Move the entry if its home slot isn't cyclically between the hole and its slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                mKeys[hole] = mKeys[next];
+                mIds[hole] = mIds[next];
+                hole = next;
+            }
+        }
+        mKeys[hole] = EMPTY;
+        mIds[hole] = 0;
+        mSize--;
+    }
+
+    /**
+     * Drop the index after a write whose ISBNs aren't known, e.g. an update by selection. Lookups
+     * go to the database until the next load.
+     */
+    synchronized void invalidate() {
+        mGeneration++;
+        mKeys = null;
+        mIds = null;
+        mSize = 0;
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Store the key and id, replacing the id if the key is present. Return true if the key was new.
+     */
+    private static boolean insert(long[] keys, long[] ids, long isbn, long id) {
+        int mask = keys.length - 1;
+        for (int slot = hash(isbn, mask); ; slot = (slot + 1) & mask) {
+            long key = keys[slot];
+            if (key == isbn || key == EMPTY) {
+                keys[slot] = isbn;
+                ids[slot] = id;
+                return key == EMPTY;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = new long[capacity];
+        long[] ids = new long[capacity];
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i] != EMPTY) {
+                insert(keys, ids, mKeys[i], mIds[i]);
+            }
+        }
+        mKeys = keys;
+        mIds = ids;
+    }
+
+    /**
+     * Return a power of two with room for the given number of entries at most 3/4 full.
+     */
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4 < size) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spread the ISBNs, which are mostly consecutive numbers, over the whole table.
+     */
+    private static int hash(long isbn, int mask) {
+        long h = isbn * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
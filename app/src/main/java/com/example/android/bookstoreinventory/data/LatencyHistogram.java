@@ -0,0 +1,68 @@
+package com.example.android.bookstoreinventory.data;
+
+/**
+ * Histogram of latencies in power-of-two microsecond buckets: bucket i counts latencies below
+ * 2^i microseconds that didn't fit a smaller bucket. Recording never allocates, so it can be used
+ * on hot paths. Thread safe.
+ */
+public class LatencyHistogram {
+
+    /** The last bucket collects everything from about 35 minutes up */
+    private static final int BUCKETS = 32;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mTotal;
+    private long mMaxNanos;
+
+    /**
+     * Record one latency.
+     */
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        mCounts[bucket]++;
+        mTotal++;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+    }
+
+    public synchronized long getCount() {
+        return mTotal;
+    }
+
+    public synchronized long getMaxMicros() {
+        return mMaxNanos / 1000;
+    }
+
+    /**
+     * Return the upper bound in microseconds of the bucket holding the given percentile
+     * (0 to 100), or 0 if nothing was recorded.
+     */
+    public synchronized long getPercentileMicros(double percentile) {
+        if (mTotal == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(mTotal * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank && seen > 0) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts[i] = 0;
+        }
+        mTotal = 0;
+        mMaxNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "n=" + mTotal + " p50<" + getPercentileMicros(50) + "us p90<" + getPercentileMicros(90)
+                + "us p99<" + getPercentileMicros(99) + "us max=" + getMaxMicros() + "us";
+    }
+}
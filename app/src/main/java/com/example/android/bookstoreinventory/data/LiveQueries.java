@@ -0,0 +1,186 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.example.android.bookstoreinventory.data.BookContract.AnalyticsEntry;
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out {@link LiveQuery} instances for the application's queries: the catalog, a single
+ * product, a search and the stock totals, or any other provider query with a {@link
+ * LiveQuery.Mapper}. Equal queries (same URI, projection, selection, sort order and mapper)
+ * observed at the same time are one LiveQuery, so N observers cost one SQL query per change.
+ *
+ * Every query runs on one background thread owned by this class.
+ */
+public final class LiveQueries {
+
+    /** Default time changes are collected before a query runs again */
+    static final long DEFAULT_WINDOW_MILLIS = 100;
+
+    /** Reads every row of a product cursor into an unmodifiable list */
+    public static final LiveQuery.Mapper<List<Book>> BOOK_LIST = new LiveQuery.Mapper<List<Book>>() {
+        @Override
+        public List<Book> map(Cursor cursor) {
+            if (cursor == null) {
+                return Collections.emptyList();
+            }
+            List<Book> books = new ArrayList<>(cursor.getCount());
+            BookCursorMapper mapper = new BookCursorMapper(cursor);
+            while (cursor.moveToNext()) {
+                books.add(mapper.read());
+            }
+            return Collections.unmodifiableList(books);
+        }
+    };
+
+    /** Reads the first row of a product cursor, or null if there is none */
+    public static final LiveQuery.Mapper<Book> BOOK = new LiveQuery.Mapper<Book>() {
+        @Override
+        public Book map(Cursor cursor) {
+            return cursor != null && cursor.moveToFirst() ? Book.fromCursor(cursor) : null;
+        }
+    };
+
+    public static final LiveQuery.Mapper<StockValue> STOCK_VALUE = new LiveQuery.Mapper<StockValue>() {
+        @Override
+        public StockValue map(Cursor cursor) {
+            return StockValue.fromCursor(cursor);
+        }
+    };
+
+    private static LiveQueries sInstance;
+
+    private final ContentResolver mResolver;
+    private final Handler mWorker;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final long mWindowMillis;
+
+    /** Queries with observers, by key; guarded by this */
+    private final Map<Object, LiveQuery<?>> mActive = new HashMap<>();
+
+    LiveQueries(ContentResolver resolver, long windowMillis) {
+        mResolver = resolver;
+        mWindowMillis = windowMillis;
+
+        HandlerThread thread = new HandlerThread("LiveQueries", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mWorker = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Return the application's queries.
+     */
+    public static synchronized LiveQueries getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LiveQueries(context.getApplicationContext().getContentResolver(),
+                    DEFAULT_WINDOW_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Every product, in the order they were added.
+     */
+    public LiveQuery<List<Book>> catalog() {
+        return query(BookEntry.CONTENT_URI, Book.ALL_COLUMNS, null, null, BookEntry._ID + " ASC",
+                BookEntry.CONTENT_URI, BOOK_LIST);
+    }
+
+    /**
+     * The product with the given id, or null once it doesn't exist.
+     */
+    public LiveQuery<Book> product(long id) {
+        Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
+        return query(uri, Book.ALL_COLUMNS, null, null, null, uri, BOOK);
+    }
+
+    /**
+     * The products matching the given search terms, best matches first.
+     */
+    public LiveQuery<List<Book>> search(String terms) {
+        Uri uri = BookEntry.buildSearchUri(terms);
+        return query(uri, Book.ALL_COLUMNS, null, null, null, BookEntry.CONTENT_URI, BOOK_LIST);
+    }
+
+    /**
+     * The totals of the whole stock.
+     */
+    public LiveQuery<StockValue> stockValue() {
+        return query(AnalyticsEntry.STOCK_VALUE_URI, null, null, null, null, BookEntry.CONTENT_URI,
+                STOCK_VALUE);
+    }
+
+    /**
+     * Return the query with the given arguments, which runs again whenever the notification URI
+     * or one of its descendants changes. While it has observers, the same instance is returned
+     * for equal arguments.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> LiveQuery<T> query(Uri uri, String[] projection, String selection,
+                                               String[] selectionArgs, String sortOrder,
+                                               Uri notificationUri, LiveQuery.Mapper<T> mapper) {
+        Object key = Arrays.asList(uri, asList(projection), selection, asList(selectionArgs),
+                sortOrder, notificationUri, mapper);
+        LiveQuery<T> query = (LiveQuery<T>) mActive.get(key);
+        if (query == null) {
+            query = new LiveQuery<>(this, key, uri, projection, selection, selectionArgs, sortOrder,
+                    notificationUri, mapper);
+        }
+        return query;
+    }
+
+    private static List<String> asList(String[] array) {
+        return array == null ? null : Arrays.asList(array);
+    }
+
+    /**
+     * Called with the lock held when a query gets its first observer. A query handed out
+     * earlier stays unshared if an equal one became active in the meantime.
+     */
+    void activate(LiveQuery<?> query) {
+        if (!mActive.containsKey(query.getKey())) {
+            mActive.put(query.getKey(), query);
+        }
+    }
+
+    /**
+     * Called with the lock held when a query lost its last observer.
+     */
+    void deactivate(LiveQuery<?> query) {
+        if (mActive.get(query.getKey()) == query) {
+            mActive.remove(query.getKey());
+        }
+    }
+
+    ContentResolver getResolver() {
+        return mResolver;
+    }
+
+    Handler getWorker() {
+        return mWorker;
+    }
+
+    Handler getMainHandler() {
+        return mMainHandler;
+    }
+
+    long getWindowMillis() {
+        return mWindowMillis;
+    }
+}
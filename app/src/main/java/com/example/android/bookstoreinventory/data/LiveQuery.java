@@ -0,0 +1,268 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A provider query observed as a stream of immutable values. The query runs on a background
+ * thread, its cursor is turned into a value by a {@link Mapper}, and the value is handed to every
+ * {@link Observer} on the main thread. After that the query runs again whenever its notification
+ * URI changes, with changes within {@link LiveQueries#DEFAULT_WINDOW_MILLIS} answered by one
+ * query, and a value equal to the last one is not delivered again.
+ *
+ * Queries are obtained from {@link LiveQueries}, which hands out the same instance for the same
+ * query while it has observers, so every screen observing it shares one cursor per change.
+ */
+public final class LiveQuery<T> {
+
+    private static final String LOG_TAG = LiveQuery.class.getSimpleName();
+
+    /**
+     * Turns a whole cursor into a value, on the query's background thread. The value should be
+     * immutable and implement equals, so that unchanged results can be recognized.
+     */
+    public interface Mapper<T> {
+        T map(Cursor cursor);
+    }
+
+    /**
+     * Receives the values of a query on the main thread.
+     */
+    public interface Observer<T> {
+        void onChanged(T value);
+    }
+
+    /**
+     * An observer's registration; once cancelled the observer receives nothing more.
+     */
+    public interface Subscription {
+        void unsubscribe();
+    }
+
+    private final LiveQueries mQueries;
+    private final Object mKey;
+    private final ContentResolver mResolver;
+    private final Uri mUri;
+    private final String[] mProjection;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+    private final String mSortOrder;
+    private final Uri mNotificationUri;
+    private final Mapper<T> mMapper;
+
+    private final ContentObserver mContentObserver;
+
+    /**
+     * Whether mContentObserver is registered; guarded by itself. Registering is a call into the
+     * system, so it is made with this lock held instead of mQueries, which every query shares.
+     */
+    private final Object mRegistrationLock = new Object();
+    private boolean mObserverRegistered;
+
+    /** Current observers; guarded by mQueries */
+    private final List<Observer<T>> mObservers = new ArrayList<>();
+
+    /** Whether a query is posted and hasn't started yet; guarded by mQueries */
+    private boolean mReloadScheduled;
+
+    /** Last value delivered, valid once mLoaded is set; guarded by mQueries */
+    private T mValue;
+    private boolean mLoaded;
+
+    /** Number of times the query ran; only written by the worker */
+    private volatile int mQueryCount;
+
+    private final Runnable mReload = new Runnable() {
+        @Override
+        public void run() {
+            reload();
+        }
+    };
+
+    LiveQuery(LiveQueries queries, Object key, Uri uri, String[] projection, String selection,
+              String[] selectionArgs, String sortOrder, Uri notificationUri, Mapper<T> mapper) {
+        mQueries = queries;
+        mKey = key;
+        mResolver = queries.getResolver();
+        mUri = uri;
+        mProjection = projection;
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mSortOrder = sortOrder;
+        mNotificationUri = notificationUri;
+        mMapper = mapper;
+
+        mContentObserver = new ContentObserver(queries.getWorker()) {
+            @Override
+            public boolean deliverSelfNotifications() {
+                return true;
+            }
+
+            @Override
+            public void onChange(boolean selfChange) {
+                scheduleReload(mQueries.getWindowMillis());
+            }
+        };
+    }
+
+    Object getKey() {
+        return mKey;
+    }
+
+    /**
+     * Start delivering values to the observer, beginning with the current value if one is
+     * already loaded. The first observer starts the query.
+     */
+    public Subscription subscribe(final Observer<T> observer) {
+        boolean first;
+        synchronized (mQueries) {
+            mObservers.add(observer);
+            first = mObservers.size() == 1;
+            if (first) {
+                mQueries.activate(this);
+                // Whatever was loaded before may have changed while nobody was observing
+                mLoaded = false;
+            } else if (mLoaded) {
+                deliver(observer, mValue);
+            }
+        }
+        if (first) {
+            updateRegistration();
+            // Query once the observer is registered, so no change in between goes unnoticed
+            scheduleReload(0);
+        }
+        return new Subscription() {
+            @Override
+            public void unsubscribe() {
+                remove(observer);
+            }
+        };
+    }
+
+    private void remove(Observer<T> observer) {
+        synchronized (mQueries) {
+            if (!mObservers.remove(observer) || !mObservers.isEmpty()) {
+                return;
+            }
+            mQueries.getWorker().removeCallbacks(mReload);
+            mReloadScheduled = false;
+            mValue = null;
+            mLoaded = false;
+            mQueries.deactivate(this);
+        }
+        updateRegistration();
+    }
+
+    /**
+     * Register the content observer while the query has observers and unregister it when it
+     * has none. Called after every first subscribe and last unsubscribe; whichever call runs
+     * last sees the final state, so racing calls leave the registration right.
+     */
+    private void updateRegistration() {
+        synchronized (mRegistrationLock) {
+            boolean observed;
+            synchronized (mQueries) {
+                observed = !mObservers.isEmpty();
+            }
+            if (observed == mObserverRegistered) {
+                return;
+            }
+            if (observed) {
+                mResolver.registerContentObserver(mNotificationUri, true, mContentObserver);
+            } else {
+                mResolver.unregisterContentObserver(mContentObserver);
+            }
+            mObserverRegistered = observed;
+        }
+    }
+
+    /**
+     * Return the number of times the query ran against the provider.
+     */
+    public int getQueryCount() {
+        return mQueryCount;
+    }
+
+    private void scheduleReload(long delayMillis) {
+        synchronized (mQueries) {
+            if (!mReloadScheduled && !mObservers.isEmpty()) {
+                mReloadScheduled = true;
+                mQueries.getWorker().postDelayed(mReload, delayMillis);
+            }
+        }
+    }
+
+    /**
+     * Run the query and deliver its value to the observers, unless it equals the last one or
+     * the query failed.
+     */
+    private void reload() {
+        synchronized (mQueries) {
+            mReloadScheduled = false;
+            if (mObservers.isEmpty()) {
+                return;
+            }
+        }
+
+        T value;
+        try {
+            Cursor cursor = mResolver.query(mUri, mProjection, mSelection, mSelectionArgs, mSortOrder);
+            mQueryCount++;
+            try {
+                value = mMapper.map(cursor);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        } catch (RuntimeException e) {
+            // E.g. the database is locked or full. Thrown on the worker it would take down the
+            // app; the observers keep the last value instead, and the next change tries again.
+            Log.e(LOG_TAG, "Query of " + mUri + " failed", e);
+            return;
+        }
+
+        synchronized (mQueries) {
+            if (mObservers.isEmpty() || (mLoaded && equal(mValue, value))) {
+                return;
+            }
+            mValue = value;
+            mLoaded = true;
+            for (Observer<T> observer : mObservers) {
+                deliver(observer, value);
+            }
+        }
+    }
+
+    /**
+     * Hand the value to the observer on the main thread, if it is still subscribed by then.
+     */
+    private void deliver(final Observer<T> observer, final T value) {
+        mQueries.getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mQueries) {
+                    if (!mObservers.contains(observer)) {
+                        return;
+                    }
+                }
+                observer.onChanged(value);
+            }
+        });
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return "LiveQuery{" + mUri + ", queries=" + mQueryCount + "}";
+    }
+}
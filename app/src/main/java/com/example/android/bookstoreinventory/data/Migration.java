@@ -0,0 +1,23 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One step of the database schema history, upgrading from {@link #startVersion} to the next version.
+ * Steps are listed in {@link BookMigrations#MIGRATIONS} and run in order by {@link BookDbHelper}.
+ */
+abstract class Migration {
+
+    /** Version of the schema this step upgrades from */
+    final int startVersion;
+
+    Migration(int startVersion) {
+        this.startVersion = startVersion;
+    }
+
+    /**
+     * Apply the schema change. Called inside the transaction opened by
+     * {@link android.database.sqlite.SQLiteOpenHelper}, so a failure rolls the whole upgrade back.
+     */
+    abstract void migrate(SQLiteDatabase db);
+}
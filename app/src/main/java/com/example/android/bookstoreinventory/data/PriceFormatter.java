@@ -0,0 +1,252 @@
+package com.example.android.bookstoreinventory.data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Converts prices between {@link BookContract.BookEntry#COLUMN_PRICE}, a whole number of minor
+ * units of the price's currency, and text. {@link #format(long, String, char[])} writes the
+ * currency symbol and the amount with the locale's separators into a caller's buffer, so binding
+ * a list row creates no objects; the symbol and fraction digits of each currency are looked up
+ * once and cached. {@link #parse} reads a plain decimal amount back into minor units, and
+ * {@link #parseLocalized} one written with the locale's separators.
+ *
+ * Only uses the JDK, so it can be tested on the host.
+ */
+public final class PriceFormatter {
+
+    /** Length of a buffer large enough for any price {@link #format(long, String, char[])} writes */
+    public static final int MAX_LENGTH = 40;
+
+    /** Longest currency symbol used; longer ones are replaced by the currency code */
+    private static final int MAX_SYMBOL_LENGTH = 8;
+
+    private static PriceFormatter sInstance;
+
+    /** Symbol and fraction digits of one currency */
+    private static final class CurrencyFormat {
+        final char[] symbol;
+        final int fractionDigits;
+
+        CurrencyFormat(char[] symbol, int fractionDigits) {
+            this.symbol = symbol;
+            this.fractionDigits = fractionDigits;
+        }
+    }
+
+    private final Locale mLocale;
+    private final char mDecimalSeparator;
+    private final char mGroupingSeparator;
+
+    /** Formats looked up so far, by currency code; guarded by itself */
+    private final Map<String, CurrencyFormat> mFormats = new HashMap<>();
+
+    public PriceFormatter(Locale locale) {
+        mLocale = locale;
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols(locale);
+        mDecimalSeparator = symbols.getMonetaryDecimalSeparator();
+        mGroupingSeparator = symbols.getGroupingSeparator();
+    }
+
+    /**
+     * Return a formatter for the default locale, created again if the default locale changed.
+     */
+    public static synchronized PriceFormatter getInstance() {
+        Locale locale = Locale.getDefault();
+        if (sInstance == null || !sInstance.mLocale.equals(locale)) {
+            sInstance = new PriceFormatter(locale);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Write the price, e.g. "$1,234.50", into the start of the buffer, which must hold at least
+     * {@link #MAX_LENGTH} characters. Return the number of characters written.
+     *
+     * @throws IllegalArgumentException if the currency code isn't a known currency
+     */
+    public int format(long minorUnits, String currencyCode, char[] buffer) {
+        CurrencyFormat currency = getFormat(currencyCode);
+        int fractionDigits = currency.fractionDigits;
+
+        // Work with the negative value so Long.MIN_VALUE doesn't overflow
+        boolean negative = minorUnits < 0;
+        long remaining = negative ? minorUnits : -minorUnits;
+
+        int digits = 1;
+        for (long i = remaining / 10; i != 0; i /= 10) {
+            digits++;
+        }
+        int integerDigits = Math.max(digits - fractionDigits, 1);
+        int length = (negative ? 1 : 0) + currency.symbol.length + integerDigits
+                + (integerDigits - 1) / 3 + (fractionDigits > 0 ? 1 + fractionDigits : 0);
+
+        int position = length;
+        for (int i = 0; i < fractionDigits; i++) {
+            buffer[--position] = (char) ('0' - remaining % 10);
+            remaining /= 10;
+        }
+        if (fractionDigits > 0) {
+            buffer[--position] = mDecimalSeparator;
+        }
+        for (int i = 0; i < integerDigits; i++) {
+            if (i > 0 && i % 3 == 0) {
+                buffer[--position] = mGroupingSeparator;
+            }
+            buffer[--position] = (char) ('0' - remaining % 10);
+            remaining /= 10;
+        }
+        position -= currency.symbol.length;
+        System.arraycopy(currency.symbol, 0, buffer, position, currency.symbol.length);
+        if (negative) {
+            buffer[--position] = '-';
+        }
+        return length;
+    }
+
+    /**
+     * Return the price as text, e.g. "$1,234.50".
+     */
+    public String format(long minorUnits, String currencyCode) {
+        char[] buffer = new char[MAX_LENGTH];
+        return new String(buffer, 0, format(minorUnits, currencyCode, buffer));
+    }
+
+    /**
+     * Return the price as a plain decimal amount with a '.' separator and no symbol or grouping,
+     * e.g. "1234.50", as it is typed into the editor and written to CSV files.
+     */
+    public static String toPlainString(long minorUnits, String currencyCode) {
+        return BigDecimal.valueOf(minorUnits, getFractionDigits(currencyCode)).toPlainString();
+    }
+
+    /**
+     * Return the price as a decimal amount with the locale's decimal separator and no symbol or
+     * grouping, e.g. "1234,50" in Germany, as {@link #parseLocalized} reads it back.
+     */
+    public String toLocalizedString(long minorUnits, String currencyCode) {
+        return toPlainString(minorUnits, currencyCode).replace('.', mDecimalSeparator);
+    }
+
+    /**
+     * Read a plain decimal amount of the currency with a '.' separator, e.g. "9.99", into minor
+     * units, as {@link #toPlainString} writes it. A ',' is refused rather than guessed at: "1,234"
+     * is a thousand in some locales and a fraction in others. Digits beyond the currency's minor
+     * unit are rounded half up.
+     *
+     * @throws NumberFormatException if the text isn't a decimal number or the price doesn't fit
+     *                               in a long
+     * @throws IllegalArgumentException if the currency code isn't a known currency
+     */
+    public static long parse(String text, String currencyCode) {
+        int fractionDigits = getFractionDigits(currencyCode);
+        String amount = text.trim();
+        int separators = 0;
+        int digits = 0;
+        for (int i = 0; i < amount.length(); i++) {
+            char c = amount.charAt(i);
+            if (c == '.') {
+                separators++;
+            } else if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (i != 0 || (c != '-' && c != '+')) {
+                throw new NumberFormatException("Invalid price: " + text);
+            }
+        }
+        if (digits == 0 || separators > 1) {
+            throw new NumberFormatException("Invalid price: " + text);
+        }
+
+        try {
+            return new BigDecimal(amount).movePointRight(fractionDigits)
+                    .setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Price out of range: " + text);
+        }
+    }
+
+    /**
+     * Read a decimal amount of the currency written with the locale's separators, e.g.
+     * "1,234.50" in the US or "1.234,50" in Germany, into minor units. Grouping separators are
+     * only accepted between groups of three digits. A '.' is read as the decimal separator too
+     * where it doesn't group digits, as numeric keyboards may only offer that one.
+     *
+     * @throws NumberFormatException if the text isn't a decimal number in this locale or the
+     *                               price doesn't fit in a long
+     * @throws IllegalArgumentException if the currency code isn't a known currency
+     */
+    public long parseLocalized(String text, String currencyCode) {
+        String amount = text.trim();
+        int decimal = amount.lastIndexOf(mDecimalSeparator);
+        if (decimal == -1 && mGroupingSeparator != '.') {
+            decimal = amount.lastIndexOf('.');
+        }
+        int integerEnd = decimal == -1 ? amount.length() : decimal;
+
+        // Rewrite the amount as parse() reads it, checking the grouping on the way
+        StringBuilder plain = new StringBuilder(amount.length());
+        boolean grouped = false;
+        int groupDigits = 0;
+        for (int i = 0; i < integerEnd; i++) {
+            char c = amount.charAt(i);
+            if (isGroupingSeparator(c)) {
+                if (grouped ? groupDigits != 3 : groupDigits == 0 || groupDigits > 3) {
+                    throw new NumberFormatException("Invalid price: " + text);
+                }
+                grouped = true;
+                groupDigits = 0;
+            } else {
+                if (c >= '0' && c <= '9') {
+                    groupDigits++;
+                }
+                plain.append(c);
+            }
+        }
+        if (grouped && groupDigits != 3) {
+            throw new NumberFormatException("Invalid price: " + text);
+        }
+        if (decimal != -1) {
+            plain.append('.').append(amount, decimal + 1, amount.length());
+        }
+
+        return parse(plain.toString(), currencyCode);
+    }
+
+    private boolean isGroupingSeparator(char c) {
+        // Locales grouping with a (no-break) space accept any space
+        return c == mGroupingSeparator
+                || (Character.isSpaceChar(mGroupingSeparator) && Character.isSpaceChar(c));
+    }
+
+    /**
+     * Return the number of digits of the currency's minor unit, e.g. 2 for US dollars.
+     *
+     * @throws IllegalArgumentException if the currency code isn't a known currency
+     */
+    public static int getFractionDigits(String currencyCode) {
+        // Pseudo-currencies such as gold (XAU) have none
+        return Math.max(Currency.getInstance(currencyCode).getDefaultFractionDigits(), 0);
+    }
+
+    private CurrencyFormat getFormat(String currencyCode) {
+        synchronized (mFormats) {
+            CurrencyFormat format = mFormats.get(currencyCode);
+            if (format == null) {
+                Currency currency = Currency.getInstance(currencyCode);
+                String symbol = currency.getSymbol(mLocale);
+                if (symbol.length() > MAX_SYMBOL_LENGTH) {
+                    symbol = currency.getCurrencyCode();
+                }
+                format = new CurrencyFormat(symbol.toCharArray(),
+                        Math.max(currency.getDefaultFractionDigits(), 0));
+                mFormats.put(currencyCode, format);
+            }
+            return format;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.util.LruCache;
+
+/**
+ * Process-wide cache of recently read products, keyed by {@link BookContract.BookEntry#_ID}.
+ * Filled by single-product reads in {@link BookProvider} and by catalog loads, and invalidated
+ * by every write through the provider. Least recently used products are evicted once
+ * {@link #MAX_ENTRIES} are cached.
+ *
+ * Readers that fill the cache must take the {@link #generation()} before reading from the
+ * database and pass it to {@link #put(Book, long)}, so that a row read before a concurrent write
+ * is never cached after that write invalidated it.
+ */
+public final class ProductCache {
+
+    /** Maximum number of cached products */
+    public static final int MAX_ENTRIES = 512;
+
+    private static final ProductCache sInstance = new ProductCache(MAX_ENTRIES);
+
+    private final LruCache<Long, Book> mBooks;
+
+    /** Incremented by every invalidation; guarded by this */
+    private long mGeneration;
+
+    ProductCache(int maxEntries) {
+        mBooks = new LruCache<>(maxEntries);
+    }
+
+    public static ProductCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Return the cached product with the given id, or null if it isn't cached.
+     */
+    public Book get(long id) {
+        return mBooks.get(id);
+    }
+
+    /**
+     * Return the current generation, to be passed to {@link #put(Book, long)} by a reader.
+     */
+    public synchronized long generation() {
+        return mGeneration;
+    }
+
+    /**
+     * Cache a product read from the database, unless an invalidation happened since the reader
+     * took the given generation.
+     */
+    public synchronized void put(Book book, long generation) {
+        if (generation == mGeneration) {
+            mBooks.put(book.id, book);
+        }
+    }
+
+    /**
+     * Drop the product with the given id.
+     */
+    public synchronized void invalidate(long id) {
+        mGeneration++;
+        mBooks.remove(id);
+    }
+
+    /**
+     * Drop every product, e.g. after a write whose rows aren't known.
+     */
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mBooks.evictAll();
+    }
+
+    public int hitCount() {
+        return mBooks.hitCount();
+    }
+
+    public int missCount() {
+        return mBooks.missCount();
+    }
+
+    /**
+     * Return the share of lookups answered from the cache, between 0 and 1.
+     */
+    public float hitRate() {
+        int hits = mBooks.hitCount();
+        int lookups = hits + mBooks.missCount();
+        return lookups == 0 ? 0f : (float) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductCache{" + mBooks.size() + "/" + MAX_ENTRIES + " products, hit rate "
+                + hitRate() + "}";
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.provider.BaseColumns;
+
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+/**
+ * Append-only journal of sales (database version 5). A sale adds a row with the change in
+ * quantity instead of updating the product, so a burst of sales is a run of sequential inserts.
+ * The quantity of a product is its stored quantity plus its pending (not yet compacted) entries;
+ * {@link BookMigrations#VIEW_PRODUCTS} adds them up, so readers don't see the difference.
+ *
+ * Pending entries are folded into the products table by {@link #compact()}, which runs on a
+ * background thread shortly after a sale. Compacted entries are kept as a record of every sale.
+ */
+final class SaleJournal {
+
+    static final String TABLE_NAME = "sales";
+
+    static final String _ID = BaseColumns._ID;
+
+    /** Id of the product sold. Not a foreign key, so sales of deleted products stay on record. */
+    static final String COLUMN_PRODUCT_ID = "product_id";
+
+    /** Change in quantity, negative for a sale */
+    static final String COLUMN_DELTA = "delta";
+
+    /** Time of the sale, in milliseconds since the epoch */
+    static final String COLUMN_TIMESTAMP = "timestamp";
+
+    /**
+     * 1 once the entry is part of the product's stored quantity: folded in by a compaction, or
+     * superseded by an update that set the quantity outright
+     */
+    static final String COLUMN_COMPACTED = "compacted";
+
+    /** Index over the pending entries of each product */
+    static final String INDEX_PENDING = "index_sales_pending";
+
+    /** Time from a sale until the journal is compacted */
+    static final long COMPACT_DELAY_MILLIS = 5000;
+
+    /** Most entries folded in one transaction, so sales don't wait long for a compaction */
+    static final int COMPACT_BATCH_SIZE = 500;
+
+    /** Sum of the pending entries of the product p */
+    static final String PENDING_DELTA = "IFNULL((SELECT SUM(" + COLUMN_DELTA + ") FROM " + TABLE_NAME
+            + " WHERE " + COLUMN_COMPACTED + " = 0 AND " + COLUMN_PRODUCT_ID + " = p." + BookEntry._ID
+            + "), 0)";
+
+    /**
+     * Records a sale of amount copies (bound twice, negated first) of a product at a time, only
+     * if enough copies are left counting the pending entries. Changes nothing otherwise.
+     */
+    static final String SQL_RECORD_SALE = "INSERT INTO " + TABLE_NAME + " (" + COLUMN_PRODUCT_ID + ", "
+            + COLUMN_DELTA + ", " + COLUMN_TIMESTAMP + ") SELECT p." + BookEntry._ID + ", -?1, ?2 FROM "
+            + BookEntry.TABLE_NAME + " p WHERE p." + BookEntry._ID + " = ?3 AND p."
+            + BookEntry.COLUMN_QUANTITY + " + " + PENDING_DELTA + " >= ?1";
+
+    /** Last id of the next batch of pending entries, or 0 if there are none */
+    private static final String SQL_NEXT_BATCH = "SELECT IFNULL(MAX(" + _ID + "), 0) FROM (SELECT " + _ID
+            + " FROM " + TABLE_NAME + " WHERE " + COLUMN_COMPACTED + " = 0 ORDER BY " + _ID + " LIMIT "
+            + COMPACT_BATCH_SIZE + ")";
+
+    /** Adds the pending entries up to an id to their products */
+    private static final String SQL_FOLD = "UPDATE " + BookEntry.TABLE_NAME + " SET "
+            + BookEntry.COLUMN_QUANTITY + " = " + BookEntry.COLUMN_QUANTITY + " + (SELECT SUM("
+            + COLUMN_DELTA + ") FROM " + TABLE_NAME + " WHERE " + COLUMN_COMPACTED + " = 0 AND "
+            + COLUMN_PRODUCT_ID + " = " + BookEntry.TABLE_NAME + "." + BookEntry._ID + " AND " + _ID
+            + " <= ?1) WHERE " + BookEntry._ID + " IN (SELECT " + COLUMN_PRODUCT_ID + " FROM "
+            + TABLE_NAME + " WHERE " + COLUMN_COMPACTED + " = 0 AND " + _ID + " <= ?1)";
+
+    /** Marks the pending entries of one product as compacted */
+    static final String SQL_DISCARD_PRODUCT_PENDING = "UPDATE " + TABLE_NAME + " SET "
+            + COLUMN_COMPACTED + " = 1 WHERE " + COLUMN_COMPACTED + " = 0 AND " + COLUMN_PRODUCT_ID + " = ?";
+
+    /** Marks the pending entries up to an id as compacted */
+    private static final String SQL_MARK_COMPACTED = "UPDATE " + TABLE_NAME + " SET "
+            + COLUMN_COMPACTED + " = 1 WHERE " + COLUMN_COMPACTED + " = 0 AND " + _ID + " <= ?";
+
+    private final SQLiteOpenHelper mDbHelper;
+    private final StatementCache mStatements;
+    private final Handler mHandler;
+
+    /** Whether a compaction is posted and hasn't started yet; guarded by this */
+    private boolean mCompactionScheduled;
+
+    private final Runnable mCompact = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (SaleJournal.this) {
+                mCompactionScheduled = false;
+            }
+            compact();
+        }
+    };
+
+    SaleJournal(SQLiteOpenHelper dbHelper, StatementCache statements) {
+        this(dbHelper, statements, newBackgroundHandler());
+    }
+
+    /**
+     * Create a journal compacted on the given handler's thread instead of a thread of its own.
+     */
+    SaleJournal(SQLiteOpenHelper dbHelper, StatementCache statements, Handler handler) {
+        mDbHelper = dbHelper;
+        mStatements = statements;
+        mHandler = handler;
+    }
+
+    private static Handler newBackgroundHandler() {
+        HandlerThread thread = new HandlerThread("SaleJournal", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        return new Handler(thread.getLooper());
+    }
+
+    /**
+     * Record a sale in the given database, which must be in a transaction. Return true if it went
+     * through, false if there are not enough copies left or no such product. A compaction is
+     * scheduled once the transaction has committed.
+     */
+    boolean recordSale(SQLiteDatabase database, long productId, int amount) {
+        SQLiteStatement statement = mStatements.acquire(database, SQL_RECORD_SALE);
+        try {
+            statement.bindLong(1, amount);
+            statement.bindLong(2, System.currentTimeMillis());
+            statement.bindLong(3, productId);
+            return statement.executeUpdateDelete() == 1;
+        } finally {
+            mStatements.release(database, SQL_RECORD_SALE, statement);
+        }
+    }
+
+    /**
+     * Compact the journal after {@link #COMPACT_DELAY_MILLIS}, unless a compaction is already due.
+     */
+    synchronized void scheduleCompaction() {
+        if (!mCompactionScheduled) {
+            mCompactionScheduled = true;
+            mHandler.postDelayed(mCompact, COMPACT_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Drop a compaction that is scheduled and hasn't started yet. Return true if there was one.
+     */
+    synchronized boolean cancelCompaction() {
+        mHandler.removeCallbacks(mCompact);
+        boolean scheduled = mCompactionScheduled;
+        mCompactionScheduled = false;
+        return scheduled;
+    }
+
+    /**
+     * Fold every pending entry into the products table, {@link #COMPACT_BATCH_SIZE} entries per
+     * transaction. Quantities as read through the product view don't change. Return the number
+     * of entries folded.
+     */
+    int compact() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int compacted = 0;
+        while (true) {
+            int batch;
+            database.beginTransaction();
+            try {
+                long lastId = DatabaseUtils.longForQuery(database, SQL_NEXT_BATCH, null);
+                if (lastId == 0) {
+                    database.setTransactionSuccessful();
+                    return compacted;
+                }
+                database.execSQL(SQL_FOLD, new Object[] { lastId });
+                SQLiteStatement mark = mStatements.acquire(database, SQL_MARK_COMPACTED);
+                try {
+                    mark.bindLong(1, lastId);
+                    batch = mark.executeUpdateDelete();
+                } finally {
+                    mStatements.release(database, SQL_MARK_COMPACTED, mark);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            compacted += batch;
+        }
+    }
+
+    /**
+     * Drop the pending entries of the products in the given selection on the products table, for
+     * an update that sets their quantity outright. Must run in the update's transaction.
+     */
+    void discardPending(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        String sql = "UPDATE " + TABLE_NAME + " SET " + COLUMN_COMPACTED + " = 1 WHERE "
+                + COLUMN_COMPACTED + " = 0";
+        if (selection != null && selection.length() > 0) {
+            sql += " AND " + COLUMN_PRODUCT_ID + " IN (SELECT " + BookEntry._ID + " FROM "
+                    + BookEntry.TABLE_NAME + " WHERE " + selection + ")";
+        }
+        mStatements.executeUpdateDelete(database, sql, selectionArgs);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of compiled statements for one database, keyed by their SQL. The
+ * provider's fixed-shape writes and the recent shapes of its writes by selection are compiled once
+ * and then only rebound, instead of building the SQL and a statement on every call.
+ *
+ * A statement is taken out of the cache by {@link #acquire} and put back by {@link #release}, so
+ * each statement is used by one thread at a time and no lock is held while it runs. Thread safe.
+ */
+final class StatementCache {
+
+    /** Statements kept by default: the fixed-shape ones and a few selections */
+    static final int DEFAULT_MAX_SIZE = 24;
+
+    private final Map<String, SQLiteStatement> mStatements;
+
+    /** Database the cached statements were compiled for */
+    private SQLiteDatabase mDatabase;
+
+    private long mHits;
+    private long mMisses;
+
+    StatementCache(final int maxSize) {
+        mStatements = new LinkedHashMap<String, SQLiteStatement>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > maxSize) {
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Return a compiled statement for the SQL, from the cache if possible, with no arguments
+     * bound. Hand it back with {@link #release} when done, also if it failed.
+     */
+    SQLiteStatement acquire(SQLiteDatabase database, String sql) {
+        synchronized (this) {
+            if (database != mDatabase) {
+                // The database was reopened, so the statements compiled for the old one are unusable
+                clear();
+                mDatabase = database;
+            }
+            SQLiteStatement statement = mStatements.remove(sql);
+            if (statement != null) {
+                mHits++;
+                return statement;
+            }
+            mMisses++;
+        }
+        return database.compileStatement(sql);
+    }
+
+    /**
+     * Put a statement returned by {@link #acquire} back into the cache. If another thread cached
+     * the same SQL in the meantime, this one is closed.
+     */
+    void release(SQLiteDatabase database, String sql, SQLiteStatement statement) {
+        statement.clearBindings();
+        synchronized (this) {
+            if (database == mDatabase && !mStatements.containsKey(sql)) {
+                mStatements.put(sql, statement);
+                return;
+            }
+        }
+        statement.close();
+    }
+
+    /**
+     * Run an UPDATE or DELETE with the given arguments through a cached statement. Return the
+     * number of rows changed.
+     */
+    int executeUpdateDelete(SQLiteDatabase database, String sql, Object[] bindArgs) {
+        SQLiteStatement statement = acquire(database, sql);
+        try {
+            bind(statement, bindArgs);
+            return statement.executeUpdateDelete();
+        } finally {
+            release(database, sql, statement);
+        }
+    }
+
+    /**
+     * Run an INSERT with the given arguments through a cached statement. Return the id of the new
+     * row, or -1 if nothing was inserted.
+     */
+    long executeInsert(SQLiteDatabase database, String sql, Object[] bindArgs) {
+        SQLiteStatement statement = acquire(database, sql);
+        try {
+            bind(statement, bindArgs);
+            return statement.executeInsert();
+        } finally {
+            release(database, sql, statement);
+        }
+    }
+
+    private static void bind(SQLiteStatement statement, Object[] bindArgs) {
+        if (bindArgs == null) {
+            return;
+        }
+        for (int i = 0; i < bindArgs.length; i++) {
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs[i]);
+        }
+    }
+
+    /**
+     * Close every cached statement.
+     */
+    synchronized void clear() {
+        for (SQLiteStatement statement : mStatements.values()) {
+            statement.close();
+        }
+        mStatements.clear();
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    synchronized int size() {
+        return mStatements.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StatementCache size=" + mStatements.size() + " hits=" + mHits + " misses=" + mMisses;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.database.Cursor;
+
+import com.example.android.bookstoreinventory.data.BookContract.AnalyticsEntry;
+import com.example.android.bookstoreinventory.data.BookContract.BookEntry;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable totals of the whole stock, as returned by {@link AnalyticsEntry#STOCK_VALUE_URI}.
+ * Values are in minor units and kept per currency, as amounts in different currencies can't be
+ * added up.
+ */
+public final class StockValue {
+
+    public static final StockValue EMPTY = new StockValue(0, 0, Collections.<String, Long>emptyMap());
+
+    public final int productCount;
+    public final long totalQuantity;
+
+    /** Total value of the products priced in each currency, by ISO 4217 code */
+    public final Map<String, Long> totalValues;
+
+    public StockValue(int productCount, long totalQuantity, Map<String, Long> totalValues) {
+        this.productCount = productCount;
+        this.totalQuantity = totalQuantity;
+        this.totalValues = Collections.unmodifiableMap(new TreeMap<>(totalValues));
+    }
+
+    /**
+     * Return the total value of the products priced in the given currency, 0 if there are none.
+     */
+    public long getTotalValue(String currency) {
+        Long value = totalValues.get(currency);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Read the totals from the rows of a stock value cursor, one per currency, or {@link #EMPTY}
+     * if it has none.
+     */
+    public static StockValue fromCursor(Cursor cursor) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            return EMPTY;
+        }
+        int currencyIndex = cursor.getColumnIndexOrThrow(BookEntry.COLUMN_CURRENCY);
+        int countIndex = cursor.getColumnIndexOrThrow(AnalyticsEntry.COLUMN_PRODUCT_COUNT);
+        int quantityIndex = cursor.getColumnIndexOrThrow(AnalyticsEntry.COLUMN_TOTAL_QUANTITY);
+        int valueIndex = cursor.getColumnIndexOrThrow(AnalyticsEntry.COLUMN_TOTAL_VALUE);
+        int productCount = 0;
+        long totalQuantity = 0;
+        Map<String, Long> totalValues = new TreeMap<>();
+        do {
+            productCount += cursor.getInt(countIndex);
+            totalQuantity += cursor.getLong(quantityIndex);
+            totalValues.put(cursor.getString(currencyIndex), cursor.getLong(valueIndex));
+        } while (cursor.moveToNext());
+        return new StockValue(productCount, totalQuantity, totalValues);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StockValue)) {
+            return false;
+        }
+        StockValue other = (StockValue) o;
+        return productCount == other.productCount
+                && totalQuantity == other.totalQuantity
+                && totalValues.equals(other.totalValues);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = productCount;
+        result = 31 * result + (int) (totalQuantity ^ (totalQuantity >>> 32));
+        result = 31 * result + totalValues.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "StockValue{products=" + productCount + ", quantity=" + totalQuantity
+                + ", values=" + totalValues + "}";
+    }
+}
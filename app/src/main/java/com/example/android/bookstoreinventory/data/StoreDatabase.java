@@ -0,0 +1,77 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+
+import com.example.android.bookstoreinventory.data.BookContract.StoreEntry;
+
+/**
+ * The database of one store and the state {@link BookProvider} keeps for it: compiled statements,
+ * the sale journal, the ISBN index and the product cache. Opened and closed by {@link StorePool}.
+ */
+final class StoreDatabase {
+
+    final long storeId;
+    final BookDbHelper dbHelper;
+    final StatementCache statements = new StatementCache(StatementCache.DEFAULT_MAX_SIZE);
+    final SaleJournal saleJournal;
+    final IsbnIndex isbnIndex;
+    final ProductCache productCache;
+
+    /** Number of operations and open cursors using the store; guarded by the pool */
+    int references;
+
+    /** {@link android.os.SystemClock#uptimeMillis()} when the last reference was released */
+    long idleSince;
+
+    /**
+     * Set up the store with the given id. The journal compacts and the ISBN index loads on the
+     * given handler's thread, which is also the one that must {@link #close()} the store.
+     */
+    StoreDatabase(Context context, long storeId, Handler handler) {
+        this.storeId = storeId;
+        dbHelper = new BookDbHelper(context, BookDbHelper.getDatabaseName(storeId));
+        saleJournal = new SaleJournal(dbHelper, statements, handler);
+        isbnIndex = new IsbnIndex(dbHelper, handler);
+        // The default store shares its cache with the catalog and the editor
+        productCache = storeId == StoreEntry.DEFAULT_STORE_ID
+                ? ProductCache.getInstance() : new ProductCache(ProductCache.MAX_ENTRIES);
+        isbnIndex.scheduleLoad();
+    }
+
+    /**
+     * Return the given URI of the default store for this store, so that change notifications
+     * and returned URIs name the store they belong to.
+     */
+    Uri scope(Uri uri) {
+        return storeId == StoreEntry.DEFAULT_STORE_ID ? uri : StoreEntry.buildStoreUri(storeId, uri);
+    }
+
+    /**
+     * Compact the sales whose compaction is still scheduled, before the store is closed. Run on
+     * the handler's thread, so that no scheduled compaction runs at the same time.
+     */
+    void compactPendingSales() {
+        if (saleJournal.cancelCompaction()) {
+            saleJournal.compact();
+        }
+    }
+
+    /**
+     * Close the database once nothing references the store any more. Run on the handler's
+     * thread, so that no load or compaction runs at the same time. Sales whose compaction is
+     * still scheduled stay pending; they count towards the quantities all the same.
+     */
+    void close() {
+        isbnIndex.cancelLoad();
+        saleJournal.cancelCompaction();
+        statements.clear();
+        dbHelper.close();
+    }
+
+    @Override
+    public String toString() {
+        return "Store " + storeId + ": " + statements;
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.example.android.bookstoreinventory.data.BookContract.StoreEntry;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The open store databases of {@link BookProvider}. A store is opened the first time it is
+ * {@link #acquire acquired} and closed once it hasn't been used for {@link #IDLE_TIMEOUT_MILLIS},
+ * so a device managing many stores only keeps the ones in use open. The default store is opened
+ * with the pool and stays open.
+ *
+ * Every store's background work (sale compaction, ISBN index loads) and the closing of idle
+ * stores run on one background thread, so a store is never closed under a running task.
+ * Thread safe.
+ */
+final class StorePool {
+
+    /** Time a store stays open after its last use */
+    static final long IDLE_TIMEOUT_MILLIS = 60000;
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final StoreDatabase mDefaultStore;
+
+    /** Open stores other than the default one, by id; guarded by this */
+    private final Map<Long, StoreDatabase> mStores = new HashMap<>();
+
+    /** Whether {@link #mCloseIdle} is posted; guarded by this */
+    private boolean mCloseScheduled;
+
+    private final Runnable mCloseIdle = new Runnable() {
+        @Override
+        public void run() {
+            closeIdle();
+        }
+    };
+
+    StorePool(Context context) {
+        mContext = context;
+        HandlerThread thread = new HandlerThread("StorePool", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+        mDefaultStore = new StoreDatabase(context, StoreEntry.DEFAULT_STORE_ID, mHandler);
+    }
+
+    /**
+     * Return the store with the given id, opening it if needed. It stays open until it is
+     * {@link #release released}, also if the caller fails. Throw an
+     * {@link IllegalArgumentException} if the store has no database yet.
+     */
+    StoreDatabase acquire(long storeId) {
+        return acquire(storeId, false);
+    }
+
+    /**
+     * Return the store with the given id like {@link #acquire(long)}, creating its database if
+     * create is true and it has none yet. Only writes create a store, so that reading an
+     * unknown store doesn't leave an empty database behind.
+     */
+    StoreDatabase acquire(long storeId, boolean create) {
+        if (storeId == StoreEntry.DEFAULT_STORE_ID) {
+            return mDefaultStore;
+        }
+        if (storeId <= 0) {
+            throw new IllegalArgumentException("Invalid store id " + storeId);
+        }
+        synchronized (this) {
+            StoreDatabase store = mStores.get(storeId);
+            if (store == null) {
+                if (!create && !hasDatabase(storeId)) {
+                    throw new IllegalArgumentException("Unknown store " + storeId);
+                }
+                store = new StoreDatabase(mContext, storeId, mHandler);
+                mStores.put(storeId, store);
+            }
+            store.references++;
+            return store;
+        }
+    }
+
+    /**
+     * Create the database of the store with the given id. Return false if the store already
+     * has one.
+     */
+    boolean create(long storeId) {
+        if (storeId <= 0) {
+            throw new IllegalArgumentException("Invalid store id " + storeId);
+        }
+        StoreDatabase store;
+        synchronized (this) {
+            if (storeId == StoreEntry.DEFAULT_STORE_ID || mStores.containsKey(storeId)
+                    || hasDatabase(storeId)) {
+                return false;
+            }
+            store = acquire(storeId, true);
+        }
+        try {
+            store.dbHelper.getWritableDatabase();
+            return true;
+        } finally {
+            release(store);
+        }
+    }
+
+    /**
+     * Release a store returned by {@link #acquire}. It is closed once it has been idle long enough.
+     */
+    void release(StoreDatabase store) {
+        if (store == mDefaultStore) {
+            return;
+        }
+        synchronized (this) {
+            if (--store.references == 0) {
+                store.idleSince = SystemClock.uptimeMillis();
+                scheduleCloseIdle(IDLE_TIMEOUT_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Return the cursor, releasing the store it was read from when it is closed. Cursors read
+     * their rows in windows, so the store must stay open as long as the cursor is.
+     */
+    Cursor releaseOnClose(final StoreDatabase store, Cursor cursor) {
+        if (store == mDefaultStore) {
+            return cursor;
+        }
+        return new CursorWrapper(cursor) {
+            private boolean mReleased;
+
+            @Override
+            public void close() {
+                super.close();
+                synchronized (this) {
+                    if (mReleased) {
+                        return;
+                    }
+                    mReleased = true;
+                }
+                release(store);
+            }
+        };
+    }
+
+    /**
+     * Return the ids of the stores that have a database, in ascending order. The default store
+     * is always included.
+     */
+    long[] getStoreIds() {
+        TreeSet<Long> storeIds = new TreeSet<>();
+        storeIds.add(StoreEntry.DEFAULT_STORE_ID);
+        for (String name : mContext.databaseList()) {
+            long storeId = BookDbHelper.getStoreId(name);
+            if (storeId != -1) {
+                storeIds.add(storeId);
+            }
+        }
+        long[] ids = new long[storeIds.size()];
+        int i = 0;
+        for (long storeId : storeIds) {
+            ids[i++] = storeId;
+        }
+        return ids;
+    }
+
+    /**
+     * Return whether the store with the given id has a database file.
+     */
+    private boolean hasDatabase(long storeId) {
+        return mContext.getDatabasePath(BookDbHelper.getDatabaseName(storeId)).exists();
+    }
+
+    /**
+     * Return the number of open stores, counting the default one.
+     */
+    synchronized int getOpenCount() {
+        return 1 + mStores.size();
+    }
+
+    private void scheduleCloseIdle(long delayMillis) {
+        if (!mCloseScheduled) {
+            mCloseScheduled = true;
+            mHandler.postDelayed(mCloseIdle, delayMillis);
+        }
+    }
+
+    /**
+     * Close the stores that have been idle for {@link #IDLE_TIMEOUT_MILLIS}, and check again
+     * when the next one will have been. A store is closed while it is still in the pool and the
+     * pool is locked, so no other thread can open a second connection to its file meanwhile. The
+     * slow part, compacting its pending sales, is done first without the lock.
+     */
+    private void closeIdle() {
+        List<StoreDatabase> idle = new ArrayList<>();
+        synchronized (this) {
+            mCloseScheduled = false;
+            long now = SystemClock.uptimeMillis();
+            for (StoreDatabase store : mStores.values()) {
+                if (store.references == 0 && store.idleSince + IDLE_TIMEOUT_MILLIS <= now) {
+                    idle.add(store);
+                }
+            }
+        }
+
+        for (StoreDatabase store : idle) {
+            store.compactPendingSales();
+        }
+
+        synchronized (this) {
+            long now = SystemClock.uptimeMillis();
+            long nextDeadline = Long.MAX_VALUE;
+            for (Iterator<StoreDatabase> i = mStores.values().iterator(); i.hasNext(); ) {
+                StoreDatabase store = i.next();
+                if (store.references != 0) {
+                    continue;
+                }
+                // A store used while the sales were compacted has a later deadline
+                long deadline = store.idleSince + IDLE_TIMEOUT_MILLIS;
+                if (deadline <= now) {
+                    store.close();
+                    // A later acquire opens the store again
+                    i.remove();
+                } else {
+                    nextDeadline = Math.min(nextDeadline, deadline);
+                }
+            }
+            if (nextDeadline != Long.MAX_VALUE) {
+                scheduleCloseIdle(nextDeadline - now);
+            }
+        }
+    }
+
+    /**
+     * Print the open stores and their statement cache counters.
+     */
+    void dump(PrintWriter writer) {
+        writer.println(mDefaultStore);
+        synchronized (this) {
+            for (StoreDatabase store : mStores.values()) {
+                writer.println(store);
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.android.bookstoreinventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs inventory writes on a single background thread, in the order they were queued, so the
+ * main thread never waits for the database. Writes queued while an earlier one is running are
+ * applied together as one {@link ContentResolver#applyBatch} call, i.e. one transaction and one
+ * round of change notifications. Sales go through {@link BookContract#METHOD_SELL} on their own,
+ * in order with the other writes.
+ *
+ * Every write reports its {@link Result} to its {@link Callback} on the main thread.
+ */
+public class WriteQueue {
+
+    /** Most writes applied in one transaction */
+    static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * Receives the outcome of a queued write on the main thread.
+     */
+    public interface Callback {
+        void onWriteFinished(Result result);
+    }
+
+    /**
+     * Outcome of a queued write: the new URI of an insert, the number of rows of an update or a
+     * delete, or the result of a sale. If the write failed, {@link #error} is set instead.
+     */
+    public static final class Result {
+        public final Uri uri;
+        public final int count;
+        public final Bundle extras;
+        public final Exception error;
+
+        Result(Uri uri, int count, Bundle extras, Exception error) {
+            this.uri = uri;
+            this.count = count;
+            this.extras = extras;
+            this.error = error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    /** A queued write: a provider operation, or a sale if the operation is null */
+    private static final class Write {
+        final ContentProviderOperation operation;
+        final long productId;
+        final int amount;
+        final Callback callback;
+        final long queuedAtNanos = System.nanoTime();
+
+        Write(ContentProviderOperation operation, long productId, int amount, Callback callback) {
+            this.operation = operation;
+            this.productId = productId;
+            this.amount = amount;
+            this.callback = callback;
+        }
+    }
+
+    private static WriteQueue sInstance;
+
+    private final ContentResolver mResolver;
+    private final Handler mWorker;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Writes waiting for the worker; guarded by itself */
+    private final ArrayDeque<Write> mPending = new ArrayDeque<>();
+    private boolean mDrainScheduled;
+
+    /** Time from queueing a write until it has been applied */
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    WriteQueue(ContentResolver resolver) {
+        mResolver = resolver;
+
+        HandlerThread thread = new HandlerThread("WriteQueue", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mWorker = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Return the application's write queue.
+     */
+    public static synchronized WriteQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WriteQueue(context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    public void insert(Uri uri, ContentValues values, Callback callback) {
+        enqueue(new Write(ContentProviderOperation.newInsert(uri).withValues(values).build(),
+                -1, 0, callback));
+    }
+
+    public void update(Uri uri, ContentValues values, String selection, String[] selectionArgs,
+                       Callback callback) {
+        enqueue(new Write(ContentProviderOperation.newUpdate(uri).withValues(values)
+                .withSelection(selection, selectionArgs).build(), -1, 0, callback));
+    }
+
+    public void delete(Uri uri, String selection, String[] selectionArgs, Callback callback) {
+        enqueue(new Write(ContentProviderOperation.newDelete(uri)
+                .withSelection(selection, selectionArgs).build(), -1, 0, callback));
+    }
+
+    /**
+     * Sell copies of a product. The result's extras are those of {@link BookContract#METHOD_SELL}.
+     */
+    public void sell(long productId, int amount, Callback callback) {
+        enqueue(new Write(null, productId, amount, callback));
+    }
+
+    /**
+     * Return the latencies of the writes applied so far, from queueing until applied.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return mLatency;
+    }
+
+    private void enqueue(Write write) {
+        synchronized (mPending) {
+            mPending.add(write);
+            if (!mDrainScheduled) {
+                mDrainScheduled = true;
+                mWorker.post(mDrain);
+            }
+        }
+    }
+
+    /**
+     * Apply everything queued, taking adjacent provider operations together. Runs on the worker.
+     */
+    private void drain() {
+        List<Write> batch = new ArrayList<>();
+        while (true) {
+            batch.clear();
+            synchronized (mPending) {
+                if (mPending.isEmpty()) {
+                    mDrainScheduled = false;
+                    return;
+                }
+                Write first = mPending.poll();
+                batch.add(first);
+                while (first.operation != null && batch.size() < MAX_BATCH_SIZE
+                        && !mPending.isEmpty() && mPending.peek().operation != null) {
+                    batch.add(mPending.poll());
+                }
+            }
+
+            if (batch.get(0).operation == null) {
+                sell(batch.get(0));
+            } else {
+                applyBatch(batch);
+            }
+        }
+    }
+
+    private void sell(Write write) {
+        Bundle extras = new Bundle();
+        extras.putInt(BookContract.EXTRA_AMOUNT, write.amount);
+        try {
+            Bundle result = mResolver.call(BookContract.BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                    String.valueOf(write.productId), extras);
+            finish(write, new Result(null, 0, result, null));
+        } catch (RuntimeException e) {
+            finish(write, new Result(null, 0, null, e));
+        }
+    }
+
+    /**
+     * Apply the writes in one transaction. If that fails, they are applied one at a time so
+     * that one invalid write doesn't take the others down with it.
+     */
+    private void applyBatch(List<Write> batch) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(batch.size());
+        for (Write write : batch) {
+            operations.add(write.operation);
+        }
+
+        try {
+            ContentProviderResult[] results = mResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+            for (int i = 0; i < batch.size(); i++) {
+                finish(batch.get(i), toResult(results[i]));
+            }
+            return;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                finish(batch.get(0), new Result(null, 0, null, e));
+                return;
+            }
+        }
+
+        ArrayList<ContentProviderOperation> single = new ArrayList<>(1);
+        for (Write write : batch) {
+            single.clear();
+            single.add(write.operation);
+            try {
+                finish(write, toResult(mResolver.applyBatch(BookContract.CONTENT_AUTHORITY, single)[0]));
+            } catch (Exception e) {
+                finish(write, new Result(null, 0, null, e));
+            }
+        }
+    }
+
+    private static Result toResult(ContentProviderResult result) {
+        return new Result(result.uri, result.count != null ? result.count : 0, null, null);
+    }
+
+    private void finish(final Write write, final Result result) {
+        mLatency.record(System.nanoTime() - write.queuedAtNanos);
+        if (write.callback != null) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    write.callback.onWriteFinished(result);
+                }
+            });
+        }
+    }
+}
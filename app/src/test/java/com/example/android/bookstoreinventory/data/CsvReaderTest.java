@@ -0,0 +1,103 @@
+package com.example.android.bookstoreinventory.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link CsvReader}, run on the host.
+ */
+public class CsvReaderTest {
+
+    @Test
+    public void readRecord_plainFields() throws IOException {
+        assertEquals(Arrays.asList(
+                Arrays.asList("name", "price"),
+                Arrays.asList("Dune", "9.99")),
+                readAll("name,price\nDune,9.99\n"));
+    }
+
+    @Test
+    public void readRecord_emptyFields() throws IOException {
+        assertEquals(Arrays.asList(
+                Arrays.asList("", "", ""),
+                Arrays.asList("")),
+                readAll(",,\n\n"));
+    }
+
+    @Test
+    public void readRecord_quotedSeparators() throws IOException {
+        assertEquals(Arrays.asList(
+                Arrays.asList("Eats, shoots and leaves", "Profile")),
+                readAll("\"Eats, shoots and leaves\",Profile\n"));
+    }
+
+    @Test
+    public void readRecord_doubledQuotes() throws IOException {
+        assertEquals(Arrays.asList(
+                Arrays.asList("The \"Hobbit\"", "\"")),
+                readAll("\"The \"\"Hobbit\"\"\",\"\"\"\"\n"));
+    }
+
+    @Test
+    public void readRecord_embeddedLineBreaks() throws IOException {
+        assertEquals(Arrays.asList(
+                Arrays.asList("Two\nlines", "Three\r\nmore\rlines"),
+                Arrays.asList("next")),
+                readAll("\"Two\nlines\",\"Three\r\nmore\rlines\"\nnext\n"));
+    }
+
+    @Test
+    public void readRecord_lineEndings() throws IOException {
+        List<List<String>> expected = Arrays.asList(
+                Arrays.asList("a", "1"),
+                Arrays.asList("b", "2"),
+                Arrays.asList("c", "3"));
+        assertEquals(expected, readAll("a,1\r\nb,2\r\nc,3\r\n"));
+        assertEquals(expected, readAll("a,1\rb,2\rc,3"));
+        assertEquals(expected, readAll("a,1\nb,2\r\nc,3\r"));
+    }
+
+    @Test
+    public void readRecord_keepsCharacterAfterCarriageReturn() throws IOException {
+        // A NUL after a lone CR is a character like any other
+        assertEquals(Arrays.asList(
+                Arrays.asList("a"),
+                Arrays.asList("\0b")),
+                readAll("a\r\0b"));
+    }
+
+    @Test
+    public void readRecord_lastLineWithoutLineBreak() throws IOException {
+        assertEquals(Arrays.asList(
+                Arrays.asList("a", "1"),
+                Arrays.asList("b", "2")),
+                readAll("a,1\nb,2"));
+    }
+
+    @Test
+    public void readRecord_emptyStream() throws IOException {
+        assertEquals(0, readAll("").size());
+    }
+
+    @Test(expected = IOException.class)
+    public void readRecord_unterminatedQuote() throws IOException {
+        readAll("\"Dune,9.99\n");
+    }
+
+    private static List<List<String>> readAll(String csv) throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(csv));
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        while (reader.readRecord(record)) {
+            records.add(new ArrayList<>(record));
+        }
+        return records;
+    }
+}
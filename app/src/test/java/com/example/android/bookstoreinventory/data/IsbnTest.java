@@ -0,0 +1,64 @@
+package com.example.android.bookstoreinventory.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link Isbn}, run on the host.
+ */
+public class IsbnTest {
+
+    @Test
+    public void normalize_isbn13() {
+        assertEquals(9780306406157L, Isbn.normalize("9780306406157"));
+        assertEquals(9780306406157L, Isbn.normalize("978-0-306-40615-7"));
+        assertEquals(9780306406157L, Isbn.normalize(" 978 0 306 40615 7 "));
+        assertEquals(9791090636071L, Isbn.normalize("979-10-90636-07-1"));
+    }
+
+    @Test
+    public void normalize_isbn10ToIsbn13() {
+        assertEquals(9780306406157L, Isbn.normalize("0306406152"));
+        assertEquals(9780306406157L, Isbn.normalize("0-306-40615-2"));
+        assertEquals(9780804429573L, Isbn.normalize("080442957X"));
+        assertEquals(9780804429573L, Isbn.normalize("0-8044-2957-x"));
+    }
+
+    @Test
+    public void normalize_wrongCheckDigit() {
+        assertEquals(Isbn.INVALID, Isbn.normalize("9780306406158"));
+        assertEquals(Isbn.INVALID, Isbn.normalize("0306406153"));
+        assertEquals(Isbn.INVALID, Isbn.normalize("0804429579"));
+    }
+
+    @Test
+    public void normalize_notAnIsbn() {
+        assertEquals(Isbn.INVALID, Isbn.normalize(null));
+        assertEquals(Isbn.INVALID, Isbn.normalize(""));
+        assertEquals(Isbn.INVALID, Isbn.normalize("---"));
+        assertEquals(Isbn.INVALID, Isbn.normalize("978030640615"));
+        assertEquals(Isbn.INVALID, Isbn.normalize("97803064061570"));
+        assertEquals(Isbn.INVALID, Isbn.normalize("978030640615X"));
+        assertEquals(Isbn.INVALID, Isbn.normalize("X306406152"));
+        assertEquals(Isbn.INVALID, Isbn.normalize("030640615X2"));
+        assertEquals(Isbn.INVALID, Isbn.normalize("ISBN 0306406152"));
+        // A valid EAN-13 that isn't a book
+        assertEquals(Isbn.INVALID, Isbn.normalize("4006381333931"));
+    }
+
+    @Test
+    public void isValid() {
+        assertTrue(Isbn.isValid(9780306406157L));
+        assertFalse(Isbn.isValid(9780306406158L));
+        assertFalse(Isbn.isValid(0));
+        assertFalse(Isbn.isValid(-1));
+        assertFalse(Isbn.isValid(306406152));
+    }
+
+    @Test
+    public void toString_roundTripsThroughNormalize() {
+        assertEquals("9780306406157", Isbn.toString(9780306406157L));
+        assertEquals(9780804429573L, Isbn.normalize(Isbn.toString(Isbn.normalize("080442957X"))));
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.android.bookstoreinventory.data;
+
+import org.junit.Test;
+
+import java.util.Currency;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link PriceFormatter}, run on the host.
+ */
+public class PriceFormatterTest {
+
+    private final PriceFormatter mFormatter = new PriceFormatter(Locale.US);
+
+    @Test
+    public void format_writesSymbolGroupingAndMinorUnits() {
+        assertEquals("$0.00", mFormatter.format(0, "USD"));
+        assertEquals("$0.05", mFormatter.format(5, "USD"));
+        assertEquals("$9.99", mFormatter.format(999, "USD"));
+        assertEquals("$1,234.50", mFormatter.format(123450, "USD"));
+        assertEquals("$1,000,000.00", mFormatter.format(100000000, "USD"));
+    }
+
+    @Test
+    public void format_currencyWithoutMinorUnits() {
+        String yen = Currency.getInstance("JPY").getSymbol(Locale.US);
+        assertEquals(yen + "1,234,567", mFormatter.format(1234567, "JPY"));
+        assertEquals(yen + "0", mFormatter.format(0, "JPY"));
+    }
+
+    @Test
+    public void format_usesLocaleSeparators() {
+        PriceFormatter german = new PriceFormatter(Locale.GERMANY);
+        String euro = Currency.getInstance("EUR").getSymbol(Locale.GERMANY);
+        assertEquals(euro + "1.234,56", german.format(123456, "EUR"));
+    }
+
+    @Test
+    public void format_negativeAndExtremeValues() {
+        assertEquals("-$0.05", mFormatter.format(-5, "USD"));
+        assertEquals("-$1,234.50", mFormatter.format(-123450, "USD"));
+        assertEquals("$92,233,720,368,547,758.07", mFormatter.format(Long.MAX_VALUE, "USD"));
+        assertEquals("-$92,233,720,368,547,758.08", mFormatter.format(Long.MIN_VALUE, "USD"));
+    }
+
+    @Test
+    public void format_intoBufferReturnsLength() {
+        char[] buffer = new char[PriceFormatter.MAX_LENGTH];
+        int length = mFormatter.format(Long.MIN_VALUE, "JPY", buffer);
+        assertTrue(length <= PriceFormatter.MAX_LENGTH);
+
+        length = mFormatter.format(999, "USD", buffer);
+        assertEquals("$9.99", new String(buffer, 0, length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void format_unknownCurrencyThrows() {
+        mFormatter.format(100, "XYZ");
+    }
+
+    @Test
+    public void parse_readsDecimalAmounts() {
+        assertEquals(999, PriceFormatter.parse("9.99", "USD"));
+        assertEquals(900, PriceFormatter.parse("9", "USD"));
+        assertEquals(50, PriceFormatter.parse(".5", "USD"));
+        assertEquals(1000, PriceFormatter.parse(" 1000 ", "JPY"));
+        assertEquals(-150, PriceFormatter.parse("-1.50", "USD"));
+    }
+
+    @Test
+    public void parse_roundsHalfUp() {
+        assertEquals(1000, PriceFormatter.parse("9.995", "USD"));
+        assertEquals(999, PriceFormatter.parse("9.994", "USD"));
+        assertEquals(1, PriceFormatter.parse("0.005", "USD"));
+        assertEquals(-1, PriceFormatter.parse("-0.005", "USD"));
+        assertEquals(2, PriceFormatter.parse("1.5", "JPY"));
+    }
+
+    @Test
+    public void parse_largestPrice() {
+        assertEquals(Long.MAX_VALUE, PriceFormatter.parse("92233720368547758.07", "USD"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_overflowThrows() {
+        PriceFormatter.parse("92233720368547758.08", "USD");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_hugeNumberThrows() {
+        PriceFormatter.parse("99999999999999999999", "USD");
+    }
+
+    @Test
+    public void parse_invalidTextThrows() {
+        for (String text : new String[] { "", "-", "abc", "1.2.3", "1,234.50", "1e5", "$9.99",
+                // A comma could group or separate the fraction
+                "9,99", "1,234" }) {
+            try {
+                PriceFormatter.parse(text, "USD");
+                fail("Parsed " + text);
+            } catch (NumberFormatException expected) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void parseLocalized_usesLocaleSeparators() {
+        assertEquals(123400, mFormatter.parseLocalized("1,234", "USD"));
+        assertEquals(123450, mFormatter.parseLocalized("1,234.50", "USD"));
+        assertEquals(123456700, mFormatter.parseLocalized("1,234,567", "USD"));
+        assertEquals(999, mFormatter.parseLocalized("9.99", "USD"));
+        assertEquals(-123400, mFormatter.parseLocalized("-1,234", "USD"));
+
+        PriceFormatter german = new PriceFormatter(Locale.GERMANY);
+        assertEquals(123, german.parseLocalized("1,234", "EUR"));
+        assertEquals(123400, german.parseLocalized("1.234", "EUR"));
+        assertEquals(123456, german.parseLocalized("1.234,56", "EUR"));
+        assertEquals(999, german.parseLocalized("9,99", "EUR"));
+    }
+
+    @Test
+    public void parseLocalized_misplacedGroupingThrows() {
+        PriceFormatter german = new PriceFormatter(Locale.GERMANY);
+        String[][] invalid = {
+                { "1,23", "12,34", ",234", "1234,567", "1,234,5", "9,99", "1.234.5" },
+                // '.' groups digits here, so it isn't read as the decimal separator
+                { "9.99", "1.234.56", "1.234,5.6" } };
+        PriceFormatter[] formatters = { mFormatter, german };
+        for (int i = 0; i < formatters.length; i++) {
+            for (String text : invalid[i]) {
+                try {
+                    formatters[i].parseLocalized(text, "EUR");
+                    fail("Parsed " + text);
+                } catch (NumberFormatException expected) {
+                    // Expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void toLocalizedString_roundTripsThroughParseLocalized() {
+        PriceFormatter german = new PriceFormatter(Locale.GERMANY);
+        assertEquals("1234,56", german.toLocalizedString(123456, "EUR"));
+        assertEquals("9.99", mFormatter.toLocalizedString(999, "USD"));
+        for (long price : new long[] { 0, 1, 999, -150, 123456789 }) {
+            assertEquals(price, german.parseLocalized(german.toLocalizedString(price, "EUR"), "EUR"));
+            assertEquals(price, mFormatter.parseLocalized(mFormatter.toLocalizedString(price, "USD"), "USD"));
+        }
+    }
+
+    @Test
+    public void toPlainString_roundTripsThroughParse() {
+        assertEquals("9.99", PriceFormatter.toPlainString(999, "USD"));
+        assertEquals("0.05", PriceFormatter.toPlainString(5, "USD"));
+        assertEquals("1000", PriceFormatter.toPlainString(1000, "JPY"));
+        for (long price : new long[] { 0, 1, 999, -150, Long.MAX_VALUE, Long.MIN_VALUE }) {
+            assertEquals(price, PriceFormatter.parse(PriceFormatter.toPlainString(price, "USD"), "USD"));
+        }
+    }
+}